@@ -1,5 +1,7 @@
 package net.katsuster.ememu.arm;
 
+import java.io.*;
+
 import net.katsuster.ememu.generic.*;
 
 /**
@@ -10,11 +12,26 @@ import net.katsuster.ememu.generic.*;
  * ARM DDI0271C
  * </p>
  *
+ * <p>
+ * カウンタの値は保持せず、最後にカウンタを設定したときの値と時刻（ティック数）から、
+ * 読み出しのたびに仮想クロックの時刻を元に計算します。
+ * 動作中のタイマーごとに、カウンタが 0 に達する時刻のイベントを 1 つだけ登録し、
+ * イベントが呼び出されたときに割り込みとカウンタの再設定を行います。
+ * </p>
+ *
+ * <p>
+ * レジスタの読み書き、イベントの呼び出しはいずれも CPU のスレッドから行われるため、
+ * タイマーの状態の読み書きを同期する必要はありません。
+ * </p>
+ *
  * @author katsuhiro
  */
 public class DualTimer implements INTSource, BusSlave {
+    public static final long NS_PER_SEC = 1000000000L;
+
     private INTDestination intDst = new NullINTDestination();
     private DualTimerSlave slave;
+    private VirtualClock vclock;
 
     private int clock;
     private boolean[] timerEn;
@@ -25,7 +42,12 @@ public class DualTimer implements INTSource, BusSlave {
     private boolean[] oneshot;
     private int[] rawInt;
     private int[] loadValue;
-    private int[] currentValue;
+    //カウンタを最後に設定したときの値と、そのときのティック数
+    private long[] baseValue;
+    private long[] baseTick;
+    //ワンショットモードで 0 に達して停止している
+    private boolean[] halted;
+    private TimerEvent[] events;
 
     public static final int REG_Timer1Load     = 0x000;
     public static final int REG_Timer1Value    = 0x004;
@@ -54,17 +76,21 @@ public class DualTimer implements INTSource, BusSlave {
 
     /**
      * 1MHz 駆動のタイマーを作成します。
+     *
+     * @param vc 時刻を取得し、イベントを登録する仮想クロック
      */
-    public DualTimer() {
-        this(1000000);
+    public DualTimer(VirtualClock vc) {
+        this(vc, 1000000);
     }
 
     /**
      * タイマーを作成します。
      *
+     * @param vc 時刻を取得し、イベントを登録する仮想クロック
      * @param ck タイマーを駆動するクロックの周波数
      */
-    public DualTimer(int ck) {
+    public DualTimer(VirtualClock vc, int ck) {
+        vclock = vc;
         clock = ck;
         timerEn = new boolean[2];
         timerPeriodic = new boolean[2];
@@ -74,7 +100,14 @@ public class DualTimer implements INTSource, BusSlave {
         rawInt = new int[2];
         intEnable = new int[2];
         loadValue = new int[2];
-        currentValue = new int[2];
+        baseValue = new long[2];
+        baseTick = new long[2];
+        halted = new boolean[2];
+        events = new TimerEvent[2];
+        for (int id = 0; id < 2; id++) {
+            baseValue[id] = 0xffffffffL;
+            events[id] = new TimerEvent(id);
+        }
 
         slave = new DualTimerSlave();
     }
@@ -110,6 +143,158 @@ public class DualTimer implements INTSource, BusSlave {
         return slave;
     }
 
+    /**
+     * 時間をティック数に変換します。端数は切り捨てます。
+     *
+     * @param ns 時間（ナノ秒）
+     * @param hz ティックの周波数
+     * @return ティック数
+     */
+    public static long nsToTicks(long ns, long hz) {
+        //桁あふれを避けるため、秒と秒未満に分けて計算する
+        return ns / NS_PER_SEC * hz + (ns % NS_PER_SEC) * hz / NS_PER_SEC;
+    }
+
+    /**
+     * ティック数を時間に変換します。端数は切り上げます。
+     *
+     * @param ticks ティック数
+     * @param hz    ティックの周波数
+     * @return 時間（ナノ秒）
+     */
+    public static long ticksToNs(long ticks, long hz) {
+        return ticks / hz * NS_PER_SEC + ((ticks % hz) * NS_PER_SEC + hz - 1) / hz;
+    }
+
+    /**
+     * タイマーのカウンタの周波数を取得します。
+     *
+     * @param id タイマー ID
+     * @return 周波数
+     */
+    protected long getFrequency(int id) {
+        return clock / prescale[id];
+    }
+
+    /**
+     * 現在時刻のティック数を取得します。
+     *
+     * @param id タイマー ID
+     * @return ティック数
+     */
+    protected long getTick(int id) {
+        return nsToTicks(vclock.getTime(), getFrequency(id));
+    }
+
+    /**
+     * タイマーのカウンタの最大値を取得します。
+     *
+     * @param id タイマー ID
+     * @return カウンタの最大値
+     */
+    protected long getCounterMask(int id) {
+        return timerSize32[id] ? 0xffffffffL : 0xffffL;
+    }
+
+    /**
+     * 現在時刻のカウンタの値を計算します。
+     *
+     * @param id タイマー ID
+     * @return カウンタの値
+     */
+    public int getCounter(int id) {
+        long elapsed, v;
+
+        if (!timerEn[id] || halted[id]) {
+            return (int)baseValue[id];
+        }
+
+        elapsed = getTick(id) - baseTick[id];
+        if (elapsed < 0) {
+            //0 に達してから、次のティックで再設定されるまでの間
+            return 0;
+        }
+
+        v = baseValue[id] - elapsed;
+        if (v < 0) {
+            //0 に達したイベントがまだ呼ばれていない
+            v = 0;
+        }
+
+        return (int)v;
+    }
+
+    /**
+     * 現在のカウンタの値と時刻を、カウンタの起点として記録します。
+     *
+     * 周波数や動作の設定を変える前に呼び出す必要があります。
+     *
+     * @param id タイマー ID
+     */
+    protected void rebase(int id) {
+        baseValue[id] = getCounter(id) & 0xffffffffL;
+        baseTick[id] = getTick(id);
+    }
+
+    /**
+     * カウンタが 0 に達する時刻にイベントを登録し直します。
+     *
+     * 停止しているタイマーのイベントは取り消します。
+     *
+     * @param id タイマー ID
+     */
+    protected void reschedule(int id) {
+        if (!timerEn[id] || halted[id]) {
+            vclock.cancel(events[id]);
+            return;
+        }
+
+        vclock.schedule(events[id],
+                ticksToNs(baseTick[id] + baseValue[id], getFrequency(id)));
+    }
+
+    /**
+     * カウンタが 0 に達したときの処理を行います。
+     *
+     * @param id タイマー ID
+     */
+    protected void expire(int id) {
+        rawInt[id] = 0x1;
+
+        if (oneshot[id]) {
+            //0 で停止する
+            baseValue[id] = 0;
+            halted[id] = true;
+        } else {
+            //次のティックで再設定する
+            baseTick[id] += baseValue[id] + 1;
+            if (timerPeriodic[id]) {
+                baseValue[id] = loadValue[id] & getCounterMask(id);
+            } else {
+                baseValue[id] = getCounterMask(id);
+            }
+        }
+        reschedule(id);
+
+        intDst.setRaisedInterrupt(isAssert());
+    }
+
+    /**
+     * カウンタが 0 に達する時刻に呼び出されるイベントです。
+     */
+    class TimerEvent extends ClockEvent {
+        private int id;
+
+        public TimerEvent(int n) {
+            id = n;
+        }
+
+        @Override
+        public void fire(long deadline) {
+            expire(id);
+        }
+    }
+
     class DualTimerSlave extends Controller32 {
         public DualTimerSlave() {
             addReg(REG_Timer1Load, "Timer1Load", 0x00000000);
@@ -165,6 +350,11 @@ public class DualTimer implements INTSource, BusSlave {
             System.out.printf("  timerSize32  : %b\n", size32);
             System.out.printf("  oneshot      : %b\n", one);
 
+            //古い設定でのカウンタの値を起点にする
+            if (prescale[id] != 0) {
+                rebase(id);
+            }
+
             timerEn[id] = en;
             timerPeriodic[id] = peri;
 
@@ -189,12 +379,38 @@ public class DualTimer implements INTSource, BusSlave {
                 break;
             case 3:
                 //undefined, ignored
+                if (prescale[id] == 0) {
+                    prescale[id] = 1;
+                }
                 break;
             }
 
             timerSize32[id] = size32;
             oneshot[id] = one;
 
+            //新しい周波数でのティック数を起点にする
+            baseTick[id] = getTick(id);
+            reschedule(id);
+
+            super.writeWord(regaddr, val);
+
+            intDst.setRaisedInterrupt(isAssert());
+        }
+
+        /**
+         * カウンタに値をロードする。
+         *
+         * @param id タイマー ID
+         * @param regaddr レジスタのアドレス
+         * @param val レジスタの値
+         */
+        public void loadCounter(int id, long regaddr, int val) {
+            loadValue[id] = val;
+            baseValue[id] = val & getCounterMask(id);
+            baseTick[id] = getTick(id);
+            halted[id] = false;
+            reschedule(id);
+
             super.writeWord(regaddr, val);
         }
 
@@ -210,7 +426,7 @@ public class DualTimer implements INTSource, BusSlave {
                 result = super.readWord(regaddr);
                 break;
             case REG_Timer1Value:
-                result = currentValue[0];
+                result = getCounter(0);
                 break;
             case REG_Timer1IntClr:
                 //write only, ignored
@@ -229,7 +445,7 @@ public class DualTimer implements INTSource, BusSlave {
                 result = super.readWord(regaddr);
                 break;
             case REG_Timer2Value:
-                result = currentValue[1];
+                result = getCounter(1);
                 break;
             case REG_Timer2IntClr:
                 //write only, ignored
@@ -258,105 +474,108 @@ public class DualTimer implements INTSource, BusSlave {
 
             regaddr = (int) (addr & getAddressMask(LEN_WORD_BITS));
 
-            synchronized(this) {
-                switch (regaddr) {
-                case REG_Timer1Load:
-                    loadValue[0] = data;
-                    currentValue[0] = 0;
-                    super.writeWord(regaddr, data);
-                    break;
-                case REG_Timer1Value:
-                    //read only, ignored
-                    break;
-                case REG_Timer1Control:
-                    updateControl(0, regaddr, data);
-                    break;
-                case REG_Timer1IntClr:
-                    rawInt[0] &= ~data;
-                    break;
-                case REG_Timer1RIS:
-                case REG_Timer1MIS:
-                    //read only, ignored
-                    break;
-                case REG_Timer1BGLoad:
-                    loadValue[0] = data;
-                    super.writeWord(regaddr, data);
-                    break;
-                case REG_Timer2Load:
-                    loadValue[1] = data;
-                    currentValue[1] = 0;
-                    super.writeWord(regaddr, data);
-                    break;
-                case REG_Timer2Value:
-                    //read only, ignored
-                    break;
-                case REG_Timer2Control:
-                    updateControl(1, regaddr, data);
-                    break;
-                case REG_Timer2IntClr:
-                    rawInt[1] &= ~data;
-                    break;
-                case REG_Timer2RIS:
-                case REG_Timer2MIS:
-                    //read only, ignored
-                    break;
-                case REG_Timer2BGLoad:
-                    loadValue[1] = data;
-                    super.writeWord(regaddr, data);
-                    break;
-                case REG_TimerPeriphID0:
-                case REG_TimerPeriphID1:
-                case REG_TimerPeriphID2:
-                case REG_TimerPeriphID3:
-                case REG_TimerPCellID0:
-                case REG_TimerPCellID1:
-                case REG_TimerPCellID2:
-                case REG_TimerPCellID3:
-                    //read only, ignored
-                    break;
-                default:
-                    super.writeWord(regaddr, data);
-                    break;
-                }
+            switch (regaddr) {
+            case REG_Timer1Load:
+                loadCounter(0, regaddr, data);
+                break;
+            case REG_Timer1Value:
+                //read only, ignored
+                break;
+            case REG_Timer1Control:
+                updateControl(0, regaddr, data);
+                break;
+            case REG_Timer1IntClr:
+                rawInt[0] = 0;
+                intDst.setRaisedInterrupt(isAssert());
+                break;
+            case REG_Timer1RIS:
+            case REG_Timer1MIS:
+                //read only, ignored
+                break;
+            case REG_Timer1BGLoad:
+                loadValue[0] = data;
+                super.writeWord(regaddr, data);
+                break;
+            case REG_Timer2Load:
+                loadCounter(1, regaddr, data);
+                break;
+            case REG_Timer2Value:
+                //read only, ignored
+                break;
+            case REG_Timer2Control:
+                updateControl(1, regaddr, data);
+                break;
+            case REG_Timer2IntClr:
+                rawInt[1] = 0;
+                intDst.setRaisedInterrupt(isAssert());
+                break;
+            case REG_Timer2RIS:
+            case REG_Timer2MIS:
+                //read only, ignored
+                break;
+            case REG_Timer2BGLoad:
+                loadValue[1] = data;
+                super.writeWord(regaddr, data);
+                break;
+            case REG_TimerPeriphID0:
+            case REG_TimerPeriphID1:
+            case REG_TimerPeriphID2:
+            case REG_TimerPeriphID3:
+            case REG_TimerPCellID0:
+            case REG_TimerPCellID1:
+            case REG_TimerPCellID2:
+            case REG_TimerPCellID3:
+                //read only, ignored
+                break;
+            default:
+                super.writeWord(regaddr, data);
+                break;
             }
         }
 
         @Override
-        public void run() {
-            while (!shouldHalt()) {
-                //FIXME: 100Hz polling
-                int hz = 100;
-
-                try {
-                    Thread.sleep(1000 / hz);
-
-                    //NOTE: タイマーカウンタのクリアと排他する必要がある
-                    synchronized (this) {
-                        for (int id = 0; id < 2; id++) {
-                            if (!timerEn[id]) {
-                                //hold value
-                                continue;
-                            }
-
-                            int dec = clock / (hz * prescale[id]);
-                            int after = currentValue[id] - dec;
-
-                            if (currentValue[id] == 0 ||
-                                    after == 0 || after > currentValue[id]) {
-                                //0 または 0 以下に達した
-                                currentValue[id] = loadValue[id];
-                                rawInt[id] = 0x1;
-                            } else {
-                                currentValue[id] = after;
-                            }
-                        }
-
-                        intDst.setRaisedInterrupt(isAssert());
-                    }
-                } catch (InterruptedException e) {
-                    //ignore
-                }
+        public void saveState(DataOutput out) throws IOException {
+            super.saveState(out);
+
+            SnapshotIO.writeBooleans(out, timerEn);
+            SnapshotIO.writeBooleans(out, timerPeriodic);
+            SnapshotIO.writeInts(out, intEnable);
+            SnapshotIO.writeInts(out, prescale);
+            SnapshotIO.writeBooleans(out, timerSize32);
+            SnapshotIO.writeBooleans(out, oneshot);
+            SnapshotIO.writeInts(out, rawInt);
+            SnapshotIO.writeInts(out, loadValue);
+            SnapshotIO.writeLongs(out, baseValue);
+            SnapshotIO.writeLongs(out, baseTick);
+            SnapshotIO.writeBooleans(out, halted);
+        }
+
+        @Override
+        public void loadState(DataInput in) throws IOException {
+            super.loadState(in);
+
+            SnapshotIO.readBooleans(in, timerEn);
+            SnapshotIO.readBooleans(in, timerPeriodic);
+            SnapshotIO.readInts(in, intEnable);
+            SnapshotIO.readInts(in, prescale);
+            SnapshotIO.readBooleans(in, timerSize32);
+            SnapshotIO.readBooleans(in, oneshot);
+            SnapshotIO.readInts(in, rawInt);
+            SnapshotIO.readInts(in, loadValue);
+            SnapshotIO.readLongs(in, baseValue);
+            SnapshotIO.readLongs(in, baseTick);
+            SnapshotIO.readBooleans(in, halted);
+
+            //仮想クロックのイベントは保存されないため、登録し直す
+            for (int id = 0; id < 2; id++) {
+                reschedule(id);
             }
+            intDst.setRaisedInterrupt(isAssert());
+        }
+
+        @Override
+        public void run() {
+            //do nothing
         }
     }
 
@@ -1,5 +1,7 @@
 package net.katsuster.ememu.arm;
 
+import java.io.*;
+
 import net.katsuster.ememu.generic.*;
 
 /**
@@ -206,6 +208,24 @@ public class PrimaryINTC extends Controller32
         return st;
     }
 
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        super.saveState(out);
+
+        out.writeInt(rawSoftInt);
+        out.writeInt(intEnable);
+        out.writeInt(intSelect);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        super.loadState(in);
+
+        rawSoftInt = in.readInt();
+        intEnable = in.readInt();
+        intSelect = in.readInt();
+    }
+
     @Override
     public int readWord(long addr) {
         int regaddr;
@@ -13,7 +13,7 @@ import net.katsuster.ememu.generic.*;
 public class SysBaseboard implements BusSlave {
     private SysBaseboardSlave slave;
 
-    private long start24MHz;
+    private VirtualClock clock;
 
     public static final int REG_SYS_ID         = 0x000;
     public static final int REG_SYS_SW         = 0x004;
@@ -55,8 +55,13 @@ public class SysBaseboard implements BusSlave {
     public static final int REG_SYS_TEST_OSC4  = 0x0d0;
 
 
-    public SysBaseboard() {
-        start24MHz = System.nanoTime();
+    /**
+     * システムレジスタを作成します。
+     *
+     * @param c カウンタの時刻を取得する仮想クロック
+     */
+    public SysBaseboard(VirtualClock c) {
+        clock = c;
 
         slave = new SysBaseboardSlave();
     }
@@ -144,7 +149,7 @@ public class SysBaseboard implements BusSlave {
                 break;
             case REG_SYS_24MHz:
                 //TODO: 桁あふれ問題が未解決のまま
-                result = (int) ((System.nanoTime() - start24MHz) / 1000 * 24);
+                result = (int) (clock.getTime() / 1000 * 24);
                 break;
             default:
                 result = super.readWord(regaddr);
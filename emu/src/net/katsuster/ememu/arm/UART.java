@@ -10,18 +10,65 @@ import net.katsuster.ememu.generic.*;
  * 参考: ARM PrimeCell UART (PL011)
  * 日本語版は ARM DDI0183AJ, 英語版は ARM DDI0183G
  *
+ * <p>
+ * 受信側は 16 段の FIFO を持ち、UARTIFLS のトリガレベルに応じて受信割り込みを、
+ * FIFO にデータが残ったまま 32 ビット期間データが届かなければ
+ * 受信タイムアウト割り込みを発生させます。
+ * </p>
+ *
+ * <p>
+ * 入力ストリームは UART のスレッドがブロッキング読み出しで待ち、
+ * 届いたデータを直ちに受信 FIFO に渡します。
+ * FIFO が一杯のときは、ゲストがデータを読み出すまで UART のスレッドが待ちます。
+ * </p>
+ *
+ * <p>
+ * 送信側の FIFO は書き込まれたデータを直ちに送り出すため、常に空として見えます。
+ * 送り出したデータはホスト側のバッファに溜め、改行、バッファが一杯になったとき、
+ * または最初のデータから一定の仮想時間が経過したときにまとめて出力ストリームに書き出します。
+ * </p>
+ *
  * @author katsuhiro
  */
 public class UART implements INTSource, BusSlave {
     private INTDestination intDst = new NullINTDestination();
     private UARTSlave slave;
+    private VirtualClock vclock;
 
     private int rawInt;
     private int maskInt;
 
     private InputStream strInput;
     private OutputStream strOutput;
-    private StringBuffer bufInput;
+
+    //UART スレッドが追加し、CPU スレッドが取り出すため、
+    //受信 FIFO の読み書きは UART のロックを取って行う
+    private int[] rxFifo;
+    private int rxHead;
+    private int rxCount;
+    private boolean fifoEnabled;
+    private int rxTrigger;
+    private int ibrd;
+    private int fbrd;
+    private ClockEvent rxTimeout;
+    //CPU スレッドのみが読み書きする
+    private byte[] txBuf;
+    private int txLen;
+    private ClockEvent txFlush;
+
+    //FIFO の段数
+    public static final int FIFO_DEPTH = 16;
+    //UARTCLK の周波数
+    public static final long UART_CLOCK = 24000000L;
+    //受信タイムアウトまでのビット数
+    public static final int RX_TIMEOUT_BITS = 32;
+    //送信データをまとめて出力するバッファのサイズ
+    public static final int TX_BUFFER_SIZE = 4096;
+    //送信データを出力ストリームに書き出すまでの最大の遅延（ナノ秒）
+    public static final long TX_FLUSH_DELAY = 1000000L;
+    //ボーレートが設定されていないときの既定値（38400bps）
+    public static final int DEFAULT_IBRD = 39;
+    public static final int DEFAULT_FBRD = 4;
 
     public static final int REG_UARTDR        = 0x000;
     public static final int REG_UARTRSR       = 0x004;
@@ -57,6 +104,9 @@ public class UART implements INTSource, BusSlave {
     public static final int FR_DSR  = 1;
     public static final int FR_CTS  = 0;
 
+    //line control bit fields
+    public static final int LCR_H_FEN = 4;
+
     //interrupt bit fields
     public static final int INTR_OE  = 10;
     public static final int INTR_BE  = 9;
@@ -73,16 +123,40 @@ public class UART implements INTSource, BusSlave {
     /**
      * UART を作成します。
      *
+     * @param vc   受信タイムアウトのイベントを登録する仮想クロック
      * @param istr UART の入力を得るためのストリーム
      * @param ostr UART に出力された文字を印字するためのストリーム
      */
-    public UART(InputStream istr, OutputStream ostr) {
-        rawInt = 0;
+    public UART(VirtualClock vc, InputStream istr, OutputStream ostr) {
+        vclock = vc;
+        //送信 FIFO は空
+        rawInt = BitOp.setBit32(0, INTR_TX, true);
         maskInt = 0;
 
         strInput = istr;
         strOutput = ostr;
-        bufInput = new StringBuffer();
+
+        rxFifo = new int[FIFO_DEPTH];
+        rxHead = 0;
+        rxCount = 0;
+        fifoEnabled = false;
+        setFIFOLevel(0x12);
+        ibrd = 0;
+        fbrd = 0;
+        rxTimeout = new ClockEvent() {
+            @Override
+            public void fire(long deadline) {
+                timeoutRx();
+            }
+        };
+        txBuf = new byte[TX_BUFFER_SIZE];
+        txLen = 0;
+        txFlush = new ClockEvent() {
+            @Override
+            public void fire(long deadline) {
+                flushTx();
+            }
+        };
 
         slave = new UARTSlave();
     }
@@ -113,6 +187,200 @@ public class UART implements INTSource, BusSlave {
         return getRawInt() & maskInt;
     }
 
+    /**
+     * 受信 FIFO の段数を取得します。
+     *
+     * FIFO が無効のときは 1 段の保持レジスタとして動作します。
+     *
+     * @return 受信 FIFO の段数
+     */
+    public int getRxDepth() {
+        return fifoEnabled ? FIFO_DEPTH : 1;
+    }
+
+    /**
+     * 受信 FIFO に溜まっているデータの数を取得します。
+     *
+     * @return 受信 FIFO のデータ数
+     */
+    public synchronized int getRxCount() {
+        return rxCount;
+    }
+
+    /**
+     * FIFO の割り込みレベル（UARTIFLS）を設定します。
+     *
+     * @param val UARTIFLS の値
+     */
+    protected synchronized void setFIFOLevel(int val) {
+        //1/8, 1/4, 1/2, 3/4, 7/8
+        final int[] triggers = {2, 4, 8, 12, 14};
+        int sel = BitOp.getField32(val, 3, 3);
+
+        if (sel >= triggers.length) {
+            //reserved, ignored
+            return;
+        }
+        rxTrigger = triggers[sel];
+    }
+
+    /**
+     * 受信割り込みを発生させる FIFO のデータ数を取得します。
+     *
+     * @return 受信割り込みのトリガレベル
+     */
+    protected int getRxTrigger() {
+        return fifoEnabled ? rxTrigger : 1;
+    }
+
+    /**
+     * 1 ビットの転送にかかる時間を取得します。
+     *
+     * @return 1 ビットの時間（ナノ秒）
+     */
+    protected long getBitPeriod() {
+        long div = ibrd * 64L + fbrd;
+
+        if (div == 0) {
+            div = DEFAULT_IBRD * 64L + DEFAULT_FBRD;
+        }
+
+        //baud = UARTCLK / (16 * div / 64)
+        return div * 1000000000L / (UART_CLOCK * 4);
+    }
+
+    /**
+     * ホストから受け取ったデータを受信 FIFO に追加します。
+     *
+     * 受信 FIFO が一杯のときは、ゲストがデータを読み出すまで待ちます。
+     * CPU のスレッド以外から呼び出されることを想定しています。
+     *
+     * @param b 受信したデータ
+     * @throws InterruptedException 待っている間に割り込まれた場合
+     */
+    public void receive(int b) throws InterruptedException {
+        synchronized (this) {
+            while (rxCount >= getRxDepth()) {
+                wait();
+            }
+
+            rxFifo[(rxHead + rxCount) % FIFO_DEPTH] = b & 0xff;
+            rxCount++;
+
+            if (rxCount >= getRxTrigger()) {
+                rawInt = BitOp.setBit32(rawInt, INTR_RX, true);
+            }
+        }
+
+        //データが届かないまま 32 ビット期間経過したら、タイムアウトとする
+        vclock.scheduleAfter(rxTimeout, getBitPeriod() * RX_TIMEOUT_BITS);
+
+        intDst.setRaisedInterrupt(isAssert());
+    }
+
+    /**
+     * 受信 FIFO からデータを取り出します。
+     *
+     * @return 受信したデータ、FIFO が空ならば 0
+     */
+    protected int readRx() {
+        int result;
+
+        synchronized (this) {
+            if (rxCount == 0) {
+                return 0;
+            }
+
+            result = rxFifo[rxHead];
+            rxHead = (rxHead + 1) % FIFO_DEPTH;
+            rxCount--;
+
+            if (rxCount < getRxTrigger()) {
+                rawInt = BitOp.setBit32(rawInt, INTR_RX, false);
+            }
+            if (rxCount == 0) {
+                rawInt = BitOp.setBit32(rawInt, INTR_RT, false);
+            }
+
+            //FIFO の空きを待っている UART スレッドを起こす
+            notifyAll();
+        }
+
+        intDst.setRaisedInterrupt(isAssert());
+
+        return result;
+    }
+
+    /**
+     * 受信タイムアウトの時刻に達したときの処理を行います。
+     */
+    protected void timeoutRx() {
+        synchronized (this) {
+            if (rxCount > 0) {
+                rawInt = BitOp.setBit32(rawInt, INTR_RT, true);
+            }
+        }
+
+        intDst.setRaisedInterrupt(isAssert());
+    }
+
+    /**
+     * 送信データをホスト側のバッファに追加します。
+     *
+     * 改行かバッファが一杯になるか、停止が要求されていれば直ちに、
+     * そうでなければ TX_FLUSH_DELAY 後に出力ストリームに書き出します。
+     *
+     * @param b 送信するデータ
+     */
+    protected void writeTx(int b) {
+        boolean raise;
+
+        if (strOutput != null) {
+            synchronized (txBuf) {
+                txBuf[txLen++] = (byte)b;
+
+                if (b == '\n' || txLen == txBuf.length || slave.shouldHalt()) {
+                    flushTx();
+                } else if (!txFlush.isScheduled()) {
+                    vclock.scheduleAfter(txFlush, TX_FLUSH_DELAY);
+                }
+            }
+        }
+
+        //送信 FIFO は直ちに空になり、トリガレベルを下回る
+        synchronized (this) {
+            raise = !BitOp.getBit32(rawInt, INTR_TX);
+            rawInt = BitOp.setBit32(rawInt, INTR_TX, true);
+        }
+        if (raise) {
+            intDst.setRaisedInterrupt(isAssert());
+        }
+    }
+
+    /**
+     * ホスト側のバッファに溜まった送信データを、出力ストリームに書き出します。
+     *
+     * 停止を要求したスレッドからも呼び出されるため、
+     * バッファは CPU のスレッドと排他して操作します。
+     */
+    public void flushTx() {
+        vclock.cancel(txFlush);
+
+        synchronized (txBuf) {
+            if (txLen == 0) {
+                return;
+            }
+
+            try {
+                strOutput.write(txBuf, 0, txLen);
+                strOutput.flush();
+            } catch (IOException ex) {
+                //ignore
+            }
+            txLen = 0;
+        }
+    }
+
     @Override
     public INTDestination getINTDestination() {
         return intDst;
@@ -129,12 +397,7 @@ public class UART implements INTSource, BusSlave {
     }
 
     @Override
-    public boolean isAssert() {
-        //送信 FIFO は常に空いていることにする
-        rawInt = BitOp.setBit32(rawInt, INTR_TX, true);
-        //受信 FIFO
-        rawInt = BitOp.setBit32(rawInt, INTR_RX, bufInput.length() > 0);
-
+    public synchronized boolean isAssert() {
         return getMaskedInt() != 0;
     }
 
@@ -157,7 +420,7 @@ public class UART implements INTSource, BusSlave {
             addReg(REG_UARTFBRD, "UARTFBRD", 0x00000000);
             addReg(REG_UARTLCR_H, "UARTLCR_H", 0x00000000);
             addReg(REG_UARTCR, "UARTCR", 0x00000000);
-            addReg(REG_UARTIFLS, "UARTIFLS", 0x00000000);
+            addReg(REG_UARTIFLS, "UARTIFLS", 0x00000012);
 
             addReg(REG_UARTIMSC, "UARTIMSC", 0x00000000);
             addReg(REG_UARTRIS, "UARTRIS", 0x00000000);
@@ -172,6 +435,10 @@ public class UART implements INTSource, BusSlave {
             addReg(REG_UARTPCellID1, "UARTPCellID1", 0x000000f0);
             addReg(REG_UARTPCellID2, "UARTPCellID2", 0x00000005);
             addReg(REG_UARTPCellID3, "UARTPCellID3", 0x000000b1);
+
+            //ブロックした入力ストリームの読み出しは取り消せないため、
+            //エミュレータの終了を妨げないようにデーモンスレッドとする
+            setDaemon(true);
         }
 
         @Override
@@ -183,21 +450,25 @@ public class UART implements INTSource, BusSlave {
 
             switch (regaddr) {
             case REG_UARTDR:
-                if (bufInput.length() > 0) {
-                    result = bufInput.charAt(0);
-                    bufInput.deleteCharAt(0);
-                } else {
-                    result = 0;
-                }
+                result = readRx();
                 break;
             case REG_UARTFR:
+                int cnt = getRxCount();
+
                 result = 0;
 
-                //送信 FIFO は常に空いていることにする
+                //送信 FIFO は直ちに送り出すため、常に空
                 result = BitOp.setBit32(result, FR_TXFE, true);
-                //受信 FIFO はバッファ残量に応じて設定する
-                result = BitOp.setBit32(result, FR_RXFE, bufInput.length() == 0);
+                //受信 FIFO はデータ数に応じて設定する
+                result = BitOp.setBit32(result, FR_RXFF, cnt >= getRxDepth());
+                result = BitOp.setBit32(result, FR_RXFE, cnt == 0);
 
+                break;
+            case REG_UARTIBRD:
+                result = ibrd;
+                break;
+            case REG_UARTFBRD:
+                result = fbrd;
                 break;
             case REG_UARTLCR_H:
                 result = super.readWord(regaddr);
@@ -211,10 +482,14 @@ public class UART implements INTSource, BusSlave {
                 result = maskInt;
                 break;
             case REG_UARTRIS:
-                result = getRawInt();
+                synchronized (UART.this) {
+                    result = getRawInt();
+                }
                 break;
             case REG_UARTMIS:
-                result = getMaskedInt();
+                synchronized (UART.this) {
+                    result = getMaskedInt();
+                }
                 break;
             default:
                 result = super.readWord(regaddr);
@@ -238,30 +513,27 @@ public class UART implements INTSource, BusSlave {
                     //FIXME: IntelliJ の Console でコピーできないため無視
                     break;
                 }
-                if (strOutput != null) {
-                    try {
-                        strOutput.write(ascii);
-                        strOutput.flush();
-                    } catch (IOException ex) {
-                        //ignore
-                    }
-                }
+                writeTx(ascii);
 
                 break;
             case REG_UARTFR:
                 //read only, ignored
                 break;
             case REG_UARTIBRD:
-                //TODO: Not implemented
                 System.out.printf("UARTIBRD: 0x%08x\n", data);
+                ibrd = data & 0xffff;
                 break;
             case REG_UARTFBRD:
-                //TODO: Not implemented
                 System.out.printf("UARTFBRD: 0x%08x\n", data);
+                fbrd = data & 0x3f;
                 break;
             case REG_UARTLCR_H:
-                //TODO: Not implemented
+                //TODO: Not implemented, except FIFO enable
                 System.out.printf("UARTLCR_H: 0x%08x\n", data);
+                synchronized (UART.this) {
+                    fifoEnabled = BitOp.getBit32(data, LCR_H_FEN);
+                    UART.this.notifyAll();
+                }
                 super.writeWord(regaddr, data);
                 break;
             case REG_UARTCR:
@@ -270,18 +542,25 @@ public class UART implements INTSource, BusSlave {
                 super.writeWord(regaddr, data);
                 break;
             case REG_UARTIFLS:
-                //TODO: Not implemented
                 System.out.printf("UARTIFLS: 0x%08x\n", data);
+                setFIFOLevel(data);
+                super.writeWord(regaddr, data);
                 break;
             case REG_UARTIMSC:
-                maskInt = data;
+                synchronized (UART.this) {
+                    maskInt = data;
+                }
+                intDst.setRaisedInterrupt(isAssert());
                 break;
             case REG_UARTRIS:
             case REG_UARTMIS:
                 //read only, ignored
                 break;
             case REG_UARTICR:
-                rawInt &= ~data;
+                synchronized (UART.this) {
+                    rawInt &= ~data;
+                }
+                intDst.setRaisedInterrupt(isAssert());
                 break;
             case REG_UARTPeriphID0:
             case REG_UARTPeriphID1:
@@ -299,42 +578,101 @@ public class UART implements INTSource, BusSlave {
             }
         }
 
+        @Override
+        public void saveState(DataOutput out) throws IOException {
+            super.saveState(out);
+
+            //ホスト側のバッファに溜まった送信データは書き出しておく
+            flushTx();
+
+            synchronized (UART.this) {
+                out.writeInt(rawInt);
+                out.writeInt(maskInt);
+                out.writeBoolean(fifoEnabled);
+                out.writeInt(rxTrigger);
+                out.writeInt(ibrd);
+                out.writeInt(fbrd);
+                out.writeInt(rxCount);
+                for (int i = 0; i < rxCount; i++) {
+                    out.writeByte(rxFifo[(rxHead + i) % FIFO_DEPTH]);
+                }
+            }
+        }
+
+        @Override
+        public void loadState(DataInput in) throws IOException {
+            int n;
+
+            super.loadState(in);
+
+            synchronized (UART.this) {
+                rawInt = in.readInt();
+                maskInt = in.readInt();
+                fifoEnabled = in.readBoolean();
+                rxTrigger = in.readInt();
+                ibrd = in.readInt();
+                fbrd = in.readInt();
+                n = in.readInt();
+                if (n < 0 || n > FIFO_DEPTH) {
+                    throw new IOException(String.format(
+                            "Illegal UART RX count %d.", n));
+                }
+                rxHead = 0;
+                rxCount = n;
+                for (int i = 0; i < n; i++) {
+                    rxFifo[i] = in.readUnsignedByte();
+                }
+            }
+
+            if (n > 0) {
+                vclock.scheduleAfter(rxTimeout, getBitPeriod() * RX_TIMEOUT_BITS);
+            }
+            intDst.setRaisedInterrupt(isAssert());
+        }
+
+        @Override
+        public void halt() {
+            super.halt();
+
+            //改行で終わらない出力（シェルのプロンプトなど）を失わないよう、
+            //停止時にホスト側のバッファを書き出す
+            //以降の送信データは writeTx が直ちに書き出す
+            flushTx();
+        }
+
         @Override
         public void run() {
-            mainLoop:
+            byte[] buf = new byte[FIFO_DEPTH];
+            int pos = 0, n = 0;
+
+            if (strInput == null) {
+                return;
+            }
+
+            //NOTE: 入力をポーリングせず、データが届くまで read() でブロックします。
+            //strInput が System.in の場合、他のスレッドからブロッキングを
+            //キャンセルする方法がないため、終了時は停止せずに放置されます。
             while (!shouldHalt()) {
                 try {
-                    while (strInput == null) {
-                        Thread.sleep(50);
-                        if (shouldHalt()) {
-                            break mainLoop;
+                    if (pos == n) {
+                        n = strInput.read(buf);
+                        pos = 0;
+                        if (n == -1) {
+                            //EOF
+                            break;
                         }
                     }
 
-                    //NOTE: InputStream をポーリングします。
-                    //strInput が System.in かつ read() がブロックしたとき、
-                    //他のスレッドからブロッキングをキャンセルする方法がないため、
-                    //read() のブロックを避ける必要があるためです。
-                    //FIXME: この実装はマルチスレッドセーフではありません。
-                    //他スレッドが同時に strInput にアクセスする場合、
-                    //read() でブロックする可能性があります。
-                    while (strInput.available() == 0) {
-                        Thread.sleep(50);
-                        if (shouldHalt()) {
-                            break mainLoop;
-                        }
+                    //受信 FIFO に入れられなかったデータは buf に残し、次回に再開する
+                    for (; pos < n; pos++) {
+                        receive(buf[pos]);
                     }
-
-                    int c = strInput.read();
-                    if (c == -1) {
-                        //EOF
+                } catch (InterruptedException e) {
+                    if (shouldHalt()) {
+                        //停止の要求、割り込み状態を戻して終了する
+                        Thread.currentThread().interrupt();
                         break;
                     }
-                    bufInput.append((char)c);
-
-                    intDst.setRaisedInterrupt(true);
-                } catch (InterruptedException e) {
-                    //ignored
                 } catch (IOException e) {
                     e.printStackTrace(System.err);
                     break;
@@ -60,4 +60,49 @@ public class APSR extends PSR {
         r |= v & 0xf80f0000;
         br.setValue(r);
     }
+
+    @Override
+    protected int getRawValue() {
+        return br.getRawValue() & 0xf80f0000;
+    }
+
+    @Override
+    protected void setControlValue(int v) {
+        //N, Z, C, V, Q, GE 以外は変更できない
+    }
+
+    @Override
+    protected void setFlagsValue(int v) {
+        int r;
+
+        r = br.getValue();
+        r &= ~0xf80f0000;
+        r |= v & 0xf80f0000;
+        br.setFlagsValue(r);
+    }
+
+    @Override
+    public void setFlagsNZ(int dest) {
+        br.setFlagsNZ(dest);
+    }
+
+    @Override
+    public void setFlagsNZC(int dest, boolean c) {
+        br.setFlagsNZC(dest, c);
+    }
+
+    @Override
+    public void setFlagsNZCV(boolean n, boolean z, boolean c, boolean v) {
+        br.setFlagsNZCV(n, z, c, v);
+    }
+
+    @Override
+    public void setFlagsAdd(int left, int right, int dest) {
+        br.setFlagsAdd(left, right, dest);
+    }
+
+    @Override
+    public void setFlagsSub(int left, int right, int dest) {
+        br.setFlagsSub(left, right, dest);
+    }
 }
@@ -1,120 +1,176 @@
 package net.katsuster.ememu.arm.core;
 
+import java.io.*;
+
 import net.katsuster.ememu.generic.*;
 
 /**
  * ARM のレジスタファイルです。
  *
+ * <p>
+ * 現在のモードから見えるレジスタ（r0 - r15 と SPSR）の値を
+ * 1 つの int 配列に保持し、命令の実行時はこの配列を直接読み書きします。
+ * モードごとにバンクされるレジスタは別の配列に退避しておき、
+ * CPSR のモードが変化したときにだけ入れ替えます。
+ * </p>
+ *
+ * <p>
+ * レジスタの名前を持つ Reg32 のビューは、
+ * デバッグ用の表示や SPSR へのアクセスのためだけに用います。
+ * </p>
+ *
  * @author katsuhiro
  */
-public class ARMRegFile implements Reg32File {
+public class ARMRegFile implements Reg32File, Snapshotable {
     public static final int ARM_REGFILE_SIZE = 17;
     public static final int ARM_REG_SPSR = 16;
 
-    private Reg32[] regs_usr;
-    private Reg32[] regs_svc;
-    private Reg32[] regs_abt;
-    private Reg32[] regs_und;
-    private Reg32[] regs_irq;
-    private Reg32[] regs_fiq;
-    private PSR cpsr;
+    //バンクの番号
+    public static final int BANK_USR = 0;
+    public static final int BANK_SVC = 1;
+    public static final int BANK_ABT = 2;
+    public static final int BANK_UND = 3;
+    public static final int BANK_IRQ = 4;
+    public static final int BANK_FIQ = 5;
+    public static final int BANK_NUM = 6;
+
+    //FIQ モードでバンクされる r8 - r12
+    private static final int FIQ_REG_FIRST = 8;
+    private static final int FIQ_REG_NUM = 5;
 
-    //現在選択されているレジスタセットです
-    private Reg32[] regs;
+    private static final String[][] NAMES = {
+            {
+                    "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
+                    "r8", "r9", "r10", "r11", "r12", "r13", "r14", "pc", "spsr_usr",
+            },
+            {
+                    "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
+                    "r8", "r9", "r10", "r11", "r12", "r13_svc", "r14_svc", "pc", "spsr_svc",
+            },
+            {
+                    "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
+                    "r8", "r9", "r10", "r11", "r12", "r13_abt", "r14_abt", "pc", "spsr_abt",
+            },
+            {
+                    "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
+                    "r8", "r9", "r10", "r11", "r12", "r13_und", "r14_und", "pc", "spsr_und",
+            },
+            {
+                    "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
+                    "r8", "r9", "r10", "r11", "r12", "r13_irq", "r14_irq", "pc", "spsr_irq",
+            },
+            {
+                    "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
+                    "r8_fiq", "r9_fiq", "r10_fiq", "r11_fiq", "r12_fiq", "r13_fiq", "r14_fiq", "pc", "spsr_fiq",
+            },
+    };
+
+    //現在のモードから見えるレジスタの値です
+    private int[] regs;
+    //現在選択されているバンクです
+    private int bank;
+
+    //退避されているバンクのレジスタの値です
+    private int[] shadowR13;
+    private int[] shadowR14;
+    private int[] shadowSPSR;
+    private int[] shadowUsrR8;
+    private int[] shadowFiqR8;
+
+    private PSR cpsr;
+    private RegView[] views;
+    private SPSR[] spsrs;
 
     public ARMRegFile() {
-        String[] name_usr = {
-                "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
-                "r8", "r9", "r10", "r11", "r12", "r13", "r14", "pc", "spsr_usr",
-        };
-        String[] name_svc = {
-                "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
-                "r8", "r9", "r10", "r11", "r12", "r13_svc", "r14_svc", "pc", "spsr_svc",
-        };
-        String[] name_abt = {
-                "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
-                "r8", "r9", "r10", "r11", "r12", "r13_abt", "r14_abt", "pc", "spsr_abt",
-        };
-        String[] name_und = {
-                "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
-                "r8", "r9", "r10", "r11", "r12", "r13_und", "r14_und", "pc", "spsr_und",
-        };
-        String[] name_irq = {
-                "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
-                "r8", "r9", "r10", "r11", "r12", "r13_irq", "r14_irq", "pc", "spsr_irq",
-        };
-        String[] name_fiq = {
-                "r0", "r1", "r2", "r3", "r4", "r5", "r6", "r7",
-                "r8_fiq", "r9_fiq", "r10_fiq", "r11_fiq", "r12_fiq", "r13_fiq", "r14_fiq", "pc", "spsr_fiq",
-        };
-
-        regs_usr = new Reg32[ARM_REGFILE_SIZE];
-        regs_svc = new Reg32[ARM_REGFILE_SIZE];
-        regs_abt = new Reg32[ARM_REGFILE_SIZE];
-        regs_und = new Reg32[ARM_REGFILE_SIZE];
-        regs_irq = new Reg32[ARM_REGFILE_SIZE];
-        regs_fiq = new Reg32[ARM_REGFILE_SIZE];
+        regs = new int[ARM_REGFILE_SIZE];
+        bank = BANK_USR;
+
+        shadowR13 = new int[BANK_NUM];
+        shadowR14 = new int[BANK_NUM];
+        shadowSPSR = new int[BANK_NUM];
+        shadowUsrR8 = new int[FIQ_REG_NUM];
+        shadowFiqR8 = new int[FIQ_REG_NUM];
+
+        cpsr = new PSR("cpsr", 0, this);
+        views = new RegView[ARM_REGFILE_SIZE];
         for (int i = 0; i < ARM_REGFILE_SIZE; i++) {
-            regs_usr[i] = new Reg32(name_usr[i], 0);
-            regs_svc[i] = regs_usr[i];
-            regs_abt[i] = regs_usr[i];
-            regs_und[i] = regs_usr[i];
-            regs_irq[i] = regs_usr[i];
-            regs_fiq[i] = regs_usr[i];
-        }
-        for (int i = 13; i < 15; i++) {
-            regs_svc[i] = new Reg32(name_svc[i], 0);
-            regs_abt[i] = new Reg32(name_abt[i], 0);
-            regs_und[i] = new Reg32(name_und[i], 0);
-            regs_irq[i] = new Reg32(name_irq[i], 0);
-        }
-        for (int i = 8; i < 15; i++) {
-            regs_fiq[i] = new Reg32(name_fiq[i], 0);
+            views[i] = new RegView(i);
         }
-        for (int i = ARM_REG_SPSR; i < ARM_REGFILE_SIZE; i++) {
-            regs_svc[i] = new Reg32(name_svc[i], 0);
-            regs_abt[i] = new Reg32(name_abt[i], 0);
-            regs_und[i] = new Reg32(name_und[i], 0);
-            regs_irq[i] = new Reg32(name_irq[i], 0);
-            regs_fiq[i] = new Reg32(name_fiq[i], 0);
+        spsrs = new SPSR[BANK_NUM];
+        for (int i = 0; i < BANK_NUM; i++) {
+            spsrs[i] = new SPSR(NAMES[i][ARM_REG_SPSR], views[ARM_REG_SPSR]);
         }
-        cpsr = new PSR("cpsr", 0, this);
-        regs_usr[ARM_REG_SPSR] = new SPSR(regs_usr[ARM_REG_SPSR]);
-        regs_svc[ARM_REG_SPSR] = new SPSR(regs_svc[ARM_REG_SPSR]);
-        regs_abt[ARM_REG_SPSR] = new SPSR(regs_abt[ARM_REG_SPSR]);
-        regs_und[ARM_REG_SPSR] = new SPSR(regs_und[ARM_REG_SPSR]);
-        regs_irq[ARM_REG_SPSR] = new SPSR(regs_irq[ARM_REG_SPSR]);
-        regs_fiq[ARM_REG_SPSR] = new SPSR(regs_fiq[ARM_REG_SPSR]);
-
-        regs = regs_usr;
     }
 
+    /**
+     * 現在のモードから見えるレジスタの値を取得します。
+     *
+     * @param n レジスタ番号（0 - 15）、16 は SPSR
+     * @return レジスタの値
+     */
+    public int getValue(int n) {
+        return regs[n];
+    }
+
+    /**
+     * 現在のモードから見えるレジスタに値を設定します。
+     *
+     * @param n   レジスタ番号（0 - 15）、16 は SPSR
+     * @param val 新しいレジスタの値
+     */
+    public void setValue(int n, int val) {
+        regs[n] = val;
+    }
+
+    /**
+     * 現在のモードから見えるレジスタの名前を取得します。
+     *
+     * @param n レジスタ番号（0 - 15）、16 は SPSR
+     * @return レジスタの名前
+     */
+    public String getName(int n) {
+        return NAMES[bank][n];
+    }
+
+    /**
+     * 現在のモードから見えるレジスタのビューを取得します。
+     *
+     * ビューはデバッグ用です。
+     * 値の読み書きは常に現在のモードのレジスタに対して行われるため、
+     * モードが変化するとビューが指すレジスタも変化します。
+     *
+     * @param n レジスタ番号（0 - 15）、16 は SPSR
+     * @return レジスタのビュー
+     */
     @Override
     public Reg32 getReg(int n) {
-        return regs[n];
+        if (n == ARM_REG_SPSR) {
+            return getSPSR();
+        }
+        return views[n];
     }
 
     /**
-     * 指定された動作モードにおけるレジスタセットを取得します。
+     * 指定された動作モードにおけるバンクの番号を取得します。
      *
      * @param mode 動作モード
-     * @return レジスタセット
+     * @return バンクの番号
      */
-    protected Reg32[] getRegSet(int mode) {
+    protected static int getBank(int mode) {
         switch (mode) {
         case PSR.MODE_USR:
         case PSR.MODE_SYS:
-            return regs_usr;
+            return BANK_USR;
         case PSR.MODE_SVC:
-            return regs_svc;
+            return BANK_SVC;
         case PSR.MODE_ABT:
-            return regs_abt;
+            return BANK_ABT;
         case PSR.MODE_UND:
-            return regs_und;
+            return BANK_UND;
         case PSR.MODE_IRQ:
-            return regs_irq;
+            return BANK_IRQ;
         case PSR.MODE_FIQ:
-            return regs_fiq;
+            return BANK_FIQ;
         default:
             //do nothing
             break;
@@ -124,17 +180,49 @@ public class ARMRegFile implements Reg32File {
                 String.format("mode:0x%x.", mode));
     }
 
+    /**
+     * 現在のバンクのレジスタを退避し、別のバンクのレジスタを復帰します。
+     *
+     * @param to 新たに選択するバンクの番号
+     */
+    protected void switchBank(int to) {
+        int from = bank;
+
+        shadowR13[from] = regs[13];
+        shadowR14[from] = regs[14];
+        shadowSPSR[from] = regs[ARM_REG_SPSR];
+
+        //r8 - r12 は FIQ モードとそれ以外のモードの間でのみ入れ替える
+        if (from == BANK_FIQ && to != BANK_FIQ) {
+            System.arraycopy(regs, FIQ_REG_FIRST, shadowFiqR8, 0, FIQ_REG_NUM);
+            System.arraycopy(shadowUsrR8, 0, regs, FIQ_REG_FIRST, FIQ_REG_NUM);
+        } else if (from != BANK_FIQ && to == BANK_FIQ) {
+            System.arraycopy(regs, FIQ_REG_FIRST, shadowUsrR8, 0, FIQ_REG_NUM);
+            System.arraycopy(shadowFiqR8, 0, regs, FIQ_REG_FIRST, FIQ_REG_NUM);
+        }
+
+        regs[13] = shadowR13[to];
+        regs[14] = shadowR14[to];
+        regs[ARM_REG_SPSR] = shadowSPSR[to];
+        bank = to;
+    }
+
     /**
      * PSR の値が変化したことを通知します。
      * PSR オブジェクトからコールバックされることを想定しています。
      *
      * このメソッドを呼び出すと、
-     * PSR のモードに合ったレジスタセットが選択されます。
+     * PSR のモードに合ったバンクのレジスタが選択されます。
+     * フラグのみの変更など、モードが変わらない場合は何もしません。
      *
      * @see PSR#setValue(int)
      */
     public void notifyChangedPSR() {
-        regs = getRegSet(getCPSR().getMode());
+        int b = getBank(getCPSR().getMode());
+
+        if (b != bank) {
+            switchBank(b);
+        }
     }
 
     /**
@@ -152,7 +240,48 @@ public class ARMRegFile implements Reg32File {
      * @return SPSR
      */
     public SPSR getSPSR() {
-        return (SPSR)getReg(ARM_REG_SPSR);
+        return spsrs[bank];
+    }
+
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        //CPSR は遅延評価中のフラグを反映した値を書き出す
+        out.writeInt(getCPSR().getValue());
+        out.writeInt(bank);
+        SnapshotIO.writeInts(out, regs);
+        SnapshotIO.writeInts(out, shadowR13);
+        SnapshotIO.writeInts(out, shadowR14);
+        SnapshotIO.writeInts(out, shadowSPSR);
+        SnapshotIO.writeInts(out, shadowUsrR8);
+        SnapshotIO.writeInts(out, shadowFiqR8);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        int psr = in.readInt();
+        int b = in.readInt();
+        int expected;
+
+        try {
+            expected = getBank(PSR.getMode(psr));
+        } catch (IllegalArgumentException e) {
+            //不正なモード
+            expected = -1;
+        }
+        if (b != expected) {
+            throw new IOException(String.format(
+                    "Illegal bank %d for cpsr 0x%08x.", b, psr));
+        }
+
+        SnapshotIO.readInts(in, regs);
+        SnapshotIO.readInts(in, shadowR13);
+        SnapshotIO.readInts(in, shadowR14);
+        SnapshotIO.readInts(in, shadowSPSR);
+        SnapshotIO.readInts(in, shadowUsrR8);
+        SnapshotIO.readInts(in, shadowFiqR8);
+        //バンクを先に合わせておき、CPSR の設定でレジスタが入れ替わらないようにする
+        bank = b;
+        getCPSR().setValue(psr);
     }
 
     @Override
@@ -161,14 +290,40 @@ public class ARMRegFile implements Reg32File {
 
         for (int i = 0; i < 16; i += 4) {
             b.append(String.format("  %3s: %08x, %3s: %08x, %3s: %08x, %3s: %08x, \n",
-                    getReg(i).getName(), getReg(i).getValue(),
-                    getReg(i + 1).getName(), getReg(i + 1).getValue(),
-                    getReg(i + 2).getName(), getReg(i + 2).getValue(),
-                    getReg(i + 3).getName(), getReg(i + 3).getValue()));
+                    getName(i), getValue(i),
+                    getName(i + 1), getValue(i + 1),
+                    getName(i + 2), getValue(i + 2),
+                    getName(i + 3), getValue(i + 3)));
         }
         b.append(String.format("  %s, %s\n",
                 getCPSR().toString(), getSPSR().toString()));
 
         return b.toString();
     }
+
+    /**
+     * 現在のモードから見えるレジスタのビューです。
+     */
+    private class RegView extends Reg32 {
+        private int index;
+
+        public RegView(int n) {
+            index = n;
+        }
+
+        @Override
+        public String getName() {
+            return ARMRegFile.this.getName(index);
+        }
+
+        @Override
+        public int getValue() {
+            return regs[index];
+        }
+
+        @Override
+        public void setValue(int v) {
+            regs[index] = v;
+        }
+    }
 }
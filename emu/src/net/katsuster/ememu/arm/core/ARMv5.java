@@ -1,5 +1,8 @@
 package net.katsuster.ememu.arm.core;
 
+import java.io.*;
+import java.util.*;
+
 import net.katsuster.ememu.generic.*;
 
 /**
@@ -20,19 +23,26 @@ import net.katsuster.ememu.generic.*;
  *
  * @author katsuhiro
  */
-public class ARMv5 extends CPU {
+public class ARMv5 extends CPU implements Snapshotable {
     //IRQ, FIQ の 2つの割り込み線を持つ
     public static final int MAX_INTSRCS = 2;
     public static final int INTSRC_IRQ = 0;
     public static final int INTSRC_FIQ = 1;
 
+    //命令ブロックに含める命令数の上限
+    public static final int MAX_BLOCK_INSTS = 64;
+    //ディスパッチャに戻らずに連続して実行するブロック数の上限
+    public static final int MAX_CHAIN_BLOCKS = 256;
+
     private ARMRegFile regfile;
     private CoProc[] coProcs;
     private MMUv5 mmu;
     private NormalINTC intc;
 
     private boolean exceptions[];
-    private String exceptionReasons[];
+    private ExceptionRecord exceptionRecords[];
+    private long exceptionCounts[];
+    private boolean enabledTraceException;
 
     private boolean raisedException;
     private boolean jumped;
@@ -41,12 +51,22 @@ public class ARMv5 extends CPU {
     private InstructionARM instA32;
     private InstructionThumb instT32;
     private Opcode decinstAll;
+    private DecodeCachev5 decodeCache;
+    private int fetchedAddr;
+    private BlockCachev5 blockCache;
+    private boolean enabledBlockTrans;
     private DecodeStageARMv5 armDecode;
     private DecodeStageThumb thumbDecode;
     private DecodeStageThumb2 thumb2Decode;
     private ExecStageARMv5 armExec;
     private ExecStageThumb thumbExec;
     private ExecStageThumb2 thumb2Exec;
+    private ThreadedExecARMv5 armThreaded;
+    private boolean enabledThreaded;
+    private JITCompilerARMv5 jit;
+    private boolean enabledJIT;
+    private long instCount;
+    private VirtualClock clock;
 
     public ARMv5() {
         CoProcVFPv2 cpVfp;
@@ -67,7 +87,12 @@ public class ARMv5 extends CPU {
         intc.connectINTDestination(this);
 
         exceptions = new boolean[7];
-        exceptionReasons = new String[7];
+        exceptionRecords = new ExceptionRecord[7];
+        exceptionCounts = new long[7];
+        for (int i = 0; i < exceptionRecords.length; i++) {
+            exceptionRecords[i] = new ExceptionRecord(i);
+        }
+        enabledTraceException = false;
 
         raisedException = false;
         jumped = false;
@@ -76,12 +101,22 @@ public class ARMv5 extends CPU {
         instA32 = new InstructionARM(0);
         instT32 = new InstructionThumb(0);
         decinstAll = new Opcode(instA32, OpType.INS_TYPE_UNKNOWN, OpIndex.INS_UNKNOWN);
+        decodeCache = new DecodeCachev5(256);
+        fetchedAddr = 0;
+        blockCache = new BlockCachev5(4096, 16);
+        enabledBlockTrans = false;
         armDecode = new DecodeStageARMv5(this);
         thumbDecode = new DecodeStageThumb(this);
         thumb2Decode = new DecodeStageThumb2(this);
         armExec = new ExecStageARMv5(this);
         thumbExec = new ExecStageThumb(this);
         thumb2Exec = new ExecStageThumb2(this);
+        armThreaded = new ThreadedExecARMv5(armExec);
+        enabledThreaded = false;
+        jit = new JITCompilerARMv5();
+        enabledJIT = false;
+        clock = new VirtualClock();
+        clock.setIdleWaiter(this);
     }
 
     @Override
@@ -196,7 +231,7 @@ public class ARMv5 extends CPU {
      */
     @Override
     public int getRegRaw(int n) {
-        return regfile.getReg(n).getValue();
+        return regfile.getValue(n);
     }
 
     /**
@@ -209,12 +244,12 @@ public class ARMv5 extends CPU {
      */
     @Override
     public void setRegRaw(int n, int val) {
-        regfile.getReg(n).setValue(val);
+        regfile.setValue(n, val);
     }
 
     @Override
     public String getRegName(int n) {
-        return regfile.getReg(n).getName();
+        return regfile.getName(n);
     }
 
     /**
@@ -282,25 +317,36 @@ public class ARMv5 extends CPU {
      * @return 命令
      */
     public Instruction fetch() {
+        TLBEntryv5 ent;
         int v, vaddr, paddr;
+        long data;
 
         //現在の PC の指すアドレスから命令を取得します
         vaddr = getRegRaw(15);
 
         if (getCPSR().getTBit()) {
             //Thumb モード
-            paddr = getMMU().translate(vaddr, 2, true, getCPSR().isPrivMode(), true);
-            if (getMMU().isFault()) {
-                getMMU().clearFault();
-                return null;
-            }
+            ent = getMMU().translateHost(vaddr, 2, true, getCPSR().isPrivMode(), true);
+            if (ent != null) {
+                //RAM からの高速な命令取得
+                v = ent.readHost16(vaddr);
+                fetchedAddr = ent.translate(vaddr);
+            } else {
+                paddr = getMMU().translate(vaddr, 2, true, getCPSR().isPrivMode(), true);
+                if (getMMU().isFault()) {
+                    getMMU().clearFault();
+                    return null;
+                }
 
-            if (!tryRead_a32(paddr, 2)) {
-                raiseException(EXCEPT_ABT_INST,
-                        String.format("exec [%08x]", paddr));
-                return null;
+                data = readChecked16_a32(paddr);
+                if (data == RWCore.ACCESS_ABORT) {
+                    raiseException(EXCEPT_ABT_INST,
+                            ExceptionRecord.CAUSE_BUS, "exec", paddr);
+                    return null;
+                }
+                v = (short)data;
+                fetchedAddr = paddr;
             }
-            v = read16_a32(paddr);
             instT32.reuse(v & 0xffff, 2);
 
             if (instT32.getSubCodeField() == InstructionThumb.SUBCODE_BL_BLX && instT32.getField(11, 2) != 0) {
@@ -312,39 +358,236 @@ public class ARMv5 extends CPU {
                     return null;
                 }
 
-                if (!tryRead_a32(paddr, 2)) {
+                data = readChecked16_a32(paddr);
+                if (data == RWCore.ACCESS_ABORT) {
                     raiseException(EXCEPT_ABT_INST,
-                            String.format("exec [%08x]", paddr));
+                            ExceptionRecord.CAUSE_BUS, "exec", paddr);
                     return null;
                 }
-                v = read16_a32(paddr);
+                v = (short)data;
                 instT32.reuse((instT32.getInst() << 16) | (v & 0xffff), 4);
             }
 
             return instT32;
         } else {
             //ARM モード
-            paddr = getMMU().translate(vaddr, 4, true, getCPSR().isPrivMode(), true);
-            if (getMMU().isFault()) {
-                getMMU().clearFault();
-                return null;
-            }
+            ent = getMMU().translateHost(vaddr, 4, true, getCPSR().isPrivMode(), true);
+            if (ent != null) {
+                //RAM からの高速な命令取得
+                v = ent.readHost32(vaddr);
+                fetchedAddr = ent.translate(vaddr);
+            } else {
+                paddr = getMMU().translate(vaddr, 4, true, getCPSR().isPrivMode(), true);
+                if (getMMU().isFault()) {
+                    getMMU().clearFault();
+                    return null;
+                }
 
-            if (!tryRead_a32(paddr, 4)) {
-                raiseException(EXCEPT_ABT_INST,
-                        String.format("exec [%08x]", paddr));
-                return null;
+                data = readChecked32_a32(paddr);
+                if (data == RWCore.ACCESS_ABORT) {
+                    raiseException(EXCEPT_ABT_INST,
+                            ExceptionRecord.CAUSE_BUS, "exec", paddr);
+                    return null;
+                }
+                v = (int)data;
+                fetchedAddr = paddr;
             }
-            v = read32_a32(paddr);
             instA32.reuse(v, 4);
 
             return instA32;
         }
     }
 
+    /**
+     * デコード済み命令のキャッシュを取得します。
+     *
+     * @return デコード済み命令のキャッシュ
+     */
+    public DecodeCachev5 getDecodeCache() {
+        return decodeCache;
+    }
+
+    /**
+     * 変換済みの命令ブロックのキャッシュを取得します。
+     *
+     * @return 変換済みの命令ブロックのキャッシュ
+     */
+    public BlockCachev5 getBlockCache() {
+        return blockCache;
+    }
+
+    /**
+     * 命令ブロックの変換を用いて実行するかどうかを取得します。
+     *
+     * @return 命令ブロックを変換して実行するならば true、
+     * 1命令ずつ実行するならば false
+     */
+    public boolean isEnabledBlockTranslation() {
+        return enabledBlockTrans;
+    }
+
+    /**
+     * 命令ブロックの変換を用いて実行するかどうかを設定します。
+     *
+     * @param b 命令ブロックを変換して実行するならば true、
+     *          1命令ずつ実行するならば false
+     */
+    public void setEnabledBlockTranslation(boolean b) {
+        enabledBlockTrans = b;
+        blockCache.invalidateAll();
+    }
+
+    /**
+     * スレッデッドコード方式で命令を実行するかどうかを取得します。
+     *
+     * @return 命令ごとのハンドラを用いて実行するならば true、
+     * switch 文で命令を振り分けて実行するならば false
+     */
+    public boolean isEnabledThreadedCode() {
+        return enabledThreaded;
+    }
+
+    /**
+     * スレッデッドコード方式で命令を実行するかどうかを設定します。
+     *
+     * ARM 命令のみが対象です。Thumb 命令は常に switch 文で実行します。
+     *
+     * @param b 命令ごとのハンドラを用いて実行するならば true、
+     *          switch 文で命令を振り分けて実行するならば false
+     */
+    public void setEnabledThreadedCode(boolean b) {
+        enabledThreaded = b;
+    }
+
+    /**
+     * JIT コンパイラを取得します。
+     *
+     * @return JIT コンパイラ
+     */
+    public JITCompilerARMv5 getJIT() {
+        return jit;
+    }
+
+    /**
+     * 命令ブロックを JVM のクラスに変換して実行するかどうかを取得します。
+     *
+     * @return 命令ブロックを JVM のクラスに変換するならば true、
+     * 変換しないならば false
+     */
+    public boolean isEnabledJIT() {
+        return enabledJIT;
+    }
+
+    /**
+     * 命令ブロックを JVM のクラスに変換して実行するかどうかを設定します。
+     *
+     * 命令ブロックの変換が有効な場合のみ効果があります。
+     *
+     * @param b 命令ブロックを JVM のクラスに変換するならば true、
+     *          変換しないならば false
+     */
+    public void setEnabledJIT(boolean b) {
+        enabledJIT = b;
+        blockCache.invalidateAll();
+    }
+
+    /**
+     * 実行した命令数を取得します。
+     *
+     * 条件が成立せず実行されなかった命令、
+     * 実行中に例外が発生した命令も数えます。
+     *
+     * @return 実行した命令数
+     */
+    public long getInstCount() {
+        return instCount;
+    }
+
+    /**
+     * 実行した命令数をクリアします。
+     */
+    public void clearInstCount() {
+        instCount = 0;
+    }
+
+    /**
+     * CPU の状態をスナップショットに書き出します。
+     *
+     * レジスタ、コプロセッサレジスタ、処理待ちの例外、実行した命令数を書き出します。
+     * デコード済み命令、命令ブロック、TLB のキャッシュは書き出しません。
+     * CPU が命令の実行を終えて停止している間に呼び出す必要があります。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        regfile.saveState(out);
+        for (int i = 0; i < coProcs.length; i++) {
+            if (coProcs[i] != null) {
+                coProcs[i].saveState(out);
+            }
+        }
+        SnapshotIO.writeBooleans(out, exceptions);
+        out.writeLong(instCount);
+    }
+
+    /**
+     * スナップショットから CPU の状態を読み出します。
+     *
+     * キャッシュは全て無効化し、割り込み線の状態は次の命令の実行時に確認します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、構成が一致しない場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        regfile.loadState(in);
+        for (int i = 0; i < coProcs.length; i++) {
+            if (coProcs[i] != null) {
+                coProcs[i].loadState(in);
+            }
+        }
+        SnapshotIO.readBooleans(in, exceptions);
+        instCount = in.readLong();
+
+        raisedException = false;
+        jumped = false;
+        getMMU().invalidateTLBAll();
+        getDecodeCache().invalidateAll();
+        getBlockCache().invalidateAll();
+        setRaisedInterrupt(true);
+    }
+
+    /**
+     * CPU が時刻を進める仮想クロックを取得します。
+     *
+     * @return 仮想クロック
+     */
+    public VirtualClock getClock() {
+        return clock;
+    }
+
+    /**
+     * CPU が時刻を進める仮想クロックを設定します。
+     *
+     * マシン全体で 1 つの仮想クロックを共有するため、
+     * デバイスを作成する前、かつ命令を実行する前に設定してください。
+     *
+     * @param c 仮想クロック
+     */
+    public void setClock(VirtualClock c) {
+        clock = c;
+        clock.setIdleWaiter(this);
+    }
+
     /**
      * 命令をデコードします。
      *
+     * 直前に fetch() で取得した命令の物理アドレスをキーとして、
+     * デコード済み命令のキャッシュを検索し、
+     * ヒットしなければデコードしてキャッシュに登録します。
+     *
      * @param instgen 命令
      * @return デコードされた命令
      */
@@ -353,24 +596,32 @@ public class ARMv5 extends CPU {
         OpIndex opind;
 
         if (getCPSR().getTBit()) {
-            InstructionThumb inst = (InstructionThumb)instgen;
-
-            //Thumb モード
-            if (inst.getLength() == 4) {
+            if (instgen.getLength() == 4) {
                 //Thumb-2 命令
                 optype = OpType.INS_TYPE_THUMB2;
-                opind = thumb2Decode.decode(inst);
             } else {
                 //Thumb 命令
                 optype = OpType.INS_TYPE_THUMB;
-                opind = thumbDecode.decode(inst);
             }
         } else {
-            InstructionARM inst = (InstructionARM)instgen;
-
             //ARM 命令
             optype = OpType.INS_TYPE_ARM;
-            opind = armDecode.decode(inst);
+        }
+
+        opind = decodeCache.lookup(fetchedAddr, optype, instgen.getInst());
+        if (opind == null) {
+            switch (optype) {
+            case INS_TYPE_THUMB2:
+                opind = thumb2Decode.decode((InstructionThumb)instgen);
+                break;
+            case INS_TYPE_THUMB:
+                opind = thumbDecode.decode((InstructionThumb)instgen);
+                break;
+            default:
+                opind = armDecode.decode((InstructionARM)instgen);
+                break;
+            }
+            decodeCache.fill(fetchedAddr, optype, instgen.getInst(), opind);
         }
 
         decinstAll.reuse(instgen, optype, opind);
@@ -396,6 +647,33 @@ public class ARMv5 extends CPU {
         executeInst(decinst, true);
     }
 
+    /**
+     * 直前に取得、デコードした命令を、スレッデッドコード方式で実行します。
+     *
+     * 命令ごとのハンドラは、デコード済み命令のキャッシュのスロットに保持します。
+     * 初めて実行する命令のみ、命令の形式に特化したハンドラを解決します。
+     *
+     * @param decinst デコードされた命令
+     */
+    protected void executeThreaded(Opcode decinst) {
+        switch (decinst.getType()) {
+        case INS_TYPE_ARM: {
+            InstructionARM inst = (InstructionARM)decinst.getInstruction();
+            HandlerARM h = decodeCache.getHandlerARM(fetchedAddr);
+
+            if (h == null) {
+                h = armThreaded.resolve(inst, decinst.getIndex());
+                decodeCache.setHandlerARM(fetchedAddr, h);
+            }
+            h.execute(inst);
+            break;
+        }
+        default:
+            executeInst(decinst, true);
+            break;
+        }
+    }
+
     /**
      * 命令を逆アセンブル、実行します。
      *
@@ -431,10 +709,16 @@ public class ARMv5 extends CPU {
     /**
      * 例外を要求します。
      *
-     * @param num    例外番号（EXCEPT_xxxx）
-     * @param dbgmsg デバッグ用のメッセージ
+     * 例外の詳細は例外番号ごとの記録に保持し、
+     * 文字列への変換は例外のトレースが有効な場合のみ行います。
+     *
+     * @param num   例外番号（EXCEPT_xxxx）
+     * @param cause 例外の原因（ExceptionRecord.CAUSE_xxxx）
+     * @param label 例外の説明、文字列定数を指定してください
+     * @param addr  例外に関係するアドレス、または値
+     * @return 例外の記録、詳細を追加で設定する場合に用います
      */
-    public void raiseException(int num, String dbgmsg) {
+    public ExceptionRecord raiseException(int num, int cause, String label, int addr) {
         if (num < 0 || exceptions.length <= num) {
             throw new IllegalArgumentException("Illegal exception number " + num);
         }
@@ -446,9 +730,52 @@ public class ARMv5 extends CPU {
         }
 
         exceptions[num] = true;
-        exceptionReasons[num] = dbgmsg;
 
         setRaisedException(true);
+
+        return exceptionRecords[num].set(cause, label, addr);
+    }
+
+    /**
+     * 処理した例外の数を取得します。
+     *
+     * 例外ベクタへ分岐した回数を数えます。
+     * 要求されたが、まだ処理していない例外は数えません。
+     * 統計情報のため、スナップショットには含みません。
+     *
+     * @param num 例外番号（EXCEPT_xxxx）
+     * @return 処理した例外の数
+     */
+    public long getExceptionCount(int num) {
+        return exceptionCounts[num];
+    }
+
+    /**
+     * 例外の記録を取得します。
+     *
+     * @param num 例外番号（EXCEPT_xxxx）
+     * @return 例外の記録
+     */
+    public ExceptionRecord getExceptionRecord(int num) {
+        return exceptionRecords[num];
+    }
+
+    /**
+     * 例外の発生を表示するかどうかを取得します。
+     *
+     * @return 例外の発生を表示するならば true、表示しないならば false
+     */
+    public boolean isEnabledTraceException() {
+        return enabledTraceException;
+    }
+
+    /**
+     * 例外の発生を表示するかどうかを設定します。
+     *
+     * @param b 例外の発生を表示するならば true、表示しないならば false
+     */
+    public void setEnabledTraceException(boolean b) {
+        enabledTraceException = b;
     }
 
     /**
@@ -470,28 +797,29 @@ public class ARMv5 extends CPU {
         if (!found) {
             return;
         }
+        exceptionCounts[i]++;
 
         switch (i) {
         case EXCEPT_RST:
-            doExceptionReset(exceptionReasons[i]);
+            doExceptionReset(exceptionRecords[i].toString());
             break;
         case EXCEPT_UND:
-            doExceptionUndefined(exceptionReasons[i]);
+            doExceptionUndefined(exceptionRecords[i]);
             break;
         case EXCEPT_SVC:
-            doExceptionSoftware(exceptionReasons[i]);
+            doExceptionSoftware(exceptionRecords[i]);
             break;
         case EXCEPT_ABT_INST:
-            doExceptionPrefetch(exceptionReasons[i]);
+            doExceptionPrefetch(exceptionRecords[i]);
             break;
         case EXCEPT_ABT_DATA:
-            doExceptionData(exceptionReasons[i]);
+            doExceptionData(exceptionRecords[i]);
             break;
         case EXCEPT_IRQ:
-            doExceptionIRQ(exceptionReasons[i]);
+            doExceptionIRQ(exceptionRecords[i]);
             break;
         case EXCEPT_FIQ:
-            doExceptionFIQ(exceptionReasons[i]);
+            doExceptionFIQ(exceptionRecords[i]);
             break;
         default:
             throw new IllegalArgumentException("Illegal exception number " + i);
@@ -536,13 +864,13 @@ public class ARMv5 extends CPU {
      * この例外はコプロセッサ命令の実行時、
      * 応答するコプロセッサが存在しないときに発生します。
      *
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param rec 例外の記録
      */
-    public void doExceptionUndefined(String dbgmsg) {
+    public void doExceptionUndefined(ExceptionRecord rec) {
         int pcOrg, cpsrOrg;
 
         System.out.printf("Exception: Undefined instruction by '%s'.\n",
-                dbgmsg);
+                rec);
 
         //pc, cpsr の値を取っておく
         if (getCPSR().getTBit()) {
@@ -582,13 +910,15 @@ public class ARMv5 extends CPU {
      *
      * この例外は swi 命令を実行したときに生成されます。
      *
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param rec 例外の記録
      */
-    public void doExceptionSoftware(String dbgmsg) {
+    public void doExceptionSoftware(ExceptionRecord rec) {
         int pcOrg, cpsrOrg;
 
-        //System.out.printf("Exception: Software interrupt by '%s'.\n",
-        //        dbgmsg);
+        if (isEnabledTraceException()) {
+            System.out.printf("Exception: Software interrupt by '%s'.\n",
+                    rec);
+        }
 
         //pc, cpsr の値を取っておく
         if (getCPSR().getTBit()) {
@@ -624,13 +954,15 @@ public class ARMv5 extends CPU {
      *
      * この例外は無効な命令を実行したときに生成されます。
      *
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param rec 例外の記録
      */
-    public void doExceptionPrefetch(String dbgmsg) {
+    public void doExceptionPrefetch(ExceptionRecord rec) {
         int pcOrg, cpsrOrg;
 
-        //System.out.printf("Exception: Prefetch abort by '%s'.\n",
-        //        dbgmsg);
+        if (isEnabledTraceException()) {
+            System.out.printf("Exception: Prefetch abort by '%s'.\n",
+                    rec);
+        }
 
         //pc, cpsr の値を取っておく
         //Thumb, ARM モード
@@ -661,13 +993,15 @@ public class ARMv5 extends CPU {
      *
      * この例外は無効なロード、あるいはストア命令を実行したときに生成されます。
      *
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param rec 例外の記録
      */
-    public void doExceptionData(String dbgmsg) {
+    public void doExceptionData(ExceptionRecord rec) {
         int pcOrg, cpsrOrg;
 
-        //System.out.printf("Exception: Data abort by '%s'.\n",
-        //        dbgmsg);
+        if (isEnabledTraceException()) {
+            System.out.printf("Exception: Data abort by '%s'.\n",
+                    rec);
+        }
 
         //pc, cpsr の値を取っておく
         //Thumb, ARM モード
@@ -698,13 +1032,15 @@ public class ARMv5 extends CPU {
      *
      * この例外はプロセッサの IRQ のアサートにより生成されます。
      *
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param rec 例外の記録
      */
-    public void doExceptionIRQ(String dbgmsg) {
+    public void doExceptionIRQ(ExceptionRecord rec) {
         int pcOrg, cpsrOrg;
 
-        //System.out.printf("Exception: IRQ by '%s'.\n",
-        //        dbgmsg);
+        if (isEnabledTraceException()) {
+            System.out.printf("Exception: IRQ by '%s'.\n",
+                    rec);
+        }
 
         //pc, cpsr の値を取っておく
         //Thumb, ARM モード
@@ -735,13 +1071,13 @@ public class ARMv5 extends CPU {
      *
      * この例外はプロセッサの FIQ のアサートにより生成されます。
      *
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param rec 例外の記録
      */
-    public void doExceptionFIQ(String dbgmsg) {
+    public void doExceptionFIQ(ExceptionRecord rec) {
         int pcOrg, cpsrOrg;
 
         System.out.printf("Exception: FIQ by '%s'.\n",
-                dbgmsg);
+                rec);
 
         //pc, cpsr の値を取っておく
         //Thumb, ARM モード
@@ -809,11 +1145,9 @@ public class ARMv5 extends CPU {
             return;
         }
 
-        //割り込み要求の詳細説明を得る
-        String msg = String.format("accept IRQ from '%s'",
-                intc.getINTSource(INTSRC_IRQ).getIRQMessage());
-
-        raiseException(EXCEPT_IRQ, msg);
+        //割り込み要求の詳細説明は、表示するときに割り込み元から得る
+        raiseException(EXCEPT_IRQ, ExceptionRecord.CAUSE_INT, "accept IRQ", 0)
+                .setSource(intc.getINTSource(INTSRC_IRQ));
     }
 
     /**
@@ -831,11 +1165,9 @@ public class ARMv5 extends CPU {
             return;
         }
 
-        //割り込み要求の詳細説明を得る
-        String msg = String.format("accept FIQ from '%s'",
-                intc.getINTSource(INTSRC_FIQ).getIRQMessage());
-
-        raiseException(EXCEPT_FIQ, msg);
+        //割り込み要求の詳細説明は、表示するときに割り込み元から得る
+        raiseException(EXCEPT_FIQ, ExceptionRecord.CAUSE_INT, "accept FIQ", 0)
+                .setSource(intc.getINTSource(INTSRC_FIQ));
     }
 
     /**
@@ -897,11 +1229,238 @@ public class ARMv5 extends CPU {
         highVector = m;
     }
 
+    /**
+     * 物理アドレスから始まる ARM 命令を、命令ブロックに変換します。
+     *
+     * 変換する命令は、1KB（極小ページ、サブページの大きさ）の境界を越えません。
+     *
+     * @param pa 物理アドレス
+     * @return 命令ブロック、1命令も変換できなければ null
+     */
+    protected BlockARMv5 translateBlock(int pa) {
+        InstructionARM[] insts = new InstructionARM[MAX_BLOCK_INSTS];
+        OpIndex[] indexes = new OpIndex[MAX_BLOCK_INSTS];
+        HandlerARM[] handlers = new HandlerARM[MAX_BLOCK_INSTS];
+        BlockARMv5 blk;
+        InstructionARM inst;
+        OpIndex opind;
+        int n, paddr;
+        long data;
+
+        for (n = 0; n < MAX_BLOCK_INSTS; n++) {
+            paddr = pa + n * 4;
+            if (n > 0 && (paddr & 0x3ff) == 0) {
+                break;
+            }
+
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
+                break;
+            }
+            inst = new InstructionARM((int)data);
+            try {
+                opind = armDecode.decode(inst);
+            } catch (IllegalArgumentException e) {
+                //未実装の命令はインタプリタに任せる
+                break;
+            }
+
+            insts[n] = inst;
+            indexes[n] = opind;
+            handlers[n] = armThreaded.resolve(inst, opind);
+            if (BlockARMv5.isTerminator(opind)) {
+                n++;
+                break;
+            }
+        }
+        if (n == 0) {
+            return null;
+        }
+
+        insts = Arrays.copyOf(insts, n);
+        indexes = Arrays.copyOf(indexes, n);
+        blk = new BlockARMv5(pa, insts, indexes, Arrays.copyOf(handlers, n));
+        if (isEnabledJIT()) {
+            //先頭から変換できる命令のみ JVM のクラスに変換する
+            n = JITCompilerARMv5.getCompilableLength(insts, indexes);
+            if (n > 0) {
+                blk.setCompiled(jit.compile(pa, insts, indexes, n), n);
+            }
+        }
+
+        return blk;
+    }
+
+    /**
+     * 命令ブロックを実行します。
+     *
+     * 例外の発生、PC への書き込み、割り込みの発生、
+     * ブロックの無効化のいずれかが起きた時点で実行を終えます。
+     *
+     * @param blk 命令ブロック
+     * @return ブロックの出口（BlockARMv5.EXIT_xxxx）
+     */
+    protected int executeBlock(BlockARMv5 blk) {
+        CompiledBlockARMv5 cb = blk.getCompiled();
+        InstructionARM inst;
+        boolean threaded = isEnabledThreadedCode();
+        int last = blk.getLength() - 1;
+        int i = 0;
+
+        if (cb != null) {
+            //変換した命令は例外、PC への書き込み、メモリへの書き込みを伴わない
+            i = blk.getCompiledLength();
+            cb.execute(this, getCPSR());
+            instCount += i;
+            setRegRaw(15, getRegRaw(15) + i * 4);
+        }
+
+        for (; i <= last; i++) {
+            inst = blk.getInstruction(i);
+            if (threaded) {
+                blk.getHandler(i).execute(inst);
+            } else {
+                decinstAll.reuse(inst, OpType.INS_TYPE_ARM, blk.getIndex(i));
+                execute(decinstAll);
+            }
+            instCount++;
+            if (isRaisedException()) {
+                setRaisedException(false);
+                return BlockARMv5.EXIT_STOP;
+            }
+            if (isJumped()) {
+                setJumped(false);
+                if (i == last && blk.isDirectBranchEnd()) {
+                    return BlockARMv5.EXIT_TAKEN;
+                }
+                return BlockARMv5.EXIT_STOP;
+            }
+            setRegRaw(15, getRegRaw(15) + 4);
+
+            if (!blk.isValid() || isRaisedInterrupt()) {
+                //自身のコードへの書き込み、割り込み
+                return BlockARMv5.EXIT_STOP;
+            }
+        }
+
+        return BlockARMv5.EXIT_FALLTHROUGH;
+    }
+
+    /**
+     * 現在位置から始まる、連結済みの後続ブロックを取得します。
+     *
+     * 連結されていなければキャッシュを検索し、見つかれば連結します。
+     * 後続ブロックの物理アドレスは毎回 TLB で確かめるため、
+     * アドレス変換が変わった場合は連結をたどりません。
+     *
+     * @param blk  直前に実行したブロック
+     * @param exit 直前に実行したブロックの出口
+     * @return 後続のブロック、
+     * TLB にない、変換済みのブロックがないなどの場合は null
+     */
+    protected BlockARMv5 getChainedBlock(BlockARMv5 blk, int exit) {
+        TLBEntryv5 ent;
+        BlockARMv5 next;
+        int vaddr, paddr;
+
+        if (exit == BlockARMv5.EXIT_STOP || !blk.isChainable() ||
+                !blk.isValid() || getCPSR().getTBit()) {
+            return null;
+        }
+
+        vaddr = getRegRaw(15);
+        if (getMMU().isEnable()) {
+            ent = getMMU().translateHost(vaddr, 4, true, getCPSR().isPrivMode(), true);
+            if (ent == null) {
+                return null;
+            }
+            paddr = ent.translate(vaddr);
+        } else {
+            paddr = vaddr;
+        }
+
+        next = blk.getSuccessor(exit);
+        if (next != null && next.isValid() && next.getAddress() == paddr) {
+            blockCache.countChainHit();
+            return next;
+        }
+
+        next = blockCache.lookup(paddr);
+        if (next != null) {
+            blk.setSuccessor(exit, next);
+            blockCache.countChainLink();
+        }
+
+        return next;
+    }
+
+    /**
+     * 現在位置から命令ブロックを実行します。
+     *
+     * 現在位置が変換済みのブロックでなく、
+     * 実行回数もしきい値に達していない場合は何もしません。
+     *
+     * @return 命令ブロックを実行した、
+     * または命令の取得で例外が発生した場合は true、
+     * 何もしなかった場合は false
+     */
+    protected boolean stepBlock() {
+        TLBEntryv5 ent;
+        BlockARMv5 blk;
+        int vaddr, paddr, exit;
+
+        vaddr = getRegRaw(15);
+        ent = getMMU().translateHost(vaddr, 4, true, getCPSR().isPrivMode(), true);
+        if (ent != null) {
+            paddr = ent.translate(vaddr);
+        } else {
+            paddr = getMMU().translate(vaddr, 4, true, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                setRaisedException(false);
+                return true;
+            }
+        }
+
+        blk = blockCache.lookup(paddr);
+        if (blk == null) {
+            if (!blockCache.countUp(paddr)) {
+                return false;
+            }
+            blk = translateBlock(paddr);
+            if (blk == null) {
+                return false;
+            }
+            blockCache.add(blk);
+        }
+
+        //直接分岐などで連結されたブロックは、
+        //ディスパッチャに戻らずに続けて実行します
+        for (int i = 0; i < MAX_CHAIN_BLOCKS; i++) {
+            exit = executeBlock(blk);
+            //ブロックごとに仮想時刻を進め、期限に達したイベントを遅らせずに処理します
+            clock.update(instCount);
+            if (isRaisedInterrupt()) {
+                break;
+            }
+            blk = getChainedBlock(blk, exit);
+            if (blk == null) {
+                break;
+            }
+        }
+        blockCache.countChainExit();
+
+        return true;
+    }
+
     @Override
     public void step() {
         Instruction inst;
         Opcode decinst;
 
+        //実行した命令数に応じて仮想時刻を進め、期限に達したイベントを処理します
+        clock.update(instCount);
+
         //要求された例外のうち、優先度の高い例外を 1つだけ処理します
         doImportantException();
 
@@ -926,6 +1485,12 @@ public class ARMv5 extends CPU {
             }
         }
 
+        //変換済みの命令ブロックがあれば、まとめて実行します
+        if (isEnabledBlockTranslation() && !getCPSR().getTBit() &&
+                !isEnabledDisasm() && stepBlock()) {
+            return;
+        }
+
         //命令を取得します
         inst = fetch();
         if (isRaisedException()) {
@@ -948,7 +1513,12 @@ public class ARMv5 extends CPU {
         //}
 
         //実行して、次の命令へ
-        execute(decinst);
+        if (isEnabledThreadedCode()) {
+            executeThreaded(decinst);
+        } else {
+            execute(decinst);
+        }
+        instCount++;
         if (isRaisedException()) {
             setRaisedException(false);
             return;
@@ -0,0 +1,232 @@
+package net.katsuster.ememu.arm.core;
+
+/**
+ * 変換済みの ARM 命令ブロックです。
+ *
+ * <p>
+ * 連続した ARM 命令を、分岐や PC への書き込みなど、
+ * 制御の流れが変わる可能性のある命令まで 1 つのブロックとして保持します。
+ * 各命令はデコード済みの状態で保持し、
+ * 実行時に命令の取得とデコードを省略します。
+ * </p>
+ *
+ * <p>
+ * JIT が有効な場合、ブロック先頭から続くデータ処理命令は
+ * JVM のクラスに変換して実行し、残りの命令のみを解釈実行します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class BlockARMv5 {
+    //ブロックを最後まで実行した（最後の分岐命令の条件不成立を含む）
+    public static final int EXIT_FALLTHROUGH = 0;
+    //最後の直接分岐命令で分岐した
+    public static final int EXIT_TAKEN = 1;
+    //例外、割り込み、間接分岐などで、ディスパッチャに戻る必要がある
+    public static final int EXIT_STOP = 2;
+
+    private int paddr;
+    private InstructionARM[] insts;
+    private OpIndex[] indexes;
+    private HandlerARM[] handlers;
+    private boolean valid;
+    private BlockARMv5[] succs;
+    private CompiledBlockARMv5 compiled;
+    private int compiledLength;
+
+    /**
+     * 変換済みの命令ブロックを作成します。
+     *
+     * @param pa       ブロック先頭の物理アドレス
+     * @param insts    命令
+     * @param indexes  命令の詳細な種類
+     * @param handlers 命令を実行するハンドラ
+     */
+    public BlockARMv5(int pa, InstructionARM[] insts, OpIndex[] indexes, HandlerARM[] handlers) {
+        if (insts.length != indexes.length || insts.length != handlers.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Length mismatch, insts:%d, indexes:%d, handlers:%d.",
+                    insts.length, indexes.length, handlers.length));
+        }
+
+        this.paddr = pa;
+        this.insts = insts;
+        this.indexes = indexes;
+        this.handlers = handlers;
+        this.valid = true;
+        this.succs = new BlockARMv5[2];
+    }
+
+    /**
+     * ブロック先頭の物理アドレスを取得します。
+     *
+     * @return 物理アドレス
+     */
+    public int getAddress() {
+        return paddr;
+    }
+
+    /**
+     * ブロックに含まれる命令数を取得します。
+     *
+     * @return 命令数
+     */
+    public int getLength() {
+        return insts.length;
+    }
+
+    /**
+     * ブロックの n 番目の命令を取得します。
+     *
+     * @param n 命令の位置
+     * @return 命令
+     */
+    public InstructionARM getInstruction(int n) {
+        return insts[n];
+    }
+
+    /**
+     * ブロックの n 番目の命令の詳細な種類を取得します。
+     *
+     * @param n 命令の位置
+     * @return 命令の詳細な種類
+     */
+    public OpIndex getIndex(int n) {
+        return indexes[n];
+    }
+
+    /**
+     * ブロックの n 番目の命令を実行するハンドラを取得します。
+     *
+     * @param n 命令の位置
+     * @return ハンドラ
+     */
+    public HandlerARM getHandler(int n) {
+        return handlers[n];
+    }
+
+    /**
+     * JVM のクラスに変換した、ブロック先頭からの命令列を取得します。
+     *
+     * @return 変換した命令列、変換していなければ null
+     */
+    public CompiledBlockARMv5 getCompiled() {
+        return compiled;
+    }
+
+    /**
+     * JVM のクラスに変換した、ブロック先頭からの命令の数を取得します。
+     *
+     * @return 変換した命令の数
+     */
+    public int getCompiledLength() {
+        return compiledLength;
+    }
+
+    /**
+     * JVM のクラスに変換した、ブロック先頭からの命令列を設定します。
+     *
+     * @param c 変換した命令列
+     * @param n 変換した命令の数
+     */
+    public void setCompiled(CompiledBlockARMv5 c, int n) {
+        compiled = c;
+        compiledLength = n;
+    }
+
+    /**
+     * ブロックが有効かどうかを取得します。
+     *
+     * @return ブロックが有効ならば true、無効ならば false
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * ブロックを無効にします。
+     */
+    public void invalidate() {
+        valid = false;
+        compiled = null;
+        succs[EXIT_FALLTHROUGH] = null;
+        succs[EXIT_TAKEN] = null;
+    }
+
+    /**
+     * ブロックの最後の命令が、直接分岐命令（B, BL）かどうかを取得します。
+     *
+     * 直接分岐命令の分岐先は命令から決まるため、
+     * 後続のブロックを連結することができます。
+     *
+     * @return 直接分岐命令で終わるならば true、そうでなければ false
+     */
+    public boolean isDirectBranchEnd() {
+        return indexes[indexes.length - 1] == OpIndex.INS_ARM_BL;
+    }
+
+    /**
+     * 後続のブロックを連結できるかどうかを取得します。
+     *
+     * 直接分岐命令で終わるブロック、
+     * 命令数の上限やアドレスの境界で終わるブロックは連結できます。
+     * CPSR やコプロセッサを変更する命令などで終わるブロックは、
+     * 実行後にディスパッチャで状態を確認する必要があるため、連結できません。
+     *
+     * @return 連結できるならば true、そうでなければ false
+     */
+    public boolean isChainable() {
+        return isDirectBranchEnd() ||
+                !isTerminator(indexes[indexes.length - 1]);
+    }
+
+    /**
+     * 連結された後続のブロックを取得します。
+     *
+     * @param exit ブロックの出口（EXIT_FALLTHROUGH または EXIT_TAKEN）
+     * @return 後続のブロック、連結されていなければ null
+     */
+    public BlockARMv5 getSuccessor(int exit) {
+        return succs[exit];
+    }
+
+    /**
+     * 後続のブロックを連結します。
+     *
+     * @param exit ブロックの出口（EXIT_FALLTHROUGH または EXIT_TAKEN）
+     * @param b    後続のブロック
+     */
+    public void setSuccessor(int exit, BlockARMv5 b) {
+        succs[exit] = b;
+    }
+
+    /**
+     * ブロックを終端する命令かどうかを取得します。
+     *
+     * 分岐命令、例外を発生させる命令、
+     * CPSR やコプロセッサ（MMU の設定を含む）を変更する命令でブロックを終端します。
+     * その他の命令による PC への書き込みは、実行時に検出します。
+     *
+     * @param opind 命令の詳細な種類
+     * @return ブロックを終端する命令ならば true、そうでなければ false
+     */
+    public static boolean isTerminator(OpIndex opind) {
+        switch (opind) {
+        case INS_ARM_BL:
+        case INS_ARM_BLX1:
+        case INS_ARM_BLX2:
+        case INS_ARM_BX:
+        case INS_ARM_SWI:
+        case INS_ARM_BKPT:
+        case INS_ARM_UND:
+        case INS_ARM_MSR:
+        case INS_ARM_MCR:
+        case INS_ARM_MRC:
+        case INS_ARM_CDP:
+        case INS_UNKNOWN:
+            return true;
+        default:
+            return false;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package net.katsuster.ememu.arm.core;
+
+import java.util.*;
+
+/**
+ * 変換済みの ARM 命令ブロックのキャッシュです。
+ *
+ * <p>
+ * ブロック先頭の物理アドレスでインデクスするダイレクトマップ方式です。
+ * 実行回数がしきい値に達したアドレスのみブロックに変換するため、
+ * アドレスごとの実行回数も保持します。
+ * </p>
+ *
+ * <p>
+ * 変換済みのブロックを含む物理ページ（4KB）をビットマップで覚えておき、
+ * そのページへ書き込みがあった場合は、ページ内の全てのブロックを無効化します。
+ * ブロックを持つスロットは物理ページ番号ごとのリストにつないでおき、
+ * 無効化はそのリストのみをたどります。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class BlockCachev5 {
+    public static final int PAGE_SHIFT = 12;
+
+    private BlockARMv5[] blocks;
+    //物理ページ番号でインデクスする、リスト先頭のスロット、なければ -1
+    private int[] pageHeads;
+    //同じリストの次、前のスロット、なければ -1
+    private int[] slotNext;
+    private int[] slotPrev;
+    private int[] countTags;
+    private int[] counts;
+    private int indexMask;
+    private int threshold;
+    private long[] codePages;
+    private boolean empty;
+    private long hit;
+    private long miss;
+    private long translated;
+    private long chainHit;
+    private long chainLink;
+    private long chainExit;
+
+    /**
+     * 変換済みの命令ブロックのキャッシュを作成します。
+     *
+     * @param n         エントリ数、2 の累乗である必要があります
+     * @param threshold ブロックに変換するまでの実行回数
+     */
+    public BlockCachev5(int n, int threshold) {
+        if (n <= 0 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal block cache size %d.", n));
+        }
+
+        this.blocks = new BlockARMv5[n];
+        this.pageHeads = new int[n];
+        this.slotNext = new int[n];
+        this.slotPrev = new int[n];
+        Arrays.fill(this.pageHeads, -1);
+        this.countTags = new int[n];
+        this.counts = new int[n];
+        this.indexMask = n - 1;
+        this.threshold = threshold;
+        //32 ビットの物理アドレス空間の全ページ分
+        this.codePages = new long[1 << (32 - PAGE_SHIFT - 6)];
+        this.empty = true;
+    }
+
+    /**
+     * キャッシュのエントリ数を取得します。
+     *
+     * @return エントリ数
+     */
+    public int getSize() {
+        return blocks.length;
+    }
+
+    /**
+     * ブロックに変換するまでの実行回数を取得します。
+     *
+     * @return 実行回数
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    protected int getIndex(int pa) {
+        return (pa >>> 2) & indexMask;
+    }
+
+    protected int getPageIndex(int pa) {
+        return (pa >>> PAGE_SHIFT) & indexMask;
+    }
+
+    /**
+     * スロットを、ブロックの物理ページ番号のリストの先頭につなぎます。
+     *
+     * @param i スロット
+     */
+    private void linkSlot(int i) {
+        int pi = getPageIndex(blocks[i].getAddress());
+        int h = pageHeads[pi];
+
+        slotNext[i] = h;
+        slotPrev[i] = -1;
+        if (h >= 0) {
+            slotPrev[h] = i;
+        }
+        pageHeads[pi] = i;
+    }
+
+    /**
+     * スロットを、ブロックの物理ページ番号のリストから外します。
+     *
+     * @param i スロット
+     */
+    private void unlinkSlot(int i) {
+        int pi = getPageIndex(blocks[i].getAddress());
+        int p = slotPrev[i];
+        int nx = slotNext[i];
+
+        if (p >= 0) {
+            slotNext[p] = nx;
+        } else {
+            pageHeads[pi] = nx;
+        }
+        if (nx >= 0) {
+            slotPrev[nx] = p;
+        }
+    }
+
+    /**
+     * 物理アドレスから始まるブロックを検索します。
+     *
+     * @param pa 物理アドレス
+     * @return 一致するブロック、存在しなければ null
+     */
+    public BlockARMv5 lookup(int pa) {
+        BlockARMv5 b = blocks[getIndex(pa)];
+
+        if (b != null && b.isValid() && b.getAddress() == pa) {
+            hit++;
+            return b;
+        }
+        miss++;
+
+        return null;
+    }
+
+    /**
+     * 物理アドレスの実行回数を数えます。
+     *
+     * @param pa 物理アドレス
+     * @return 実行回数がしきい値に達した場合は true、そうでなければ false
+     */
+    public boolean countUp(int pa) {
+        int i = getIndex(pa);
+
+        if (countTags[i] != pa) {
+            countTags[i] = pa;
+            counts[i] = 0;
+        }
+        counts[i]++;
+
+        return counts[i] >= threshold;
+    }
+
+    /**
+     * ブロックを登録します。
+     *
+     * @param b ブロック
+     */
+    public void add(BlockARMv5 b) {
+        int pa = b.getAddress();
+        int i = getIndex(pa);
+
+        if (blocks[i] != null) {
+            blocks[i].invalidate();
+            unlinkSlot(i);
+        }
+        blocks[i] = b;
+        linkSlot(i);
+        counts[i] = 0;
+        setCodePage(pa);
+        empty = false;
+        translated++;
+    }
+
+    /**
+     * 物理アドレスを含むページが、変換済みのブロックを含むかどうかを取得します。
+     *
+     * @param pa 物理アドレス
+     * @return ブロックを含むならば true、そうでなければ false
+     */
+    public boolean isCodePage(int pa) {
+        int ppn = pa >>> PAGE_SHIFT;
+
+        return (codePages[ppn >>> 6] & (1L << ppn)) != 0;
+    }
+
+    protected void setCodePage(int pa) {
+        int ppn = pa >>> PAGE_SHIFT;
+
+        codePages[ppn >>> 6] |= 1L << ppn;
+    }
+
+    protected void clearCodePage(int pa) {
+        int ppn = pa >>> PAGE_SHIFT;
+
+        codePages[ppn >>> 6] &= ~(1L << ppn);
+    }
+
+    /**
+     * 物理アドレスへの書き込みを通知します。
+     *
+     * 変換済みのブロックを含むページへの書き込みであれば、
+     * ページ内の全てのブロックを無効化します。
+     *
+     * @param pa 物理アドレス
+     */
+    public void notifyWrite(int pa) {
+        if (isCodePage(pa)) {
+            invalidatePage(pa);
+        }
+    }
+
+    /**
+     * 物理アドレスを含むページの全てのブロックを無効化します。
+     *
+     * @param pa 物理アドレス
+     */
+    public void invalidatePage(int pa) {
+        int ppn = pa >>> PAGE_SHIFT;
+        int i = pageHeads[getPageIndex(pa)];
+
+        //同じリストには、インデクスが衝突する他のページのブロックも含まれる
+        while (i >= 0) {
+            BlockARMv5 b = blocks[i];
+            int nx = slotNext[i];
+
+            if ((b.getAddress() >>> PAGE_SHIFT) == ppn) {
+                b.invalidate();
+                unlinkSlot(i);
+                blocks[i] = null;
+            }
+            i = nx;
+        }
+        clearCodePage(pa);
+    }
+
+    /**
+     * 全てのブロックを無効化します。
+     */
+    public void invalidateAll() {
+        if (empty) {
+            //キャッシュ操作は頻繁に行われるため、空ならば何もしない
+            return;
+        }
+
+        for (int i = 0; i < blocks.length; i++) {
+            if (blocks[i] != null) {
+                blocks[i].invalidate();
+                blocks[i] = null;
+            }
+        }
+        Arrays.fill(pageHeads, -1);
+        for (int i = 0; i < codePages.length; i++) {
+            codePages[i] = 0;
+        }
+        empty = true;
+    }
+
+    /**
+     * キャッシュヒットの回数を取得します。
+     *
+     * @return キャッシュヒットの回数
+     */
+    public long getHitCount() {
+        return hit;
+    }
+
+    /**
+     * キャッシュミスの回数を取得します。
+     *
+     * @return キャッシュミスの回数
+     */
+    public long getMissCount() {
+        return miss;
+    }
+
+    /**
+     * ブロックに変換した回数を取得します。
+     *
+     * @return ブロックに変換した回数
+     */
+    public long getTranslatedCount() {
+        return translated;
+    }
+
+    /**
+     * 連結済みの後続ブロックへ、そのまま実行を移した回数を取得します。
+     *
+     * @return 連結をたどった回数
+     */
+    public long getChainHitCount() {
+        return chainHit;
+    }
+
+    /**
+     * 連結済みの後続ブロックへ、そのまま実行を移した回数を数えます。
+     */
+    public void countChainHit() {
+        chainHit++;
+    }
+
+    /**
+     * 後続ブロックを新たに連結した回数を取得します。
+     *
+     * @return 連結した回数
+     */
+    public long getChainLinkCount() {
+        return chainLink;
+    }
+
+    /**
+     * 後続ブロックを新たに連結した回数を数えます。
+     */
+    public void countChainLink() {
+        chainLink++;
+    }
+
+    /**
+     * ブロックの連結を抜けて、ディスパッチャに戻った回数を取得します。
+     *
+     * @return 連結を抜けた回数
+     */
+    public long getChainExitCount() {
+        return chainExit;
+    }
+
+    /**
+     * ブロックの連結を抜けて、ディスパッチャに戻った回数を数えます。
+     */
+    public void countChainExit() {
+        chainExit++;
+    }
+
+    /**
+     * キャッシュヒット、ミス、変換、連結の回数をクリアします。
+     */
+    public void clearCount() {
+        hit = 0;
+        miss = 0;
+        translated = 0;
+        chainHit = 0;
+        chainLink = 0;
+        chainExit = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("block cache: hit:%d, miss:%d, translated:%d, " +
+                        "chain hit:%d, link:%d, exit:%d",
+                getHitCount(), getMissCount(), getTranslatedCount(),
+                getChainHitCount(), getChainLinkCount(), getChainExitCount());
+    }
+}
@@ -1,5 +1,6 @@
 package net.katsuster.ememu.arm.core;
 
+import java.io.*;
 import java.util.*;
 
 import net.katsuster.ememu.generic.*;
@@ -9,7 +10,7 @@ import net.katsuster.ememu.generic.*;
  *
  * @author katsuhiro
  */
-public class CoProc {
+public class CoProc implements Snapshotable {
     private int no;
     private ARMv5 cpu;
     private Map<Integer, Reg32> cregs;
@@ -167,6 +168,55 @@ public class CoProc {
         r.setValue(val);
     }
 
+    /**
+     * コプロセッサレジスタの値をスナップショットに書き出します。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        //復元時に同じ順序で読めるよう、識別番号順に並べる
+        SortedMap<Integer, Reg32> m = new TreeMap<Integer, Reg32>(cregs);
+
+        out.writeInt(m.size());
+        for (Map.Entry<Integer, Reg32> e : m.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue().getValue());
+        }
+    }
+
+    /**
+     * スナップショットからコプロセッサレジスタの値を読み出します。
+     *
+     * レジスタへの書き込みによる副作用は起こさず、値のみを復元します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、レジスタの構成が一致しない場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        int n = in.readInt();
+
+        if (n != cregs.size()) {
+            throw new IOException(String.format(
+                    "Snapshot mismatch, expected %d coproc %d regs but %d.",
+                    cregs.size(), getNumber(), n));
+        }
+        for (int i = 0; i < n; i++) {
+            int cn = in.readInt();
+            int val = in.readInt();
+            Reg32 r = cregs.get(cn);
+
+            if (r == null) {
+                throw new IOException(String.format(
+                        "Snapshot mismatch, unknown coproc %d reg(%08x).",
+                        getNumber(), cn));
+            }
+            r.setValue(val);
+        }
+    }
+
     @Override
     public String toString() {
         return String.format("p%d", getNumber());
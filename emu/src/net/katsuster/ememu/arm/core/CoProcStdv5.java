@@ -1,6 +1,9 @@
 package net.katsuster.ememu.arm.core;
 
+import java.io.*;
+
 import net.katsuster.ememu.generic.BitOp;
+import net.katsuster.ememu.generic.VirtualClock;
 
 /**
  * ARM コプロセッサ 15: 標準コプロセッサ。
@@ -157,6 +160,9 @@ public class CoProcStdv5 extends CoProc {
     //crn15: 実装ごとに定義
     //----------------------------------------------------------------------
 
+    //割り込み待ちで一度に待つ最大の時間（ミリ秒）
+    public static final long MAX_WAIT_INT = 100000;
+
     public CoProcStdv5(int no, ARMv5 p) {
         super(no, p);
 
@@ -264,15 +270,25 @@ public class CoProcStdv5 extends CoProc {
             break;
         case CR07_UCH_INVALL:
             //System.out.printf("I&D-cache: all invalidated.\n");
+            getCPU().getDecodeCache().invalidateAll();
+            getCPU().getBlockCache().invalidateAll();
             break;
         case CR07_UCH_INVV:
             System.out.printf("I&D-cache: invalidated 0x%08x.\n", val);
+            getCPU().getDecodeCache().invalidateAll();
+            getCPU().getBlockCache().invalidateAll();
             break;
         case CR07_ICH_INVALL:
             //System.out.printf("I-cache  : all invalidated.\n");
+            getCPU().getDecodeCache().invalidateAll();
+            getCPU().getBlockCache().invalidateAll();
             break;
         case CR07_ICH_INVV:
             //System.out.printf("I-cache  : invalidated 0x%08x.\n", val);
+            //デコード済み命令、命令ブロックのキャッシュは物理アドレスで引くため、
+            //仮想アドレス指定でも全て無効化する
+            getCPU().getDecodeCache().invalidateAll();
+            getCPU().getBlockCache().invalidateAll();
             break;
         case CR07_DCH_INVALL:
             //System.out.printf("D-cache  : all invalidated.\n");
@@ -291,21 +307,27 @@ public class CoProcStdv5 extends CoProc {
             break;
         case CR08_UTLB_INVALL:
             //System.out.printf("I&D-TLB  : all invalidated.\n");
+            getCPU().getMMU().invalidateTLBAll();
             break;
         case CR08_UTLB_INVV:
-            System.out.printf("i&D-TLB  : invalidated 0x%08x.\n", val);
+            //System.out.printf("I&D-TLB  : invalidated 0x%08x.\n", val);
+            getCPU().getMMU().invalidateTLB(val);
             break;
         case CR08_ITLB_INVALL:
             //System.out.printf("I-TLB    : all invalidated.\n");
+            getCPU().getMMU().getITLB().invalidateAll();
             break;
         case CR08_ITLB_INVV:
             //System.out.printf("I-TLB    : invalidated 0x%08x.\n", val);
+            getCPU().getMMU().getITLB().invalidate(val);
             break;
         case CR08_DTLB_INVALL:
             //System.out.printf("D-TLB    : all invalidated.\n");
+            getCPU().getMMU().getDTLB().invalidateAll();
             break;
         case CR08_DTLB_INVV:
             //System.out.printf("D-TLB    : invalidated 0x%08x.\n", val);
+            getCPU().getMMU().getDTLB().invalidate(val);
             break;
         default:
             super.setCReg(cn, val);
@@ -313,6 +335,24 @@ public class CoProcStdv5 extends CoProc {
         }
     }
 
+    /**
+     * スナップショットからコプロセッサレジスタの値を読み出します。
+     *
+     * MMU の状態はレジスタの値から作られるため、
+     * 制御ビット、変換テーブル、ドメインアクセス制御を設定し直します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、レジスタの構成が一致しない場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        super.loadState(in);
+
+        setSCTLR(getCReg(CR01_MMU_SCTLR));
+        setTTBR0(getCReg(CR02_MMU_TTBR0));
+        setDACR(getCReg(CR03_MMU_DACR));
+    }
+
     /**
      * crn01: 制御ビット
      *
@@ -343,6 +383,11 @@ public class CoProcStdv5 extends CoProc {
         //m: MMU イネーブルビット、0: 無効、1: 有効
         getCPU().getMMU().setEnable(m);
 
+        //アドレス変換、アクセス許可に関わるビットが変われば TLB を無効化する
+        if (((getCReg(CR01_MMU_SCTLR) ^ val) & 0x00000301) != 0) {
+            getCPU().getMMU().invalidateTLBAll();
+        }
+
         super.setCReg(CR01_MMU_SCTLR, val);
     }
 
@@ -359,6 +404,8 @@ public class CoProcStdv5 extends CoProc {
 
         //MMU の状態を更新する
         getCPU().getMMU().setTableBase(val);
+        //変換テーブルが変わるので TLB を無効化する
+        getCPU().getMMU().invalidateTLBAll();
 
         super.setCReg(CR02_MMU_TTBR0, val);
     }
@@ -369,6 +416,8 @@ public class CoProcStdv5 extends CoProc {
      * @param val 新たなレジスタの値
      */
     public void setDACR(int val) {
+        //TLB はヒットするたびに現在のドメインアクセス値を参照するため、
+        //ここで TLB を無効化する必要はない
         for (int i = 0; i < 16; i++) {
             getCPU().getMMU().setDomainAccess(i, (val >> (i * 2)) & 0x3);
         }
@@ -379,19 +428,51 @@ public class CoProcStdv5 extends CoProc {
     /**
      * 割り込み待ち。
      *
+     * 割り込みが発生するまで CPU を止めます。
+     * 待っている間も仮想クロックのイベントは処理するため、
+     * タイマーなどのデバイスは割り込みを発生させることができます。
+     *
+     * 仮想クロックがアイドル時の時刻を飛ばす設定であれば、
+     * ホストの時間では待たず、次のイベントの時刻まで仮想時刻を進めます。
+     * ホストからの入力はデバイスが直接割り込みを発生させるため、
+     * 入力を待っている間は時刻を飛ばしません（イベントがなければ待ちます）。
+     *
      * @param val 新たなレジスタの値
      */
     public void waitInt(int val) {
         ARMv5 cpu = getCPU();
+        VirtualClock clock = cpu.getClock();
+        long deadline, wait;
+
+        while (!cpu.isRaisedInterrupt() && !cpu.shouldHalt()) {
+            deadline = clock.getNextDeadline();
 
-        synchronized (cpu) {
-            while (!cpu.isRaisedInterrupt()) {
-                try {
-                    cpu.wait(100000);
-                } catch (InterruptedException ex) {
-                    //do nothing
+            if (deadline != Long.MAX_VALUE && clock.shouldSkipIdle()) {
+                //次のイベントの時刻まで仮想時刻を飛ばす
+                clock.advanceTo(deadline);
+                continue;
+            }
+
+            //割り込みか、次のイベントの時刻まで待つ
+            wait = MAX_WAIT_INT;
+            if (deadline != Long.MAX_VALUE) {
+                wait = Math.min(wait, (deadline - clock.getTime()) / 1000000);
+                wait = Math.max(wait, 1);
+            }
+
+            //NOTE: イベントの処理はデバイスのロックを取るため、
+            //CPU のロックを持たない状態で行う必要がある
+            synchronized (cpu) {
+                if (!cpu.isRaisedInterrupt() && !cpu.shouldHalt()) {
+                    try {
+                        cpu.wait(wait);
+                    } catch (InterruptedException ex) {
+                        //do nothing
+                    }
                 }
             }
+
+            clock.sync();
         }
     }
 }
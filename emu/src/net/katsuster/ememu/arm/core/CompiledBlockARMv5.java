@@ -0,0 +1,24 @@
+package net.katsuster.ememu.arm.core;
+
+/**
+ * JVM のクラスに変換した ARM 命令ブロックの基底クラスです。
+ *
+ * <p>
+ * JITCompilerARMv5 が生成するクラスは、このクラスを継承します。
+ * ブロック内ではゲストのレジスタをローカル変数に保持し、
+ * 最後にまとめてレジスタファイルに書き戻します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public abstract class CompiledBlockARMv5 {
+    /**
+     * 変換した命令を実行します。
+     *
+     * PC の更新と、実行した命令数の計上は呼び出し側で行います。
+     *
+     * @param cpu  CPU
+     * @param cpsr CPU の CPSR
+     */
+    public abstract void execute(ARMv5 cpu, PSR cpsr);
+}
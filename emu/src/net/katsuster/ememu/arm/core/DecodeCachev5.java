@@ -0,0 +1,232 @@
+package net.katsuster.ememu.arm.core;
+
+/**
+ * デコード済み命令のキャッシュです。
+ *
+ * <p>
+ * 命令の物理アドレスをキーとして、デコード結果（命令の種類と詳細な種類）を保持します。
+ * 物理ページ（4KB）ごとに 2 バイト単位のスロットを持ち、
+ * ページ自体はページ番号でインデクスするダイレクトマップ方式で保持します。
+ * </p>
+ *
+ * <p>
+ * 各スロットはデコードした時点の命令データも保持し、
+ * 検索時に取得した命令データと一致する場合のみヒットとします。
+ * そのため、ゲストや DMA がコードのページを書き換えた場合、
+ * 書き換えられた命令は自動的にミスとなり、再度デコードされます。
+ * </p>
+ *
+ * <p>
+ * スレッデッドコード方式で実行する場合は、
+ * 命令ごとに解決したハンドラも各スロットに保持します。
+ * ハンドラはデコード結果を登録し直すと破棄されます。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class DecodeCachev5 {
+    public static final int PAGE_SHIFT = 12;
+    public static final int PAGE_SIZE = 1 << PAGE_SHIFT;
+    public static final int SLOTS = PAGE_SIZE >>> 1;
+
+    private Page[] pages;
+    private int indexMask;
+    private long hit;
+    private long miss;
+
+    /**
+     * デコード済み命令のキャッシュを作成します。
+     *
+     * @param n 保持するページ数、2 の累乗である必要があります
+     */
+    public DecodeCachev5(int n) {
+        if (n <= 0 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal decode cache size %d.", n));
+        }
+
+        this.pages = new Page[n];
+        for (int i = 0; i < n; i++) {
+            this.pages[i] = new Page();
+        }
+        this.indexMask = n - 1;
+    }
+
+    /**
+     * キャッシュが保持するページ数を取得します。
+     *
+     * @return ページ数
+     */
+    public int getSize() {
+        return pages.length;
+    }
+
+    /**
+     * 物理アドレスにある命令のデコード結果を検索します。
+     *
+     * @param paddr  命令の物理アドレス
+     * @param optype 命令の種類
+     * @param inst   命令データ
+     * @return デコード結果、キャッシュに存在しなければ null
+     */
+    public OpIndex lookup(int paddr, OpType optype, int inst) {
+        int ppn = paddr >>> PAGE_SHIFT;
+        Page p = pages[ppn & indexMask];
+        int s = (paddr & (PAGE_SIZE - 1)) >>> 1;
+
+        if (p.ppn == ppn && p.types[s] == optype && p.insts[s] == inst) {
+            hit++;
+            return p.indexes[s];
+        }
+        miss++;
+
+        return null;
+    }
+
+    /**
+     * 物理アドレスにある命令のデコード結果を登録します。
+     *
+     * @param paddr  命令の物理アドレス
+     * @param optype 命令の種類
+     * @param inst   命令データ
+     * @param opind  命令の詳細な種類
+     */
+    public void fill(int paddr, OpType optype, int inst, OpIndex opind) {
+        int ppn = paddr >>> PAGE_SHIFT;
+        Page p = pages[ppn & indexMask];
+        int s = (paddr & (PAGE_SIZE - 1)) >>> 1;
+
+        if (p.ppn != ppn) {
+            p.clear();
+            p.ppn = ppn;
+        }
+        p.types[s] = optype;
+        p.insts[s] = inst;
+        p.indexes[s] = opind;
+        p.handlers[s] = null;
+    }
+
+    /**
+     * 物理アドレスにある ARM 命令のハンドラを取得します。
+     *
+     * 同じ物理アドレスに対して lookup がヒットするか、
+     * fill を呼び出した直後に呼び出す必要があります。
+     *
+     * @param paddr 命令の物理アドレス
+     * @return ハンドラ、まだ登録されていなければ null
+     */
+    public HandlerARM getHandlerARM(int paddr) {
+        int ppn = paddr >>> PAGE_SHIFT;
+        Page p = pages[ppn & indexMask];
+
+        if (p.ppn != ppn) {
+            return null;
+        }
+
+        return p.handlers[(paddr & (PAGE_SIZE - 1)) >>> 1];
+    }
+
+    /**
+     * 物理アドレスにある ARM 命令のハンドラを登録します。
+     *
+     * 同じ物理アドレスに対して lookup がヒットするか、
+     * fill を呼び出した直後に呼び出す必要があります。
+     *
+     * @param paddr 命令の物理アドレス
+     * @param h     ハンドラ
+     */
+    public void setHandlerARM(int paddr, HandlerARM h) {
+        int ppn = paddr >>> PAGE_SHIFT;
+        Page p = pages[ppn & indexMask];
+
+        if (p.ppn == ppn) {
+            p.handlers[(paddr & (PAGE_SIZE - 1)) >>> 1] = h;
+        }
+    }
+
+    /**
+     * 全てのデコード結果を無効化します。
+     */
+    public void invalidateAll() {
+        for (Page p : pages) {
+            p.ppn = Page.PPN_INVALID;
+        }
+    }
+
+    /**
+     * 物理アドレスを含むページのデコード結果を無効化します。
+     *
+     * @param paddr 物理アドレス
+     */
+    public void invalidatePage(int paddr) {
+        int ppn = paddr >>> PAGE_SHIFT;
+        Page p = pages[ppn & indexMask];
+
+        if (p.ppn == ppn) {
+            p.ppn = Page.PPN_INVALID;
+        }
+    }
+
+    /**
+     * キャッシュヒットの回数を取得します。
+     *
+     * @return キャッシュヒットの回数
+     */
+    public long getHitCount() {
+        return hit;
+    }
+
+    /**
+     * キャッシュミスの回数を取得します。
+     *
+     * @return キャッシュミスの回数
+     */
+    public long getMissCount() {
+        return miss;
+    }
+
+    /**
+     * キャッシュヒット、ミスの回数をクリアします。
+     */
+    public void clearCount() {
+        hit = 0;
+        miss = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("decode cache: hit:%d, miss:%d", getHitCount(), getMissCount());
+    }
+
+    /**
+     * 1 つの物理ページのデコード結果です。
+     */
+    private static class Page {
+        //物理ページ番号は 20 ビットなので、負の値は一致しない
+        public static final int PPN_INVALID = -1;
+
+        public int ppn;
+        public OpType[] types;
+        public int[] insts;
+        public OpIndex[] indexes;
+        //ARM 命令のハンドラ、Thumb 命令のスロットは常に null
+        public HandlerARM[] handlers;
+
+        public Page() {
+            ppn = PPN_INVALID;
+            types = new OpType[SLOTS];
+            insts = new int[SLOTS];
+            indexes = new OpIndex[SLOTS];
+            handlers = new HandlerARM[SLOTS];
+        }
+
+        /**
+         * ページの全てのスロットを空にします。
+         */
+        public void clear() {
+            for (int i = 0; i < SLOTS; i++) {
+                types[i] = null;
+            }
+        }
+    }
+}
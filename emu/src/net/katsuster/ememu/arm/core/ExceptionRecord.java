@@ -0,0 +1,223 @@
+package net.katsuster.ememu.arm.core;
+
+import net.katsuster.ememu.generic.*;
+
+/**
+ * 要求された例外の詳細を保持する記録です。
+ *
+ * <p>
+ * 例外の原因、アドレス、フォルトステータスなどを数値のまま保持し、
+ * 文字列への変換は toString() が呼ばれたとき（トレースの表示時）にのみ行います。
+ * 記録は例外番号ごとに 1 つだけ作成して使い回すため、
+ * 例外の要求と処理でオブジェクトを生成しません。
+ * </p>
+ *
+ * <p>
+ * 例外を要求する側は、説明に文字列定数のみを渡す必要があります。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class ExceptionRecord {
+    //原因が設定されていない
+    public static final int CAUSE_NONE = 0;
+    //リセット
+    public static final int CAUSE_RESET = 1;
+    //バスのアクセスエラー（外部アボート）
+    public static final int CAUSE_BUS = 2;
+    //MMU のフォルト
+    public static final int CAUSE_MMU = 3;
+    //割り込み線のアサート
+    public static final int CAUSE_INT = 4;
+    //ソフトウェア割り込み命令
+    public static final int CAUSE_SWI = 5;
+    //未定義命令
+    public static final int CAUSE_UND = 6;
+
+    private int num;
+    private int cause;
+    private String label;
+    private int addr;
+    private int fsr;
+    private int dom;
+    private int entryL1;
+    private int entryL2;
+    private boolean inst;
+    private boolean priv;
+    private boolean read;
+    private INTSource source;
+
+    /**
+     * 例外の記録を作成します。
+     *
+     * @param num 例外番号（ARMv5.EXCEPT_xxxx）
+     */
+    public ExceptionRecord(int num) {
+        this.num = num;
+        clear();
+    }
+
+    /**
+     * 記録を空にします。
+     */
+    public void clear() {
+        cause = CAUSE_NONE;
+        label = "";
+        addr = 0;
+        fsr = 0;
+        dom = 0;
+        entryL1 = 0;
+        entryL2 = 0;
+        inst = false;
+        priv = false;
+        read = false;
+        source = null;
+    }
+
+    /**
+     * 例外の原因を設定します。
+     *
+     * 原因以外の詳細はクリアされます。
+     *
+     * @param c 例外の原因（CAUSE_xxxx）
+     * @param l 例外の説明、文字列定数を指定してください
+     * @param a 例外に関係するアドレス、または値
+     * @return この記録
+     */
+    public ExceptionRecord set(int c, String l, int a) {
+        clear();
+        cause = c;
+        label = l;
+        addr = a;
+
+        return this;
+    }
+
+    /**
+     * MMU のフォルトの詳細を設定します。
+     *
+     * @param fs  フォルトステータス
+     * @param d   ドメイン
+     * @param e1  第 1 レベルディスクリプタ、存在しなければ 0
+     * @param e2  第 2 レベルディスクリプタ、存在しなければ 0
+     * @param ins 命令の取得ならば true、データへのアクセスならば false
+     * @param pri 特権アクセスならば true、非特権アクセスならば false
+     * @param rd  読み取りアクセスならば true、書き込みアクセスならば false
+     * @return この記録
+     */
+    public ExceptionRecord setFault(int fs, int d, int e1, int e2,
+                                    boolean ins, boolean pri, boolean rd) {
+        fsr = fs;
+        dom = d;
+        entryL1 = e1;
+        entryL2 = e2;
+        inst = ins;
+        priv = pri;
+        read = rd;
+
+        return this;
+    }
+
+    /**
+     * 例外を要求した割り込み元を設定します。
+     *
+     * @param src 割り込み元
+     * @return この記録
+     */
+    public ExceptionRecord setSource(INTSource src) {
+        source = src;
+
+        return this;
+    }
+
+    /**
+     * 例外番号を取得します。
+     *
+     * @return 例外番号（ARMv5.EXCEPT_xxxx）
+     */
+    public int getNumber() {
+        return num;
+    }
+
+    /**
+     * 例外の原因を取得します。
+     *
+     * @return 例外の原因（CAUSE_xxxx）
+     */
+    public int getCause() {
+        return cause;
+    }
+
+    /**
+     * 例外の説明を取得します。
+     *
+     * @return 例外の説明
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * 例外に関係するアドレス、または値を取得します。
+     *
+     * アボートではアクセスしたアドレス、
+     * ソフトウェア割り込みでは即値、
+     * 未定義命令では命令データです。
+     *
+     * @return アドレス、または値
+     */
+    public int getAddress() {
+        return addr;
+    }
+
+    /**
+     * MMU のフォルトステータスを取得します。
+     *
+     * @return フォルトステータス
+     */
+    public int getFaultStatus() {
+        return fsr;
+    }
+
+    /**
+     * MMU のフォルトを起こしたドメインを取得します。
+     *
+     * @return ドメイン
+     */
+    public int getDomain() {
+        return dom;
+    }
+
+    /**
+     * 例外を要求した割り込み元を取得します。
+     *
+     * @return 割り込み元、割り込み以外の例外では null
+     */
+    public INTSource getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        switch (cause) {
+        case CAUSE_BUS:
+            return String.format("%s [%08x]", label, addr);
+        case CAUSE_MMU:
+            return String.format("%s, va:0x%08x, fs:0x%x, dom:%d, " +
+                            "entryL1:0x%08x, entryL2:0x%08x, inst:%s, priv:%s, read:%s.",
+                    label, addr, fsr, dom, entryL1, entryL2,
+                    inst ? "ins" : "dat",
+                    priv ? "priv" : "user",
+                    read ? "rd" : "wr");
+        case CAUSE_INT:
+            return String.format("%s from '%s'", label,
+                    (source == null) ? "" : source.getIRQMessage());
+        case CAUSE_SWI:
+            return String.format("%s imm24:0x%08x.", label, addr);
+        case CAUSE_UND:
+            return String.format("%s inst:0x%08x.", label, addr);
+        default:
+            return label;
+        }
+    }
+}
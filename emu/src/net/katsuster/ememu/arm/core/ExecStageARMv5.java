@@ -13,6 +13,9 @@ import net.katsuster.ememu.generic.*;
  * @author katsuhiro
  */
 public class ExecStageARMv5 extends Stage {
+    //ロード/ストアマルチプルでまとめて転送するデータ
+    private int[] blockBuf = new int[16];
+
     /**
      * ARMv5 CPU コア c の実行ステージを生成します。
      *
@@ -94,11 +97,14 @@ public class ExecStageARMv5 extends Stage {
     /**
      * 例外を要求します。
      *
-     * @param num    例外番号（EXCEPT_xxxx）
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param num   例外番号（EXCEPT_xxxx）
+     * @param cause 例外の原因（ExceptionRecord.CAUSE_xxxx）
+     * @param label 例外の説明、文字列定数を指定してください
+     * @param addr  例外に関係するアドレス、または値
+     * @return 例外の記録
      */
-    public void raiseException(int num, String dbgmsg) {
-        getCore().raiseException(num, dbgmsg);
+    public ExceptionRecord raiseException(int num, int cause, String label, int addr) {
+        return getCore().raiseException(num, cause, label, addr);
     }
 
     /**
@@ -1053,6 +1059,25 @@ public class ExecStageARMv5 extends Stage {
                 pu + ".");
     }
 
+    /**
+     * アドレシングモード 4 - ロード/ストアマルチプル、
+     * 転送範囲がアクセス許可の最小単位（1KB のサブページ）に
+     * 収まっているかどうかを取得します。
+     *
+     * 収まっていれば、転送開始アドレスのアドレス変換の結果を、
+     * 範囲全体に用いることができます。
+     *
+     * @param vaddr 転送開始アドレス
+     * @param rlist レジスタリスト
+     * @return 収まっていれば true、そうでなければ false
+     */
+    public boolean isAddrMode4InSubPage(int vaddr, int rlist) {
+        int first = vaddr & ~0x3;
+        int last = first + Integer.bitCount(rlist) * 4 - 1;
+
+        return (first >>> 10) == (last >>> 10);
+    }
+
     /**
      * ステータスレジスタから汎用レジスタへの転送命令。
      *
@@ -1247,9 +1272,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(getAddrMode1Carry(inst));
+            getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
             //V flag is unaffected
         }
 
@@ -1286,9 +1309,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(getAddrMode1Carry(inst));
+            getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
             //V flag is unaffected
         }
 
@@ -1325,10 +1346,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-            getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+            getCPSR().setFlagsSub(left, right, dest);
         }
 
         setReg(rd, dest);
@@ -1364,10 +1382,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-            getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+            getCPSR().setFlagsSub(left, right, dest);
         }
 
         setReg(rd, dest);
@@ -1403,10 +1418,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(IntegerExt.carryFrom(left, right));
-            getCPSR().setVBit(IntegerExt.overflowFrom(left, right, true));
+            getCPSR().setFlagsAdd(left, right, dest);
         }
 
         setReg(rd, dest);
@@ -1447,10 +1459,9 @@ public class ExecStageARMv5 extends Stage {
             boolean lc_c = IntegerExt.carryFrom(left, center);
             boolean lc_v = IntegerExt.overflowFrom(left, center, true);
 
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(lc_c || IntegerExt.carryFrom(lc, right));
-            getCPSR().setVBit(lc_v || IntegerExt.overflowFrom(lc, right, true));
+            getCPSR().setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                    lc_c || IntegerExt.carryFrom(lc, right),
+                    lc_v || IntegerExt.overflowFrom(lc, right, true));
         }
 
         setReg(rd, dest);
@@ -1491,10 +1502,9 @@ public class ExecStageARMv5 extends Stage {
             boolean lc_c = IntegerExt.borrowFrom(left, center);
             boolean lc_v = IntegerExt.overflowFrom(left, center, false);
 
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(!(lc_c || IntegerExt.borrowFrom(lc, right)));
-            getCPSR().setVBit(lc_v || IntegerExt.overflowFrom(lc, right, false));
+            getCPSR().setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                    !(lc_c || IntegerExt.borrowFrom(lc, right)),
+                    lc_v || IntegerExt.overflowFrom(lc, right, false));
         }
 
         setReg(rd, dest);
@@ -1535,10 +1545,9 @@ public class ExecStageARMv5 extends Stage {
             boolean lc_c = IntegerExt.borrowFrom(left, center);
             boolean lc_v = IntegerExt.overflowFrom(left, center, false);
 
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(!(lc_c || IntegerExt.borrowFrom(lc, right)));
-            getCPSR().setVBit(lc_v || IntegerExt.overflowFrom(lc, right, false));
+            getCPSR().setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                    !(lc_c || IntegerExt.borrowFrom(lc, right)),
+                    lc_v || IntegerExt.overflowFrom(lc, right, false));
         }
 
         setReg(rd, dest);
@@ -1575,9 +1584,7 @@ public class ExecStageARMv5 extends Stage {
         right = opr;
         dest = left & right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(getAddrMode1Carry(inst));
+        getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
         //V flag is unaffected
     }
 
@@ -1612,9 +1619,7 @@ public class ExecStageARMv5 extends Stage {
         right = opr;
         dest = left ^ right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(getAddrMode1Carry(inst));
+        getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
         //V flag is unaffected
     }
 
@@ -1649,10 +1654,7 @@ public class ExecStageARMv5 extends Stage {
         right = opr;
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
     }
 
     /**
@@ -1686,10 +1688,7 @@ public class ExecStageARMv5 extends Stage {
         right = opr;
         dest = left + right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(IntegerExt.carryFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, true));
+        getCPSR().setFlagsAdd(left, right, dest);
     }
 
     /**
@@ -1722,9 +1721,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(getAddrMode1Carry(inst));
+            getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
             //V flag is unaffected
         }
 
@@ -1765,9 +1762,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(getAddrMode1Carry(inst));
+            getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
             //V flag is unaffected
         }
 
@@ -1804,9 +1799,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(getAddrMode1Carry(inst));
+            getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
             //V flag is unaffected
         }
 
@@ -1841,9 +1834,7 @@ public class ExecStageARMv5 extends Stage {
         if (s && rd == 15) {
             getCPSR().setValue(getSPSR());
         } else if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
-            getCPSR().setCBit(getAddrMode1Carry(inst));
+            getCPSR().setFlagsNZC(dest, getAddrMode1Carry(inst));
             //V flag is unaffected
         }
 
@@ -1884,8 +1875,7 @@ public class ExecStageARMv5 extends Stage {
         dest = left * center + right;
 
         if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
+            getCPSR().setFlagsNZ(dest);
             //C flag is unaffected
             //V flag is unaffected
         }
@@ -1925,8 +1915,7 @@ public class ExecStageARMv5 extends Stage {
         dest = left * right;
 
         if (s) {
-            getCPSR().setNBit(BitOp.getBit32(dest, 31));
-            getCPSR().setZBit(dest == 0);
+            getCPSR().setFlagsNZ(dest);
             //C flag is unaffected
             //V flag is unaffected
         }
@@ -2436,6 +2425,7 @@ public class ExecStageARMv5 extends Stage {
         int rm = inst.getRmField();
         int left, right, rot;
         int vaddr, paddr;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2459,12 +2449,13 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4) || !tryWrite_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("swp [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "swp", paddr);
             return;
         }
-        right = read32_a32(paddr);
+        right = (int)data;
 
         switch (rot) {
         case 0:
@@ -2485,7 +2476,11 @@ public class ExecStageARMv5 extends Stage {
                             inst.getInst(), rn, rot));
         }
 
-        write32_a32(paddr, left);
+        if (!writeChecked32_a32(paddr, left)) {
+            raiseException(ARMv5.EXCEPT_ABT_DATA,
+                    ExceptionRecord.CAUSE_BUS, "swp", paddr);
+            return;
+        }
         setReg(rd, right);
     }
 
@@ -2529,6 +2524,7 @@ public class ExecStageARMv5 extends Stage {
         int rd = inst.getRdField();
         int offset = getAddrMode2(inst);
         int vaddr, paddr, rot, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2553,12 +2549,13 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrt [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrt", paddr);
             return;
         }
-        value = read32_a32(paddr);
+        value = (int)data;
 
         switch (rot) {
         case 0:
@@ -2601,6 +2598,7 @@ public class ExecStageARMv5 extends Stage {
         int rd = inst.getRdField();
         int offset = getAddrMode2(inst);
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2623,12 +2621,13 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 1)) {
+        data = readChecked8_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrbt [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrbt", paddr);
             return;
         }
-        value = (int)(read8_a32(paddr)) & 0xff;
+        value = (int)data;
 
         setReg(rd, value);
 
@@ -2648,7 +2647,9 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode2(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2670,18 +2671,25 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 1, false, getCPSR().isPrivMode(), true);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 1, false, getCPSR().isPrivMode(), true);
+        if (ent != null) {
+            //RAM への高速パス
+            value = (int)(ent.readHost8(vaddr)) & 0xff;
+        } else {
+            paddr = getMMU().translate(vaddr, 1, false, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryRead_a32(paddr, 1)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrb [%08x]", paddr));
-            return;
+            data = readChecked8_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "ldrb", paddr);
+                return;
+            }
+            value = (int)data;
         }
-        value = (int)(read8_a32(paddr)) & 0xff;
 
         setReg(rd, value);
 
@@ -2705,7 +2713,9 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode2(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr, rot, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2728,18 +2738,25 @@ public class ExecStageARMv5 extends Stage {
         }
         rot = vaddr & 0x3;
 
-        paddr = getMMU().translate(vaddr, 4, false, getCPSR().isPrivMode(), true);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 4, false, getCPSR().isPrivMode(), true);
+        if (ent != null) {
+            //RAM への高速パス
+            value = ent.readHost32(vaddr);
+        } else {
+            paddr = getMMU().translate(vaddr, 4, false, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryRead_a32(paddr, 4)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldr [%08x]", paddr));
-            return;
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "ldr", paddr);
+                return;
+            }
+            value = (int)data;
         }
-        value = read32_a32(paddr);
 
         switch (rot) {
         case 0:
@@ -2787,7 +2804,9 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode3(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2809,18 +2828,25 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 2, false, getCPSR().isPrivMode(), true);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 2, false, getCPSR().isPrivMode(), true);
+        if (ent != null) {
+            //RAM への高速パス
+            value = ent.readHost16(vaddr) & 0xffff;
+        } else {
+            paddr = getMMU().translate(vaddr, 2, false, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryRead_a32(paddr, 2)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrh [%08x]", paddr));
-            return;
+            data = readChecked16_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "ldrh", paddr);
+                return;
+            }
+            value = (int)data;
         }
-        value = read16_a32(paddr) & 0xffff;
 
         setReg(rd, value);
 
@@ -2844,7 +2870,9 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode3(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2866,18 +2894,25 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 1, false, getCPSR().isPrivMode(), true);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 1, false, getCPSR().isPrivMode(), true);
+        if (ent != null) {
+            //RAM への高速パス
+            value = ent.readHost8(vaddr);
+        } else {
+            paddr = getMMU().translate(vaddr, 1, false, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryRead_a32(paddr, 1)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrsb [%08x]", paddr));
-            return;
+            data = readChecked8_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "ldrsb", paddr);
+                return;
+            }
+            value = (byte)data;
         }
-        value = read8_a32(paddr);
 
         setReg(rd, value);
 
@@ -2901,7 +2936,9 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode3(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -2923,18 +2960,25 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 2, false, getCPSR().isPrivMode(), true);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 2, false, getCPSR().isPrivMode(), true);
+        if (ent != null) {
+            //RAM への高速パス
+            value = ent.readHost16(vaddr);
+        } else {
+            paddr = getMMU().translate(vaddr, 2, false, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryRead_a32(paddr, 2)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrsh [%08x]", paddr));
-            return;
+            data = readChecked16_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "ldrsh", paddr);
+                return;
+            }
+            value = (short)data;
         }
-        value = read16_a32(paddr);
 
         setReg(rd, value);
 
@@ -2959,6 +3003,7 @@ public class ExecStageARMv5 extends Stage {
         int rd = inst.getRdField();
         int offset = getAddrMode3(inst);
         int vaddr, paddr, value1, value2;
+        long data1, data2;
 
         if (!exec) {
             printDisasm(inst,
@@ -2986,13 +3031,15 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4) || !tryRead_a32(paddr + 4, 4)) {
+        data1 = readChecked32_a32(paddr);
+        data2 = readChecked32_a32(paddr + 4);
+        if (data1 == RWCore.ACCESS_ABORT || data2 == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrd [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrd", paddr);
             return;
         }
-        value1 = read32_a32(paddr);
-        value2 = read32_a32(paddr + 4);
+        value1 = (int)data1;
+        value2 = (int)data2;
 
         setReg(rd, value1);
         setReg(rd + 1, value2);
@@ -3059,12 +3106,11 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 4)) {
+        if (!writeChecked32_a32(paddr, getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strt [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strt", paddr);
             return;
         }
-        write32_a32(paddr, getReg(rd));
 
         //P ビットは必ず 0、W ビットは必ず 1、ベースレジスタを更新する
         setReg(rn, offset);
@@ -3103,12 +3149,11 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 1)) {
+        if (!writeChecked8_a32(paddr, (byte) getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strbt [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strbt", paddr);
             return;
         }
-        write8_a32(paddr, (byte) getReg(rd));
 
         //P ビットは必ず 0、W ビットは必ず 1、ベースレジスタを更新する
         setReg(rn, offset);
@@ -3126,6 +3171,7 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode2(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr;
 
         if (!exec) {
@@ -3148,18 +3194,23 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 1, false, getCPSR().isPrivMode(), false);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 1, false, getCPSR().isPrivMode(), false);
+        if (ent != null) {
+            //RAM への高速パス
+            ent.writeHost8(vaddr, (byte) getReg(rd));
+        } else {
+            paddr = getMMU().translate(vaddr, 1, false, getCPSR().isPrivMode(), false);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryWrite_a32(paddr, 1)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strb [%08x]", paddr));
-            return;
+            if (!writeChecked8_a32(paddr, (byte) getReg(rd))) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "strb", paddr);
+                return;
+            }
         }
-        write8_a32(paddr, (byte) getReg(rd));
 
         if (!p || w) {
             //ベースレジスタを更新する
@@ -3181,6 +3232,7 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode2(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr;
 
         if (!exec) {
@@ -3203,18 +3255,23 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 4, false, getCPSR().isPrivMode(), false);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 4, false, getCPSR().isPrivMode(), false);
+        if (ent != null) {
+            //RAM への高速パス
+            ent.writeHost32(vaddr, getReg(rd));
+        } else {
+            paddr = getMMU().translate(vaddr, 4, false, getCPSR().isPrivMode(), false);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryWrite_a32(paddr, 4)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("str [%08x]", paddr));
-            return;
+            if (!writeChecked32_a32(paddr, getReg(rd))) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "str", paddr);
+                return;
+            }
         }
-        write32_a32(paddr, getReg(rd));
 
         if (!p || w) {
             //ベースレジスタを更新する
@@ -3236,6 +3293,7 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rd = inst.getRdField();
         int offset = getAddrMode3(inst);
+        TLBEntryv5 ent;
         int vaddr, paddr;
 
         if (!exec) {
@@ -3258,18 +3316,23 @@ public class ExecStageARMv5 extends Stage {
             vaddr = getReg(rn);
         }
 
-        paddr = getMMU().translate(vaddr, 2, false, getCPSR().isPrivMode(), false);
-        if (getMMU().isFault()) {
-            getMMU().clearFault();
-            return;
-        }
+        ent = getMMU().translateHost(vaddr, 2, false, getCPSR().isPrivMode(), false);
+        if (ent != null) {
+            //RAM への高速パス
+            ent.writeHost16(vaddr, (short) getReg(rd));
+        } else {
+            paddr = getMMU().translate(vaddr, 2, false, getCPSR().isPrivMode(), false);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
 
-        if (!tryWrite_a32(paddr, 2)) {
-            raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strh [%08x]", paddr));
-            return;
+            if (!writeChecked16_a32(paddr, (short) getReg(rd))) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "strh", paddr);
+                return;
+            }
         }
-        write16_a32(paddr, (short) getReg(rd));
 
         if (!p || w) {
             //ベースレジスタを更新する
@@ -3319,13 +3382,12 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 4) || !tryWrite_a32(paddr + 4, 4)) {
+        if (!writeChecked32_a32(paddr, getReg(rd)) ||
+                !writeChecked32_a32(paddr + 4, getReg(rd + 1))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strd [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strd", paddr);
             return;
         }
-        write32_a32(paddr, getReg(rd));
-        write32_a32(paddr + 4, getReg(rd + 1));
 
         if (!p || w) {
             //ベースレジスタを更新する
@@ -3346,6 +3408,7 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rlist = inst.getRegListField();
         int vaddr, paddr, len;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -3362,9 +3425,40 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        //r15 以外
         vaddr = getAddrMode4StartAddress(inst.getPUField(), rn, rlist);
         len = getAddrMode4Length(inst.getPUField(), rlist);
+
+        //RAM の 1 つのサブページに収まっていれば、まとめて読み出す
+        if (isAddrMode4InSubPage(vaddr, rlist)) {
+            paddr = getMMU().translate(vaddr, 4, false, getCPSR().isPrivMode(), true);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
+
+            if (getCore().readBlockRAM_a32(paddr & ~0x3, blockBuf, Integer.bitCount(rlist))) {
+                int k = 0;
+
+                for (int i = 0; i < 15; i++) {
+                    if ((rlist & (1 << i)) != 0) {
+                        setReg(i, blockBuf[k++]);
+                    }
+                }
+                if (BitOp.getBit32(rlist, 15)) {
+                    int v = blockBuf[k];
+
+                    setPC(v & 0xfffffffe);
+                    getCPSR().setTBit(BitOp.getBit32(v, 0));
+                }
+
+                if (w) {
+                    setReg(rn, getReg(rn) + len);
+                }
+                return;
+            }
+        }
+
+        //r15 以外
         for (int i = 0; i < 15; i++) {
             if ((rlist & (1 << i)) == 0) {
                 continue;
@@ -3376,12 +3470,13 @@ public class ExecStageARMv5 extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("ldm(1) [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "ldm(1)", paddr);
                 return;
             }
-            setReg(i, read32_a32(paddr));
+            setReg(i, (int)data);
             vaddr += 4;
         }
         //r15
@@ -3394,12 +3489,13 @@ public class ExecStageARMv5 extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("ldm(1) [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "ldm(1)", paddr);
                 return;
             }
-            v = read32_a32(paddr);
+            v = (int)data;
 
             setPC(v & 0xfffffffe);
             getCPSR().setTBit(BitOp.getBit32(v, 0));
@@ -3424,6 +3520,7 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rlist = inst.getRegListField();
         int vaddr, paddr, v, mod;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -3453,13 +3550,14 @@ public class ExecStageARMv5 extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("ldm(2) [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "ldm(2)", paddr);
                 return;
             }
             //必ずユーザモードのレジスタをロードする
-            v = read32_a32(paddr);
+            v = (int)data;
             vaddr += 4;
 
             mod = getCPSR().getMode();
@@ -3483,6 +3581,7 @@ public class ExecStageARMv5 extends Stage {
         int rn = inst.getRnField();
         int rlist = inst.getRegListField();
         int vaddr, paddr, len, v;
+        long data;
 
         if (!exec) {
             printDisasm(inst,
@@ -3513,12 +3612,13 @@ public class ExecStageARMv5 extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("ldm(3) [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "ldm(3)", paddr);
                 return;
             }
-            setReg(i, read32_a32(paddr));
+            setReg(i, (int)data);
             vaddr += 4;
         }
 
@@ -3532,12 +3632,13 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldm(3) [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldm(3)", paddr);
             return;
         }
-        v = read32_a32(paddr);
+        v = (int)data;
 
         if (getCPSR().getTBit()) {
             setPC(v & 0xfffffffe);
@@ -3581,6 +3682,31 @@ public class ExecStageARMv5 extends Stage {
 
         vaddr = getAddrMode4StartAddress(pu, rn, rlist);
         len = getAddrMode4Length(pu, rlist);
+
+        //RAM の 1 つのサブページに収まっていれば、まとめて書き込む
+        if (isAddrMode4InSubPage(vaddr, rlist)) {
+            int k = 0;
+
+            paddr = getMMU().translate(vaddr, 4, false, getCPSR().isPrivMode(), false);
+            if (getMMU().isFault()) {
+                getMMU().clearFault();
+                return;
+            }
+
+            for (int i = 0; i < 16; i++) {
+                if ((rlist & (1 << i)) != 0) {
+                    blockBuf[k++] = getReg(i);
+                }
+            }
+
+            if (getCore().writeBlockRAM_a32(paddr & ~0x3, blockBuf, k)) {
+                if (w) {
+                    setReg(rn, getReg(rn) + len);
+                }
+                return;
+            }
+        }
+
         for (int i = 0; i < 16; i++) {
             if ((rlist & (1 << i)) == 0) {
                 continue;
@@ -3592,12 +3718,11 @@ public class ExecStageARMv5 extends Stage {
                 return;
             }
 
-            if (!tryWrite_a32(paddr, 4)) {
+            if (!writeChecked32_a32(paddr, getReg(i))) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("stm(1) [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "stm(1)", paddr);
                 return;
             }
-            write32_a32(paddr, getReg(i));
             vaddr += 4;
         }
 
@@ -3647,18 +3772,17 @@ public class ExecStageARMv5 extends Stage {
                 return;
             }
 
-            if (!tryWrite_a32(paddr, 4)) {
-                raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("stm(2) [%08x]", paddr));
-                return;
-            }
             //必ずユーザモードのレジスタをストアする
             mod = getCPSR().getMode();
             getCPSR().setMode(PSR.MODE_USR);
             v = getReg(i);
             getCPSR().setMode(mod);
 
-            write32_a32(paddr, v);
+            if (!writeChecked32_a32(paddr, v)) {
+                raiseException(ARMv5.EXCEPT_ABT_DATA,
+                        ExceptionRecord.CAUSE_BUS, "stm(2)", paddr);
+                return;
+            }
             vaddr += 4;
         }
     }
@@ -4005,8 +4129,8 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        raiseException(ARMv5.EXCEPT_SVC, "swi instruction " +
-                String.format("imm24:0x%08x.", imm24));
+        raiseException(ARMv5.EXCEPT_SVC,
+                ExceptionRecord.CAUSE_SWI, "swi instruction", imm24);
     }
 
     /**
@@ -4023,8 +4147,8 @@ public class ExecStageARMv5 extends Stage {
             return;
         }
 
-        raiseException(ARMv5.EXCEPT_ABT_INST, "Warning: Undefined instruction " +
-                String.format("inst:0x%08x.", inst.getInst()));
+        raiseException(ARMv5.EXCEPT_ABT_INST,
+                ExceptionRecord.CAUSE_UND, "Warning: Undefined instruction", inst.getInst());
 
         //TODO: Not implemented
         throw new IllegalArgumentException("Sorry, not implemented.");
@@ -94,11 +94,14 @@ public class ExecStageThumb extends Stage {
     /**
      * 例外を要求します。
      *
-     * @param num    例外番号（EXCEPT_xxxx）
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param num   例外番号（EXCEPT_xxxx）
+     * @param cause 例外の原因（ExceptionRecord.CAUSE_xxxx）
+     * @param label 例外の説明、文字列定数を指定してください
+     * @param addr  例外に関係するアドレス、または値
+     * @return 例外の記録
      */
-    public void raiseException(int num, String dbgmsg) {
-        getCore().raiseException(num, dbgmsg);
+    public ExceptionRecord raiseException(int num, int cause, String label, int addr) {
+        return getCore().raiseException(num, cause, label, addr);
     }
 
     /**
@@ -123,8 +126,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left & right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -153,8 +155,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left ^ right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -196,9 +197,7 @@ public class ExecStageThumb extends Stage {
             dest = 0;
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -239,9 +238,7 @@ public class ExecStageThumb extends Stage {
             dest = 0;
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -283,9 +280,7 @@ public class ExecStageThumb extends Stage {
             }
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -318,10 +313,9 @@ public class ExecStageThumb extends Stage {
         boolean lc_c = IntegerExt.carryFrom(left, center);
         boolean lc_v = IntegerExt.overflowFrom(left, center, true);
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(lc_c || IntegerExt.carryFrom(lc, right));
-        getCPSR().setVBit(lc_v || IntegerExt.overflowFrom(lc, right, true));
+        getCPSR().setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                lc_c || IntegerExt.carryFrom(lc, right),
+                lc_v || IntegerExt.overflowFrom(lc, right, true));
 
         setReg(rd, dest);
     }
@@ -353,10 +347,9 @@ public class ExecStageThumb extends Stage {
         boolean lc_c = IntegerExt.borrowFrom(left, center);
         boolean lc_v = IntegerExt.overflowFrom(left, center, false);
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!(lc_c || IntegerExt.borrowFrom(lc, right)));
-        getCPSR().setVBit(lc_v || IntegerExt.overflowFrom(lc, right, false));
+        getCPSR().setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                !(lc_c || IntegerExt.borrowFrom(lc, right)),
+                lc_v || IntegerExt.overflowFrom(lc, right, false));
 
         setReg(rd, dest);
     }
@@ -394,9 +387,7 @@ public class ExecStageThumb extends Stage {
             dest = Integer.rotateRight(left, right5);
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -424,8 +415,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left & right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
     }
@@ -452,10 +442,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -482,10 +469,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
     }
 
     /**
@@ -521,8 +505,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left | right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -551,8 +534,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left * right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -581,8 +563,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left & ~right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -610,8 +591,7 @@ public class ExecStageThumb extends Stage {
         left = getReg(rm);
         dest = ~left;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -642,10 +622,7 @@ public class ExecStageThumb extends Stage {
         right = imm3;
         dest = left + right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(IntegerExt.carryFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, true));
+        getCPSR().setFlagsAdd(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -673,10 +650,7 @@ public class ExecStageThumb extends Stage {
         right = imm8;
         dest = left + right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(IntegerExt.carryFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, true));
+        getCPSR().setFlagsAdd(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -704,10 +678,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left + right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(IntegerExt.carryFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, true));
+        getCPSR().setFlagsAdd(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -824,10 +795,7 @@ public class ExecStageThumb extends Stage {
         right = imm3;
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -855,10 +823,7 @@ public class ExecStageThumb extends Stage {
         right = imm8;
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -886,10 +851,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
 
         setReg(rd, dest);
     }
@@ -942,10 +904,7 @@ public class ExecStageThumb extends Stage {
         right = imm8;
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
     }
 
     /**
@@ -970,10 +929,7 @@ public class ExecStageThumb extends Stage {
         right = getReg(rm);
         dest = left - right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(!IntegerExt.borrowFrom(left, right));
-        getCPSR().setVBit(IntegerExt.overflowFrom(left, right, false));
+        getCPSR().setFlagsSub(left, right, dest);
     }
 
     /**
@@ -998,8 +954,7 @@ public class ExecStageThumb extends Stage {
         right = imm8;
         dest = right;
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
+        getCPSR().setFlagsNZ(dest);
         //C flag is unaffected
         //V flag is unaffected
 
@@ -1060,9 +1015,7 @@ public class ExecStageThumb extends Stage {
             dest = left << imm5;
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -1097,9 +1050,7 @@ public class ExecStageThumb extends Stage {
             dest = left >>> imm5;
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -1138,9 +1089,7 @@ public class ExecStageThumb extends Stage {
             dest = left >> imm5;
         }
 
-        getCPSR().setNBit(BitOp.getBit32(dest, 31));
-        getCPSR().setZBit(dest == 0);
-        getCPSR().setCBit(cbit);
+        getCPSR().setFlagsNZC(dest, cbit);
         //V flag is unaffected
 
         setReg(rd, dest);
@@ -1158,6 +1107,7 @@ public class ExecStageThumb extends Stage {
         int rd = inst.getRdField();
         int imm5 = imm5_raw << 2;
         int vaddr, paddr;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldr",
@@ -1175,12 +1125,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldr [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldr", paddr);
             return;
         }
-        setReg(rd, read32_a32(paddr));
+        setReg(rd, (int)data);
     }
 
     /**
@@ -1194,6 +1145,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(3, 3);
         int rd = inst.getRdField();
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldr",
@@ -1210,12 +1162,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldr [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldr", paddr);
             return;
         }
-        value = read32_a32(paddr);
+        value = (int)data;
 
         setReg(rd, value);
     }
@@ -1231,6 +1184,7 @@ public class ExecStageThumb extends Stage {
         int imm8_raw = inst.getField(0, 8);
         int imm8 = imm8_raw << 2;
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldr",
@@ -1247,12 +1201,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldr [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldr", paddr);
             return;
         }
-        value = read32_a32(paddr);
+        value = (int)data;
 
         setReg(rd, value);
     }
@@ -1268,6 +1223,7 @@ public class ExecStageThumb extends Stage {
         int imm8_raw = inst.getField(0, 8);
         int imm8 = imm8_raw << 2;
         int vaddr, paddr;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldr",
@@ -1284,12 +1240,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 4)) {
+        data = readChecked32_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldr [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldr", paddr);
             return;
         }
-        setReg(rd, read32_a32(paddr));
+        setReg(rd, (int)data);
     }
 
     /**
@@ -1303,6 +1260,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(3, 3);
         int rd = inst.getRdField();
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldrb",
@@ -1320,12 +1278,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 1)) {
+        data = readChecked8_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrb [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrb", paddr);
             return;
         }
-        value = ((int) read8_a32(paddr)) & 0xff;
+        value = (int)data;
 
         setReg(rd, value);
     }
@@ -1341,6 +1300,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(3, 3);
         int rd = inst.getRdField();
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldrb",
@@ -1357,12 +1317,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 1)) {
+        data = readChecked8_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrb [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrb", paddr);
             return;
         }
-        value = ((int) read8_a32(paddr)) & 0xff;
+        value = (int)data;
 
         setReg(rd, value);
     }
@@ -1379,6 +1340,7 @@ public class ExecStageThumb extends Stage {
         int rd = inst.getRdField();
         int imm5 = imm5_raw << 1;
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldrh",
@@ -1396,12 +1358,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 2)) {
+        data = readChecked16_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrh [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrh", paddr);
             return;
         }
-        value = ((int) read16_a32(paddr)) & 0xffff;
+        value = (int)data;
 
         setReg(rd, value);
     }
@@ -1417,6 +1380,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(3, 3);
         int rd = inst.getRdField();
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldrh",
@@ -1433,12 +1397,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 2)) {
+        data = readChecked16_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrh [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrh", paddr);
             return;
         }
-        value = ((int) read16_a32(paddr)) & 0xffff;
+        value = (int)data;
 
         setReg(rd, value);
     }
@@ -1454,6 +1419,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(3, 3);
         int rd = inst.getRdField();
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldrsb",
@@ -1470,12 +1436,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 1)) {
+        data = readChecked8_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrsb [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrsb", paddr);
             return;
         }
-        value = read8_a32(paddr);
+        value = (byte)data;
 
         setReg(rd, value);
     }
@@ -1491,6 +1458,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(3, 3);
         int rd = inst.getRdField();
         int vaddr, paddr, value;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldrsh",
@@ -1507,12 +1475,13 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryRead_a32(paddr, 2)) {
+        data = readChecked16_a32(paddr);
+        if (data == RWCore.ACCESS_ABORT) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("ldrsh [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "ldrsh", paddr);
             return;
         }
-        value = read16_a32(paddr);
+        value = (short)data;
 
         setReg(rd, value);
     }
@@ -1546,12 +1515,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 4)) {
+        if (!writeChecked32_a32(paddr, getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("str [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "str", paddr);
             return;
         }
-        write32_a32(paddr, getReg(rd));
     }
 
     /**
@@ -1581,12 +1549,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 4)) {
+        if (!writeChecked32_a32(paddr, getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("str [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "str", paddr);
             return;
         }
-        write32_a32(paddr, getReg(rd));
     }
 
     /**
@@ -1616,12 +1583,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 4)) {
+        if (!writeChecked32_a32(paddr, getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("str [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "str", paddr);
             return;
         }
-        write32_a32(paddr, getReg(rd));
     }
 
     /**
@@ -1652,12 +1618,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 1)) {
+        if (!writeChecked8_a32(paddr, (byte) getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strb [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strb", paddr);
             return;
         }
-        write8_a32(paddr, (byte) getReg(rd));
     }
 
     /**
@@ -1687,12 +1652,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 1)) {
+        if (!writeChecked8_a32(paddr, (byte) getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strb [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strb", paddr);
             return;
         }
-        write8_a32(paddr, (byte) getReg(rd));
     }
 
     /**
@@ -1724,12 +1688,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 2)) {
+        if (!writeChecked16_a32(paddr, (short) getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strh [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strh", paddr);
             return;
         }
-        write16_a32(paddr, (short) getReg(rd));
     }
 
 
@@ -1760,12 +1723,11 @@ public class ExecStageThumb extends Stage {
             return;
         }
 
-        if (!tryWrite_a32(paddr, 2)) {
+        if (!writeChecked16_a32(paddr, (short) getReg(rd))) {
             raiseException(ARMv5.EXCEPT_ABT_DATA,
-                    String.format("strh [%08x]", paddr));
+                    ExceptionRecord.CAUSE_BUS, "strh", paddr);
             return;
         }
-        write16_a32(paddr, (short) getReg(rd));
     }
 
     /**
@@ -1805,12 +1767,11 @@ public class ExecStageThumb extends Stage {
                 return;
             }
 
-            if (!tryWrite_a32(paddr, 4)) {
+            if (!writeChecked32_a32(paddr, getReg(i))) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("push [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "push", paddr);
                 return;
             }
-            write32_a32(paddr, getReg(i));
             vaddr += 4;
         }
         if (br) {
@@ -1820,12 +1781,11 @@ public class ExecStageThumb extends Stage {
                 return;
             }
 
-            if (!tryWrite_a32(paddr, 4)) {
+            if (!writeChecked32_a32(paddr, getReg(14))) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("push [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "push", paddr);
                 return;
             }
-            write32_a32(paddr, getReg(14));
             vaddr += 4;
         }
 
@@ -1842,6 +1802,7 @@ public class ExecStageThumb extends Stage {
         boolean br = inst.getBit(8);
         int rlist = inst.getRegListField();
         int vaddr, paddr, v, len;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "pop",
@@ -1868,12 +1829,13 @@ public class ExecStageThumb extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("pop [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "pop", paddr);
                 return;
             }
-            setReg(i, read32_a32(paddr));
+            setReg(i, (int)data);
             vaddr += 4;
         }
         if (br) {
@@ -1883,12 +1845,13 @@ public class ExecStageThumb extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("pop [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "pop", paddr);
                 return;
             }
-            v = read32_a32(paddr);
+            v = (int)data;
 
             setPC(v & 0xfffffffe);
             getCPSR().setTBit(BitOp.getBit32(v, 0));
@@ -1908,6 +1871,7 @@ public class ExecStageThumb extends Stage {
         int rn = inst.getField(8, 3);
         int rlist = inst.getRegListField();
         int vaddr, paddr, len;
+        long data;
 
         if (!exec) {
             printDisasm(inst, "ldmia",
@@ -1929,12 +1893,13 @@ public class ExecStageThumb extends Stage {
                 return;
             }
 
-            if (!tryRead_a32(paddr, 4)) {
+            data = readChecked32_a32(paddr);
+            if (data == RWCore.ACCESS_ABORT) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("ldmia [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "ldmia", paddr);
                 return;
             }
-            setReg(i, read32_a32(paddr));
+            setReg(i, (int)data);
             vaddr += 4;
         }
 
@@ -1972,12 +1937,11 @@ public class ExecStageThumb extends Stage {
                 return;
             }
 
-            if (!tryWrite_a32(paddr, 4)) {
+            if (!writeChecked32_a32(paddr, getReg(i))) {
                 raiseException(ARMv5.EXCEPT_ABT_DATA,
-                        String.format("stmia [%08x]", paddr));
+                        ExceptionRecord.CAUSE_BUS, "stmia", paddr);
                 return;
             }
-            write32_a32(paddr, getReg(i));
             vaddr += 4;
         }
 
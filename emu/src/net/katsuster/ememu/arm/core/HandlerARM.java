@@ -0,0 +1,15 @@
+package net.katsuster.ememu.arm.core;
+
+/**
+ * デコード済みの ARM 命令を実行するハンドラです。
+ *
+ * @author katsuhiro
+ */
+public interface HandlerARM {
+    /**
+     * 命令を実行します。
+     *
+     * @param inst ARM 命令
+     */
+    public abstract void execute(InstructionARM inst);
+}
@@ -118,10 +118,17 @@ public class InstructionARM extends Instruction {
      * @return 条件を満たしていれば true、満たしていなければ false
      */
     public static boolean satisfiesCond(int cond, PSR psr) {
-        boolean n = psr.getNBit();
-        boolean z = psr.getZBit();
-        boolean c = psr.getCBit();
-        boolean v = psr.getVBit();
+        boolean n, z, c, v;
+
+        if (cond == InstructionARM.COND_AL || cond == InstructionARM.COND_NV) {
+            //フラグを参照しないため、遅延評価中のフラグは評価しない
+            return true;
+        }
+
+        n = psr.getNBit();
+        z = psr.getZBit();
+        c = psr.getCBit();
+        v = psr.getVBit();
 
         switch (cond) {
         case InstructionARM.COND_EQ:
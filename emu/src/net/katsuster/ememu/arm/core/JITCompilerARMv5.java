@@ -0,0 +1,457 @@
+package net.katsuster.ememu.arm.core;
+
+import net.katsuster.ememu.generic.*;
+
+/**
+ * ARM 命令ブロックを JVM のクラスに変換する JIT コンパイラです。
+ *
+ * <p>
+ * ブロック先頭から続く、例外やメモリアクセスを伴わないデータ処理命令
+ * （MOV, MVN, AND, EOR, ORR, BIC, ADD, SUB, RSB, CMP, CMN）をバイトコードに変換します。
+ * オペランドはイミディエートか、シフトなしのレジスタ（r0 ～ r14）に限ります。
+ * 変換できない命令以降は、インタプリタで実行します。
+ * </p>
+ *
+ * <p>
+ * 生成したメソッドはゲストのレジスタをローカル変数に読み込み、
+ * 変換した命令を実行した後、書き換えたレジスタのみをレジスタファイルに書き戻します。
+ * フラグは CPSR の setFlagsAdd, setFlagsSub で設定し、
+ * 条件が AL 以外の命令は InstructionARM.satisfiesCond で判定します。
+ * </p>
+ *
+ * <p>
+ * 生成したクラスはブロックごとに専用のクラスローダで定義するため、
+ * ブロックが無効化されて参照されなくなれば、クラスごと回収されます。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class JITCompilerARMv5 {
+    private static final String PKG = "net/katsuster/ememu/arm/core/";
+    private static final String BLOCK_CLASS = PKG + "CompiledBlockARMv5";
+    private static final String CPU_CLASS = PKG + "ARMv5";
+    private static final String PSR_CLASS = PKG + "PSR";
+    private static final String INST_CLASS = PKG + "InstructionARM";
+    private static final String EXECUTE_DESC =
+            "(L" + CPU_CLASS + ";L" + PSR_CLASS + ";)V";
+
+    //ローカル変数の割り当て
+    private static final int LOCAL_CPU = 1;
+    private static final int LOCAL_CPSR = 2;
+    private static final int LOCAL_REG0 = 3;
+    private static final int LOCAL_LEFT = LOCAL_REG0 + 15;
+    private static final int LOCAL_RIGHT = LOCAL_LEFT + 1;
+    private static final int LOCAL_DEST = LOCAL_RIGHT + 1;
+    private static final int MAX_LOCALS = LOCAL_DEST + 1;
+    private static final int MAX_STACK = 4;
+
+    //JVM の命令
+    private static final int OP_ICONST_M1 = 0x02;
+    private static final int OP_BIPUSH = 0x10;
+    private static final int OP_LDC_W = 0x13;
+    private static final int OP_ILOAD = 0x15;
+    private static final int OP_ALOAD = 0x19;
+    private static final int OP_ALOAD_0 = 0x2a;
+    private static final int OP_ISTORE = 0x36;
+    private static final int OP_IADD = 0x60;
+    private static final int OP_ISUB = 0x64;
+    private static final int OP_IAND = 0x7e;
+    private static final int OP_IOR = 0x80;
+    private static final int OP_IXOR = 0x82;
+    private static final int OP_IFEQ = 0x99;
+    private static final int OP_RETURN = 0xb1;
+    private static final int OP_INVOKEVIRTUAL = 0xb6;
+    private static final int OP_INVOKESPECIAL = 0xb7;
+    private static final int OP_INVOKESTATIC = 0xb8;
+
+    private long serial;
+    private long compiledBlocks;
+    private long compiledInsts;
+
+    public JITCompilerARMv5() {
+        serial = 0;
+    }
+
+    /**
+     * 変換したブロックの数を取得します。
+     *
+     * @return 変換したブロックの数
+     */
+    public long getCompiledBlockCount() {
+        return compiledBlocks;
+    }
+
+    /**
+     * 変換した命令の数を取得します。
+     *
+     * @return 変換した命令の数
+     */
+    public long getCompiledInstructionCount() {
+        return compiledInsts;
+    }
+
+    /**
+     * 命令をバイトコードに変換できるかどうかを取得します。
+     *
+     * @param inst  ARM 命令
+     * @param opind 命令の詳細な種類
+     * @return 変換できるならば true、できなければ false
+     */
+    public static boolean isCompilable(InstructionARM inst, OpIndex opind) {
+        boolean s = inst.getSBit();
+        //イミディエートか、シフトなしのレジスタ
+        boolean opr = inst.getIBit() ||
+                (inst.getField(4, 8) == 0 && inst.getRmField() != 15);
+
+        if (inst.getCondField() == InstructionARM.COND_NV || !opr) {
+            return false;
+        }
+
+        switch (opind) {
+        case INS_ARM_ALUMOV:
+        case INS_ARM_ALUMVN:
+            return !s && inst.getRdField() != 15;
+        case INS_ARM_ALUAND:
+        case INS_ARM_ALUEOR:
+        case INS_ARM_ALUORR:
+        case INS_ARM_ALUBIC:
+            //S ビットありはシフタのキャリーが必要
+            return !s && inst.getRdField() != 15 && inst.getRnField() != 15;
+        case INS_ARM_ALUADD:
+        case INS_ARM_ALUSUB:
+        case INS_ARM_ALURSB:
+            return inst.getRdField() != 15 && inst.getRnField() != 15;
+        case INS_ARM_ALUCMP:
+        case INS_ARM_ALUCMN:
+            return inst.getRnField() != 15;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * ブロック先頭から続く、変換できる命令の数を取得します。
+     *
+     * @param insts   ARM 命令
+     * @param indexes 命令の詳細な種類
+     * @return 変換できる命令の数
+     */
+    public static int getCompilableLength(InstructionARM[] insts, OpIndex[] indexes) {
+        int n;
+
+        for (n = 0; n < insts.length; n++) {
+            if (!isCompilable(insts[n], indexes[n])) {
+                break;
+            }
+        }
+
+        return n;
+    }
+
+    /**
+     * ブロック先頭から n 命令を JVM のクラスに変換します。
+     *
+     * @param pa      ブロック先頭の物理アドレス
+     * @param insts   ARM 命令
+     * @param indexes 命令の詳細な種類
+     * @param n       変換する命令の数、全て変換できる命令である必要があります
+     * @return 変換したブロック
+     */
+    public CompiledBlockARMv5 compile(int pa, InstructionARM[] insts,
+                                      OpIndex[] indexes, int n) {
+        String name = String.format("%sJITBlock_%08x_%d", PKG, pa, serial++);
+        ClassFileWriter cw = new ClassFileWriter(name, BLOCK_CLASS);
+        ClassFileWriter.Code init = new ClassFileWriter.Code();
+        ClassFileWriter.Code code = new ClassFileWriter.Code();
+        boolean[] used = new boolean[15];
+        boolean[] written = new boolean[15];
+        byte[] b;
+        Class<?> c;
+
+        for (int i = 0; i < n; i++) {
+            if (!isCompilable(insts[i], indexes[i])) {
+                throw new IllegalArgumentException(String.format(
+                        "Cannot compile 0x%08x.", insts[i].getInst()));
+            }
+            markRegisters(insts[i], indexes[i], used, written);
+        }
+
+        //コンストラクタ
+        init.u1(OP_ALOAD_0);
+        init.u1(OP_INVOKESPECIAL);
+        init.u2(cw.addMethodref(BLOCK_CLASS, "<init>", "()V"));
+        init.u1(OP_RETURN);
+        cw.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1, 1, init);
+
+        //レジスタをローカル変数に読み込む
+        for (int r = 0; r < 15; r++) {
+            if (used[r]) {
+                loadLocal(code, OP_ALOAD, LOCAL_CPU);
+                code.u1(OP_BIPUSH);
+                code.u1(r);
+                code.u1(OP_INVOKEVIRTUAL);
+                code.u2(cw.addMethodref(CPU_CLASS, "getRegRaw", "(I)I"));
+                loadLocal(code, OP_ISTORE, LOCAL_REG0 + r);
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            compileInst(cw, code, insts[i], indexes[i]);
+        }
+
+        //書き換えたレジスタのみ書き戻す
+        for (int r = 0; r < 15; r++) {
+            if (written[r]) {
+                loadLocal(code, OP_ALOAD, LOCAL_CPU);
+                code.u1(OP_BIPUSH);
+                code.u1(r);
+                loadLocal(code, OP_ILOAD, LOCAL_REG0 + r);
+                code.u1(OP_INVOKEVIRTUAL);
+                code.u2(cw.addMethodref(CPU_CLASS, "setRegRaw", "(II)V"));
+            }
+        }
+        code.u1(OP_RETURN);
+        cw.addMethod(ClassFileWriter.ACC_PUBLIC, "execute", EXECUTE_DESC,
+                MAX_STACK, MAX_LOCALS, code);
+
+        b = cw.toByteArray(ClassFileWriter.ACC_PUBLIC |
+                ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER);
+        c = new BlockLoader(CompiledBlockARMv5.class.getClassLoader())
+                .define(name.replace('/', '.'), b);
+
+        compiledBlocks++;
+        compiledInsts += n;
+
+        try {
+            return (CompiledBlockARMv5)c.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 命令が読み出す、または書き換えるレジスタを記録します。
+     *
+     * @param inst    ARM 命令
+     * @param opind   命令の詳細な種類
+     * @param used    読み出すか書き換えるレジスタ
+     * @param written 書き換えるレジスタ
+     */
+    protected static void markRegisters(InstructionARM inst, OpIndex opind,
+                                        boolean[] used, boolean[] written) {
+        if (!inst.getIBit()) {
+            used[inst.getRmField()] = true;
+        }
+        if (opind != OpIndex.INS_ARM_ALUMOV && opind != OpIndex.INS_ARM_ALUMVN) {
+            used[inst.getRnField()] = true;
+        }
+        if (opind != OpIndex.INS_ARM_ALUCMP && opind != OpIndex.INS_ARM_ALUCMN) {
+            //条件不成立の場合も書き戻すため、元の値を読み込んでおく
+            used[inst.getRdField()] = true;
+            written[inst.getRdField()] = true;
+        }
+    }
+
+    /**
+     * 1 命令をバイトコードに変換します。
+     *
+     * @param cw    クラスファイルのライタ
+     * @param code  バイトコードの出力先
+     * @param inst  ARM 命令
+     * @param opind 命令の詳細な種類
+     */
+    protected void compileInst(ClassFileWriter cw, ClassFileWriter.Code code,
+                               InstructionARM inst, OpIndex opind) {
+        int cond = inst.getCondField();
+        int rd = LOCAL_REG0 + inst.getRdField();
+        boolean s = inst.getSBit();
+        int skip = -1;
+
+        if (cond != InstructionARM.COND_AL) {
+            //条件不成立ならば命令を飛ばす
+            code.u1(OP_BIPUSH);
+            code.u1(cond);
+            loadLocal(code, OP_ALOAD, LOCAL_CPSR);
+            code.u1(OP_INVOKESTATIC);
+            code.u2(cw.addMethodref(INST_CLASS, "satisfiesCond",
+                    "(IL" + PSR_CLASS + ";)Z"));
+            skip = code.getPosition();
+            code.u1(OP_IFEQ);
+            code.u2(0);
+        }
+
+        switch (opind) {
+        case INS_ARM_ALUMOV:
+            loadOperand(cw, code, inst);
+            loadLocal(code, OP_ISTORE, rd);
+            break;
+        case INS_ARM_ALUMVN:
+            loadOperand(cw, code, inst);
+            code.u1(OP_ICONST_M1);
+            code.u1(OP_IXOR);
+            loadLocal(code, OP_ISTORE, rd);
+            break;
+        case INS_ARM_ALUAND:
+            compileLogical(cw, code, inst, OP_IAND, false);
+            break;
+        case INS_ARM_ALUEOR:
+            compileLogical(cw, code, inst, OP_IXOR, false);
+            break;
+        case INS_ARM_ALUORR:
+            compileLogical(cw, code, inst, OP_IOR, false);
+            break;
+        case INS_ARM_ALUBIC:
+            compileLogical(cw, code, inst, OP_IAND, true);
+            break;
+        case INS_ARM_ALUADD:
+            compileArith(cw, code, inst, OP_IADD, false, s, true);
+            break;
+        case INS_ARM_ALUSUB:
+            compileArith(cw, code, inst, OP_ISUB, false, s, true);
+            break;
+        case INS_ARM_ALURSB:
+            compileArith(cw, code, inst, OP_ISUB, true, s, true);
+            break;
+        case INS_ARM_ALUCMP:
+            compileArith(cw, code, inst, OP_ISUB, false, true, false);
+            break;
+        case INS_ARM_ALUCMN:
+            compileArith(cw, code, inst, OP_IADD, false, true, false);
+            break;
+        default:
+            throw new IllegalArgumentException(String.format(
+                    "Cannot compile 0x%08x.", inst.getInst()));
+        }
+
+        if (skip >= 0) {
+            code.patchBranch(skip, code.getPosition());
+        }
+    }
+
+    /**
+     * S ビットなしの論理演算命令を変換します。
+     *
+     * @param cw     クラスファイルのライタ
+     * @param code   バイトコードの出力先
+     * @param inst   ARM 命令
+     * @param op     JVM の演算命令
+     * @param invert 第 2 オペランドを反転するならば true（BIC 命令）
+     */
+    protected void compileLogical(ClassFileWriter cw, ClassFileWriter.Code code,
+                                  InstructionARM inst, int op, boolean invert) {
+        loadLocal(code, OP_ILOAD, LOCAL_REG0 + inst.getRnField());
+        loadOperand(cw, code, inst);
+        if (invert) {
+            code.u1(OP_ICONST_M1);
+            code.u1(OP_IXOR);
+        }
+        code.u1(op);
+        loadLocal(code, OP_ISTORE, LOCAL_REG0 + inst.getRdField());
+    }
+
+    /**
+     * 加算、減算命令を変換します。
+     *
+     * @param cw      クラスファイルのライタ
+     * @param code    バイトコードの出力先
+     * @param inst    ARM 命令
+     * @param op      JVM の演算命令（IADD または ISUB）
+     * @param reverse オペランドを入れ替えるならば true（RSB 命令）
+     * @param s       フラグを設定するならば true
+     * @param store   結果を Rd に書き込むならば true
+     */
+    protected void compileArith(ClassFileWriter cw, ClassFileWriter.Code code,
+                                InstructionARM inst, int op, boolean reverse,
+                                boolean s, boolean store) {
+        int rn = LOCAL_REG0 + inst.getRnField();
+        int rd = LOCAL_REG0 + inst.getRdField();
+
+        if (!s) {
+            if (reverse) {
+                loadOperand(cw, code, inst);
+                loadLocal(code, OP_ILOAD, rn);
+            } else {
+                loadLocal(code, OP_ILOAD, rn);
+                loadOperand(cw, code, inst);
+            }
+            code.u1(op);
+            loadLocal(code, OP_ISTORE, rd);
+            return;
+        }
+
+        //left, right, dest を求めてからフラグを設定する
+        if (reverse) {
+            loadOperand(cw, code, inst);
+            loadLocal(code, OP_ISTORE, LOCAL_LEFT);
+            loadLocal(code, OP_ILOAD, rn);
+            loadLocal(code, OP_ISTORE, LOCAL_RIGHT);
+        } else {
+            loadLocal(code, OP_ILOAD, rn);
+            loadLocal(code, OP_ISTORE, LOCAL_LEFT);
+            loadOperand(cw, code, inst);
+            loadLocal(code, OP_ISTORE, LOCAL_RIGHT);
+        }
+        loadLocal(code, OP_ILOAD, LOCAL_LEFT);
+        loadLocal(code, OP_ILOAD, LOCAL_RIGHT);
+        code.u1(op);
+        loadLocal(code, OP_ISTORE, LOCAL_DEST);
+
+        loadLocal(code, OP_ALOAD, LOCAL_CPSR);
+        loadLocal(code, OP_ILOAD, LOCAL_LEFT);
+        loadLocal(code, OP_ILOAD, LOCAL_RIGHT);
+        loadLocal(code, OP_ILOAD, LOCAL_DEST);
+        code.u1(OP_INVOKEVIRTUAL);
+        code.u2(cw.addMethodref(PSR_CLASS,
+                (op == OP_IADD) ? "setFlagsAdd" : "setFlagsSub", "(III)V"));
+
+        if (store) {
+            loadLocal(code, OP_ILOAD, LOCAL_DEST);
+            loadLocal(code, OP_ISTORE, rd);
+        }
+    }
+
+    /**
+     * 第 2 オペランド（イミディエートか、シフトなしのレジスタ）をスタックに積みます。
+     *
+     * @param cw   クラスファイルのライタ
+     * @param code バイトコードの出力先
+     * @param inst ARM 命令
+     */
+    protected void loadOperand(ClassFileWriter cw, ClassFileWriter.Code code,
+                               InstructionARM inst) {
+        if (inst.getIBit()) {
+            int imm = Integer.rotateRight(inst.getField(0, 8),
+                    inst.getField(8, 4) * 2);
+
+            code.u1(OP_LDC_W);
+            code.u2(cw.addInteger(imm));
+        } else {
+            loadLocal(code, OP_ILOAD, LOCAL_REG0 + inst.getRmField());
+        }
+    }
+
+    /**
+     * ローカル変数を読み書きする命令（ILOAD, ISTORE, ALOAD）を書き込みます。
+     *
+     * @param code バイトコードの出力先
+     * @param op   JVM の命令
+     * @param n    ローカル変数の番号
+     */
+    protected static void loadLocal(ClassFileWriter.Code code, int op, int n) {
+        code.u1(op);
+        code.u1(n);
+    }
+
+    /**
+     * 変換したクラスを定義する、ブロックごとのクラスローダです。
+     */
+    private static class BlockLoader extends ClassLoader {
+        public BlockLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        public Class<?> define(String name, byte[] b) {
+            return defineClass(name, b, 0, b.length);
+        }
+    }
+}
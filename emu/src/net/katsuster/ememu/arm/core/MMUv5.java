@@ -1,6 +1,6 @@
 package net.katsuster.ememu.arm.core;
 
-import net.katsuster.ememu.generic.BitOp;
+import net.katsuster.ememu.generic.*;
 
 /**
  * ARMv5 VMSA
@@ -23,6 +23,8 @@ public class MMUv5 {
     private int[] domAcc;
     private boolean systemProtect;
     private boolean romProtect;
+    private TLBv5 itlb;
+    private TLBv5 dtlb;
 
     private ARMv5 cpu;
     private CoProcStdv5 cpStd;
@@ -57,6 +59,8 @@ public class MMUv5 {
         this.domAcc = new int[16];
         this.systemProtect = false;
         this.romProtect = false;
+        this.itlb = new TLBv5("I-TLB", 1024);
+        this.dtlb = new TLBv5("D-TLB", 1024);
 
         this.cpu = cpu;
         this.cpStd = cp;
@@ -133,13 +137,16 @@ public class MMUv5 {
      * @param fs   フォルトステータス
      * @param dom  ドメイン、存在しない場合は 0
      * @param va   仮想アドレス（VA）
+     * @param entryL1 第 1 レベルディスクリプタ、存在しない場合は 0
+     * @param entryL2 第 2 レベルディスクリプタ、存在しない場合は 0
      * @param inst 仮想アドレスが指すデータの種類、
      *             命令の場合は true、データの場合は false
      * @param priv 特権アクセスならば true、非特権アクセスならば false
      * @param read 読み取りアクセスならば true、書き込みアクセスならば false
-     * @param dbgmsg デバッグ用のメッセージ
+     * @param dbgmsg デバッグ用のメッセージ、文字列定数を指定してください
      */
-    public void faultMMU(int fs, int dom, int va, boolean inst, boolean priv, boolean read, String dbgmsg) {
+    public void faultMMU(int fs, int dom, int va, int entryL1, int entryL2,
+                         boolean inst, boolean priv, boolean read, String dbgmsg) {
         int val, num;
 
         //フォルトを起こしたことを覚えておく
@@ -162,11 +169,8 @@ public class MMUv5 {
             //データアボート例外
             num = ARMv5.EXCEPT_ABT_DATA;
         }
-        getCPU().raiseException(num, String.format("%s, va:0x%08x, dom:%d, inst:%s, priv:%s, read:%s.",
-                dbgmsg, va, dom,
-                inst ? "ins" : "dat",
-                priv ? "priv" : "user",
-                read ? "rd" : "wr"));
+        getCPU().raiseException(num, ExceptionRecord.CAUSE_MMU, dbgmsg, va)
+                .setFault(fs, dom, entryL1, entryL2, inst, priv, read);
     }
 
     /**
@@ -273,6 +277,53 @@ public class MMUv5 {
         romProtect = b;
     }
 
+    /**
+     * 命令 TLB を取得します。
+     *
+     * @return 命令 TLB
+     */
+    public TLBv5 getITLB() {
+        return itlb;
+    }
+
+    /**
+     * データ TLB を取得します。
+     *
+     * @return データ TLB
+     */
+    public TLBv5 getDTLB() {
+        return dtlb;
+    }
+
+    /**
+     * 仮想アドレスが指すデータの種類に対応する TLB を取得します。
+     *
+     * @param inst 仮想アドレスが指すデータの種類、
+     *             命令の場合は true、データの場合は false
+     * @return 命令の場合は命令 TLB、データの場合はデータ TLB
+     */
+    public TLBv5 getTLB(boolean inst) {
+        return inst ? itlb : dtlb;
+    }
+
+    /**
+     * 命令 TLB、データ TLB の全てのエントリを無効化します。
+     */
+    public void invalidateTLBAll() {
+        itlb.invalidateAll();
+        dtlb.invalidateAll();
+    }
+
+    /**
+     * 命令 TLB、データ TLB から仮想アドレスを含むエントリを無効化します。
+     *
+     * @param va 仮想アドレス
+     */
+    public void invalidateTLB(int va) {
+        itlb.invalidate(va);
+        dtlb.invalidate(va);
+    }
+
     /**
      * MMU が接続されている CPU を取得します。
      *
@@ -308,8 +359,35 @@ public class MMUv5 {
      * @return 物理アドレス（PA）
      */
     public int translate(int va, int size, boolean inst, boolean priv, boolean read) {
+        int pa;
+
+        pa = translateAddress(va, size, inst, priv, read);
+        if (!read && !isFault()) {
+            //変換済みの命令ブロックを含むページへの書き込みを通知する
+            getCPU().getBlockCache().notifyWrite(pa);
+        }
+
+        return pa;
+    }
+
+    /**
+     * アドレス変換を行います。
+     *
+     * translate() と同様ですが、書き込みアクセスの通知は行いません。
+     *
+     * @param va   仮想アドレス（VA）
+     * @param size アクセスするサイズ
+     * @param inst 仮想アドレスが指すデータの種類、
+     *             命令の場合は true、データの場合は false
+     * @param priv 特権アクセスならば true、非特権アクセスならば false
+     * @param read 読み取りアクセスならば true、書き込みアクセスならば false
+     * @return 物理アドレス（PA）
+     */
+    protected int translateAddress(int va, int size, boolean inst, boolean priv, boolean read) {
+        TLBEntryv5 ent;
         int paL1, entryL1, typeL1, pa;
         boolean validAlign;
+        long data;
 
         if (isFault()) {
             //フォルト状態がクリアされず残っている
@@ -319,7 +397,7 @@ public class MMUv5 {
         //TODO: アドレス以外の条件がある？
         /*if (!inst && 0x00 <= va && va <= 0x1f) {
             //ベクタ例外
-            faultMMU(FS_VECT, 0, va, inst, priv, read,
+            faultMMU(FS_VECT, 0, va, 0, 0, inst, priv, read,
                     "MMU vector");
             return 0;
         }*/
@@ -332,28 +410,36 @@ public class MMUv5 {
         validAlign = (va & (size - 1)) == 0;
         if (isAlignmentCheck() && !validAlign) {
             //アラインメントフォルト
-            faultMMU(FS_ALIGN1, 0, va, inst, priv, read,
-                    String.format("MMU align, size:%d", size));
+            faultMMU(FS_ALIGN1, 0, va, 0, 0, inst, priv, read,
+                    "MMU align");
             return 0;
         }
 
+        ent = getTLB(inst).lookup(va);
+        if (ent != null && isPermittedEntry(ent, va, priv, read)) {
+            //TLB ヒット
+            return ent.translate(va);
+        }
+
+        //TLB ミス、またはアクセス許可がない場合は、
+        //変換テーブルを辿り直してフォルトを判定する
         paL1 = getL1Address(va);
-        if (!getCPU().tryRead_a32(paL1, 4)) {
+        data = getCPU().readChecked32_a32(paL1);
+        if (data == RWCore.ACCESS_ABORT) {
             //変換時の外部アボート、第1レベル
-            faultMMU(FS_TRANS_L1, 0, va, inst, priv, read,
-                    String.format("MMU trans L1, paL1:0x%08x", paL1));
+            faultMMU(FS_TRANS_L1, 0, va, 0, 0, inst, priv, read,
+                    "MMU trans L1");
             return 0;
         }
-        entryL1 = getCPU().read32_a32(paL1);
+        entryL1 = (int)data;
         typeL1 = BitOp.getField32(entryL1, 0, 2);
 
         switch (typeL1) {
         case 0:
             //フォルト
             //変換フォルト、セクション
-            faultMMU(FS_TRANS_SEC, 0, va, inst, priv, read,
-                    String.format("MMU trans sec, paL1:0x%08x, entryL1:0x%08x",
-                            paL1, entryL1));
+            faultMMU(FS_TRANS_SEC, 0, va, entryL1, 0, inst, priv, read,
+                    "MMU trans sec");
             return 0;
         case 1:
             //概略ページテーブル
@@ -376,6 +462,84 @@ public class MMUv5 {
         return pa;
     }
 
+    /**
+     * TLB を用いてアドレス変換を行い、
+     * 物理アドレスが RAM を指していれば、その TLB エントリを返します。
+     *
+     * 変換テーブルを辿る必要がある場合、アクセスが許可されない場合、
+     * 物理アドレスが RAM 以外を指す場合、
+     * 変換済みの命令ブロックを含むページへ書き込む場合は null を返します。
+     * この場合は translate() を用いて、通常のアドレス変換を行う必要があります。
+     *
+     * フォルトは発生しません。
+     *
+     * @param va   仮想アドレス（VA）
+     * @param size アクセスするサイズ
+     * @param inst 仮想アドレスが指すデータの種類、
+     *             命令の場合は true、データの場合は false
+     * @param priv 特権アクセスならば true、非特権アクセスならば false
+     * @param read 読み取りアクセスならば true、書き込みアクセスならば false
+     * @return RAM を直接指す TLB エントリ、存在しなければ null
+     */
+    public TLBEntryv5 translateHost(int va, int size, boolean inst, boolean priv, boolean read) {
+        TLBEntryv5 ent;
+
+        if (!isEnable() || isFault()) {
+            return null;
+        }
+        if (isAlignmentCheck() && (va & (size - 1)) != 0) {
+            return null;
+        }
+
+        ent = getTLB(inst).lookupHost(va);
+        if (ent == null || !isPermittedEntry(ent, va, priv, read)) {
+            return null;
+        }
+        if (!read && getCPU().getBlockCache().isCodePage(ent.translate(va))) {
+            return null;
+        }
+
+        return ent;
+    }
+
+    /**
+     * TLB エントリが変換する物理アドレスが RAM を指していれば、
+     * RAM の内容を保持する配列を TLB エントリに設定します。
+     *
+     * @param ent TLB エントリ
+     */
+    protected void fillHost(TLBEntryv5 ent) {
+        Bus bus = getCPU().getSlaveBus();
+        long st = ent.getPhysicalBase() & 0xffffffffL;
+        long ed = st + (~ent.getMask() & 0xffffffffL);
+        long off;
+        SlaveCore sc;
+
+        if (bus == null) {
+            return;
+        }
+
+        sc = bus.getSlaveCore(st, ed);
+        off = bus.getSlaveCoreOffset(st, ed);
+        if (!(sc instanceof RAM) || off < 0 ||
+                off + (ed - st + 1) > ((RAM) sc).getSize()) {
+            //RAM 以外、または RAM の範囲外
+            return;
+        }
+
+        if (sc instanceof RAM32) {
+            ent.setHost32(((RAM32) sc).getWordArray(), (int)off);
+        } else if (sc instanceof RAM64) {
+            ent.setHost64(((RAM64) sc).getWordArray(), (int)off);
+        }
+        if (ent.hasHost()) {
+            //直接書き込んだページも記録する
+            //記録するかどうかは書き込むたびに RAM が判定するため、
+            //エントリを登録した後に記録を開始しても漏れない
+            ent.setHostRAM((RAM) sc);
+        }
+    }
+
     /**
      * 変換テーブルの第 1 レベル記述子のアドレスを取得します。
      *
@@ -482,10 +646,8 @@ public class MMUv5 {
         case DOMACC_INVALID:
         case DOMACC_RESERVED:
             //ドメインフォルト、ページ
-            faultMMU(FS_DOM_PAGE, dom, va, inst, priv, read,
-                    String.format("Domain page (large), dom list:0x%08x, dom acc:%d, entryL1:0x%08x",
-                            getCoProcStd().getCReg(CoProcStdv5.CR03_MMU_DACR),
-                            acc, entryL1));
+            faultMMU(FS_DOM_PAGE, dom, va, entryL1, 0, inst, priv, read,
+                    "Domain page (large)");
             return 0;
         case DOMACC_CLIENT:
             if (isPermitted(priv, read, apsub)) {
@@ -494,9 +656,8 @@ public class MMUv5 {
             }
 
             //許可フォルト、ページ
-            faultMMU(FS_PERM_PAGE, dom, va, inst, priv, read,
-                    String.format("Permission page (large), dom acc:%d, sub:%d, apsub:%d, entryL1:0x%08x, entryL2:0x%08x",
-                            acc, sub, apsub, entryL1, entryL2));
+            faultMMU(FS_PERM_PAGE, dom, va, entryL1, entryL2, inst, priv, read,
+                    "Permission page (large)");
             return 0;
         case DOMACC_MANAGER:
             //アクセス許可がある
@@ -508,6 +669,9 @@ public class MMUv5 {
         }
 
         pa = (base << 16) | tblIndex;
+        fillHost(getTLB(inst).fill(TLBEntryv5.TYPE_LARGE, va, pa, dom,
+                BitOp.getField32(entryL2, 4, 2), BitOp.getField32(entryL2, 6, 2),
+                BitOp.getField32(entryL2, 8, 2), BitOp.getField32(entryL2, 10, 2)));
 
         return pa;
     }
@@ -550,10 +714,8 @@ public class MMUv5 {
         case DOMACC_INVALID:
         case DOMACC_RESERVED:
             //ドメインフォルト、ページ
-            faultMMU(FS_DOM_PAGE, dom, va, inst, priv, read,
-                    String.format("Domain page (small), dom list:0x%08x, dom acc:%d, entryL1:0x%08x",
-                            getCoProcStd().getCReg(CoProcStdv5.CR03_MMU_DACR),
-                            acc, entryL1));
+            faultMMU(FS_DOM_PAGE, dom, va, entryL1, 0, inst, priv, read,
+                    "Domain page (small)");
             return 0;
         case DOMACC_CLIENT:
             if (isPermitted(priv, read, apsub)) {
@@ -562,9 +724,8 @@ public class MMUv5 {
             }
 
             //許可フォルト、ページ
-            faultMMU(FS_PERM_PAGE, dom, va, inst, priv, read,
-                    String.format("Permission page (small), dom acc:%d, sub:%d, apsub:%d, entryL1:0x%08x, entryL2:0x%08x",
-                            acc, sub, apsub, entryL1, entryL2));
+            faultMMU(FS_PERM_PAGE, dom, va, entryL1, entryL2, inst, priv, read,
+                    "Permission page (small)");
             return 0;
         case DOMACC_MANAGER:
             //アクセス許可がある
@@ -576,6 +737,9 @@ public class MMUv5 {
         }
 
         pa = (base << 12) | tblIndex;
+        fillHost(getTLB(inst).fill(TLBEntryv5.TYPE_SMALL, va, pa, dom,
+                BitOp.getField32(entryL2, 4, 2), BitOp.getField32(entryL2, 6, 2),
+                BitOp.getField32(entryL2, 8, 2), BitOp.getField32(entryL2, 10, 2)));
 
         return pa;
     }
@@ -604,10 +768,8 @@ public class MMUv5 {
         case DOMACC_INVALID:
         case DOMACC_RESERVED:
             //ドメインフォルト、ページ
-            faultMMU(FS_DOM_PAGE, dom, va, inst, priv, read,
-                    String.format("Domain page (tiny), dom list:0x%08x, dom acc:%d, entryL1:0x%08x",
-                            getCoProcStd().getCReg(CoProcStdv5.CR03_MMU_DACR),
-                            acc, entryL1));
+            faultMMU(FS_DOM_PAGE, dom, va, entryL1, 0, inst, priv, read,
+                    "Domain page (tiny)");
             return 0;
         case DOMACC_CLIENT:
             if (isPermitted(priv, read, ap)) {
@@ -616,9 +778,8 @@ public class MMUv5 {
             }
 
             //許可フォルト、ページ
-            faultMMU(FS_PERM_PAGE, dom, va, inst, priv, read,
-                    String.format("Permission page (tiny), dom acc:%d, ap:%d, entryL1:0x%08x, entryL2:0x%08x",
-                            acc, ap, entryL1, entryL2));
+            faultMMU(FS_PERM_PAGE, dom, va, entryL1, entryL2, inst, priv, read,
+                    "Permission page (tiny)");
             return 0;
         case DOMACC_MANAGER:
             //アクセス許可がある
@@ -630,6 +791,7 @@ public class MMUv5 {
         }
 
         pa = (base << 10) | tblIndex;
+        fillHost(getTLB(inst).fill(TLBEntryv5.TYPE_TINY, va, pa, dom, ap, ap, ap, ap));
 
         return pa;
     }
@@ -675,6 +837,29 @@ public class MMUv5 {
         return result;
     }
 
+    /**
+     * TLB エントリによるアクセスが許可されるかどうかを取得します。
+     *
+     * ドメインアクセス値は TLB に登録した後に変更される可能性があるため、
+     * TLB ヒットのたびに現在の値を参照します。
+     *
+     * @param ent  TLB エントリ
+     * @param va   仮想アドレス
+     * @param priv 特権アクセスならば true、非特権アクセスならば false
+     * @param read 読み取りアクセスならば true、書き込みアクセスならば false
+     * @return アクセスが許可される場合は true、許可されない場合は false
+     */
+    protected boolean isPermittedEntry(TLBEntryv5 ent, int va, boolean priv, boolean read) {
+        switch (domAcc[ent.getDomain()]) {
+        case DOMACC_CLIENT:
+            return isPermitted(priv, read, ent.getAP(va));
+        case DOMACC_MANAGER:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     /**
      * セクション（1MB のメモリブロック）のアドレスを変換します。
      *
@@ -703,10 +888,8 @@ public class MMUv5 {
         case DOMACC_INVALID:
         case DOMACC_RESERVED:
             //ドメインフォルト、セクション
-            faultMMU(FS_DOM_SEC, dom, va, inst, priv, read,
-                    String.format("Domain sec, dom list:0x%08x, dom acc:%d, entryL1:0x%08x",
-                            getCoProcStd().getCReg(CoProcStdv5.CR03_MMU_DACR),
-                            acc, entryL1));
+            faultMMU(FS_DOM_SEC, dom, va, entryL1, 0, inst, priv, read,
+                    "Domain sec");
             return 0;
         case DOMACC_CLIENT:
             if (isPermitted(priv, read, ap)) {
@@ -715,9 +898,8 @@ public class MMUv5 {
             }
 
             //許可フォルト、セクション
-            faultMMU(FS_PERM_SEC, dom, va, inst, priv, read,
-                    String.format("Permission sec, dom acc:%d, ap:%d, entryL1:0x%08x",
-                            acc, ap, entryL1));
+            faultMMU(FS_PERM_SEC, dom, va, entryL1, 0, inst, priv, read,
+                    "Permission sec");
             return 0;
         case DOMACC_MANAGER:
             //アクセス許可がある
@@ -729,6 +911,7 @@ public class MMUv5 {
         }
 
         pa = (base << 20) | tblIndex;
+        fillHost(getTLB(inst).fill(TLBEntryv5.TYPE_SECTION, va, pa, dom, ap, ap, ap, ap));
 
         return pa;
     }
@@ -752,25 +935,25 @@ public class MMUv5 {
         //int imp = BitOp.getField32(entryL1, 2, 3);
         int paL2, entryL2, typeL2;
         int pa;
+        long data;
 
         paL2 = getL2AddressCoarse(va, entryL1);
-        if (!getCPU().tryRead_a32(paL2, 4)) {
+        data = getCPU().readChecked32_a32(paL2);
+        if (data == RWCore.ACCESS_ABORT) {
             //変換時の外部アボート、第2レベル
-            faultMMU(FS_TRANS_L2, 0, va, inst, priv, read,
-                    String.format("MMU trans L2 coarse, entryL1:0x%08x, paL2:0x%08x",
-                            entryL1, paL2));
+            faultMMU(FS_TRANS_L2, 0, va, entryL1, 0, inst, priv, read,
+                    "MMU trans L2 coarse");
             return 0;
         }
-        entryL2 = getCPU().read32_a32(paL2);
+        entryL2 = (int)data;
         typeL2 = BitOp.getField32(entryL2, 0, 2);
 
         switch (typeL2) {
         case 0:
             //フォルト
             //変換フォルト、ページ
-            faultMMU(FS_TRANS_PAGE, 0, va, inst, priv, read,
-                    String.format("MMU trans coarse page, paL2:0x%08x, entryL2:0x%08x",
-                            paL2, entryL2));
+            faultMMU(FS_TRANS_PAGE, 0, va, entryL1, entryL2, inst, priv, read,
+                    "MMU trans coarse page");
             return 0;
         case 1:
             //大ページ
@@ -813,25 +996,25 @@ public class MMUv5 {
         //int imp = BitOp.getField32(entryL1, 2, 3);
         int paL2, entryL2, typeL2;
         int pa;
+        long data;
 
         paL2 = getL2AddressFine(va, entryL1);
-        if (!getCPU().tryRead_a32(paL2, 4)) {
+        data = getCPU().readChecked32_a32(paL2);
+        if (data == RWCore.ACCESS_ABORT) {
             //変換時の外部アボート、第2レベル
-            faultMMU(FS_TRANS_L2, 0, va, inst, priv, read,
-                    String.format("MMU trans L2 fine, entryL1:0x%08x, paL2:0x%08x",
-                            entryL1, paL2));
+            faultMMU(FS_TRANS_L2, 0, va, entryL1, 0, inst, priv, read,
+                    "MMU trans L2 fine");
             return 0;
         }
-        entryL2 = getCPU().read32_a32(paL2);
+        entryL2 = (int)data;
         typeL2 = BitOp.getField32(entryL2, 0, 2);
 
         switch (typeL2) {
         case 0:
             //フォルト
             //変換フォルト、ページ
-            faultMMU(FS_TRANS_PAGE, 0, va, inst, priv, read,
-                    String.format("MMU trans L2 fine fault page, paL2:0x%08x, entryL2:0x%08x",
-                            paL2, entryL2));
+            faultMMU(FS_TRANS_PAGE, 0, va, entryL1, entryL2, inst, priv, read,
+                    "MMU trans L2 fine fault page");
             return 0;
         case 1:
             //大ページ
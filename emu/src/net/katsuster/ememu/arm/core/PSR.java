@@ -22,9 +22,20 @@ public class PSR extends Reg32 {
     public static final int MODE_UND = 0x1b;
     public static final int MODE_SYS = 0x1f;
 
+    //遅延評価中のフラグの種類
+    private static final int LAZY_NONE = 0;
+    private static final int LAZY_ADD = 1;
+    private static final int LAZY_SUB = 2;
+
     //PSR の変化を通知するレジスタファイル
     ARMRegFile regfile;
 
+    //NZCV フラグの遅延評価に用いる、最後にフラグを設定した演算とオペランド
+    private int lazyOp;
+    private int lazyLeft;
+    private int lazyRight;
+    private int lazyDest;
+
     /**
      * 値 0 を持つ PSR（プログラムステートレジスタ）を作成します。
      */
@@ -44,6 +55,21 @@ public class PSR extends Reg32 {
         regfile = rf;
     }
 
+    /**
+     * PSR の値を取得します。
+     *
+     * 遅延評価中の NZCV フラグがあれば、値に反映してから返します。
+     *
+     * @return PSR の値
+     */
+    @Override
+    public int getValue() {
+        if (lazyOp != LAZY_NONE) {
+            evaluateFlags();
+        }
+        return super.getValue();
+    }
+
     /**
      * PSR の値を設定します。
      *
@@ -53,12 +79,54 @@ public class PSR extends Reg32 {
      */
     @Override
     public void setValue(int v) {
+        lazyOp = LAZY_NONE;
         super.setValue(v);
         if (regfile != null) {
             regfile.notifyChangedPSR();
         }
     }
 
+    /**
+     * 遅延評価中の NZCV フラグを反映せずに、PSR の値を取得します。
+     *
+     * NZCV フラグ以外のビット（I, F, T, M など）を読み出す際に用います。
+     * NZCV フラグの値は最新とは限りません。
+     *
+     * @return PSR の値
+     */
+    protected int getRawValue() {
+        return super.getValue();
+    }
+
+    /**
+     * NZCV フラグ以外のビット（I, F, T, M など）を変更します。
+     *
+     * 遅延評価中の NZCV フラグは評価せずに残します。
+     * 動作モードが変わる可能性があるため、レジスタファイルに通知します。
+     *
+     * @param v 新しい PSR の値、NZCV フラグは無視されます
+     */
+    protected void setControlValue(int v) {
+        super.setValue((super.getValue() & 0xf0000000) | (v & ~0xf0000000));
+        if (regfile != null) {
+            regfile.notifyChangedPSR();
+        }
+    }
+
+    /**
+     * 条件フラグのみが変化した PSR の値を設定します。
+     *
+     * 遅延評価中の NZCV フラグは破棄します。
+     * フラグの変更では動作モードは変わらないため、
+     * レジスタファイルへの通知は行いません。
+     *
+     * @param v 新しい PSR の値
+     */
+    protected void setFlagsValue(int v) {
+        lazyOp = LAZY_NONE;
+        super.setValue(v);
+    }
+
     /**
      * 別の PSR から値を設定します。
      *
@@ -76,7 +144,7 @@ public class PSR extends Reg32 {
      * @return プロセッサの動作モード
      */
     public int getMode() {
-        return getMode(getValue());
+        return getMode(getRawValue());
     }
 
     /**
@@ -98,7 +166,7 @@ public class PSR extends Reg32 {
      * @param mod 新たなプロセッサの動作モード
      */
     public void setMode(int mod) {
-        setValue(setMode(getValue(), mod));
+        setControlValue(setMode(getRawValue(), mod));
     }
 
     /**
@@ -206,7 +274,7 @@ public class PSR extends Reg32 {
      * @param nv N ビットをセットするなら true, クリアするなら false
      */
     public void setNBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_N, nv));
+        setFlagsValue(BitOp.setBit32(getValue(), BIT_N, nv));
     }
 
     /**
@@ -232,7 +300,7 @@ public class PSR extends Reg32 {
      * @param nv Z ビットをセットするなら true, クリアするなら false
      */
     public void setZBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_Z, nv));
+        setFlagsValue(BitOp.setBit32(getValue(), BIT_Z, nv));
     }
 
     /**
@@ -278,7 +346,7 @@ public class PSR extends Reg32 {
      * @param nv C ビットをセットするなら true, クリアするなら false
      */
     public void setCBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_C, nv));
+        setFlagsValue(BitOp.setBit32(getValue(), BIT_C, nv));
     }
 
     /**
@@ -310,7 +378,121 @@ public class PSR extends Reg32 {
      * @param nv V ビットをセットするなら true, クリアするなら false
      */
     public void setVBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_V, nv));
+        setFlagsValue(BitOp.setBit32(getValue(), BIT_V, nv));
+    }
+
+    /**
+     * 演算結果から N, Z ビットを設定します。
+     *
+     * C, V ビットは変化しません。
+     *
+     * @param dest 演算結果
+     */
+    public void setFlagsNZ(int dest) {
+        int v = getValue();
+
+        v &= ~0xc0000000;
+        v |= dest & 0x80000000;
+        v |= (dest == 0) ? 0x40000000 : 0;
+        setFlagsValue(v);
+    }
+
+    /**
+     * 演算結果とキャリーから N, Z, C ビットを設定します。
+     *
+     * V ビットは変化しません。
+     *
+     * @param dest 演算結果
+     * @param c    C ビットをセットするなら true, クリアするなら false
+     */
+    public void setFlagsNZC(int dest, boolean c) {
+        int v = getValue();
+
+        v &= ~0xe0000000;
+        v |= dest & 0x80000000;
+        v |= (dest == 0) ? 0x40000000 : 0;
+        v |= c ? 0x20000000 : 0;
+        setFlagsValue(v);
+    }
+
+    /**
+     * N, Z, C, V ビットをまとめて設定します。
+     *
+     * @param n N ビットをセットするなら true, クリアするなら false
+     * @param z Z ビットをセットするなら true, クリアするなら false
+     * @param c C ビットをセットするなら true, クリアするなら false
+     * @param v V ビットをセットするなら true, クリアするなら false
+     */
+    public void setFlagsNZCV(boolean n, boolean z, boolean c, boolean v) {
+        //全てのフラグを上書きするため、遅延評価中のフラグは評価しない
+        int val = getRawValue();
+
+        val &= ~0xf0000000;
+        val |= n ? 0x80000000 : 0;
+        val |= z ? 0x40000000 : 0;
+        val |= c ? 0x20000000 : 0;
+        val |= v ? 0x10000000 : 0;
+        setFlagsValue(val);
+    }
+
+    /**
+     * 加算 dest = left + right の結果から N, Z, C, V ビットを設定します。
+     *
+     * フラグは遅延評価され、PSR の値が読み出されたときに計算されます。
+     *
+     * @param left  左オペランド
+     * @param right 右オペランド
+     * @param dest  演算結果
+     */
+    public void setFlagsAdd(int left, int right, int dest) {
+        lazyOp = LAZY_ADD;
+        lazyLeft = left;
+        lazyRight = right;
+        lazyDest = dest;
+    }
+
+    /**
+     * 減算 dest = left - right の結果から N, Z, C, V ビットを設定します。
+     *
+     * C ビットはボローが生じなかった場合にセットされます。
+     * フラグは遅延評価され、PSR の値が読み出されたときに計算されます。
+     *
+     * @param left  左オペランド
+     * @param right 右オペランド
+     * @param dest  演算結果
+     */
+    public void setFlagsSub(int left, int right, int dest) {
+        lazyOp = LAZY_SUB;
+        lazyLeft = left;
+        lazyRight = right;
+        lazyDest = dest;
+    }
+
+    /**
+     * 遅延評価中の NZCV フラグを計算し、PSR の値に反映します。
+     *
+     * フラグの変更では動作モードは変わらないため、
+     * レジスタファイルへの通知は行いません。
+     */
+    protected void evaluateFlags() {
+        int v = super.getValue();
+        boolean c, ov;
+
+        if (lazyOp == LAZY_ADD) {
+            c = IntegerExt.carryFrom(lazyLeft, lazyRight);
+            ov = IntegerExt.overflowFrom(lazyLeft, lazyRight, true);
+        } else {
+            c = !IntegerExt.borrowFrom(lazyLeft, lazyRight);
+            ov = IntegerExt.overflowFrom(lazyLeft, lazyRight, false);
+        }
+
+        v &= ~0xf0000000;
+        v |= lazyDest & 0x80000000;
+        v |= (lazyDest == 0) ? 0x40000000 : 0;
+        v |= c ? 0x20000000 : 0;
+        v |= ov ? 0x10000000 : 0;
+        lazyOp = LAZY_NONE;
+        super.setValue(v);
     }
 
     /**
@@ -323,7 +505,7 @@ public class PSR extends Reg32 {
      * @return I ビットがセットされていれば true, そうでなければ false
      */
     public boolean getIBit() {
-        return BitOp.getBit32(getValue(), BIT_I);
+        return BitOp.getBit32(getRawValue(), BIT_I);
     }
 
     /**
@@ -336,7 +518,7 @@ public class PSR extends Reg32 {
      * @param nv I ビットをセットするなら true, クリアするなら false
      */
     public void setIBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_I, nv));
+        setControlValue(BitOp.setBit32(getRawValue(), BIT_I, nv));
     }
 
     /**
@@ -349,7 +531,7 @@ public class PSR extends Reg32 {
      * @return F ビットがセットされていれば true, そうでなければ false
      */
     public boolean getFBit() {
-        return BitOp.getBit32(getValue(), BIT_F);
+        return BitOp.getBit32(getRawValue(), BIT_F);
     }
 
     /**
@@ -362,7 +544,7 @@ public class PSR extends Reg32 {
      * @param nv F ビットをセットするなら true, クリアするなら false
      */
     public void setFBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_F, nv));
+        setControlValue(BitOp.setBit32(getRawValue(), BIT_F, nv));
     }
 
     /**
@@ -378,7 +560,7 @@ public class PSR extends Reg32 {
      * @return T ビットがセットされていれば true, そうでなければ false
      */
     public boolean getTBit() {
-        return BitOp.getBit32(getValue(), BIT_T);
+        return BitOp.getBit32(getRawValue(), BIT_T);
     }
 
     /**
@@ -394,7 +576,7 @@ public class PSR extends Reg32 {
      * @param nv T ビットをセットするなら true, クリアするなら false
      */
     public void setTBit(boolean nv) {
-        setValue(BitOp.setBit32(getValue(), BIT_T, nv));
+        setControlValue(BitOp.setBit32(getRawValue(), BIT_T, nv));
     }
 
     /**
@@ -51,4 +51,36 @@ public class SPSR extends PSR {
     public void setValue(int v) {
         br.setValue(v);
     }
+
+    /**
+     * 加算の結果から N, Z, C, V ビットを設定します。
+     *
+     * SPSR ではフラグを遅延評価せず、すぐにバックレジスタに反映します。
+     *
+     * @param left  左オペランド
+     * @param right 右オペランド
+     * @param dest  演算結果
+     */
+    @Override
+    public void setFlagsAdd(int left, int right, int dest) {
+        setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                IntegerExt.carryFrom(left, right),
+                IntegerExt.overflowFrom(left, right, true));
+    }
+
+    /**
+     * 減算の結果から N, Z, C, V ビットを設定します。
+     *
+     * SPSR ではフラグを遅延評価せず、すぐにバックレジスタに反映します。
+     *
+     * @param left  左オペランド
+     * @param right 右オペランド
+     * @param dest  演算結果
+     */
+    @Override
+    public void setFlagsSub(int left, int right, int dest) {
+        setFlagsNZCV(BitOp.getBit32(dest, 31), dest == 0,
+                !IntegerExt.borrowFrom(left, right),
+                IntegerExt.overflowFrom(left, right, false));
+    }
 }
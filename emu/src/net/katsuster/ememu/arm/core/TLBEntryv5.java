@@ -0,0 +1,392 @@
+package net.katsuster.ememu.arm.core;
+
+import net.katsuster.ememu.generic.*;
+
+/**
+ * ARMv5 VMSA の TLB エントリです。
+ *
+ * <p>
+ * 1 つのエントリはセクション（1MB）、大ページ（64KB）、
+ * 小ページ（4KB）、極小ページ（1KB）のいずれかの変換結果と、
+ * ドメイン、アクセス許可（AP）を保持します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class TLBEntryv5 {
+    public static final int TYPE_SECTION = 0;
+    public static final int TYPE_LARGE = 1;
+    public static final int TYPE_SMALL = 2;
+    public static final int TYPE_TINY = 3;
+
+    private boolean valid;
+    private int type;
+    private int vaMask;
+    private int vaBase;
+    private int paBase;
+    private int domain;
+    private int aps;
+    private int subShift;
+    private int[] hostWords32;
+    private long[] hostWords64;
+    private int hostOffset;
+    private RAM hostRAM;
+
+    public TLBEntryv5() {
+        this.valid = false;
+    }
+
+    /**
+     * エントリが有効かどうかを取得します。
+     *
+     * @return エントリが有効ならば true、無効ならば false
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * エントリを無効にします。
+     */
+    public void invalidate() {
+        valid = false;
+    }
+
+    /**
+     * エントリに変換結果を設定し、有効にします。
+     *
+     * 大ページ、小ページの場合はサブページごとの AP を、
+     * ap0 ～ ap3 に指定します。
+     * セクション、極小ページの場合は全て同じ AP を指定します。
+     *
+     * @param t   エントリの種類（TYPE_SECTION, TYPE_LARGE, TYPE_SMALL, TYPE_TINY）
+     * @param va  仮想アドレス
+     * @param pa  物理アドレス
+     * @param dom ドメイン
+     * @param ap0 サブページ 0 の AP
+     * @param ap1 サブページ 1 の AP
+     * @param ap2 サブページ 2 の AP
+     * @param ap3 サブページ 3 の AP
+     */
+    public void set(int t, int va, int pa, int dom, int ap0, int ap1, int ap2, int ap3) {
+        switch (t) {
+        case TYPE_SECTION:
+            vaMask = 0xfff00000;
+            subShift = 0;
+            break;
+        case TYPE_LARGE:
+            vaMask = 0xffff0000;
+            subShift = 14;
+            break;
+        case TYPE_SMALL:
+            vaMask = 0xfffff000;
+            subShift = 10;
+            break;
+        case TYPE_TINY:
+            vaMask = 0xfffffc00;
+            subShift = 0;
+            break;
+        default:
+            throw new IllegalArgumentException(String.format(
+                    "Illegal TLB entry type %d.", t));
+        }
+
+        type = t;
+        vaBase = va & vaMask;
+        paBase = pa & vaMask;
+        domain = dom;
+        aps = (ap0 & 0x3) | ((ap1 & 0x3) << 2) |
+                ((ap2 & 0x3) << 4) | ((ap3 & 0x3) << 6);
+        hostWords32 = null;
+        hostWords64 = null;
+        hostOffset = 0;
+        hostRAM = null;
+        valid = true;
+    }
+
+    /**
+     * 指定された仮想アドレスがこのエントリに一致するかどうかを取得します。
+     *
+     * @param va 仮想アドレス
+     * @return 一致する場合は true、一致しない場合は false
+     */
+    public boolean matches(int va) {
+        return valid && (va & vaMask) == vaBase;
+    }
+
+    /**
+     * エントリの種類を取得します。
+     *
+     * @return エントリの種類
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * エントリが変換する仮想アドレスの先頭を取得します。
+     *
+     * @return 仮想アドレスの先頭
+     */
+    public int getVirtualBase() {
+        return vaBase;
+    }
+
+    /**
+     * エントリが変換する物理アドレスの先頭を取得します。
+     *
+     * @return 物理アドレスの先頭
+     */
+    public int getPhysicalBase() {
+        return paBase;
+    }
+
+    /**
+     * エントリが変換するアドレスのマスクを取得します。
+     *
+     * @return アドレスのマスク
+     */
+    public int getMask() {
+        return vaMask;
+    }
+
+    /**
+     * エントリのドメインを取得します。
+     *
+     * @return ドメイン
+     */
+    public int getDomain() {
+        return domain;
+    }
+
+    /**
+     * 指定された仮想アドレスに対する AP を取得します。
+     *
+     * @param va 仮想アドレス
+     * @return AP
+     */
+    public int getAP(int va) {
+        int sub = (va >>> subShift) & 0x3;
+
+        if (subShift == 0) {
+            sub = 0;
+        }
+
+        return (aps >>> (sub * 2)) & 0x3;
+    }
+
+    /**
+     * 仮想アドレスを物理アドレスに変換します。
+     *
+     * @param va 仮想アドレス
+     * @return 物理アドレス
+     */
+    public int translate(int va) {
+        return paBase | (va & ~vaMask);
+    }
+
+    /**
+     * エントリが変換する物理アドレスが、
+     * 直接アクセス可能な RAM を指しているかどうかを取得します。
+     *
+     * @return RAM を指している場合は true、そうでなければ false
+     */
+    public boolean hasHost() {
+        return hostWords32 != null || hostWords64 != null;
+    }
+
+    /**
+     * エントリが変換する物理アドレスが指す、
+     * 32 ビットデータ RAM の配列を設定します。
+     *
+     * @param words  RAM の内容を保持する配列
+     * @param offset 物理アドレスの先頭に対応する、RAM 内のバイトオフセット
+     */
+    public void setHost32(int[] words, int offset) {
+        hostWords32 = words;
+        hostWords64 = null;
+        hostOffset = offset;
+        hostRAM = null;
+    }
+
+    /**
+     * エントリが変換する物理アドレスが指す、
+     * 64 ビットデータ RAM の配列を設定します。
+     *
+     * @param words  RAM の内容を保持する配列
+     * @param offset 物理アドレスの先頭に対応する、RAM 内のバイトオフセット
+     */
+    public void setHost64(long[] words, int offset) {
+        hostWords32 = null;
+        hostWords64 = words;
+        hostOffset = offset;
+        hostRAM = null;
+    }
+
+    /**
+     * 直接書き込んだページを記録する RAM を取得します。
+     *
+     * @return 書き込んだページを記録する RAM、設定されていなければ null
+     */
+    public RAM getHostRAM() {
+        return hostRAM;
+    }
+
+    /**
+     * 直接書き込んだページを記録する RAM を設定します。
+     *
+     * setHost32(), setHost64() の後に設定してください。
+     * 設定すると writeHost8(), writeHost16(), writeHost32() は、
+     * RAM が記録を有効にしている間、書き込んだページを RAM に記録します。
+     * 記録の有効、無効は書き込むたびに判定するため、
+     * エントリを設定した後に記録を開始しても構いません。
+     *
+     * @param r 書き込んだページを記録する RAM、記録しなければ null
+     */
+    public void setHostRAM(RAM r) {
+        hostRAM = r;
+    }
+
+    /**
+     * 仮想アドレスを RAM 内のバイトオフセットに変換します。
+     *
+     * @param va 仮想アドレス
+     * @return RAM 内のバイトオフセット
+     */
+    protected int getHostOffset(int va) {
+        return hostOffset + (va & ~vaMask);
+    }
+
+    /**
+     * 仮想アドレスが指す RAM から 8 ビットのデータを直接読み出します。
+     *
+     * @param va 仮想アドレス
+     * @return データ
+     */
+    public byte readHost8(int va) {
+        int off = getHostOffset(va);
+
+        if (hostWords32 != null) {
+            return (byte)(hostWords32[off >>> 2] >>> ((off & 0x3) * 8));
+        } else {
+            return (byte)(hostWords64[off >>> 3] >>> ((off & 0x7) * 8));
+        }
+    }
+
+    /**
+     * 仮想アドレスが指す RAM から 16 ビットのデータを直接読み出します。
+     *
+     * アドレスの下位 1 ビットは無視されます。
+     *
+     * @param va 仮想アドレス
+     * @return データ
+     */
+    public short readHost16(int va) {
+        int off = getHostOffset(va) & ~0x1;
+
+        if (hostWords32 != null) {
+            return (short)(hostWords32[off >>> 2] >>> ((off & 0x3) * 8));
+        } else {
+            return (short)(hostWords64[off >>> 3] >>> ((off & 0x7) * 8));
+        }
+    }
+
+    /**
+     * 仮想アドレスが指す RAM から 32 ビットのデータを直接読み出します。
+     *
+     * アドレスの下位 2 ビットは無視されます。
+     *
+     * @param va 仮想アドレス
+     * @return データ
+     */
+    public int readHost32(int va) {
+        int off = getHostOffset(va) & ~0x3;
+
+        if (hostWords32 != null) {
+            return hostWords32[off >>> 2];
+        } else {
+            return (int)(hostWords64[off >>> 3] >>> ((off & 0x7) * 8));
+        }
+    }
+
+    /**
+     * 仮想アドレスが指す RAM に 8 ビットのデータを直接書き込みます。
+     *
+     * @param va   仮想アドレス
+     * @param data データ
+     */
+    public void writeHost8(int va, byte data) {
+        int off = getHostOffset(va);
+
+        if (hostWords32 != null) {
+            int sh = (off & 0x3) * 8;
+            int ind = off >>> 2;
+
+            hostWords32[ind] = (hostWords32[ind] & ~(0xff << sh)) |
+                    ((data & 0xff) << sh);
+        } else {
+            int sh = (off & 0x7) * 8;
+            int ind = off >>> 3;
+
+            hostWords64[ind] = (hostWords64[ind] & ~(0xffL << sh)) |
+                    ((data & 0xffL) << sh);
+        }
+        if (hostRAM != null) {
+            hostRAM.markDirty(off);
+        }
+    }
+
+    /**
+     * 仮想アドレスが指す RAM に 16 ビットのデータを直接書き込みます。
+     *
+     * アドレスの下位 1 ビットは無視されます。
+     *
+     * @param va   仮想アドレス
+     * @param data データ
+     */
+    public void writeHost16(int va, short data) {
+        int off = getHostOffset(va) & ~0x1;
+
+        if (hostWords32 != null) {
+            int sh = (off & 0x3) * 8;
+            int ind = off >>> 2;
+
+            hostWords32[ind] = (hostWords32[ind] & ~(0xffff << sh)) |
+                    ((data & 0xffff) << sh);
+        } else {
+            int sh = (off & 0x7) * 8;
+            int ind = off >>> 3;
+
+            hostWords64[ind] = (hostWords64[ind] & ~(0xffffL << sh)) |
+                    ((data & 0xffffL) << sh);
+        }
+        if (hostRAM != null) {
+            hostRAM.markDirty(off);
+        }
+    }
+
+    /**
+     * 仮想アドレスが指す RAM に 32 ビットのデータを直接書き込みます。
+     *
+     * アドレスの下位 2 ビットは無視されます。
+     *
+     * @param va   仮想アドレス
+     * @param data データ
+     */
+    public void writeHost32(int va, int data) {
+        int off = getHostOffset(va) & ~0x3;
+
+        if (hostWords32 != null) {
+            hostWords32[off >>> 2] = data;
+        } else {
+            int sh = (off & 0x7) * 8;
+            int ind = off >>> 3;
+
+            hostWords64[ind] = (hostWords64[ind] & ~(0xffffffffL << sh)) |
+                    ((data & 0xffffffffL) << sh);
+        }
+        if (hostRAM != null) {
+            hostRAM.markDirty(off);
+        }
+    }
+}
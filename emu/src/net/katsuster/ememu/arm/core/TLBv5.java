@@ -0,0 +1,223 @@
+package net.katsuster.ememu.arm.core;
+
+/**
+ * ARMv5 VMSA のソフトウェア TLB です。
+ *
+ * <p>
+ * 仮想アドレスの 4KB ページ番号でインデクスするダイレクトマップ方式です。
+ * セクションや大ページは、参照された 4KB ページごとにエントリを持ちます。
+ * </p>
+ *
+ * <p>
+ * セクションや大ページのエントリは、無効化する仮想アドレスとは
+ * 別のインデクスに存在し得るため、それらを持つインデクスを別に覚えておきます。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class TLBv5 {
+    private String name;
+    private TLBEntryv5[] entries;
+    private int indexMask;
+    //セクションか大ページのエントリを持つ（持っていた）インデクス
+    private int[] largeSlots;
+    private int largeCount;
+    private boolean[] largeFlags;
+    private long hit;
+    private long miss;
+
+    /**
+     * TLB を作成します。
+     *
+     * @param name TLB の名前
+     * @param n    エントリ数、2 の累乗である必要があります
+     */
+    public TLBv5(String name, int n) {
+        if (n <= 0 || (n & (n - 1)) != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal TLB size %d.", n));
+        }
+
+        this.name = name;
+        this.entries = new TLBEntryv5[n];
+        for (int i = 0; i < n; i++) {
+            this.entries[i] = new TLBEntryv5();
+        }
+        this.indexMask = n - 1;
+        this.largeSlots = new int[n];
+        this.largeCount = 0;
+        this.largeFlags = new boolean[n];
+    }
+
+    /**
+     * TLB の名前を取得します。
+     *
+     * @return TLB の名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * TLB のエントリ数を取得します。
+     *
+     * @return エントリ数
+     */
+    public int getSize() {
+        return entries.length;
+    }
+
+    /**
+     * 仮想アドレスに対応するエントリを検索します。
+     *
+     * @param va 仮想アドレス
+     * @return 一致するエントリ、存在しなければ null
+     */
+    public TLBEntryv5 lookup(int va) {
+        TLBEntryv5 e = entries[(va >>> 12) & indexMask];
+
+        if (e.matches(va)) {
+            hit++;
+            return e;
+        }
+        miss++;
+
+        return null;
+    }
+
+    /**
+     * 仮想アドレスに対応し、RAM を直接指すエントリを検索します。
+     *
+     * 見つからなかった場合は、通常のアドレス変換で改めて検索されるため、
+     * TLB ミスの回数は数えません。
+     *
+     * @param va 仮想アドレス
+     * @return 一致し、RAM を直接指すエントリ、存在しなければ null
+     */
+    public TLBEntryv5 lookupHost(int va) {
+        TLBEntryv5 e = entries[(va >>> 12) & indexMask];
+
+        if (e.matches(va) && e.hasHost()) {
+            hit++;
+            return e;
+        }
+
+        return null;
+    }
+
+    /**
+     * 仮想アドレスに対応するエントリに変換結果を登録します。
+     *
+     * @param t   エントリの種類
+     * @param va  仮想アドレス
+     * @param pa  物理アドレス
+     * @param dom ドメイン
+     * @param ap0 サブページ 0 の AP
+     * @param ap1 サブページ 1 の AP
+     * @param ap2 サブページ 2 の AP
+     * @param ap3 サブページ 3 の AP
+     * @return 登録したエントリ
+     */
+    public TLBEntryv5 fill(int t, int va, int pa, int dom, int ap0, int ap1, int ap2, int ap3) {
+        int i = (va >>> 12) & indexMask;
+        TLBEntryv5 e = entries[i];
+
+        e.set(t, va, pa, dom, ap0, ap1, ap2, ap3);
+        if (isLarge(e) && !largeFlags[i]) {
+            largeFlags[i] = true;
+            largeSlots[largeCount] = i;
+            largeCount++;
+        }
+
+        return e;
+    }
+
+    /**
+     * エントリが 4KB より大きな範囲（セクション、大ページ）を変換するかどうかを取得します。
+     *
+     * @param e エントリ
+     * @return 4KB より大きな範囲を変換するならば true、そうでなければ false
+     */
+    protected static boolean isLarge(TLBEntryv5 e) {
+        return e.getType() == TLBEntryv5.TYPE_SECTION ||
+                e.getType() == TLBEntryv5.TYPE_LARGE;
+    }
+
+    /**
+     * 全てのエントリを無効化します。
+     */
+    public void invalidateAll() {
+        for (TLBEntryv5 e : entries) {
+            e.invalidate();
+        }
+        for (int k = 0; k < largeCount; k++) {
+            largeFlags[largeSlots[k]] = false;
+        }
+        largeCount = 0;
+    }
+
+    /**
+     * 仮想アドレスを含む全てのエントリを無効化します。
+     *
+     * 仮想アドレスのインデクスのエントリに加えて、
+     * セクションや大ページのエントリを持つインデクスのみを検査します。
+     *
+     * @param va 仮想アドレス
+     */
+    public void invalidate(int va) {
+        TLBEntryv5 e = entries[(va >>> 12) & indexMask];
+        int k = 0;
+
+        if (e.matches(va)) {
+            e.invalidate();
+        }
+
+        while (k < largeCount) {
+            int i = largeSlots[k];
+
+            e = entries[i];
+            if (e.matches(va)) {
+                e.invalidate();
+            }
+            if (!e.isValid() || !isLarge(e)) {
+                //もうセクションや大ページを持たないインデクスは外す
+                largeFlags[i] = false;
+                largeCount--;
+                largeSlots[k] = largeSlots[largeCount];
+            } else {
+                k++;
+            }
+        }
+    }
+
+    /**
+     * TLB ヒットの回数を取得します。
+     *
+     * @return TLB ヒットの回数
+     */
+    public long getHitCount() {
+        return hit;
+    }
+
+    /**
+     * TLB ミスの回数を取得します。
+     *
+     * @return TLB ミスの回数
+     */
+    public long getMissCount() {
+        return miss;
+    }
+
+    /**
+     * TLB ヒット、ミスの回数をクリアします。
+     */
+    public void clearCount() {
+        hit = 0;
+        miss = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: hit:%d, miss:%d", getName(), getHitCount(), getMissCount());
+    }
+}
@@ -0,0 +1,432 @@
+package net.katsuster.ememu.arm.core;
+
+import net.katsuster.ememu.generic.*;
+
+/**
+ * ARM 命令のスレッデッドコード方式の実行ステージ。
+ *
+ * <p>
+ * デコード済みの命令ごとにハンドラオブジェクトを割り当て、
+ * OpIndex による switch 文を介さずに命令を実行します。
+ * </p>
+ *
+ * <p>
+ * 一部の命令（イミディエートかシフトなしのレジスタの MOV, ADD, SUB, CMP,
+ * B, BL）は、オペランドを事前に取り出した専用のハンドラを命令ごとに割り当てます。
+ * 命令ごとのハンドラはデコード済み命令のキャッシュや命令ブロックに保持し、
+ * 実行のたびに解決し直すことはしません。
+ * それ以外の命令は、ExecStageARMv5 の switch 文で実行する汎用のハンドラを共有します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class ThreadedExecARMv5 {
+    private ExecStageARMv5 st;
+    private HandlerARM[] table;
+
+    /**
+     * 実行ステージ st を用いて命令を実行する、
+     * スレッデッドコード方式の実行ステージを生成します。
+     *
+     * @param st ARM 命令の実行ステージ
+     */
+    public ThreadedExecARMv5(ExecStageARMv5 st) {
+        this.st = st;
+        this.table = new HandlerARM[OpIndex.values().length];
+    }
+
+    /**
+     * 命令の詳細な種類に対応する、汎用のハンドラを取得します。
+     *
+     * 汎用のハンドラは命令の詳細な種類ごとに 1つだけ生成し、共有します。
+     *
+     * @param opind 命令の詳細な種類
+     * @return ハンドラ
+     */
+    public HandlerARM getHandler(OpIndex opind) {
+        HandlerARM h = table[opind.ordinal()];
+
+        if (h == null) {
+            h = new Fallback(st, opind);
+            table[opind.ordinal()] = h;
+        }
+
+        return h;
+    }
+
+    /**
+     * 命令に対応するハンドラを取得します。
+     *
+     * 専用のハンドラがある命令は、命令ごとに新たなハンドラを生成します。
+     * 条件が AL 以外の命令は、条件を判定するハンドラで専用のハンドラを包みます。
+     * それ以外の命令は、汎用のハンドラを返します。
+     *
+     * @param inst  ARM 命令
+     * @param opind 命令の詳細な種類
+     * @return ハンドラ
+     */
+    public HandlerARM resolve(InstructionARM inst, OpIndex opind) {
+        int cond = inst.getCondField();
+        HandlerARM h;
+
+        if (cond == InstructionARM.COND_NV) {
+            return getHandler(opind);
+        }
+
+        h = resolveForm(inst, opind);
+        if (h == null) {
+            return getHandler(opind);
+        }
+        if (cond != InstructionARM.COND_AL) {
+            h = new Cond(st, cond, h);
+        }
+
+        return h;
+    }
+
+    /**
+     * 命令の形式（イミディエートかシフトなしのレジスタか、S ビット）に
+     * 特化したハンドラを生成します。条件は判定しません。
+     *
+     * @param inst  ARM 命令
+     * @param opind 命令の詳細な種類
+     * @return ハンドラ、専用のハンドラがない命令ならば null
+     */
+    protected HandlerARM resolveForm(InstructionARM inst, OpIndex opind) {
+        boolean s = inst.getSBit();
+        boolean i = inst.getIBit();
+        //シフトなしのレジスタ
+        boolean r = !i && inst.getField(4, 8) == 0;
+        int rn = inst.getRnField();
+        int rd = inst.getRdField();
+        int rm = inst.getRmField();
+
+        switch (opind) {
+        case INS_ARM_ALUMOV:
+            if (s || rd == 15) {
+                break;
+            }
+            if (i) {
+                return new MovImm(st, rd, st.getAddrMode1Imm(inst));
+            } else if (r) {
+                return new MovReg(st, rd, rm);
+            }
+            break;
+        case INS_ARM_ALUADD:
+            if (rd == 15) {
+                break;
+            }
+            if (i && s) {
+                return new AddsImm(st, rd, rn, st.getAddrMode1Imm(inst));
+            } else if (i) {
+                return new AddImm(st, rd, rn, st.getAddrMode1Imm(inst));
+            } else if (r && !s) {
+                return new AddReg(st, rd, rn, rm);
+            }
+            break;
+        case INS_ARM_ALUSUB:
+            if (rd == 15) {
+                break;
+            }
+            if (i && s) {
+                return new SubsImm(st, rd, rn, st.getAddrMode1Imm(inst));
+            } else if (i) {
+                return new AddImm(st, rd, rn, -st.getAddrMode1Imm(inst));
+            } else if (r && !s) {
+                return new SubReg(st, rd, rn, rm);
+            }
+            break;
+        case INS_ARM_ALUCMP:
+            if (i) {
+                return new CmpImm(st, rn, st.getAddrMode1Imm(inst));
+            } else if (r) {
+                return new CmpReg(st, rn, rm);
+            }
+            break;
+        case INS_ARM_BL:
+            return new Branch(st, inst.getBit(24),
+                    (int)BitOp.signExt64(inst.getField(0, 24), 24) << 2);
+        default:
+            break;
+        }
+
+        return null;
+    }
+
+    /**
+     * 条件が AL 以外の命令。
+     *
+     * 条件を満たす場合のみ、専用のハンドラを実行します。
+     */
+    public static final class Cond implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int cond;
+        private final HandlerARM h;
+
+        public Cond(ExecStageARMv5 st, int cond, HandlerARM h) {
+            this.st = st;
+            this.cond = cond;
+            this.h = h;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            if (InstructionARM.satisfiesCond(cond, st.getCPSR())) {
+                h.execute(inst);
+            }
+        }
+    }
+
+    /**
+     * S ビットなし、イミディエートの MOV 命令。
+     */
+    public static final class MovImm implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int imm;
+
+        public MovImm(ExecStageARMv5 st, int rd, int imm) {
+            this.st = st;
+            this.rd = rd;
+            this.imm = imm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            st.setReg(rd, imm);
+        }
+    }
+
+    /**
+     * S ビットなし、シフトなしのレジスタの MOV 命令。
+     */
+    public static final class MovReg implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int rm;
+
+        public MovReg(ExecStageARMv5 st, int rd, int rm) {
+            this.st = st;
+            this.rd = rd;
+            this.rm = rm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            st.setReg(rd, st.getReg(rm));
+        }
+    }
+
+    /**
+     * S ビットなし、イミディエートの ADD, SUB 命令。
+     *
+     * SUB 命令は符号を反転したイミディエートを加算します。
+     */
+    public static final class AddImm implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int rn;
+        private final int imm;
+
+        public AddImm(ExecStageARMv5 st, int rd, int rn, int imm) {
+            this.st = st;
+            this.rd = rd;
+            this.rn = rn;
+            this.imm = imm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            st.setReg(rd, st.getReg(rn) + imm);
+        }
+    }
+
+    /**
+     * S ビットあり、イミディエートの ADD 命令。
+     */
+    public static final class AddsImm implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int rn;
+        private final int imm;
+
+        public AddsImm(ExecStageARMv5 st, int rd, int rn, int imm) {
+            this.st = st;
+            this.rd = rd;
+            this.rn = rn;
+            this.imm = imm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            int left = st.getReg(rn);
+            int dest = left + imm;
+
+            st.getCPSR().setFlagsAdd(left, imm, dest);
+            st.setReg(rd, dest);
+        }
+    }
+
+    /**
+     * S ビットあり、イミディエートの SUB 命令。
+     */
+    public static final class SubsImm implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int rn;
+        private final int imm;
+
+        public SubsImm(ExecStageARMv5 st, int rd, int rn, int imm) {
+            this.st = st;
+            this.rd = rd;
+            this.rn = rn;
+            this.imm = imm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            int left = st.getReg(rn);
+            int dest = left - imm;
+
+            st.getCPSR().setFlagsSub(left, imm, dest);
+            st.setReg(rd, dest);
+        }
+    }
+
+    /**
+     * S ビットなし、シフトなしのレジスタの ADD 命令。
+     */
+    public static final class AddReg implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int rn;
+        private final int rm;
+
+        public AddReg(ExecStageARMv5 st, int rd, int rn, int rm) {
+            this.st = st;
+            this.rd = rd;
+            this.rn = rn;
+            this.rm = rm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            st.setReg(rd, st.getReg(rn) + st.getReg(rm));
+        }
+    }
+
+    /**
+     * S ビットなし、シフトなしのレジスタの SUB 命令。
+     */
+    public static final class SubReg implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rd;
+        private final int rn;
+        private final int rm;
+
+        public SubReg(ExecStageARMv5 st, int rd, int rn, int rm) {
+            this.st = st;
+            this.rd = rd;
+            this.rn = rn;
+            this.rm = rm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            st.setReg(rd, st.getReg(rn) - st.getReg(rm));
+        }
+    }
+
+    /**
+     * イミディエートの CMP 命令。
+     */
+    public static final class CmpImm implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rn;
+        private final int imm;
+
+        public CmpImm(ExecStageARMv5 st, int rn, int imm) {
+            this.st = st;
+            this.rn = rn;
+            this.imm = imm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            int left = st.getReg(rn);
+            int dest = left - imm;
+            PSR cpsr = st.getCPSR();
+
+            cpsr.setFlagsSub(left, imm, dest);
+        }
+    }
+
+    /**
+     * シフトなしのレジスタの CMP 命令。
+     */
+    public static final class CmpReg implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final int rn;
+        private final int rm;
+
+        public CmpReg(ExecStageARMv5 st, int rn, int rm) {
+            this.st = st;
+            this.rn = rn;
+            this.rm = rm;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            int left = st.getReg(rn);
+            int right = st.getReg(rm);
+
+            st.getCPSR().setFlagsSub(left, right, left - right);
+        }
+    }
+
+    /**
+     * B, BL 命令。
+     */
+    public static final class Branch implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final boolean l;
+        private final int offset;
+
+        public Branch(ExecStageARMv5 st, boolean l, int offset) {
+            this.st = st;
+            this.l = l;
+            this.offset = offset;
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            if (l) {
+                st.setReg(14, st.getPC() - 4);
+            }
+            st.jumpRel(offset);
+        }
+    }
+
+    /**
+     * 専用のハンドラがない命令。
+     *
+     * 命令の詳細な種類を保持し、ExecStageARMv5 の switch 文で実行します。
+     */
+    public static final class Fallback implements HandlerARM {
+        private final ExecStageARMv5 st;
+        private final OpIndex opind;
+        private final Opcode decinst;
+
+        public Fallback(ExecStageARMv5 st, OpIndex opind) {
+            this.st = st;
+            this.opind = opind;
+            this.decinst = new Opcode(null, OpType.INS_TYPE_ARM, opind);
+        }
+
+        @Override
+        public void execute(InstructionARM inst) {
+            decinst.reuse(inst, OpType.INS_TYPE_ARM, opind);
+            st.execute(decinst, true);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package net.katsuster.ememu.bench;
+
+/**
+ * ベンチマークの基底クラス。
+ *
+ * <p>
+ * 測定対象の処理を run() に実装します。
+ * JIT コンパイルの影響を除くため、測定前に空回し（ウォームアップ）を行い、
+ * 複数回の測定のうち最も速い結果を採用します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public abstract class Benchmark {
+    private String name;
+    private long checksum;
+
+    /**
+     * ベンチマークを作成します。
+     *
+     * @param name ベンチマークの名前
+     */
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * ベンチマークの名前を取得します。
+     *
+     * @return ベンチマークの名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 測定の前に一度だけ呼ばれます。
+     */
+    public void setup() {
+        //do nothing
+    }
+
+    /**
+     * 測定の後に一度だけ呼ばれます。
+     */
+    public void teardown() {
+        //do nothing
+    }
+
+    /**
+     * 測定対象の処理を指定された回数だけ実行します。
+     *
+     * 処理が最適化で取り除かれないよう、
+     * 処理結果から計算した値を返す必要があります。
+     *
+     * @param n 実行する回数
+     * @return 処理結果から計算した値
+     */
+    public abstract long run(int n);
+
+    /**
+     * ベンチマークを測定します。
+     *
+     * @param n      1 回の測定で処理を実行する回数
+     * @param warmup ウォームアップの回数
+     * @param repeat 測定の回数
+     * @return 処理 1 回あたりの実行時間（ナノ秒）
+     */
+    public double measure(int n, int warmup, int repeat) {
+        long best = Long.MAX_VALUE;
+
+        setup();
+        try {
+            for (int i = 0; i < warmup; i++) {
+                checksum += run(n);
+            }
+            for (int i = 0; i < repeat; i++) {
+                long start = System.nanoTime();
+                checksum += run(n);
+                long elapsed = System.nanoTime() - start;
+
+                best = Math.min(best, elapsed);
+            }
+        } finally {
+            teardown();
+        }
+
+        return (double)best / n;
+    }
+
+    /**
+     * ベンチマークを測定し、結果を表示します。
+     *
+     * @param n      1 回の測定で処理を実行する回数
+     * @param warmup ウォームアップの回数
+     * @param repeat 測定の回数
+     * @return 処理 1 回あたりの実行時間（ナノ秒）
+     */
+    public double report(int n, int warmup, int repeat) {
+        double nsop = measure(n, warmup, repeat);
+
+        System.out.printf("%-40s: %10.2f ns/op, %10.2f Mops/s (sum:%x)\n",
+                getName(), nsop, 1000.0 / nsop, checksum);
+
+        return nsop;
+    }
+}
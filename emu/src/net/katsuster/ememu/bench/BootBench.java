@@ -0,0 +1,404 @@
+package net.katsuster.ememu.bench;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.ui.*;
+
+/**
+ * Linux の起動時間のベンチマーク。
+ *
+ * <p>
+ * 画面を表示せずにカーネルと initramfs を起動し、
+ * UART0 の出力に指定した文字列（シェルのプロンプトなど）が現れるか、
+ * 実行した命令数が上限に達すると停止します。
+ * 実行した命令数、MIPS、起動の段階ごとの経過時間、処理した例外と割り込みの数、
+ * GC に要した時間を JSON 形式で出力します。
+ * </p>
+ *
+ * <p>
+ * 起動の段階は UART0 に出力される文字列で区切ります。
+ * </p>
+ *
+ * <ul>
+ *     <li>decompress: カーネルの展開、
+ *     ememu.bench.marker.decompress（既定値 "booting the kernel."）まで</li>
+ *     <li>init: カーネルの初期化、
+ *     ememu.bench.marker.init（既定値 "Freeing unused kernel memory"）まで</li>
+ *     <li>userspace: ユーザ空間の起動、
+ *     ememu.bench.marker（既定値 "/ # "）まで</li>
+ * </ul>
+ *
+ * <p>
+ * 展開を行わない Image の場合など、区切りの文字列が現れない段階は、
+ * 次の段階の区切りに達した時点で長さ 0 として終了します。
+ * 経過時間はエミュレータを起動した時点から測定するため、
+ * 最初の段階にはカーネルイメージの読み込み時間も含みます。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class BootBench {
+    public static final String[] PHASE_NAMES = {
+            "decompress", "init", "userspace",
+    };
+    public static final String[] EXCEPT_NAMES = {
+            "reset", "data_abort", "fiq", "irq", "prefetch_abort", "undefined", "svc",
+    };
+
+    //停止した理由
+    public static final String STOP_MARKER = "marker";
+    public static final String STOP_BUDGET = "budget";
+    public static final String STOP_HALTED = "halted";
+
+    //命令数の上限を確認する間隔（ミリ秒）
+    public static final int POLL_INTERVAL = 10;
+
+    private Emulator emu;
+    private ARMv5 cpu;
+    private String[] markers;
+    private long budget;
+
+    private long startTime;
+    private long[] phaseTime;
+    private long[] phaseInsts;
+    private boolean[] phaseEnded;
+    private boolean[] phaseReached;
+    private String stopReason;
+
+    /**
+     * 起動時間のベンチマークを作成します。
+     *
+     * @param opts    エミュレータに渡すオプション
+     * @param markers 各段階の終わりを表す文字列
+     * @param budget  実行する命令数の上限、上限がなければ 0
+     * @param echo    UART0 の出力を書き出す先、書き出さなければ null
+     */
+    public BootBench(LinuxOption opts, String[] markers, long budget,
+                     OutputStream echo) {
+        if (markers.length != PHASE_NAMES.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal number of markers %d.", markers.length));
+        }
+
+        this.emu = new Emulator();
+        this.cpu = (ARMv5) emu.getMainCPU();
+        this.markers = markers;
+        this.budget = budget;
+        this.phaseTime = new long[markers.length];
+        this.phaseInsts = new long[markers.length];
+        this.phaseEnded = new boolean[markers.length];
+        this.phaseReached = new boolean[markers.length];
+
+        emu.setOption(opts);
+        emu.getBoard().setUARTOutputStream(0, new MarkerOutputStream(echo));
+    }
+
+    /**
+     * 段階の終わりを表す文字列が UART0 に現れたことを記録します。
+     *
+     * 最後の段階が終われば、エミュレータを停止します。
+     *
+     * @param n 段階の番号
+     */
+    protected synchronized void reachPhase(int n) {
+        long t = System.nanoTime();
+        long insts = cpu.getInstCount();
+
+        for (int i = 0; i <= n; i++) {
+            if (phaseEnded[i]) {
+                continue;
+            }
+            phaseEnded[i] = true;
+            phaseReached[i] = (i == n);
+            phaseTime[i] = t;
+            phaseInsts[i] = insts;
+        }
+
+        if (n == markers.length - 1) {
+            stop(STOP_MARKER);
+        }
+    }
+
+    /**
+     * エミュレータを停止します。
+     *
+     * @param reason 停止した理由
+     */
+    protected synchronized void stop(String reason) {
+        if (stopReason == null) {
+            stopReason = reason;
+            emu.halt();
+        }
+    }
+
+    /**
+     * エミュレータを起動し、停止するまで待ちます。
+     *
+     * @throws InterruptedException 待機中に割り込まれた場合
+     */
+    public void run() throws InterruptedException {
+        startTime = System.nanoTime();
+        emu.start();
+
+        while (emu.isAlive()) {
+            emu.join(POLL_INTERVAL);
+            if (budget > 0 && cpu.getInstCount() >= budget) {
+                stop(STOP_BUDGET);
+            }
+        }
+        stop(STOP_HALTED);
+    }
+
+    /**
+     * 測定結果を JSON 形式で書き出します。
+     *
+     * run() が終了した後に呼び出す必要があります。
+     *
+     * @param out     書き出し先
+     * @param wall    run() に要した時間（ナノ秒単位）
+     * @param gcCount run() の間に行われた GC の回数
+     * @param gcTime  run() の間に GC に要した時間（ミリ秒単位）
+     */
+    public synchronized void report(PrintStream out, long wall,
+                                    long gcCount, long gcTime) {
+        long insts = cpu.getInstCount();
+        long prevTime = startTime;
+        long prevInsts = 0;
+
+        out.println("{");
+        out.printf(Locale.ROOT, "  \"kernel\": %s,\n", quote(emu.getOption().getKernelImage().toString()));
+        out.printf(Locale.ROOT, "  \"initrd\": %s,\n", quote(emu.getOption().getInitrdImage().toString()));
+        out.printf(Locale.ROOT, "  \"stop\": %s,\n", quote(stopReason));
+        out.printf(Locale.ROOT, "  \"instructions\": %d,\n", insts);
+        out.printf(Locale.ROOT, "  \"wall_ms\": %.3f,\n", wall / 1e6);
+        out.printf(Locale.ROOT, "  \"mips\": %.3f,\n", mips(insts, wall));
+
+        out.println("  \"phases\": [");
+        for (int i = 0; i < markers.length; i++) {
+            //終わっていない段階は停止した時点までとする
+            long t = phaseEnded[i] ? phaseTime[i] : startTime + wall;
+            long n = phaseEnded[i] ? phaseInsts[i] : insts;
+
+            out.printf(Locale.ROOT, "    {\"name\": %s, \"marker\": %s, \"reached\": %b, " +
+                            "\"instructions\": %d, \"wall_ms\": %.3f, \"mips\": %.3f}%s\n",
+                    quote(PHASE_NAMES[i]), quote(markers[i]), phaseReached[i],
+                    n - prevInsts, (t - prevTime) / 1e6,
+                    mips(n - prevInsts, t - prevTime),
+                    (i < markers.length - 1) ? "," : "");
+            prevTime = t;
+            prevInsts = n;
+        }
+        out.println("  ],");
+
+        out.println("  \"exceptions\": {");
+        for (int i = 0; i < EXCEPT_NAMES.length; i++) {
+            out.printf(Locale.ROOT, "    %s: %d%s\n", quote(EXCEPT_NAMES[i]),
+                    cpu.getExceptionCount(i),
+                    (i < EXCEPT_NAMES.length - 1) ? "," : "");
+        }
+        out.println("  },");
+        out.printf(Locale.ROOT, "  \"irqs\": %d,\n", cpu.getExceptionCount(ARMv5.EXCEPT_IRQ));
+        out.printf(Locale.ROOT, "  \"gc\": {\"count\": %d, \"time_ms\": %d}\n", gcCount, gcTime);
+        out.println("}");
+    }
+
+    /**
+     * MIPS を計算します。
+     *
+     * @param insts 命令数
+     * @param nanos 経過時間（ナノ秒単位）
+     * @return MIPS、経過時間が 0 ならば 0
+     */
+    protected static double mips(long insts, long nanos) {
+        if (nanos <= 0) {
+            return 0.0;
+        }
+
+        return insts * 1000.0 / nanos;
+    }
+
+    /**
+     * 文字列を JSON の文字列リテラルに変換します。
+     *
+     * @param s 文字列
+     * @return JSON の文字列リテラル、null ならば null
+     */
+    protected static String quote(String s) {
+        StringBuilder b = new StringBuilder();
+
+        if (s == null) {
+            return "null";
+        }
+
+        b.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            if (c == '"' || c == '\\') {
+                b.append('\\').append(c);
+            } else if (c < 0x20) {
+                b.append(String.format("\\u%04x", (int)c));
+            } else {
+                b.append(c);
+            }
+        }
+        b.append('"');
+
+        return b.toString();
+    }
+
+    /**
+     * JVM 起動後に行われた GC の回数を取得します。
+     *
+     * @return GC の回数
+     */
+    public static long getGCCount() {
+        long sum = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sum += Math.max(gc.getCollectionCount(), 0);
+        }
+
+        return sum;
+    }
+
+    /**
+     * JVM 起動後に GC に要した時間を取得します。
+     *
+     * @return GC に要した時間（ミリ秒単位）
+     */
+    public static long getGCTime() {
+        long sum = 0;
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sum += Math.max(gc.getCollectionTime(), 0);
+        }
+
+        return sum;
+    }
+
+    /**
+     * UART0 の出力を監視し、段階の終わりを表す文字列を探すストリーム。
+     *
+     * 文字列は段階の順に探します。
+     */
+    private class MarkerOutputStream extends OutputStream {
+        private OutputStream echo;
+        private StringBuilder tail;
+        private int maxLen;
+        private int next;
+
+        public MarkerOutputStream(OutputStream os) {
+            echo = os;
+            tail = new StringBuilder();
+            for (String m : markers) {
+                maxLen = Math.max(maxLen, m.length());
+            }
+            next = 0;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (echo != null) {
+                echo.write(b);
+            }
+
+            tail.append((char)(b & 0xff));
+            if (tail.length() > maxLen) {
+                tail.delete(0, tail.length() - maxLen);
+            }
+
+            //後の段階の文字列が先に現れた場合は、それまでの段階も終える
+            for (int i = next; i < markers.length; i++) {
+                if (!markers[i].isEmpty() && endsWith(markers[i])) {
+                    next = i + 1;
+                    reachPhase(i);
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (echo != null) {
+                echo.flush();
+            }
+        }
+
+        private boolean endsWith(String m) {
+            int off = tail.length() - m.length();
+
+            return off >= 0 && tail.indexOf(m, off) == off;
+        }
+    }
+
+    public static void usage() {
+        System.out.println("Usage:\n" +
+                "    BootBench image initramfs [cmdline]\n" +
+                "  Properties:\n" +
+                "    -Dememu.bench.marker=str           : Stop when UART0 prints str\n" +
+                "                                         (default: '/ # ').\n" +
+                "    -Dememu.bench.marker.decompress=str: End of decompression\n" +
+                "                                         (default: 'booting the kernel.').\n" +
+                "    -Dememu.bench.marker.init=str      : End of kernel init\n" +
+                "                                         (default: 'Freeing unused kernel memory').\n" +
+                "    -Dememu.bench.insts=n              : Stop after n instructions.\n" +
+                "    -Dememu.bench.out=path             : Write JSON result to the file.\n" +
+                "    -Dememu.bench.quiet=true           : Do not print UART0 output.\n" +
+                "  Other -Dememu.* properties of ememu are also available.\n");
+    }
+
+    public static void main(String[] args) throws Exception {
+        LinuxOption opts = new LinuxOption();
+        String[] markers = {
+                System.getProperty("ememu.bench.marker.decompress", "booting the kernel."),
+                System.getProperty("ememu.bench.marker.init", "Freeing unused kernel memory"),
+                System.getProperty("ememu.bench.marker", "/ # "),
+        };
+        long budget = Long.getLong("ememu.bench.insts", 0);
+        String outFile = System.getProperty("ememu.bench.out");
+        OutputStream echo = Boolean.getBoolean("ememu.bench.quiet") ? null : System.out;
+        BootBench b;
+        long st, wall, gcCount, gcTime;
+
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        opts.setKernelImage(new File(args[0]));
+        opts.setInitrdImage(new File(args[1]));
+        if (args.length >= 3) {
+            opts.setCommandLine(args[2]);
+        } else {
+            opts.setCommandLine("console=ttyAMA0 mem=64M root=/dev/ram init=/bin/init");
+        }
+
+        b = new BootBench(opts, markers, budget, echo);
+
+        gcCount = getGCCount();
+        gcTime = getGCTime();
+        st = System.nanoTime();
+        b.run();
+        wall = System.nanoTime() - st;
+        gcCount = getGCCount() - gcCount;
+        gcTime = getGCTime() - gcTime;
+
+        System.out.println();
+        b.report(System.out, wall, gcCount, gcTime);
+        if (outFile != null) {
+            PrintStream ps = new PrintStream(new FileOutputStream(outFile), false, "UTF-8");
+
+            try {
+                b.report(ps, wall, gcCount, gcTime);
+            } finally {
+                ps.close();
+            }
+        }
+
+        //入力待ちのスレッドなどが残っていても終了する
+        System.exit(0);
+    }
+}
@@ -0,0 +1,160 @@
+package net.katsuster.ememu.bench;
+
+import java.util.concurrent.locks.*;
+
+import net.katsuster.ememu.arm.*;
+import net.katsuster.ememu.generic.*;
+
+/**
+ * バスを介した RAM、デバイスへの読み書きのベンチマーク。
+ *
+ * <p>
+ * 以前のバスは読み書きのたびに ReentrantReadWriteLock を取得していました。
+ * 比較のため、同じ読み書きをロックで囲んだ場合も測定します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class BusBench {
+    public static final int RAM_SIZE = 16 * 1024 * 1024;
+    public static final long ADDR_RAM = 0x00000000L;
+    public static final long ADDR_TIMER = 0x101e2000L;
+    //1MB の範囲を繰り返し読み書きする
+    public static final int ACCESS_MASK = 0xffffc;
+
+    private Bus bus;
+    private RAM32 ram;
+    private DualTimer timer;
+    private ReentrantReadWriteLock rwlock;
+
+    public BusBench() {
+        bus = new Bus();
+        ram = new RAM32(RAM_SIZE);
+        timer = new DualTimer(new VirtualClock());
+        rwlock = new ReentrantReadWriteLock();
+
+        bus.addSlaveCore(ram, ADDR_RAM, ADDR_RAM + RAM_SIZE - 1);
+        bus.addSlaveCore(timer.getSlaveCore(), ADDR_TIMER, ADDR_TIMER + 0xfff);
+    }
+
+    public Bus getBus() {
+        return bus;
+    }
+
+    public RAM32 getRAM() {
+        return ram;
+    }
+
+    public ReentrantReadWriteLock getLock() {
+        return rwlock;
+    }
+
+    /**
+     * ベンチマークを実行します。
+     *
+     * @param n      1 回の測定で処理を実行する回数
+     * @param warmup ウォームアップの回数
+     * @param repeat 測定の回数
+     */
+    public void runAll(int n, int warmup, int repeat) {
+        new Benchmark("Bus.read32 RAM") {
+            @Override
+            public long run(int n) {
+                Bus b = getBus();
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    sum += b.read32(ADDR_RAM + ((i << 2) & ACCESS_MASK));
+                }
+
+                return sum;
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("Bus.read32 RAM (global RW lock)") {
+            @Override
+            public long run(int n) {
+                Bus b = getBus();
+                Lock l = getLock().readLock();
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    l.lock();
+                    try {
+                        sum += b.read32(ADDR_RAM + ((i << 2) & ACCESS_MASK));
+                    } finally {
+                        l.unlock();
+                    }
+                }
+
+                return sum;
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("RAM32.readWord") {
+            @Override
+            public long run(int n) {
+                RAM32 r = getRAM();
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    sum += r.readWord((i << 2) & ACCESS_MASK);
+                }
+
+                return sum;
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("Bus.write32 RAM") {
+            @Override
+            public long run(int n) {
+                Bus b = getBus();
+
+                for (int i = 0; i < n; i++) {
+                    b.write32(ADDR_RAM + ((i << 2) & ACCESS_MASK), i);
+                }
+
+                return b.read32(ADDR_RAM);
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("Bus.write32 RAM (global RW lock)") {
+            @Override
+            public long run(int n) {
+                Bus b = getBus();
+                Lock l = getLock().writeLock();
+
+                for (int i = 0; i < n; i++) {
+                    l.lock();
+                    try {
+                        b.write32(ADDR_RAM + ((i << 2) & ACCESS_MASK), i);
+                    } finally {
+                        l.unlock();
+                    }
+                }
+
+                return b.read32(ADDR_RAM);
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("Bus.read32 Timer1Value") {
+            @Override
+            public long run(int n) {
+                Bus b = getBus();
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    sum += b.read32(ADDR_TIMER + DualTimer.REG_Timer1Value);
+                }
+
+                return sum;
+            }
+        }.report(n, warmup, repeat);
+    }
+
+    public static void main(String[] args) {
+        BusBench b = new BusBench();
+
+        b.runAll(10 * 1000 * 1000, 5, 5);
+    }
+}
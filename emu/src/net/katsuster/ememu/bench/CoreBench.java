@@ -0,0 +1,290 @@
+package net.katsuster.ememu.bench;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+
+/**
+ * ARM コアの各ステージ（アドレス変換、デコード、実行）のベンチマーク。
+ *
+ * <p>
+ * 命令の取得やデコード済み命令のキャッシュを経由せず、
+ * 各ステージを直接呼び出して測定します。
+ * 命令は小さな合成命令列を繰り返し使用します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class CoreBench {
+    public static final int RAM_SIZE = 0x10000;
+    //変換テーブルのアドレス（16KB 境界）
+    public static final int ADDR_TABLE = 0x4000;
+    //ロード、ストアするデータのアドレス
+    public static final int ADDR_DATA = 0x1000;
+    //アドレス変換を繰り返す範囲（1MB のセクション内）
+    public static final int ACCESS_MASK = 0xffffc;
+
+    //ARM 命令の組み合わせ
+    private static final int[] INSTS_ARM = {
+            0xe0800001, //add   r0, r0, r1
+            0xe2533001, //subs  r3, r3, #1
+            0xe5912000, //ldr   r2, [r1]
+            0xe5812004, //str   r2, [r1, #4]
+            0xe1a00000, //mov   r0, r0
+            0x1afffffc, //bne   (-16)
+            0xe3a04064, //mov   r4, #100
+            0xe0040492, //mul   r4, r2, r4
+    };
+
+    //Thumb 命令の組み合わせ
+    private static final int[] INSTS_THUMB = {
+            0x1840, //adds  r0, r0, r1
+            0x3b01, //subs  r3, #1
+            0x680a, //ldr   r2, [r1, #0]
+            0x604a, //str   r2, [r1, #4]
+            0x2464, //movs  r4, #100
+            0x4354, //muls  r4, r2
+            0x0064, //lsls  r4, r4, #1
+            0xd1fc, //bne   (-4)
+    };
+
+    /**
+     * ベンチマーク用の CPU を作成します。
+     *
+     * MMU を有効にする場合、仮想アドレスの先頭 1MB を
+     * 同じ物理アドレスに対応させるセクションを変換テーブルに設定します。
+     *
+     * @param mmu MMU を有効にするなら true、無効にするなら false
+     * @return CPU
+     */
+    public static ARMv5 createCPU(boolean mmu) {
+        ARMv5 c = new ARMv5();
+        Bus bus = new Bus();
+        RAM ram = new RAM32(RAM_SIZE);
+
+        c.setSlaveBus(bus);
+        bus.addSlaveCore(ram, 0x0, RAM_SIZE - 1);
+
+        c.doExceptionReset("bench");
+        c.setReg(1, ADDR_DATA);
+        c.setReg(3, Integer.MAX_VALUE);
+
+        if (mmu) {
+            //セクション、AP = 3（読み書き可）、ドメイン 0
+            ram.write32(ADDR_TABLE, 0x00000c02);
+            c.getMMU().setTableBase(ADDR_TABLE);
+            c.getMMU().setDomainAccess(0, 1);
+            c.getMMU().setEnable(true);
+        }
+
+        return c;
+    }
+
+    /**
+     * MMUv5.translate のベンチマークを作成します。
+     *
+     * @param name ベンチマークの名前
+     * @param mmu  MMU を有効にするなら true、無効にするなら false
+     * @return ベンチマーク
+     */
+    public static Benchmark createTranslateBench(String name, final boolean mmu) {
+        return new Benchmark(name) {
+            private MMUv5 m;
+
+            @Override
+            public void setup() {
+                m = createCPU(mmu).getMMU();
+            }
+
+            @Override
+            public long run(int n) {
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    sum += m.translate((i << 2) & ACCESS_MASK, 4, false, true, true);
+                }
+
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * ARM 命令のデコードのベンチマークを作成します。
+     *
+     * @param name ベンチマークの名前
+     * @return ベンチマーク
+     */
+    public static Benchmark createDecodeARMBench(String name) {
+        return new Benchmark(name) {
+            private DecodeStageARMv5 d;
+            private InstructionARM[] insts;
+
+            @Override
+            public void setup() {
+                d = new DecodeStageARMv5(createCPU(false));
+                insts = new InstructionARM[INSTS_ARM.length];
+                for (int i = 0; i < insts.length; i++) {
+                    insts[i] = new InstructionARM(INSTS_ARM[i]);
+                }
+            }
+
+            @Override
+            public long run(int n) {
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    sum += d.decode(insts[i & (insts.length - 1)]).ordinal();
+                }
+
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * Thumb 命令のデコードのベンチマークを作成します。
+     *
+     * @param name ベンチマークの名前
+     * @return ベンチマーク
+     */
+    public static Benchmark createDecodeThumbBench(String name) {
+        return new Benchmark(name) {
+            private DecodeStageThumb d;
+            private InstructionThumb[] insts;
+
+            @Override
+            public void setup() {
+                d = new DecodeStageThumb(createCPU(false));
+                insts = new InstructionThumb[INSTS_THUMB.length];
+                for (int i = 0; i < insts.length; i++) {
+                    insts[i] = new InstructionThumb(INSTS_THUMB[i]);
+                }
+            }
+
+            @Override
+            public long run(int n) {
+                long sum = 0;
+
+                for (int i = 0; i < n; i++) {
+                    sum += d.decode(insts[i & (insts.length - 1)]).ordinal();
+                }
+
+                return sum;
+            }
+        };
+    }
+
+    /**
+     * 1 つの ARM 命令の実行のベンチマークを作成します。
+     *
+     * @param name ベンチマークの名前
+     * @param inst ARM 命令のバイナリ値
+     * @param mmu  MMU を有効にするなら true、無効にするなら false
+     * @return ベンチマーク
+     */
+    public static Benchmark createExecARMBench(String name, final int inst,
+                                               final boolean mmu) {
+        return new Benchmark(name) {
+            private ARMv5 c;
+            private ExecStageARMv5 e;
+            private Opcode op;
+
+            @Override
+            public void setup() {
+                InstructionARM i = new InstructionARM(inst);
+
+                c = createCPU(mmu);
+                e = new ExecStageARMv5(c);
+                op = new Opcode(i, OpType.INS_TYPE_ARM,
+                        new DecodeStageARMv5(c).decode(i));
+            }
+
+            @Override
+            public long run(int n) {
+                for (int i = 0; i < n; i++) {
+                    e.execute(op, true);
+                }
+
+                return c.getReg(0) + c.getReg(2);
+            }
+        };
+    }
+
+    /**
+     * 1 つの Thumb 命令の実行のベンチマークを作成します。
+     *
+     * @param name ベンチマークの名前
+     * @param inst Thumb 命令のバイナリ値
+     * @return ベンチマーク
+     */
+    public static Benchmark createExecThumbBench(String name, final int inst) {
+        return new Benchmark(name) {
+            private ARMv5 c;
+            private ExecStageThumb e;
+            private Opcode op;
+
+            @Override
+            public void setup() {
+                InstructionThumb i = new InstructionThumb(inst);
+
+                c = createCPU(false);
+                c.getCPSR().setTBit(true);
+                e = new ExecStageThumb(c);
+                op = new Opcode(i, OpType.INS_TYPE_THUMB,
+                        new DecodeStageThumb(c).decode(i));
+            }
+
+            @Override
+            public long run(int n) {
+                for (int i = 0; i < n; i++) {
+                    e.execute(op, true);
+                }
+
+                return c.getReg(0) + c.getReg(2);
+            }
+        };
+    }
+
+    /**
+     * ベンチマークを実行します。
+     *
+     * @param n      1 回の測定で処理を実行する回数
+     * @param warmup ウォームアップの回数
+     * @param repeat 測定の回数
+     */
+    public void runAll(int n, int warmup, int repeat) {
+        createTranslateBench("MMUv5.translate MMU off", false)
+                .report(n, warmup, repeat);
+        createTranslateBench("MMUv5.translate MMU on", true)
+                .report(n, warmup, repeat);
+
+        createDecodeARMBench("DecodeStageARMv5.decode")
+                .report(n, warmup, repeat);
+        createDecodeThumbBench("DecodeStageThumb.decode")
+                .report(n, warmup, repeat);
+
+        createExecARMBench("ExecStageARMv5 add", INSTS_ARM[0], false)
+                .report(n, warmup, repeat);
+        createExecARMBench("ExecStageARMv5 ldr MMU off", INSTS_ARM[2], false)
+                .report(n, warmup, repeat);
+        createExecARMBench("ExecStageARMv5 ldr MMU on", INSTS_ARM[2], true)
+                .report(n, warmup, repeat);
+        createExecARMBench("ExecStageARMv5 str MMU off", INSTS_ARM[3], false)
+                .report(n, warmup, repeat);
+        createExecARMBench("ExecStageARMv5 str MMU on", INSTS_ARM[3], true)
+                .report(n, warmup, repeat);
+
+        createExecThumbBench("ExecStageThumb adds", INSTS_THUMB[0])
+                .report(n, warmup, repeat);
+        createExecThumbBench("ExecStageThumb ldr", INSTS_THUMB[2])
+                .report(n, warmup, repeat);
+        createExecThumbBench("ExecStageThumb str", INSTS_THUMB[3])
+                .report(n, warmup, repeat);
+    }
+
+    public static void main(String[] args) {
+        CoreBench b = new CoreBench();
+
+        b.runAll(10 * 1000 * 1000, 5, 5);
+    }
+}
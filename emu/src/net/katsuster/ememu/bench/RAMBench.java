@@ -0,0 +1,116 @@
+package net.katsuster.ememu.bench;
+
+import net.katsuster.ememu.generic.*;
+
+/**
+ * RAM への書き込みのベンチマーク。
+ *
+ * <p>
+ * 書き込まれたページを記録すると、書き込みのたびにビットマップを更新します。
+ * 記録する場合としない場合の書き込みの速度を比較します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class RAMBench {
+    public static final int RAM_SIZE = 16 * 1024 * 1024;
+    //1MB の範囲を繰り返し書き込む
+    public static final int ACCESS_MASK = 0xffffc;
+    //ブロック転送の長さ（32 ビット単位）
+    public static final int BLOCK_LEN = 1024;
+
+    /**
+     * write32 のベンチマークを作成します。
+     *
+     * @param name  ベンチマークの名前
+     * @param r     書き込む RAM
+     * @param dirty 書き込まれたページを記録するなら true、記録しないなら false
+     * @return ベンチマーク
+     */
+    public static Benchmark createWriteBench(String name, final RAM r,
+                                             final boolean dirty) {
+        return new Benchmark(name) {
+            @Override
+            public void setup() {
+                r.setDirtyTracking(dirty);
+            }
+
+            @Override
+            public long run(int n) {
+                for (int i = 0; i < n; i++) {
+                    r.write32((i << 2) & ACCESS_MASK, i);
+                }
+
+                return r.fetchAndClearDirtyPages().cardinality();
+            }
+        };
+    }
+
+    /**
+     * writeBlock のベンチマークを作成します。
+     *
+     * 1 回のブロック転送を 1 回として数えます。
+     *
+     * @param name  ベンチマークの名前
+     * @param r     書き込む RAM
+     * @param dirty 書き込まれたページを記録するなら true、記録しないなら false
+     * @return ベンチマーク
+     */
+    public static Benchmark createBlockBench(String name, final RAM r,
+                                             final boolean dirty) {
+        return new Benchmark(name) {
+            private int[] src = new int[BLOCK_LEN];
+
+            @Override
+            public void setup() {
+                r.setDirtyTracking(dirty);
+            }
+
+            @Override
+            public long run(int n) {
+                for (int i = 0; i < n; i++) {
+                    r.writeBlock((i * BLOCK_LEN * 4) & ACCESS_MASK, src, 0, BLOCK_LEN);
+                }
+
+                return r.fetchAndClearDirtyPages().cardinality();
+            }
+        };
+    }
+
+    /**
+     * ベンチマークを実行します。
+     *
+     * @param n      1 回の測定で処理を実行する回数
+     * @param warmup ウォームアップの回数
+     * @param repeat 測定の回数
+     */
+    public void runAll(int n, int warmup, int repeat) {
+        RAM32 ram32 = new RAM32(RAM_SIZE);
+        RAMDirect direct = new RAMDirect(RAM_SIZE);
+        RAMSparse sparse = new RAMSparse(RAM_SIZE);
+
+        createWriteBench("RAM32.write32", ram32, false)
+                .report(n, warmup, repeat);
+        createWriteBench("RAM32.write32 (dirty tracking)", ram32, true)
+                .report(n, warmup, repeat);
+        createWriteBench("RAMDirect.write32", direct, false)
+                .report(n, warmup, repeat);
+        createWriteBench("RAMDirect.write32 (dirty tracking)", direct, true)
+                .report(n, warmup, repeat);
+        createWriteBench("RAMSparse.write32", sparse, false)
+                .report(n, warmup, repeat);
+        createWriteBench("RAMSparse.write32 (dirty tracking)", sparse, true)
+                .report(n, warmup, repeat);
+
+        createBlockBench("RAM32.writeBlock 4KB", ram32, false)
+                .report(n / BLOCK_LEN, warmup, repeat);
+        createBlockBench("RAM32.writeBlock 4KB (dirty tracking)", ram32, true)
+                .report(n / BLOCK_LEN, warmup, repeat);
+    }
+
+    public static void main(String[] args) {
+        RAMBench b = new RAMBench();
+
+        b.runAll(10 * 1000 * 1000, 5, 5);
+    }
+}
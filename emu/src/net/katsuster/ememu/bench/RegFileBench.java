@@ -0,0 +1,178 @@
+package net.katsuster.ememu.bench;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+
+/**
+ * ARM のレジスタファイルと、インタプリタ全体のベンチマーク。
+ *
+ * <p>
+ * 以前のレジスタファイルはモードごとに Reg32 オブジェクトの配列を持ち、
+ * 読み書きのたびに Reg32 オブジェクトを経由していました。
+ * 比較のため、同じ読み書きを Reg32 オブジェクトの配列で行った場合も測定します。
+ * </p>
+ *
+ * <p>
+ * インタプリタのベンチマークは 1 命令の実行を 1 回として測定するため、
+ * Mops/s が MIPS を表します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class RegFileBench {
+    public static final int RAM_SIZE = 0x10000;
+
+    //r0 に 100 + 99 + ... + 1 を加算し続ける
+    private static final int[] PROG = {
+            0xe3a01064, //0x00: mov   r1, #100
+            0xe0800001, //0x04: add   r0, r0, r1
+            0xe2511001, //0x08: subs  r1, r1, #1
+            0x1afffffc, //0x0c: bne   0x04
+            0xeafffffa, //0x10: b     0x00
+    };
+
+    private ARMv5 cpu;
+    private Reg32[] objRegs;
+
+    public RegFileBench() {
+        cpu = createCPU(false, false);
+        objRegs = new Reg32[ARMRegFile.ARM_REGFILE_SIZE];
+        for (int i = 0; i < objRegs.length; i++) {
+            objRegs[i] = new Reg32("r" + i, 0);
+        }
+    }
+
+    public ARMv5 getCPU() {
+        return cpu;
+    }
+
+    public Reg32[] getObjectRegs() {
+        return objRegs;
+    }
+
+    /**
+     * ベンチマーク用のプログラムを RAM に置いた CPU を作成します。
+     *
+     * @param blockTrans ブロック変換を有効にするなら true、無効にするなら false
+     * @param threaded   スレッデッドコードを有効にするなら true、無効にするなら false
+     * @return CPU
+     */
+    public static ARMv5 createCPU(boolean blockTrans, boolean threaded) {
+        ARMv5 c = new ARMv5();
+        Bus bus = new Bus();
+        RAM ram = new RAM32(RAM_SIZE);
+
+        c.setSlaveBus(bus);
+        bus.addSlaveCore(ram, 0x0, RAM_SIZE - 1);
+        for (int i = 0; i < PROG.length; i++) {
+            ram.write32(i * 4, PROG[i]);
+        }
+
+        c.doExceptionReset("bench");
+        c.setEnabledBlockTranslation(blockTrans);
+        c.setEnabledThreadedCode(threaded);
+
+        return c;
+    }
+
+    /**
+     * インタプリタ全体のベンチマークを作成します。
+     *
+     * @param name       ベンチマークの名前
+     * @param blockTrans ブロック変換を有効にするなら true、無効にするなら false
+     * @param threaded   スレッデッドコードを有効にするなら true、無効にするなら false
+     * @return ベンチマーク
+     */
+    public static Benchmark createStepBench(String name,
+                                            final boolean blockTrans,
+                                            final boolean threaded) {
+        return new Benchmark(name) {
+            private ARMv5 c;
+
+            @Override
+            public void setup() {
+                c = createCPU(blockTrans, threaded);
+            }
+
+            @Override
+            public long run(int n) {
+                //ブロック変換を有効にすると 1 回の step() で複数の命令を実行するため、
+                //step() の呼び出し回数ではなく、実行した命令数で数える
+                long end = c.getInstCount() + n;
+
+                while (c.getInstCount() < end) {
+                    c.step();
+                }
+
+                return c.getReg(0);
+            }
+        };
+    }
+
+    /**
+     * ベンチマークを実行します。
+     *
+     * @param n      1 回の測定で処理を実行する回数
+     * @param warmup ウォームアップの回数
+     * @param repeat 測定の回数
+     */
+    public void runAll(int n, int warmup, int repeat) {
+        new Benchmark("ARMv5.getReg/setReg") {
+            @Override
+            public long run(int n) {
+                ARMv5 c = getCPU();
+
+                for (int i = 0; i < n; i++) {
+                    int d = i & 0x7;
+
+                    c.setReg(d, c.getReg(d + 1) + c.getReg(d + 2));
+                }
+
+                return c.getReg(0);
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("ARMv5.getReg/setReg (Reg32 objects)") {
+            @Override
+            public long run(int n) {
+                Reg32[] r = getObjectRegs();
+
+                for (int i = 0; i < n; i++) {
+                    int d = i & 0x7;
+
+                    r[d].setValue(r[d + 1].getValue() + r[d + 2].getValue());
+                }
+
+                return r[0].getValue();
+            }
+        }.report(n, warmup, repeat);
+
+        new Benchmark("ARMv5.getCPSR().setMode SVC <-> IRQ") {
+            @Override
+            public long run(int n) {
+                ARMv5 c = getCPU();
+
+                for (int i = 0; i < n; i++) {
+                    c.getCPSR().setMode(((i & 1) == 0) ? PSR.MODE_IRQ : PSR.MODE_SVC);
+                }
+
+                return c.getReg(13);
+            }
+        }.report(n, warmup, repeat);
+
+        createStepBench("ARMv5.step interpreter", false, false)
+                .report(n, warmup, repeat);
+        createStepBench("ARMv5.step threaded", false, true)
+                .report(n, warmup, repeat);
+        createStepBench("ARMv5.step block", true, false)
+                .report(n, warmup, repeat);
+        createStepBench("ARMv5.step block, threaded", true, true)
+                .report(n, warmup, repeat);
+    }
+
+    public static void main(String[] args) {
+        RegFileBench b = new RegFileBench();
+
+        b.runAll(10 * 1000 * 1000, 5, 5);
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * エミュレータの性能を測定するベンチマークを含んだパッケージです。
+ *
+ * <p>
+ * 各ベンチマークは main メソッドから単独で実行できます。
+ * </p>
+ */
+package net.katsuster.ememu.bench;
@@ -39,7 +39,10 @@ public class ARMVersatile {
         //TODO: implement MPMC controller...
         RAM mpmc_c0_c1 = ramMain;
 
-        SysBaseboard sysBoard = new SysBaseboard();
+        //マシン全体で共有する仮想クロック
+        VirtualClock clock = cpu.getClock();
+
+        SysBaseboard sysBoard = new SysBaseboard(clock);
 
         //TODO: implement PCI controller...
         RAM pci_conf = new RAM64(4 * 1024);
@@ -51,7 +54,7 @@ public class ARMVersatile {
         MMCI mci0 = new MMCI();
         KMI kmiKey = new KMI();
         KMI kmiMouse = new KMI();
-        UART uart3 = new UART(uartIn[3], uartOut[3]);
+        UART uart3 = new UART(clock, uartIn[3], uartOut[3]);
         SCard scard1 = new SCard();
         MMCI mci1 = new MMCI();
         //TODO: implement Ethernet controller...
@@ -66,17 +69,17 @@ public class ARMVersatile {
         PrimaryINTC intc1st = new PrimaryINTC();
         SysController sysCtrl = new SysController();
         Watchdog watchdog = new Watchdog();
-        DualTimer timer0_1 = new DualTimer();
-        DualTimer timer2_3 = new DualTimer();
+        DualTimer timer0_1 = new DualTimer(clock);
+        DualTimer timer2_3 = new DualTimer(clock);
         GPIO gpio0 = new GPIO();
         GPIO gpio1 = new GPIO();
         GPIO gpio2 = new GPIO();
         GPIO gpio3 = new GPIO();
         RTC rtc = new RTC();
         SCard scard0 = new SCard();
-        UART uart0 = new UART(uartIn[0], uartOut[0]);
-        UART uart1 = new UART(uartIn[1], uartOut[1]);
-        UART uart2 = new UART(uartIn[2], uartOut[2]);
+        UART uart0 = new UART(clock, uartIn[0], uartOut[0]);
+        UART uart1 = new UART(clock, uartIn[1], uartOut[1]);
+        UART uart2 = new UART(clock, uartIn[2], uartOut[2]);
         SSP ssp = new SSP();
 
         //TODO: implement SSMC controller...
@@ -12,7 +12,8 @@ package net.katsuster.ememu.generic;
  */
 public abstract class AbstractCore extends Thread
         implements Core {
-    private boolean halted = false;
+    //他のスレッドからの停止要求を、実行中のループから確実に見えるようにする
+    private volatile boolean halted = false;
 
     @Override
     public boolean shouldHalt() {
@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.io.*;
+
 /**
  * 64 ビットアドレス、32ビットデータ、バンク付き Flush メモリ
  *
@@ -7,7 +9,8 @@ package net.katsuster.ememu.generic;
  *
  * @author katsuhiro
  */
-public class BankedFlush16_16 extends SlaveCore {
+public class BankedFlush16_16 extends SlaveCore
+        implements Snapshotable {
     //データ幅（バイト単位）
     public static final int LEN_WORD = 4;
     //データ幅（ビット単位）
@@ -41,6 +44,18 @@ public class BankedFlush16_16 extends SlaveCore {
         return size;
     }
 
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        bank0.saveState(out);
+        bank1.saveState(out);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        bank0.loadState(in);
+        bank1.loadState(in);
+    }
+
     /**
      * 指定したアドレスが正当かどうか検査します。
      *
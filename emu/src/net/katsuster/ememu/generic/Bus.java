@@ -1,16 +1,47 @@
 package net.katsuster.ememu.generic;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 import java.util.*;
-import java.util.concurrent.locks.*;
 
 /**
  * 64 ビットアドレスバス。
  *
+ * <p>
+ * バス自身は読み書きの際にロックを取得しません。
+ * スレーブコアの割り当て（addSlaveCore, removeSlaveCore）は、
+ * コアを起動する前に行う必要があります。
+ * Thread.start() の前に行われた変更は起動後のスレッドから見えるため、
+ * 読み書きの際に割り当て表を同期する必要はありません。
+ * </p>
+ *
+ * <p>
+ * メモリの順序付けは下記の通りです。
+ * </p>
+ *
+ * <ul>
+ * <li>RAM への読み書きは同期しません。
+ * 同一スレッド内ではプログラム順に見えますが、
+ * 他スレッドの書き込みがいつ見えるかは保証しません。
+ * RAM に読み書きするのはマスターコア（CPU）のみとします。</li>
+ * <li>自身のスレッドで状態を変更するスレーブコア（タイマー、UART など）は、
+ * レジスタの読み書きと自身のスレッドでの更新を、
+ * スレーブコア自身のモニタで同期する必要があります。
+ * モニタの解放と取得の間には happens-before 関係があるため、
+ * デバイスの更新は次のレジスタアクセスから見えます。</li>
+ * <li>割り込みの通知は INTDestination を介して行い、
+ * CPU 側のモニタで同期します。</li>
+ * </ul>
+ *
  * @author katsuhiro
  */
-public class Bus implements RWCore {
-    //ロック
-    private ReentrantReadWriteLock rwlock;
+public class Bus implements RWCore, Snapshotable {
+    //ストリームから読み込むときのバッファのサイズ
+    public static final int LOAD_BUFFER_SIZE = 64 * 1024;
+    //ファイルを一度にメモリマップするサイズの上限
+    public static final int LOAD_MAP_SIZE = 256 * 1024 * 1024;
+
     //全マスターコアを管理するリスト
     private List<MasterCore> masterList;
     //全スレーブコアを管理するリスト
@@ -18,12 +49,12 @@ public class Bus implements RWCore {
     //32bit アドレス内のスレーブコアに高速にアクセスするためのテーブル
     private SlaveCoreAddress[] slaves;
     //直前にアクセスしたスレーブコアのキャッシュ
+    //SlaveCoreAddress は不変のため、同期せずに参照を入れ替えても安全
     private SlaveCoreAddress cachedSlave;
     private long cacheHit;
     private long cacheMiss;
 
     public Bus() {
-        rwlock = new ReentrantReadWriteLock();
         masterList = new ArrayList<MasterCore>();
         slaveList = new ArrayList<SlaveCoreAddress>();
         //4KB ごとにスレーブコアを記録するため、
@@ -105,12 +136,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.readLock().lock();
-        try {
-            return sca.getCore().read8(offSt);
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return sca.getCore().read8(offSt);
     }
 
     @Override
@@ -126,12 +152,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.readLock().lock();
-        try {
-            return sca.getCore().read16(offSt);
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return sca.getCore().read16(offSt);
     }
 
     @Override
@@ -147,12 +168,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.readLock().lock();
-        try {
-            return sca.getCore().read32(offSt);
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return sca.getCore().read32(offSt);
     }
 
     @Override
@@ -168,12 +184,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.readLock().lock();
-        try {
-            return sca.getCore().read64(offSt);
-        } finally {
-            rwlock.readLock().unlock();
-        }
+        return sca.getCore().read64(offSt);
     }
 
     @Override
@@ -207,12 +218,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.writeLock().lock();
-        try {
-            sca.getCore().write8(offSt, data);
-        } finally {
-            rwlock.writeLock().unlock();
-        }
+        sca.getCore().write8(offSt, data);
     }
 
     @Override
@@ -228,12 +234,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.writeLock().lock();
-        try {
-            sca.getCore().write16(offSt, data);
-        } finally {
-            rwlock.writeLock().unlock();
-        }
+        sca.getCore().write16(offSt, data);
     }
 
     @Override
@@ -249,12 +250,7 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.writeLock().lock();
-        try {
-            sca.getCore().write32(offSt, data);
-        } finally {
-            rwlock.writeLock().unlock();
-        }
+        sca.getCore().write32(offSt, data);
     }
 
     @Override
@@ -270,12 +266,223 @@ public class Bus implements RWCore {
 
         offSt = addr - sca.getStartAddress();
 
-        rwlock.writeLock().lock();
-        try {
-            sca.getCore().write64(offSt, data);
-        } finally {
-            rwlock.writeLock().unlock();
+        sca.getCore().write64(offSt, data);
+    }
+
+    @Override
+    public long readChecked8(long addr) {
+        SlaveCoreAddress sca;
+        long offSt;
+
+        sca = findSlaveCoreAddress(addr, addr + 0);
+        if (sca == null) {
+            return ACCESS_ABORT;
+        }
+
+        offSt = addr - sca.getStartAddress();
+
+        return sca.getCore().readChecked8(offSt);
+    }
+
+    @Override
+    public long readChecked16(long addr) {
+        SlaveCoreAddress sca;
+        long offSt;
+
+        sca = findSlaveCoreAddress(addr, addr + 1);
+        if (sca == null) {
+            return ACCESS_ABORT;
+        }
+
+        offSt = addr - sca.getStartAddress();
+
+        return sca.getCore().readChecked16(offSt);
+    }
+
+    @Override
+    public long readChecked32(long addr) {
+        SlaveCoreAddress sca;
+        long offSt;
+
+        sca = findSlaveCoreAddress(addr, addr + 3);
+        if (sca == null) {
+            return ACCESS_ABORT;
+        }
+
+        offSt = addr - sca.getStartAddress();
+
+        return sca.getCore().readChecked32(offSt);
+    }
+
+    @Override
+    public boolean writeChecked8(long addr, byte data) {
+        SlaveCoreAddress sca;
+        long offSt;
+
+        sca = findSlaveCoreAddress(addr, addr + 0);
+        if (sca == null) {
+            return false;
+        }
+
+        offSt = addr - sca.getStartAddress();
+
+        return sca.getCore().writeChecked8(offSt, data);
+    }
+
+    @Override
+    public boolean writeChecked16(long addr, short data) {
+        SlaveCoreAddress sca;
+        long offSt;
+
+        sca = findSlaveCoreAddress(addr, addr + 1);
+        if (sca == null) {
+            return false;
+        }
+
+        offSt = addr - sca.getStartAddress();
+
+        return sca.getCore().writeChecked16(offSt, data);
+    }
+
+    @Override
+    public boolean writeChecked32(long addr, int data) {
+        SlaveCoreAddress sca;
+        long offSt;
+
+        sca = findSlaveCoreAddress(addr, addr + 3);
+        if (sca == null) {
+            return false;
+        }
+
+        offSt = addr - sca.getStartAddress();
+
+        return sca.getCore().writeChecked32(offSt, data);
+    }
+
+    /**
+     * 指定したアドレスの範囲全体を含むスレーブコアを探します。
+     *
+     * ブロック転送（readBlock, writeBlock）の範囲は、
+     * 1 つのスレーブコアに収まっている必要があります。
+     * CPU を介さない転送では、CPU のキャッシュは無効化されません。
+     *
+     * @param addr 先頭のアドレス
+     * @param len  範囲の長さ（バイト単位）
+     * @param msg  範囲全体を含むスレーブコアがない場合の例外のメッセージ
+     * @return 範囲全体を含むスレーブコアのアドレス情報
+     */
+    protected SlaveCoreAddress findBlockSlaveCoreAddress(long addr, long len, String msg) {
+        SlaveCoreAddress sca;
+
+        sca = findSlaveCoreAddress(addr, addr + len - 1);
+        if (sca == null || !sca.contains(addr, addr + len - 1)) {
+            throw new IllegalArgumentException(msg +
+                    String.format("(0x%08x - 0x%08x).", addr, addr + len - 1));
+        }
+
+        return sca;
+    }
+
+    @Override
+    public void readBlock(long addr, int[] dst, int off, int len) {
+        SlaveCoreAddress sca;
+
+        if (len == 0) {
+            return;
+        }
+
+        sca = findBlockSlaveCoreAddress(addr, len * 4L, "Read from invalid address");
+        sca.getCore().readBlock(addr - sca.getStartAddress(), dst, off, len);
+    }
+
+    @Override
+    public void writeBlock(long addr, int[] src, int off, int len) {
+        SlaveCoreAddress sca;
+
+        if (len == 0) {
+            return;
         }
+
+        sca = findBlockSlaveCoreAddress(addr, len * 4L, "Write to invalid address");
+        sca.getCore().writeBlock(addr - sca.getStartAddress(), src, off, len);
+    }
+
+    @Override
+    public void readBlock(long addr, byte[] dst, int off, int len) {
+        readBlock(addr, ByteBuffer.wrap(dst, off, len));
+    }
+
+    @Override
+    public void writeBlock(long addr, byte[] src, int off, int len) {
+        writeBlock(addr, ByteBuffer.wrap(src, off, len));
+    }
+
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        SlaveCoreAddress sca;
+
+        if (!dst.hasRemaining()) {
+            return;
+        }
+
+        sca = findBlockSlaveCoreAddress(addr, dst.remaining(), "Read from invalid address");
+        sca.getCore().readBlock(addr - sca.getStartAddress(), dst);
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        SlaveCoreAddress sca;
+
+        if (!src.hasRemaining()) {
+            return;
+        }
+
+        sca = findBlockSlaveCoreAddress(addr, src.remaining(), "Write to invalid address");
+        sca.getCore().writeBlock(addr - sca.getStartAddress(), src);
+    }
+
+    /**
+     * チャネルから終端まで読み出し、指定したアドレスから書き込みます。
+     *
+     * ファイルのチャネルはメモリマップして、RAM に直接コピーします。
+     * それ以外のチャネルはバッファを介して、一定のサイズごとに書き込みます。
+     *
+     * @param addr 書き込みを開始するアドレス
+     * @param ch   読み出すチャネル
+     * @return 書き込んだバイト数
+     * @throws IOException 読み出しに失敗した場合
+     */
+    public long load(long addr, ReadableByteChannel ch) throws IOException {
+        ByteBuffer buf;
+        long total = 0;
+        int n;
+
+        if (ch instanceof FileChannel) {
+            FileChannel fc = (FileChannel)ch;
+            long pos = fc.position();
+            long size = fc.size() - pos;
+
+            while (total < size) {
+                n = (int)Math.min(size - total, LOAD_MAP_SIZE);
+                buf = fc.map(FileChannel.MapMode.READ_ONLY, pos + total, n);
+                writeBlock(addr + total, buf);
+                total += n;
+            }
+            fc.position(pos + total);
+
+            return total;
+        }
+
+        buf = ByteBuffer.allocate(LOAD_BUFFER_SIZE);
+        while (ch.read(buf) != -1) {
+            buf.flip();
+            n = buf.remaining();
+            writeBlock(addr + total, buf);
+            total += n;
+            buf.clear();
+        }
+
+        return total;
     }
 
     /**
@@ -336,6 +543,26 @@ public class Bus implements RWCore {
         }
     }
 
+    /**
+     * 指定したアドレスの範囲全体を含むスレーブコアについて、
+     * 開始アドレスのスレーブコア内でのオフセットを取得します。
+     *
+     * @param start 開始アドレス
+     * @param end   終了アドレス
+     * @return スレーブコア内でのオフセット、
+     * 範囲全体を含むスレーブコアがなければ -1
+     */
+    public long getSlaveCoreOffset(long start, long end) {
+        SlaveCoreAddress sca;
+
+        sca = findSlaveCoreAddress(start, end);
+        if (sca == null || !sca.contains(start, end)) {
+            return -1;
+        }
+
+        return start - sca.getStartAddress();
+    }
+
     /**
      * バスから指定したスレーブコアを削除します。
      *
@@ -425,13 +652,97 @@ public class Bus implements RWCore {
         }
     }
 
+    /**
+     * バスに接続されている全てのスレーブコアの状態を、
+     * 接続された順にスナップショットに書き出します。
+     *
+     * 状態を保存できないスレーブコアは、クラス名のみを書き出します。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        out.writeInt(slaveList.size());
+        for (SlaveCoreAddress sca : slaveList) {
+            SlaveCore sc = sca.getCore();
+
+            SnapshotIO.writeTag(out, sc.getClass().getName());
+            out.writeLong(sca.getStartAddress());
+            if (sc instanceof Snapshotable) {
+                ((Snapshotable)sc).saveState(out);
+            }
+        }
+    }
+
+    /**
+     * バスに接続されている全てのスレーブコアの状態を、
+     * スナップショットから読み出します。
+     *
+     * スナップショットを保存したときと同じ順序、
+     * 同じアドレスにスレーブコアが接続されている必要があります。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、
+     *                     スレーブコアの構成が一致しない場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        loadState(in, true);
+    }
+
+    /**
+     * バスに接続されている全てのスレーブコアの状態を、
+     * スナップショットから読み出します。
+     *
+     * RAM の内容を読み出さない場合、RAM の内容は読み飛ばし変更しません。
+     * RAM は既にスナップショットと同じ内容を持っている必要があります。
+     * RAM は保存したときと異なる実装でも構いません。
+     *
+     * @param in      読み出し元
+     * @param loadRAM RAM の内容を読み出すなら true、読み飛ばすなら false
+     * @throws IOException 読み出しに失敗した場合、
+     *                     スレーブコアの構成が一致しない場合
+     */
+    public void loadState(DataInput in, boolean loadRAM) throws IOException {
+        int n = in.readInt();
+
+        if (n != slaveList.size()) {
+            throw new IOException(String.format(
+                    "Snapshot mismatch, expected %d slaves but %d.",
+                    slaveList.size(), n));
+        }
+        for (SlaveCoreAddress sca : slaveList) {
+            SlaveCore sc = sca.getCore();
+            long st;
+
+            if (sc instanceof RAM) {
+                //RAM の保存形式は実装によらず共通
+                SnapshotIO.readTag(in, RAM.class);
+            } else {
+                SnapshotIO.readTag(in, sc.getClass().getName());
+            }
+            st = in.readLong();
+            if (st != sca.getStartAddress()) {
+                throw new IOException(String.format(
+                        "Snapshot mismatch, expected slave at 0x%08x but 0x%08x.",
+                        sca.getStartAddress(), st));
+            }
+            if (!loadRAM && sc instanceof RAM) {
+                ((RAM)sc).skipState(in);
+            } else if (sc instanceof Snapshotable) {
+                ((Snapshotable)sc).loadState(in);
+            }
+        }
+    }
+
     /**
      * スレーブコアとスレーブコアが占めるアドレスを表すクラスです。
      */
     private class SlaveCoreAddress {
-        private SlaveCore slave;
-        private long start;
-        private long end;
+        private final SlaveCore slave;
+        private final long start;
+        private final long end;
 
         /**
          * 指定したアドレスの範囲にスレーブコアを割り当てます。
@@ -200,6 +200,182 @@ public abstract class CPU extends MasterCore
         write64(addrl, data);
     }
 
+    /**
+     * 指定したアドレスから 8 ビットを読み出します。
+     *
+     * 読み出しが可能かどうかの判定と読み出しを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、
+     * 読み出しができない場合は RWCore.ACCESS_ABORT
+     */
+    public long readChecked8_a32(int addr) {
+        long addrl = addr & 0xffffffffL;
+        return readChecked8(addrl);
+    }
+
+    /**
+     * 指定したアドレスから 16 ビットを読み出します。
+     *
+     * 読み出しが可能かどうかの判定と読み出しを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、
+     * 読み出しができない場合は RWCore.ACCESS_ABORT
+     */
+    public long readChecked16_a32(int addr) {
+        long addrl = addr & 0xffffffffL;
+        return readChecked16(addrl);
+    }
+
+    /**
+     * 指定したアドレスから 32 ビットを読み出します。
+     *
+     * 読み出しが可能かどうかの判定と読み出しを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、
+     * 読み出しができない場合は RWCore.ACCESS_ABORT
+     */
+    public long readChecked32_a32(int addr) {
+        long addrl = addr & 0xffffffffL;
+        return readChecked32(addrl);
+    }
+
+    /**
+     * 指定したアドレスに 8 ビットを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @param data 書き込むデータ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public boolean writeChecked8_a32(int addr, byte data) {
+        long addrl = addr & 0xffffffffL;
+        return writeChecked8(addrl, data);
+    }
+
+    /**
+     * 指定したアドレスに 16 ビットを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @param data 書き込むデータ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public boolean writeChecked16_a32(int addr, short data) {
+        long addrl = addr & 0xffffffffL;
+        return writeChecked16(addrl, data);
+    }
+
+    /**
+     * 指定したアドレスに 32 ビットを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @param data 書き込むデータ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public boolean writeChecked32_a32(int addr, int data) {
+        long addrl = addr & 0xffffffffL;
+        return writeChecked32(addrl, data);
+    }
+
+    /**
+     * 指定したアドレスの範囲全体が、1 つの RAM に収まっているかどうかを取得します。
+     *
+     * @param addr 先頭のアドレス
+     * @param len  範囲の長さ（バイト単位）
+     * @return RAM に収まっていれば true、そうでなければ false
+     */
+    protected boolean isRAMRange(long addr, int len) {
+        Bus bus = getSlaveBus();
+        long ed = addr + len - 1;
+        long off;
+        SlaveCore sc;
+
+        off = bus.getSlaveCoreOffset(addr, ed);
+        if (off < 0) {
+            return false;
+        }
+        sc = bus.getSlaveCore(addr, ed);
+
+        return sc instanceof RAM && off + len <= ((RAM)sc).getSize();
+    }
+
+    /**
+     * 指定したアドレスの範囲が 1 つの RAM に収まっていれば、
+     * 32 ビットのデータをまとめて読み取ります。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr 先頭のアドレス
+     * @param dst  読み取ったデータを格納する配列
+     * @param len  読み取るデータの数（32 ビット単位）
+     * @return 読み取った場合は true、範囲が RAM に収まっていない場合は false
+     */
+    public boolean readBlockRAM_a32(int addr, int[] dst, int len) {
+        long addrl = addr & 0xffffffffL;
+
+        if (!isRAMRange(addrl, len * 4)) {
+            return false;
+        }
+        readBlock(addrl, dst, 0, len);
+
+        return true;
+    }
+
+    /**
+     * 指定したアドレスの範囲が 1 つの RAM に収まっていれば、
+     * 32 ビットのデータをまとめて書き込みます。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr 先頭のアドレス
+     * @param src  書き込むデータを持つ配列
+     * @param len  書き込むデータの数（32 ビット単位）
+     * @return 書き込んだ場合は true、範囲が RAM に収まっていない場合は false
+     */
+    public boolean writeBlockRAM_a32(int addr, int[] src, int len) {
+        long addrl = addr & 0xffffffffL;
+
+        if (!isRAMRange(addrl, len * 4)) {
+            return false;
+        }
+        writeBlock(addrl, src, 0, len);
+
+        return true;
+    }
+
     /**
      * 逆アセンブルした命令を表示します。
      *
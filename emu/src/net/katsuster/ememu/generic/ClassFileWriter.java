@@ -0,0 +1,337 @@
+package net.katsuster.ememu.generic;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * JVM のクラスファイルを生成する、最小限のライタです。
+ *
+ * <p>
+ * フィールド、インタフェース、例外表を持たないクラスのみ生成できます。
+ * クラスファイルのバージョンは 49（Java 5）とし、
+ * StackMapTable 属性を持たないメソッドも型推論による検証を受けられるようにします。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class ClassFileWriter {
+    public static final int MAGIC = 0xcafebabe;
+    public static final int VERSION_MAJOR = 49;
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    //定数プールのタグ
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private ByteArrayOutputStream poolBytes;
+    private DataOutputStream pool;
+    private Map<String, Integer> poolIndexes;
+    private int poolCount;
+    private int thisClass;
+    private int superClass;
+    private ByteArrayOutputStream methodBytes;
+    private DataOutputStream methods;
+    private int methodCount;
+
+    /**
+     * クラスファイルのライタを作成します。
+     *
+     * @param name      クラスの内部名（例: net/katsuster/Foo）
+     * @param superName 親クラスの内部名
+     */
+    public ClassFileWriter(String name, String superName) {
+        poolBytes = new ByteArrayOutputStream();
+        pool = new DataOutputStream(poolBytes);
+        poolIndexes = new HashMap<String, Integer>();
+        poolCount = 1;
+        methodBytes = new ByteArrayOutputStream();
+        methods = new DataOutputStream(methodBytes);
+        methodCount = 0;
+
+        thisClass = addClass(name);
+        superClass = addClass(superName);
+    }
+
+    /**
+     * 定数プールに UTF-8 文字列を追加します。
+     *
+     * 同じ文字列が既に追加されていれば、そのインデクスを返します。
+     *
+     * @param s 文字列
+     * @return 定数プールのインデクス
+     */
+    public int addUtf8(String s) {
+        String key = "U" + s;
+        Integer ind = poolIndexes.get(key);
+
+        if (ind != null) {
+            return ind;
+        }
+        try {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(s);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return putIndex(key);
+    }
+
+    /**
+     * 定数プールにクラスを追加します。
+     *
+     * @param name クラスの内部名
+     * @return 定数プールのインデクス
+     */
+    public int addClass(String name) {
+        String key = "C" + name;
+        Integer ind = poolIndexes.get(key);
+        int n;
+
+        if (ind != null) {
+            return ind;
+        }
+        n = addUtf8(name);
+        writePool(CONSTANT_CLASS, n);
+
+        return putIndex(key);
+    }
+
+    /**
+     * 定数プールにメソッドの参照を追加します。
+     *
+     * @param owner メソッドを持つクラスの内部名
+     * @param name  メソッドの名前
+     * @param desc  メソッドのディスクリプタ
+     * @return 定数プールのインデクス
+     */
+    public int addMethodref(String owner, String name, String desc) {
+        String key = "M" + owner + "." + name + desc;
+        Integer ind = poolIndexes.get(key);
+        int c, nt;
+
+        if (ind != null) {
+            return ind;
+        }
+        c = addClass(owner);
+        nt = addNameAndType(name, desc);
+        writePool(CONSTANT_METHODREF, c, nt);
+
+        return putIndex(key);
+    }
+
+    /**
+     * 定数プールに名前とディスクリプタの組を追加します。
+     *
+     * @param name 名前
+     * @param desc ディスクリプタ
+     * @return 定数プールのインデクス
+     */
+    public int addNameAndType(String name, String desc) {
+        String key = "N" + name + " " + desc;
+        Integer ind = poolIndexes.get(key);
+        int n, d;
+
+        if (ind != null) {
+            return ind;
+        }
+        n = addUtf8(name);
+        d = addUtf8(desc);
+        writePool(CONSTANT_NAME_AND_TYPE, n, d);
+
+        return putIndex(key);
+    }
+
+    /**
+     * 定数プールに整数を追加します。
+     *
+     * @param v 整数
+     * @return 定数プールのインデクス
+     */
+    public int addInteger(int v) {
+        String key = "I" + v;
+        Integer ind = poolIndexes.get(key);
+
+        if (ind != null) {
+            return ind;
+        }
+        try {
+            pool.writeByte(CONSTANT_INTEGER);
+            pool.writeInt(v);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return putIndex(key);
+    }
+
+    private void writePool(int tag, int... vals) {
+        try {
+            pool.writeByte(tag);
+            for (int v : vals) {
+                pool.writeShort(v);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int putIndex(String key) {
+        int ind = poolCount;
+
+        if (ind > 0xffff) {
+            throw new IllegalStateException("Too many constants.");
+        }
+        poolIndexes.put(key, ind);
+        poolCount++;
+
+        return ind;
+    }
+
+    /**
+     * Code 属性のみを持つメソッドを追加します。
+     *
+     * @param access    アクセスフラグ
+     * @param name      メソッドの名前
+     * @param desc      メソッドのディスクリプタ
+     * @param maxStack  オペランドスタックの最大の深さ
+     * @param maxLocals ローカル変数の数
+     * @param code      バイトコード
+     */
+    public void addMethod(int access, String name, String desc,
+                          int maxStack, int maxLocals, Code code) {
+        int n = addUtf8(name);
+        int d = addUtf8(desc);
+        int c = addUtf8("Code");
+        byte[] b = code.toByteArray();
+
+        try {
+            methods.writeShort(access);
+            methods.writeShort(n);
+            methods.writeShort(d);
+            //属性は Code のみ
+            methods.writeShort(1);
+            methods.writeShort(c);
+            methods.writeInt(12 + b.length);
+            methods.writeShort(maxStack);
+            methods.writeShort(maxLocals);
+            methods.writeInt(b.length);
+            methods.write(b);
+            //例外表、属性はなし
+            methods.writeShort(0);
+            methods.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        methodCount++;
+    }
+
+    /**
+     * クラスファイルを生成します。
+     *
+     * @param access クラスのアクセスフラグ
+     * @return クラスファイルの内容
+     */
+    public byte[] toByteArray(int access) {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(b);
+
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(VERSION_MAJOR);
+            out.writeShort(poolCount);
+            out.write(poolBytes.toByteArray());
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            //インタフェース、フィールドはなし
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methodCount);
+            out.write(methodBytes.toByteArray());
+            //クラスの属性はなし
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        return b.toByteArray();
+    }
+
+    /**
+     * メソッドのバイトコードを保持するバッファです。
+     */
+    public static class Code {
+        private byte[] buf;
+        private int len;
+
+        public Code() {
+            buf = new byte[256];
+            len = 0;
+        }
+
+        /**
+         * 現在の位置（次に書き込むバイトのオフセット）を取得します。
+         *
+         * @return 現在の位置
+         */
+        public int getPosition() {
+            return len;
+        }
+
+        /**
+         * 1 バイトを書き込みます。
+         *
+         * @param v 値
+         */
+        public void u1(int v) {
+            if (len == buf.length) {
+                buf = Arrays.copyOf(buf, buf.length * 2);
+            }
+            buf[len++] = (byte)v;
+        }
+
+        /**
+         * 2 バイトをビッグエンディアンで書き込みます。
+         *
+         * @param v 値
+         */
+        public void u2(int v) {
+            u1(v >>> 8);
+            u1(v);
+        }
+
+        /**
+         * 分岐命令のオフセットを、分岐先の位置で書き換えます。
+         *
+         * @param op     分岐命令の位置
+         * @param target 分岐先の位置
+         */
+        public void patchBranch(int op, int target) {
+            int off = target - op;
+
+            if (off < Short.MIN_VALUE || Short.MAX_VALUE < off) {
+                throw new IllegalStateException(String.format(
+                        "Branch offset %d out of range.", off));
+            }
+            buf[op + 1] = (byte)(off >>> 8);
+            buf[op + 2] = (byte)off;
+        }
+
+        /**
+         * 書き込んだバイトコードを取得します。
+         *
+         * @return バイトコード
+         */
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, len);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package net.katsuster.ememu.generic;
+
+/**
+ * 仮想クロックの指定した時刻に呼び出されるイベントです。
+ *
+ * <p>
+ * デバイスはこのクラスを継承し、fire() に期限が来たときの処理を実装します。
+ * 1 つのイベントは同時に 1 つの時刻にしか登録できません。
+ * 登録済みのイベントを再度登録すると、以前の時刻の登録は取り消されます。
+ * </p>
+ *
+ * @author katsuhiro
+ * @see VirtualClock
+ */
+public abstract class ClockEvent {
+    //VirtualClock が管理する、登録された時刻と登録順
+    long deadline;
+    long sequence;
+    boolean scheduled;
+
+    /**
+     * イベントが登録されている時刻を取得します。
+     *
+     * @return 登録されている時刻（ナノ秒）
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * イベントが登録されているかどうかを取得します。
+     *
+     * @return 登録されていれば true、登録されていなければ false
+     */
+    public boolean isScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * 登録された時刻に達したときに呼び出されます。
+     *
+     * CPU のスレッドから、仮想クロックのロックを持たない状態で呼び出されます。
+     * このメソッドの中でイベントを再登録することができます。
+     *
+     * @param deadline イベントが登録されていた時刻（ナノ秒）
+     */
+    public abstract void fire(long deadline);
+}
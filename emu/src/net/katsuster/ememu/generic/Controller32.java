@@ -1,5 +1,6 @@
 package net.katsuster.ememu.generic;
 
+import java.io.*;
 import java.util.*;
 
 /**
@@ -7,7 +8,8 @@ import java.util.*;
  *
  * @author katsuhiro
  */
-public abstract class Controller32 extends SlaveCore {
+public abstract class Controller32 extends SlaveCore
+        implements Snapshotable {
     //データ幅（バイト単位）
     public static final int LEN_WORD = 4;
     //データ幅（ビット単位）
@@ -87,6 +89,57 @@ public abstract class Controller32 extends SlaveCore {
         return true;
     }
 
+    /**
+     * レジスタの値をスナップショットに書き出します。
+     *
+     * レジスタ以外に状態を持つコントローラは、
+     * このメソッドをオーバーライドして状態を追加する必要があります。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        //復元時に同じ順序で読めるよう、アドレス順に並べる
+        SortedMap<Long, Reg32> m = new TreeMap<Long, Reg32>(regs);
+
+        out.writeInt(m.size());
+        for (Map.Entry<Long, Reg32> e : m.entrySet()) {
+            out.writeLong(e.getKey());
+            out.writeInt(e.getValue().getValue());
+        }
+    }
+
+    /**
+     * スナップショットからレジスタの値を読み出します。
+     *
+     * レジスタへの書き込みによる副作用は起こさず、値のみを復元します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、レジスタの構成が一致しない場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        int n = in.readInt();
+
+        if (n != regs.size()) {
+            throw new IOException(String.format(
+                    "Snapshot mismatch, expected %d regs but %d.",
+                    regs.size(), n));
+        }
+        for (int i = 0; i < n; i++) {
+            long addr = in.readLong();
+            int val = in.readInt();
+            Reg32 r = regs.get(addr);
+
+            if (r == null) {
+                throw new IOException(String.format(
+                        "Snapshot mismatch, unknown reg 0x%08x.", addr));
+            }
+            r.setValue(val);
+        }
+    }
+
     @Override
     public boolean tryRead(long addr, int len) {
         return tryAccess(addr, len);
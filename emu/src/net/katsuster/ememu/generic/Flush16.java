@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.io.*;
+
 /**
  * 64 ビットアドレス、16ビットデータ Flush ROM
  *
@@ -10,7 +12,8 @@ package net.katsuster.ememu.generic;
  *
  * @author katsuhiro
  */
-public class Flush16 extends SlaveCore {
+public class Flush16 extends SlaveCore
+        implements Snapshotable {
     //データ幅（バイト単位）
     public static final int LEN_WORD = 2;
     //データ幅（ビット単位）
@@ -49,6 +52,11 @@ public class Flush16 extends SlaveCore {
     private final StateMachine STATE_READ_STATUS = new SMReadStatus();
     private final StateMachine STATE_WRITE_BUFFER = new SMWriteBuffer();
     private final StateMachine STATE_ERASE_BLOCK = new SMEraseBlock();
+    //スナップショットに書き出す状態の番号
+    private final StateMachine[] STATES = {
+            STATE_READ_ARRAY, STATE_READ_CFI, STATE_READ_STATUS,
+            STATE_WRITE_BUFFER, STATE_ERASE_BLOCK,
+    };
 
     protected interface StateMachine {
         public abstract void setup();
@@ -164,6 +172,26 @@ public class Flush16 extends SlaveCore {
         private int countNow;
         private int start;
 
+        public void saveState(DataOutput out) throws IOException {
+            out.writeInt(innerState);
+            out.writeInt(countMax);
+            out.writeInt(countNow);
+            out.writeInt(start);
+            for (short v : buf) {
+                out.writeShort(v);
+            }
+        }
+
+        public void loadState(DataInput in) throws IOException {
+            innerState = in.readInt();
+            countMax = in.readInt();
+            countNow = in.readInt();
+            start = in.readInt();
+            for (int i = 0; i < buf.length; i++) {
+                buf[i] = in.readShort();
+            }
+        }
+
         public void setup() {
             innerState = STATE_WORD_COUNT;
 
@@ -290,6 +318,46 @@ public class Flush16 extends SlaveCore {
         return len;
     }
 
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        int n;
+
+        for (n = 0; n < STATES.length; n++) {
+            if (STATES[n] == state) {
+                break;
+            }
+        }
+
+        SnapshotIO.writeSparseShorts(out, wordsArray);
+        out.writeInt(n);
+        out.writeBoolean(words == wordsCFI);
+        out.writeInt(statusReg);
+        ((SMWriteBuffer)STATE_WRITE_BUFFER).saveState(out);
+    }
+
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        int n;
+
+        SnapshotIO.readSparseShorts(in, wordsArray);
+        n = in.readInt();
+        if (n < 0 || n >= STATES.length) {
+            throw new IOException(String.format(
+                    "Illegal flush state %d.", n));
+        }
+        //状態の setup() は呼ばず、保存したときの値をそのまま復元する
+        state = STATES[n];
+        if (in.readBoolean()) {
+            words = wordsCFI;
+            len = lenCFI;
+        } else {
+            words = wordsArray;
+            len = lenArray;
+        }
+        statusReg = in.readInt();
+        ((SMWriteBuffer)STATE_WRITE_BUFFER).loadState(in);
+    }
+
     /**
      * 指定したアドレスが正当かどうか検査します。
      *
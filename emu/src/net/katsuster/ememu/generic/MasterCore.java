@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.nio.*;
+
 /**
  * 64 ビットアドレスバスのマスターコア。
  *
@@ -85,4 +87,64 @@ public abstract class MasterCore extends AbstractCore
     public void write64(long addr, long data) {
         slaveBus.write64(addr, data);
     }
+
+    @Override
+    public long readChecked8(long addr) {
+        return slaveBus.readChecked8(addr);
+    }
+
+    @Override
+    public long readChecked16(long addr) {
+        return slaveBus.readChecked16(addr);
+    }
+
+    @Override
+    public long readChecked32(long addr) {
+        return slaveBus.readChecked32(addr);
+    }
+
+    @Override
+    public boolean writeChecked8(long addr, byte data) {
+        return slaveBus.writeChecked8(addr, data);
+    }
+
+    @Override
+    public boolean writeChecked16(long addr, short data) {
+        return slaveBus.writeChecked16(addr, data);
+    }
+
+    @Override
+    public boolean writeChecked32(long addr, int data) {
+        return slaveBus.writeChecked32(addr, data);
+    }
+
+    @Override
+    public void readBlock(long addr, int[] dst, int off, int len) {
+        slaveBus.readBlock(addr, dst, off, len);
+    }
+
+    @Override
+    public void writeBlock(long addr, int[] src, int off, int len) {
+        slaveBus.writeBlock(addr, src, off, len);
+    }
+
+    @Override
+    public void readBlock(long addr, byte[] dst, int off, int len) {
+        slaveBus.readBlock(addr, dst, off, len);
+    }
+
+    @Override
+    public void writeBlock(long addr, byte[] src, int off, int len) {
+        slaveBus.writeBlock(addr, src, off, len);
+    }
+
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        slaveBus.readBlock(addr, dst);
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        slaveBus.writeBlock(addr, src);
+    }
 }
@@ -1,12 +1,25 @@
 package net.katsuster.ememu.generic;
 
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
 /**
  * 64 ビットアドレス RAM
  *
  * @author katsuhiro
  */
-abstract public class RAM extends SlaveCore {
+abstract public class RAM extends SlaveCore
+        implements Snapshotable {
+    //スナップショットを読み書きする単位（バイト単位）
+    public static final int SNAPSHOT_PAGE = 4096;
+    //書き込みを記録する単位（2 を底とする対数）
+    public static final int DIRTY_PAGE_SHIFT = 12;
+
     private int size;
+    //書き込まれたページのビットマップ、記録しない場合は null
+    private volatile AtomicLongArray dirty;
 
     /**
      * RAM を作成します。
@@ -30,6 +43,114 @@ abstract public class RAM extends SlaveCore {
         return size;
     }
 
+    /**
+     * 書き込みを記録するページのサイズを取得します。
+     *
+     * @return ページのサイズ（バイト単位）
+     */
+    public int getDirtyPageSize() {
+        return 1 << DIRTY_PAGE_SHIFT;
+    }
+
+    /**
+     * 書き込まれたページを記録するかどうかを取得します。
+     *
+     * @return 記録する場合は true、記録しない場合は false
+     */
+    public boolean isDirtyTracking() {
+        return dirty != null;
+    }
+
+    /**
+     * 書き込まれたページを記録するかどうかを設定します。
+     *
+     * 記録を開始すると、すべてのページは書き込まれていない状態になります。
+     * 記録を開始する前の書き込みは記録されないため、
+     * CPU やデバイスが RAM へのアクセスを始める前に設定してください。
+     *
+     * @param e 記録する場合は true、記録しない場合は false
+     */
+    public void setDirtyTracking(boolean e) {
+        if (e) {
+            int pages = (int)(((long)size + getDirtyPageSize() - 1) >>> DIRTY_PAGE_SHIFT);
+
+            dirty = new AtomicLongArray((pages + 63) >>> 6);
+        } else {
+            dirty = null;
+        }
+    }
+
+    /**
+     * 指定したアドレスを含むページを、書き込まれたページとして記録します。
+     *
+     * 記録しない設定の場合は何もしません。
+     *
+     * @param addr アドレス
+     */
+    public void markDirty(long addr) {
+        AtomicLongArray d = dirty;
+
+        if (d == null) {
+            return;
+        }
+
+        int page = (int)(addr >>> DIRTY_PAGE_SHIFT);
+        int i = page >>> 6;
+        long m = 1L << page;
+        long v = d.get(i);
+
+        //既に記録済みならば書き込まない
+        while ((v & m) == 0 && !d.compareAndSet(i, v, v | m)) {
+            v = d.get(i);
+        }
+    }
+
+    /**
+     * 指定した範囲に含まれるページを、書き込まれたページとして記録します。
+     *
+     * 記録しない設定の場合は何もしません。
+     *
+     * @param addr 先頭のアドレス
+     * @param len  範囲の長さ（バイト単位）
+     */
+    public void markDirty(long addr, int len) {
+        if (dirty == null || len <= 0) {
+            return;
+        }
+
+        long last = (addr + len - 1) >>> DIRTY_PAGE_SHIFT;
+
+        for (long p = addr >>> DIRTY_PAGE_SHIFT; p <= last; p++) {
+            markDirty(p << DIRTY_PAGE_SHIFT);
+        }
+    }
+
+    /**
+     * 前回の呼び出し以降に書き込まれたページを取得し、記録を消去します。
+     *
+     * ページごとに取得と消去を不可分に行うため、
+     * 他のスレッドからの書き込みを取りこぼすことはありません。
+     * 取得中に書き込まれたページは、今回か次回のどちらかの結果に含まれます。
+     *
+     * @return 書き込まれたページのインデックスの集合、
+     * 記録しない設定の場合は空の集合
+     */
+    public BitSet fetchAndClearDirtyPages() {
+        AtomicLongArray d = dirty;
+
+        if (d == null) {
+            return new BitSet();
+        }
+
+        long[] w = new long[d.length()];
+
+        for (int i = 0; i < w.length; i++) {
+            w[i] = d.getAndSet(i, 0);
+        }
+
+        return BitSet.valueOf(w);
+    }
+
     /**
      * バイトアドレスを RAM のワードアドレスに変換します。
      *
@@ -67,6 +188,20 @@ abstract public class RAM extends SlaveCore {
         }
     }
 
+    /**
+     * 指定した範囲が RAM に収まっているかどうか検査します。
+     *
+     * @param addr 先頭のアドレス
+     * @param len  範囲の長さ（バイト単位）
+     */
+    protected void checkRange(long addr, int len) {
+        if (addr < 0 || len < 0 || addr + len > size) {
+            throw new IllegalArgumentException(String.format(
+                    "range(0x%08x - 0x%08x) is out of RAM(size 0x%08x).",
+                    addr, addr + len - 1, size));
+        }
+    }
+
     @Override
     public boolean tryRead(long addr, int len) {
         return tryAccess(addr, len);
@@ -92,6 +227,138 @@ abstract public class RAM extends SlaveCore {
         return getWords() > wordAddr;
     }
 
+    /**
+     * RAM の内容をスナップショットに書き出します。
+     *
+     * SNAPSHOT_PAGE ごとに区切り、すべて 0 のページは書き出しません。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        byte[] page = new byte[SNAPSHOT_PAGE];
+
+        out.writeInt(size);
+        for (long addr = 0; addr < size; addr += SNAPSHOT_PAGE) {
+            int len = (int)Math.min(SNAPSHOT_PAGE, size - addr);
+            int i;
+
+            readBlock(addr, ByteBuffer.wrap(page, 0, len));
+            for (i = 0; i < len; i++) {
+                if (page[i] != 0) {
+                    break;
+                }
+            }
+            if (i == len) {
+                //すべて 0
+                continue;
+            }
+
+            out.writeInt((int)(addr / SNAPSHOT_PAGE));
+            out.write(page, 0, len);
+        }
+        out.writeInt(-1);
+    }
+
+    /**
+     * スナップショットから RAM の内容を読み出します。
+     *
+     * スナップショットに含まれないページ（保存時にすべて 0 だったページ）は
+     * 0 で埋めるため、復元前の RAM の内容は残りません。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、サイズが一致しない場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        byte[] page = new byte[SNAPSHOT_PAGE];
+        byte[] zero = new byte[SNAPSHOT_PAGE];
+        long next = 0;
+        int n;
+
+        readSnapshotSize(in);
+        while ((n = in.readInt()) != -1) {
+            long addr = checkSnapshotPage(n, next);
+            int len = (int)Math.min(SNAPSHOT_PAGE, size - addr);
+
+            //間の書き出されていないページは 0 で埋める
+            for (; next < addr; next += SNAPSHOT_PAGE) {
+                writeBlock(next, ByteBuffer.wrap(zero, 0,
+                        (int)Math.min(SNAPSHOT_PAGE, size - next)));
+            }
+
+            in.readFully(page, 0, len);
+            writeBlock(addr, ByteBuffer.wrap(page, 0, len));
+            next = addr + SNAPSHOT_PAGE;
+        }
+        for (; next < size; next += SNAPSHOT_PAGE) {
+            writeBlock(next, ByteBuffer.wrap(zero, 0,
+                    (int)Math.min(SNAPSHOT_PAGE, size - next)));
+        }
+    }
+
+    /**
+     * スナップショットの RAM の内容を読み飛ばします。
+     *
+     * RAM の内容は変更しません。
+     * 既に同じ内容を持つ RAM（スナップショットを復元したベース RAM に重ねた
+     * RAMOverlay など）に対して、RAM 以外の状態のみを復元する際に用います。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、サイズが一致しない場合
+     */
+    public void skipState(DataInput in) throws IOException {
+        byte[] page = new byte[SNAPSHOT_PAGE];
+        long next = 0;
+        int n;
+
+        readSnapshotSize(in);
+        while ((n = in.readInt()) != -1) {
+            long addr = checkSnapshotPage(n, next);
+
+            in.readFully(page, 0, (int)Math.min(SNAPSHOT_PAGE, size - addr));
+            next = addr + SNAPSHOT_PAGE;
+        }
+    }
+
+    /**
+     * スナップショットの RAM サイズを読み出し、検査します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、サイズが一致しない場合
+     */
+    private void readSnapshotSize(DataInput in) throws IOException {
+        int sz = in.readInt();
+
+        if (sz != size) {
+            throw new IOException(String.format(
+                    "Snapshot mismatch, expected RAM size 0x%08x but 0x%08x.",
+                    size, sz));
+        }
+    }
+
+    /**
+     * スナップショットのページ番号を検査し、アドレスに変換します。
+     *
+     * ページは昇順に書き出されている必要があります。
+     *
+     * @param n    ページ番号
+     * @param next 次に現れることができる最小のアドレス
+     * @return ページの先頭アドレス
+     * @throws IOException ページ番号が不正な場合
+     */
+    private long checkSnapshotPage(int n, long next) throws IOException {
+        long addr = (long)n * SNAPSHOT_PAGE;
+
+        if (n < 0 || addr >= size || addr < next) {
+            throw new IOException(String.format(
+                    "Illegal page index %d.", n));
+        }
+
+        return addr;
+    }
+
     @Override
     public void run() {
         //do nothing
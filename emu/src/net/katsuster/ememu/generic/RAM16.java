@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.nio.*;
+
 /**
  * 64 ビットアドレス、16 ビットデータ RAM
  *
@@ -43,6 +45,59 @@ public class RAM16 extends RAM {
         return words.length;
     }
 
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        ByteBuffer b = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int n;
+
+        checkRange(addr, b.remaining());
+
+        //ワード境界に揃っていない先頭
+        while (b.hasRemaining() && addr % LEN_WORD != 0) {
+            b.put(read8(addr++));
+        }
+
+        //ワード単位でまとめてコピーする
+        n = b.remaining() / LEN_WORD;
+        b.asShortBuffer().put(words, getWordAddress(addr), n);
+        b.position(b.position() + n * LEN_WORD);
+        addr += n * LEN_WORD;
+
+        //ワードに満たない末尾
+        while (b.hasRemaining()) {
+            b.put(read8(addr++));
+        }
+
+        dst.position(b.position());
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        ByteBuffer b = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int n;
+
+        checkRange(addr, b.remaining());
+
+        //ワード境界に揃っていない先頭
+        while (b.hasRemaining() && addr % LEN_WORD != 0) {
+            write8(addr++, b.get());
+        }
+
+        //ワード単位でまとめてコピーする
+        n = b.remaining() / LEN_WORD;
+        markDirty(addr, n * LEN_WORD);
+        b.asShortBuffer().get(words, getWordAddress(addr), n);
+        b.position(b.position() + n * LEN_WORD);
+        addr += n * LEN_WORD;
+
+        //ワードに満たない末尾
+        while (b.hasRemaining()) {
+            write8(addr++, b.get());
+        }
+
+        src.position(b.position());
+    }
+
     @Override
     public byte read8(long addr) {
         short v = readWord(addr);
@@ -124,5 +179,6 @@ public class RAM16 extends RAM {
         wordAddr = getWordAddress(addr);
 
         words[wordAddr] = data;
+        markDirty(addr);
     }
 }
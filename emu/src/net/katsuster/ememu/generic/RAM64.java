@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.nio.*;
+
 /**
  * 64 ビットアドレス、64 ビットデータ RAM
  *
@@ -43,6 +45,72 @@ public class RAM64 extends RAM {
         return words.length;
     }
 
+    /**
+     * RAM の内容を保持する配列を取得します。
+     *
+     * 配列の各要素はリトルエンディアンのワードです。
+     * 配列を直接読み書きする場合、
+     * アドレスの検査は呼び出し側で行う必要があります。
+     *
+     * @return RAM の内容を保持する配列
+     */
+    public long[] getWordArray() {
+        return words;
+    }
+
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        ByteBuffer b = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int n;
+
+        checkRange(addr, b.remaining());
+
+        //ワード境界に揃っていない先頭
+        while (b.hasRemaining() && addr % LEN_WORD != 0) {
+            b.put(read8(addr++));
+        }
+
+        //ワード単位でまとめてコピーする
+        n = b.remaining() / LEN_WORD;
+        b.asLongBuffer().put(words, getWordAddress(addr), n);
+        b.position(b.position() + n * LEN_WORD);
+        addr += n * LEN_WORD;
+
+        //ワードに満たない末尾
+        while (b.hasRemaining()) {
+            b.put(read8(addr++));
+        }
+
+        dst.position(b.position());
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        ByteBuffer b = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int n;
+
+        checkRange(addr, b.remaining());
+
+        //ワード境界に揃っていない先頭
+        while (b.hasRemaining() && addr % LEN_WORD != 0) {
+            write8(addr++, b.get());
+        }
+
+        //ワード単位でまとめてコピーする
+        n = b.remaining() / LEN_WORD;
+        markDirty(addr, n * LEN_WORD);
+        b.asLongBuffer().get(words, getWordAddress(addr), n);
+        b.position(b.position() + n * LEN_WORD);
+        addr += n * LEN_WORD;
+
+        //ワードに満たない末尾
+        while (b.hasRemaining()) {
+            write8(addr++, b.get());
+        }
+
+        src.position(b.position());
+    }
+
     @Override
     public byte read8(long addr) {
         long v = readWord(addr);
@@ -118,5 +186,6 @@ public class RAM64 extends RAM {
         wordAddr = getWordAddress(addr);
 
         words[wordAddr] = data;
+        markDirty(addr);
     }
 }
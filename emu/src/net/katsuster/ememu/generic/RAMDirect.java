@@ -0,0 +1,222 @@
+package net.katsuster.ememu.generic;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+/**
+ * 64 ビットアドレス、32 ビットデータ、Java ヒープ外に内容を持つ RAM
+ *
+ * <p>
+ * RAM の内容はダイレクトバッファ、またはメモリマップしたファイルに保持します。
+ * Java ヒープを消費せず、GC の走査対象にもなりません。
+ * ファイルにマップした場合、RAM の内容は実行をまたいで保持され、
+ * 外部のツールからファイルとして参照することもできます。
+ * </p>
+ *
+ * <p>
+ * 読み書きの意味は RAM32 と同じです。
+ * データ幅より小さいアドレスの下位ビットは無視されます。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class RAMDirect extends RAM {
+    //データ幅（バイト単位）
+    public static final int LEN_WORD = 4;
+    //データ幅（ビット単位）
+    public static final int LEN_WORD_BITS = LEN_WORD * 8;
+
+    private ByteBuffer buf;
+    private File file;
+
+    /**
+     * ダイレクトバッファに内容を持つ RAM を作成します。
+     *
+     * @param size RAM サイズ（バイト単位）
+     */
+    public RAMDirect(int size) {
+        super(size);
+
+        buf = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+        file = null;
+    }
+
+    /**
+     * ファイルをメモリマップして、内容を保持する RAM を作成します。
+     *
+     * ファイルが存在しなければ作成します。
+     * ファイルが RAM サイズより小さければ RAM サイズまで拡張し、
+     * ファイルの先頭から RAM サイズ分をマップします。
+     *
+     * @param size RAM サイズ（バイト単位）
+     * @param f    RAM の内容を保持するファイル
+     * @throws IOException ファイルのマップに失敗した場合
+     */
+    public RAMDirect(int size, File f) throws IOException {
+        super(size);
+
+        RandomAccessFile raf = new RandomAccessFile(f, "rw");
+        try {
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            //NOTE: マップはチャネルを閉じた後も有効
+            buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+        } finally {
+            raf.close();
+        }
+        file = f;
+    }
+
+    /**
+     * RAM の内容を保持するファイルを取得します。
+     *
+     * @return RAM の内容を保持するファイル、ファイルにマップしていなければ null
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * RAM の内容をファイルに書き出します。
+     *
+     * ファイルにマップしていなければ何もしません。
+     */
+    public void force() {
+        if (buf instanceof MappedByteBuffer) {
+            ((MappedByteBuffer)buf).force();
+        }
+    }
+
+    /**
+     * バイトアドレスを RAM のワードアドレスに変換します。
+     *
+     * @param addr バイトアドレス
+     * @return RAM のワードアドレス
+     */
+    protected int getWordAddress(long addr) {
+        return (int)(addr / LEN_WORD);
+    }
+
+    /**
+     * RAM のワード数を取得します。
+     *
+     * @return RAM のワード数
+     */
+    protected int getWords() {
+        return getSize() / LEN_WORD;
+    }
+
+    /**
+     * 指定したアドレスを、バッファのインデックスに変換します。
+     *
+     * @param addr  アドレス
+     * @param align アラインメントのサイズ
+     * @return バッファのインデックス
+     */
+    protected int getIndex(long addr, int align) {
+        addr &= ~(align - 1);
+        checkAddress(addr, align);
+
+        return (int)addr;
+    }
+
+    /**
+     * 指定した範囲を参照するバッファを取得します。
+     *
+     * @param addr 先頭のアドレス
+     * @param len  範囲の長さ（バイト単位）
+     * @return 指定した範囲を参照するバッファ
+     */
+    protected ByteBuffer slice(long addr, int len) {
+        ByteBuffer b = buf.duplicate();
+
+        checkRange(addr, len);
+        b.limit((int)addr + len);
+        b.position((int)addr);
+
+        return b.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public byte read8(long addr) {
+        return buf.get(getIndex(addr, 1));
+    }
+
+    @Override
+    public short read16(long addr) {
+        return buf.getShort(getIndex(addr, 2));
+    }
+
+    @Override
+    public int read32(long addr) {
+        return buf.getInt(getIndex(addr, 4));
+    }
+
+    @Override
+    public long read64(long addr) {
+        return buf.getLong(getIndex(addr, 4));
+    }
+
+    @Override
+    public void write8(long addr, byte data) {
+        int i = getIndex(addr, 1);
+
+        buf.put(i, data);
+        markDirty(i);
+    }
+
+    @Override
+    public void write16(long addr, short data) {
+        int i = getIndex(addr, 2);
+
+        buf.putShort(i, data);
+        markDirty(i);
+    }
+
+    @Override
+    public void write32(long addr, int data) {
+        int i = getIndex(addr, 4);
+
+        buf.putInt(i, data);
+        markDirty(i);
+    }
+
+    @Override
+    public void write64(long addr, long data) {
+        int i = getIndex(addr, 4);
+
+        buf.putLong(i, data);
+        markDirty(i, 8);
+    }
+
+    @Override
+    public void readBlock(long addr, int[] dst, int off, int len) {
+        checkAddress(addr, LEN_WORD);
+
+        slice(addr, len * LEN_WORD).asIntBuffer().get(dst, off, len);
+    }
+
+    @Override
+    public void writeBlock(long addr, int[] src, int off, int len) {
+        checkAddress(addr, LEN_WORD);
+
+        slice(addr, len * LEN_WORD).asIntBuffer().put(src, off, len);
+        markDirty(addr, len * LEN_WORD);
+    }
+
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        dst.put(slice(addr, dst.remaining()));
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        int len = src.remaining();
+
+        slice(addr, len).put(src);
+        markDirty(addr, len);
+    }
+}
@@ -0,0 +1,86 @@
+package net.katsuster.ememu.generic;
+
+/**
+ * 64 ビットアドレス、32 ビットデータ、コピーオンライトの RAM
+ *
+ * <p>
+ * 読み取り専用のベース RAM に重ねて使用します。
+ * ページ（4KB）は最初に書き込まれたときにベース RAM から複製し、
+ * 以降の読み書きは複製したページに対して行います。
+ * 書き込まれていないページの読み取りはベース RAM から行います。
+ * </p>
+ *
+ * <p>
+ * 1 つのベース RAM に複数の RAMOverlay を重ね、
+ * 起動済みのマシンの RAM を共有して複数のマシンを動かすことができます。
+ * ホストのメモリ使用量は、ベース RAM と書き込まれたページの合計となります。
+ * ベース RAM はどの RAM の実装でも構いません
+ * （Java ヒープ上の配列、ダイレクトバッファ、メモリマップしたファイル）。
+ * </p>
+ *
+ * <p>
+ * RAMOverlay はベース RAM に書き込みません。
+ * 各 RAMOverlay を別のスレッドの CPU が使用しても、
+ * ベース RAM は読み取られるだけのため安全です。
+ * ただし RAMOverlay を重ねている間は、ベース RAM を書き換えてはいけません。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class RAMOverlay extends RAMSparse {
+    private RAM base;
+
+    /**
+     * ベース RAM に重ねる RAM を作成します。
+     *
+     * @param b ベース RAM
+     */
+    public RAMOverlay(RAM b) {
+        super(b.getSize(), CHUNK_SHIFT_4K);
+
+        if (b.getSize() % LEN_WORD != 0) {
+            throw new IllegalArgumentException(String.format(
+                    "base size 0x%08x is not aligned %d.", b.getSize(), LEN_WORD));
+        }
+
+        base = b;
+    }
+
+    /**
+     * ベース RAM を取得します。
+     *
+     * @return ベース RAM
+     */
+    public RAM getBase() {
+        return base;
+    }
+
+    /**
+     * 書き込みにより複製したページ数を取得します。
+     *
+     * @return 複製したページ数
+     */
+    public int getOwnedPages() {
+        return getResidentChunks();
+    }
+
+    /**
+     * 指定したアドレスを含むページを、書き込みにより複製したかどうかを取得します。
+     *
+     * @param addr アドレス
+     * @return 複製したページならば true、ベース RAM を参照していれば false
+     */
+    public boolean isOwnedPage(long addr) {
+        return getChunk(addr) != null;
+    }
+
+    @Override
+    protected void readUnallocated(long addr, int[] dst, int off, int len) {
+        base.readBlock(addr, dst, off, len);
+    }
+
+    @Override
+    protected int readUnallocatedWord(long addr) {
+        return base.read32(addr);
+    }
+}
@@ -0,0 +1,441 @@
+package net.katsuster.ememu.generic;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * 64 ビットアドレス、32 ビットデータ、疎に確保する RAM
+ *
+ * <p>
+ * RAM の内容をチャンク単位で保持し、
+ * チャンクは最初に書き込まれたときに確保します。
+ * 一度も書き込まれていないチャンクの読み取りは 0 を返します。
+ * ホストのメモリ使用量は RAM サイズではなく、
+ * ゲストが実際に書き込んだ範囲に比例します。
+ * </p>
+ *
+ * <p>
+ * 読み書きの意味は RAM32 と同じです。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class RAMSparse extends RAM {
+    //データ幅（バイト単位）
+    public static final int LEN_WORD = 4;
+    //データ幅（ビット単位）
+    public static final int LEN_WORD_BITS = LEN_WORD * 8;
+
+    //4KB チャンク
+    public static final int CHUNK_SHIFT_4K = 12;
+    //64KB チャンク
+    public static final int CHUNK_SHIFT_64K = 16;
+
+    private final int chunkShift;
+    private final int chunkMask;
+    //ロックを取らずに読み出すため、確保したチャンクは内容を埋めてから公開する
+    private final AtomicReferenceArray<int[]> chunks;
+    //チャンクの公開と同じロックの中で更新する
+    private int resident;
+
+    /**
+     * 4KB 単位でチャンクを確保する RAM を作成します。
+     *
+     * @param size RAM サイズ（バイト単位）
+     */
+    public RAMSparse(int size) {
+        this(size, CHUNK_SHIFT_4K);
+    }
+
+    /**
+     * 指定したサイズ単位でチャンクを確保する RAM を作成します。
+     *
+     * @param size  RAM サイズ（バイト単位）
+     * @param shift チャンクサイズの 2 を底とする対数、
+     *              CHUNK_SHIFT_4K から CHUNK_SHIFT_64K の範囲
+     */
+    public RAMSparse(int size, int shift) {
+        super(size);
+
+        if (shift < CHUNK_SHIFT_4K || CHUNK_SHIFT_64K < shift) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal chunk shift %d.", shift));
+        }
+
+        this.chunkShift = shift;
+        this.chunkMask = (1 << shift) - 1;
+        this.chunks = new AtomicReferenceArray<int[]>(
+                (int)(((long)size + chunkMask) >>> shift));
+        this.resident = 0;
+    }
+
+    /**
+     * バイトアドレスを RAM のワードアドレスに変換します。
+     *
+     * @param addr バイトアドレス
+     * @return RAM のワードアドレス
+     */
+    protected int getWordAddress(long addr) {
+        return (int)(addr / LEN_WORD);
+    }
+
+    /**
+     * RAM のワード数を取得します。
+     *
+     * @return RAM のワード数
+     */
+    protected int getWords() {
+        return getSize() / LEN_WORD;
+    }
+
+    /**
+     * チャンクのサイズを取得します。
+     *
+     * @return チャンクのサイズ（バイト単位）
+     */
+    public int getChunkSize() {
+        return 1 << chunkShift;
+    }
+
+    /**
+     * RAM 全体のチャンク数を取得します。
+     *
+     * @return RAM 全体のチャンク数
+     */
+    public int getChunks() {
+        return chunks.length();
+    }
+
+    /**
+     * 確保済みのチャンク数を取得します。
+     *
+     * @return 確保済みのチャンク数
+     */
+    public synchronized int getResidentChunks() {
+        return resident;
+    }
+
+    /**
+     * 確保済みのチャンクが占めるサイズを取得します。
+     *
+     * @return 確保済みのチャンクのサイズ（バイト単位）
+     */
+    public long getResidentSize() {
+        return (long)getResidentChunks() << chunkShift;
+    }
+
+    /**
+     * 指定したアドレスを含むチャンクを取得します。
+     *
+     * @param addr アドレス
+     * @return チャンク、まだ確保されていなければ null
+     */
+    protected int[] getChunk(long addr) {
+        return chunks.get((int)(addr >>> chunkShift));
+    }
+
+    /**
+     * 指定したアドレスを含むチャンクを取得します。
+     *
+     * まだ確保されていなければ確保します。
+     *
+     * @param addr アドレス
+     * @return チャンク
+     */
+    protected int[] allocChunk(long addr) {
+        int[] c = getChunk(addr);
+
+        if (c == null) {
+            c = allocChunkSync((int)(addr >>> chunkShift));
+        }
+
+        return c;
+    }
+
+    private synchronized int[] allocChunkSync(int index) {
+        int[] c = chunks.get(index);
+
+        //他のスレッドが先に確保していれば、それを使う
+        if (c == null) {
+            c = new int[(1 << chunkShift) / LEN_WORD];
+            readUnallocated((long)index << chunkShift, c, 0, c.length);
+            chunks.set(index, c);
+            resident++;
+        }
+
+        return c;
+    }
+
+    /**
+     * まだ確保されていないチャンクの値を読み出します。
+     *
+     * チャンクを確保するときの初期値にも用います。
+     * 未確保のチャンクは 0 と見なします。
+     *
+     * @param addr 先頭のアドレス
+     * @param dst  読み取ったデータを格納する配列
+     * @param off  配列の格納を開始する位置
+     * @param len  読み取るデータの数（32 ビット単位）
+     */
+    protected void readUnallocated(long addr, int[] dst, int off, int len) {
+        Arrays.fill(dst, off, off + len, 0);
+    }
+
+    /**
+     * まだ確保されていないチャンクの値を読み出します。
+     *
+     * 未確保のチャンクは 0 と見なします。
+     *
+     * @param addr アドレス
+     * @return データ
+     */
+    protected int readUnallocatedWord(long addr) {
+        return 0;
+    }
+
+    /**
+     * まだ確保されていないチャンクの値と、指定したデータが等しいかどうかを判定します。
+     *
+     * 値が変わらない書き込みでチャンクを確保しないために用います。
+     *
+     * @param addr 先頭のアドレス
+     * @param src  比較するデータを持つ配列
+     * @param off  配列の比較するデータの開始位置
+     * @param len  比較するデータの数（32 ビット単位）
+     * @return 等しければ true、異なれば false
+     */
+    protected boolean equalsUnallocated(long addr, int[] src, int off, int len) {
+        int[] w = new int[len];
+
+        readUnallocated(addr, w, 0, len);
+        for (int i = 0; i < len; i++) {
+            if (w[i] != src[off + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * チャンク内のワードのインデックスを取得します。
+     *
+     * @param addr アドレス
+     * @return チャンク内のワードのインデックス
+     */
+    protected int getChunkOffset(long addr) {
+        return ((int)addr & chunkMask) / LEN_WORD;
+    }
+
+    @Override
+    public void readBlock(long addr, int[] dst, int off, int len) {
+        checkAddress(addr, LEN_WORD);
+        checkRange(addr, len * LEN_WORD);
+
+        while (len > 0) {
+            int[] c = getChunk(addr);
+            int pos = getChunkOffset(addr);
+            int n = Math.min(len, (chunkMask + 1) / LEN_WORD - pos);
+
+            if (c == null) {
+                readUnallocated(addr, dst, off, n);
+            } else {
+                System.arraycopy(c, pos, dst, off, n);
+            }
+            addr += n * LEN_WORD;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void writeBlock(long addr, int[] src, int off, int len) {
+        checkAddress(addr, LEN_WORD);
+        checkRange(addr, len * LEN_WORD);
+
+        while (len > 0) {
+            int[] c = getChunk(addr);
+            int pos = getChunkOffset(addr);
+            int n = Math.min(len, (chunkMask + 1) / LEN_WORD - pos);
+
+            if (c != null || !equalsUnallocated(addr, src, off, n)) {
+                c = allocChunk(addr);
+                System.arraycopy(src, off, c, pos, n);
+                markDirty(addr, n * LEN_WORD);
+            }
+            addr += n * LEN_WORD;
+            off += n;
+            len -= n;
+        }
+    }
+
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        ByteBuffer b = dst.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        checkRange(addr, b.remaining());
+
+        //ワード境界に揃っていない先頭
+        while (b.hasRemaining() && addr % LEN_WORD != 0) {
+            b.put(read8(addr++));
+        }
+
+        //チャンク単位でまとめてコピーする
+        while (b.remaining() >= LEN_WORD) {
+            int[] c = getChunk(addr);
+            int pos = getChunkOffset(addr);
+            int n = Math.min(b.remaining() / LEN_WORD,
+                    (chunkMask + 1) / LEN_WORD - pos);
+
+            if (c == null) {
+                for (int i = 0; i < n; i++) {
+                    b.putInt(readUnallocatedWord(addr + i * LEN_WORD));
+                }
+            } else {
+                b.asIntBuffer().put(c, pos, n);
+                b.position(b.position() + n * LEN_WORD);
+            }
+            addr += n * LEN_WORD;
+        }
+
+        //ワードに満たない末尾
+        while (b.hasRemaining()) {
+            b.put(read8(addr++));
+        }
+
+        dst.position(b.position());
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        ByteBuffer b = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        checkRange(addr, b.remaining());
+
+        //ワード境界に揃っていない先頭
+        while (b.hasRemaining() && addr % LEN_WORD != 0) {
+            write8(addr++, b.get());
+        }
+
+        //チャンク単位でまとめてコピーする
+        while (b.remaining() >= LEN_WORD) {
+            int[] c = getChunk(addr);
+            int pos = getChunkOffset(addr);
+            int n = Math.min(b.remaining() / LEN_WORD,
+                    (chunkMask + 1) / LEN_WORD - pos);
+
+            if (c == null) {
+                int[] w = new int[n];
+
+                b.asIntBuffer().get(w);
+                if (!equalsUnallocated(addr, w, 0, n)) {
+                    c = allocChunk(addr);
+                    System.arraycopy(w, 0, c, pos, n);
+                    markDirty(addr, n * LEN_WORD);
+                }
+            } else {
+                b.asIntBuffer().get(c, pos, n);
+                markDirty(addr, n * LEN_WORD);
+            }
+            b.position(b.position() + n * LEN_WORD);
+            addr += n * LEN_WORD;
+        }
+
+        //ワードに満たない末尾
+        while (b.hasRemaining()) {
+            write8(addr++, b.get());
+        }
+
+        src.position(b.position());
+    }
+
+    @Override
+    public byte read8(long addr) {
+        int v = readWord(addr);
+
+        return (byte)readMasked(addr, v, LEN_WORD_BITS, 8);
+    }
+
+    @Override
+    public short read16(long addr) {
+        int v = readWord(addr);
+
+        return (short)readMasked(addr, v, LEN_WORD_BITS, 16);
+    }
+
+    @Override
+    public int read32(long addr) {
+        return readWord(addr);
+    }
+
+    @Override
+    public long read64(long addr) {
+        long data;
+
+        data = (((long)readWord(addr + 0) & 0xffffffffL) << 0) |
+                (((long)readWord(addr + 4) & 0xffffffffL) << 32);
+
+        return data;
+    }
+
+    @Override
+    public void write8(long addr, byte data) {
+        int v = readWord(addr);
+        int w = (int)writeMasked(addr, v, data, LEN_WORD_BITS, 8);
+
+        writeWord(addr, w);
+    }
+
+    @Override
+    public void write16(long addr, short data) {
+        int v = readWord(addr);
+        int w = (int)writeMasked(addr, v, data, LEN_WORD_BITS, 16);
+
+        writeWord(addr, w);
+    }
+
+    @Override
+    public void write32(long addr, int data) {
+        writeWord(addr, data);
+    }
+
+    @Override
+    public void write64(long addr, long data) {
+        writeWord(addr + 0, (int)(data >>> 0));
+        writeWord(addr + 4, (int)(data >>> 32));
+    }
+
+    public int readWord(long addr) {
+        int[] c;
+
+        addr &= getAddressMask(LEN_WORD_BITS);
+        checkAddress(addr, LEN_WORD);
+
+        c = getChunk(addr);
+        if (c == null) {
+            //まだ書き込まれていない
+            return readUnallocatedWord(addr);
+        }
+
+        return c[getChunkOffset(addr)];
+    }
+
+    public void writeWord(long addr, int data) {
+        int[] c;
+
+        addr &= getAddressMask(LEN_WORD_BITS);
+        checkAddress(addr, LEN_WORD);
+
+        c = getChunk(addr);
+        if (c == null) {
+            if (data == readUnallocatedWord(addr)) {
+                //値が変わらなければ、確保する必要はない
+                return;
+            }
+            c = allocChunk(addr);
+        }
+        c[getChunkOffset(addr)] = data;
+        markDirty(addr);
+    }
+}
@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.nio.*;
+
 /**
  * 64 ビットアドレスを扱うコア。
  *
@@ -11,6 +13,12 @@ package net.katsuster.ememu.generic;
  * @author katsuhiro
  */
 public interface RWCore {
+    /**
+     * readChecked8, readChecked16, readChecked32 において、
+     * 読み取りができなかったことを表す値です。
+     */
+    public static final long ACCESS_ABORT = -1L;
+
     /**
      * 指定されたアドレスからの読み取りが可能かどうかを判定します。
      *
@@ -92,4 +100,145 @@ public interface RWCore {
      * @param data データ
      */
     public abstract void write64(long addr, long data);
+
+    /**
+     * 指定されたアドレスから 8 ビットのデータを読み取ります。
+     *
+     * 読み取りが可能かどうかの判定と読み取りを、
+     * 1 度のアドレス検索で行います。
+     * 読み取りができない場合も例外はスローしません。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、読み取りができない場合は ACCESS_ABORT
+     */
+    public abstract long readChecked8(long addr);
+
+    /**
+     * 指定されたアドレスから 16 ビットのデータを読み取ります。
+     *
+     * 読み取りが可能かどうかの判定と読み取りを、
+     * 1 度のアドレス検索で行います。
+     * 読み取りができない場合も例外はスローしません。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、読み取りができない場合は ACCESS_ABORT
+     */
+    public abstract long readChecked16(long addr);
+
+    /**
+     * 指定されたアドレスから 32 ビットのデータを読み取ります。
+     *
+     * 読み取りが可能かどうかの判定と読み取りを、
+     * 1 度のアドレス検索で行います。
+     * 読み取りができない場合も例外はスローしません。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、読み取りができない場合は ACCESS_ABORT
+     */
+    public abstract long readChecked32(long addr);
+
+    /**
+     * 指定したアドレスへ 8 ビットのデータを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     * 書き込みができない場合も例外はスローしません。
+     *
+     * @param addr アドレス
+     * @param data データ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public abstract boolean writeChecked8(long addr, byte data);
+
+    /**
+     * 指定したアドレスへ 16 ビットのデータを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     * 書き込みができない場合も例外はスローしません。
+     *
+     * @param addr アドレス
+     * @param data データ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public abstract boolean writeChecked16(long addr, short data);
+
+    /**
+     * 指定したアドレスへ 32 ビットのデータを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     * 書き込みができない場合も例外はスローしません。
+     *
+     * @param addr アドレス
+     * @param data データ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public abstract boolean writeChecked32(long addr, int data);
+
+    /**
+     * 指定されたアドレスから 32 ビットのデータを連続して読み取ります。
+     *
+     * アドレスは 4 バイト境界に揃っている必要があります。
+     *
+     * @param addr 先頭のアドレス
+     * @param dst  読み取ったデータを格納する配列
+     * @param off  配列の格納を開始する位置
+     * @param len  読み取るデータの数（32 ビット単位）
+     */
+    public abstract void readBlock(long addr, int[] dst, int off, int len);
+
+    /**
+     * 指定したアドレスへ 32 ビットのデータを連続して書き込みます。
+     *
+     * アドレスは 4 バイト境界に揃っている必要があります。
+     *
+     * @param addr 先頭のアドレス
+     * @param src  書き込むデータを持つ配列
+     * @param off  配列の書き込むデータの開始位置
+     * @param len  書き込むデータの数（32 ビット単位）
+     */
+    public abstract void writeBlock(long addr, int[] src, int off, int len);
+
+    /**
+     * 指定されたアドレスから 8 ビットのデータを連続して読み取ります。
+     *
+     * @param addr 先頭のアドレス
+     * @param dst  読み取ったデータを格納する配列
+     * @param off  配列の格納を開始する位置
+     * @param len  読み取るデータの数（バイト単位）
+     */
+    public abstract void readBlock(long addr, byte[] dst, int off, int len);
+
+    /**
+     * 指定したアドレスへ 8 ビットのデータを連続して書き込みます。
+     *
+     * @param addr 先頭のアドレス
+     * @param src  書き込むデータを持つ配列
+     * @param off  配列の書き込むデータの開始位置
+     * @param len  書き込むデータの数（バイト単位）
+     */
+    public abstract void writeBlock(long addr, byte[] src, int off, int len);
+
+    /**
+     * 指定されたアドレスから、バッファの残りの長さだけデータを読み取ります。
+     *
+     * バッファの position から limit までに格納し、
+     * バッファの position を limit まで進めます。
+     *
+     * @param addr 先頭のアドレス
+     * @param dst  読み取ったデータを格納するバッファ
+     */
+    public abstract void readBlock(long addr, ByteBuffer dst);
+
+    /**
+     * 指定したアドレスへ、バッファの残りのデータを書き込みます。
+     *
+     * バッファの position から limit までを書き込み、
+     * バッファの position を limit まで進めます。
+     *
+     * @param addr 先頭のアドレス
+     * @param src  書き込むデータを持つバッファ
+     */
+    public abstract void writeBlock(long addr, ByteBuffer src);
 }
@@ -1,5 +1,7 @@
 package net.katsuster.ememu.generic;
 
+import java.nio.*;
+
 /**
  * 64 ビットアドレスバスのスレーブコア。
  *
@@ -232,4 +234,106 @@ public abstract class SlaveCore extends AbstractCore
 
         return (data & ~(eraseMask << sh)) | ((newData & eraseMask) << sh);
     }
+
+    @Override
+    public long readChecked8(long addr) {
+        if (!tryRead(addr, 1)) {
+            return ACCESS_ABORT;
+        }
+
+        return read8(addr) & 0xffL;
+    }
+
+    @Override
+    public long readChecked16(long addr) {
+        if (!tryRead(addr, 2)) {
+            return ACCESS_ABORT;
+        }
+
+        return read16(addr) & 0xffffL;
+    }
+
+    @Override
+    public long readChecked32(long addr) {
+        if (!tryRead(addr, 4)) {
+            return ACCESS_ABORT;
+        }
+
+        return read32(addr) & 0xffffffffL;
+    }
+
+    @Override
+    public boolean writeChecked8(long addr, byte data) {
+        if (!tryWrite(addr, 1)) {
+            return false;
+        }
+
+        write8(addr, data);
+
+        return true;
+    }
+
+    @Override
+    public boolean writeChecked16(long addr, short data) {
+        if (!tryWrite(addr, 2)) {
+            return false;
+        }
+
+        write16(addr, data);
+
+        return true;
+    }
+
+    @Override
+    public boolean writeChecked32(long addr, int data) {
+        if (!tryWrite(addr, 4)) {
+            return false;
+        }
+
+        write32(addr, data);
+
+        return true;
+    }
+
+    @Override
+    public void readBlock(long addr, int[] dst, int off, int len) {
+        //汎用の実装、1 ワードずつ読み取る
+        for (int i = 0; i < len; i++) {
+            dst[off + i] = read32(addr + i * 4);
+        }
+    }
+
+    @Override
+    public void writeBlock(long addr, int[] src, int off, int len) {
+        //汎用の実装、1 ワードずつ書き込む
+        for (int i = 0; i < len; i++) {
+            write32(addr + i * 4, src[off + i]);
+        }
+    }
+
+    @Override
+    public void readBlock(long addr, byte[] dst, int off, int len) {
+        readBlock(addr, ByteBuffer.wrap(dst, off, len));
+    }
+
+    @Override
+    public void writeBlock(long addr, byte[] src, int off, int len) {
+        writeBlock(addr, ByteBuffer.wrap(src, off, len));
+    }
+
+    @Override
+    public void readBlock(long addr, ByteBuffer dst) {
+        //汎用の実装、1 バイトずつ読み取る
+        while (dst.hasRemaining()) {
+            dst.put(read8(addr++));
+        }
+    }
+
+    @Override
+    public void writeBlock(long addr, ByteBuffer src) {
+        //汎用の実装、1 バイトずつ書き込む
+        while (src.hasRemaining()) {
+            write8(addr++, src.get());
+        }
+    }
 }
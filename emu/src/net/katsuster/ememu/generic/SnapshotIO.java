@@ -0,0 +1,271 @@
+package net.katsuster.ememu.generic;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * スナップショットの読み書きユーティリティクラス。
+ *
+ * <p>
+ * スナップショットはヘッダと、各オブジェクトの状態を順に並べたストリームです。
+ * 値はすべてビッグエンディアンで書き出します。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class SnapshotIO {
+    //スナップショットを表す値 "EMSS"
+    public static final int MAGIC = 0x454d5353;
+    //スナップショットの形式のバージョン
+    public static final int VERSION = 1;
+
+    //疎な配列の書き出しで、0 か否かを判定する単位（要素数）
+    public static final int SPARSE_BLOCK = 2048;
+
+    /**
+     * スナップショットのヘッダを書き出します。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    /**
+     * スナップショットのヘッダを読み出し、検査します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、
+     *                     スナップショットでないか、バージョンが異なる場合
+     */
+    public static void readHeader(DataInput in) throws IOException {
+        int magic = in.readInt();
+        int ver = in.readInt();
+
+        if (magic != MAGIC) {
+            throw new IOException(String.format(
+                    "Not a snapshot(magic 0x%08x).", magic));
+        }
+        if (ver != VERSION) {
+            throw new IOException(String.format(
+                    "Unsupported snapshot version %d.", ver));
+        }
+    }
+
+    /**
+     * 状態の名前を書き出します。
+     *
+     * 復元時に、保存したときと構成が一致するかどうかの検査に用います。
+     *
+     * @param out 書き出し先
+     * @param name 状態の名前
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void writeTag(DataOutput out, String name) throws IOException {
+        out.writeUTF(name);
+    }
+
+    /**
+     * 状態の名前を読み出し、期待する名前と一致するか検査します。
+     *
+     * @param in  読み出し元
+     * @param name 期待する状態の名前
+     * @throws IOException 読み出しに失敗した場合、名前が一致しない場合
+     */
+    public static void readTag(DataInput in, String name) throws IOException {
+        String s = in.readUTF();
+
+        if (!s.equals(name)) {
+            throw new IOException(String.format(
+                    "Snapshot mismatch, expected '%s' but '%s'.", name, s));
+        }
+    }
+
+    /**
+     * タグを読み出し、指定したクラスかそのサブクラスの名前であるか検査します。
+     *
+     * 保存形式が共通のクラス（RAM の各実装など）を、
+     * 異なるクラスに復元する際に用います。
+     *
+     * @param in   読み出し元
+     * @param base 期待するクラス
+     * @throws IOException 読み出しに失敗した場合、クラスが一致しない場合
+     */
+    public static void readTag(DataInput in, Class<?> base) throws IOException {
+        String s = in.readUTF();
+
+        try {
+            if (base.isAssignableFrom(Class.forName(s))) {
+                return;
+            }
+        } catch (ClassNotFoundException e) {
+            //fall through
+        }
+
+        throw new IOException(String.format(
+                "Snapshot mismatch, expected '%s' but '%s'.", base.getName(), s));
+    }
+
+    /**
+     * 配列の長さを読み出し、期待する長さと一致するか検査します。
+     *
+     * @param in  読み出し元
+     * @param len 期待する配列の長さ
+     * @throws IOException 読み出しに失敗した場合、長さが一致しない場合
+     */
+    protected static void readLength(DataInput in, int len) throws IOException {
+        int l = in.readInt();
+
+        if (l != len) {
+            throw new IOException(String.format(
+                    "Snapshot mismatch, expected length %d but %d.", len, l));
+        }
+    }
+
+    /**
+     * 配列の長さと要素を書き出します。
+     *
+     * @param out 書き出し先
+     * @param a   書き出す配列
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void writeInts(DataOutput out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) {
+            out.writeInt(v);
+        }
+    }
+
+    /**
+     * 配列の長さを検査し、要素を読み出します。
+     *
+     * @param in 読み出し元
+     * @param a  読み出した値を格納する配列
+     * @throws IOException 読み出しに失敗した場合、長さが一致しない場合
+     */
+    public static void readInts(DataInput in, int[] a) throws IOException {
+        readLength(in, a.length);
+        for (int i = 0; i < a.length; i++) {
+            a[i] = in.readInt();
+        }
+    }
+
+    /**
+     * 配列の長さと要素を書き出します。
+     *
+     * @param out 書き出し先
+     * @param a   書き出す配列
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void writeLongs(DataOutput out, long[] a) throws IOException {
+        out.writeInt(a.length);
+        for (long v : a) {
+            out.writeLong(v);
+        }
+    }
+
+    /**
+     * 配列の長さを検査し、要素を読み出します。
+     *
+     * @param in 読み出し元
+     * @param a  読み出した値を格納する配列
+     * @throws IOException 読み出しに失敗した場合、長さが一致しない場合
+     */
+    public static void readLongs(DataInput in, long[] a) throws IOException {
+        readLength(in, a.length);
+        for (int i = 0; i < a.length; i++) {
+            a[i] = in.readLong();
+        }
+    }
+
+    /**
+     * 配列の長さと要素を書き出します。
+     *
+     * @param out 書き出し先
+     * @param a   書き出す配列
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void writeBooleans(DataOutput out, boolean[] a) throws IOException {
+        out.writeInt(a.length);
+        for (boolean v : a) {
+            out.writeBoolean(v);
+        }
+    }
+
+    /**
+     * 配列の長さを検査し、要素を読み出します。
+     *
+     * @param in 読み出し元
+     * @param a  読み出した値を格納する配列
+     * @throws IOException 読み出しに失敗した場合、長さが一致しない場合
+     */
+    public static void readBooleans(DataInput in, boolean[] a) throws IOException {
+        readLength(in, a.length);
+        for (int i = 0; i < a.length; i++) {
+            a[i] = in.readBoolean();
+        }
+    }
+
+    /**
+     * 大部分が 0 の配列を書き出します。
+     *
+     * SPARSE_BLOCK 要素ごとに区切り、
+     * すべて 0 のブロックは書き出しません。
+     *
+     * @param out 書き出し先
+     * @param a   書き出す配列
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public static void writeSparseShorts(DataOutput out, short[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int st = 0; st < a.length; st += SPARSE_BLOCK) {
+            int ed = Math.min(st + SPARSE_BLOCK, a.length);
+            int i;
+
+            for (i = st; i < ed; i++) {
+                if (a[i] != 0) {
+                    break;
+                }
+            }
+            if (i == ed) {
+                //すべて 0
+                continue;
+            }
+
+            out.writeInt(st);
+            for (i = st; i < ed; i++) {
+                out.writeShort(a[i]);
+            }
+        }
+        out.writeInt(-1);
+    }
+
+    /**
+     * writeSparseShorts で書き出した配列を読み出します。
+     *
+     * 書き出されていないブロックには 0 を設定します。
+     *
+     * @param in 読み出し元
+     * @param a  読み出した値を格納する配列
+     * @throws IOException 読み出しに失敗した場合、長さが一致しない場合
+     */
+    public static void readSparseShorts(DataInput in, short[] a) throws IOException {
+        int st;
+
+        readLength(in, a.length);
+        Arrays.fill(a, (short)0);
+        while ((st = in.readInt()) != -1) {
+            int ed = Math.min(st + SPARSE_BLOCK, a.length);
+
+            if (st < 0 || st >= a.length) {
+                throw new IOException(String.format(
+                        "Illegal block index %d.", st));
+            }
+            for (int i = st; i < ed; i++) {
+                a[i] = in.readShort();
+            }
+        }
+    }
+}
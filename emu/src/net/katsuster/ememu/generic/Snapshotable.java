@@ -0,0 +1,33 @@
+package net.katsuster.ememu.generic;
+
+import java.io.*;
+
+/**
+ * 状態をスナップショットに保存し、復元できるオブジェクト。
+ *
+ * <p>
+ * 保存と復元はマシンが停止している間に行う必要があります。
+ * 復元は保存したときと同じ構成で新たに作成したオブジェクトに対して行い、
+ * 保存したときと同じ順序で読み出す必要があります。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public interface Snapshotable {
+    /**
+     * 状態をスナップショットに書き出します。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public abstract void saveState(DataOutput out) throws IOException;
+
+    /**
+     * スナップショットから状態を読み出し、復元します。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合、
+     *                     スナップショットの構成が一致しない場合
+     */
+    public abstract void loadState(DataInput in) throws IOException;
+}
@@ -161,6 +161,108 @@ public class Stage {
         getCore().write64_a32(addr, data);
     }
 
+    /**
+     * 指定したアドレスから 8 ビットを読み出します。
+     *
+     * 読み出しが可能かどうかの判定と読み出しを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、
+     * 読み出しができない場合は RWCore.ACCESS_ABORT
+     */
+    public long readChecked8_a32(int addr) {
+        return getCore().readChecked8_a32(addr);
+    }
+
+    /**
+     * 指定したアドレスから 16 ビットを読み出します。
+     *
+     * 読み出しが可能かどうかの判定と読み出しを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、
+     * 読み出しができない場合は RWCore.ACCESS_ABORT
+     */
+    public long readChecked16_a32(int addr) {
+        return getCore().readChecked16_a32(addr);
+    }
+
+    /**
+     * 指定したアドレスから 32 ビットを読み出します。
+     *
+     * 読み出しが可能かどうかの判定と読み出しを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @return 符号拡張しないデータ、
+     * 読み出しができない場合は RWCore.ACCESS_ABORT
+     */
+    public long readChecked32_a32(int addr) {
+        return getCore().readChecked32_a32(addr);
+    }
+
+    /**
+     * 指定したアドレスに 8 ビットを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @param data 書き込むデータ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public boolean writeChecked8_a32(int addr, byte data) {
+        return getCore().writeChecked8_a32(addr, data);
+    }
+
+    /**
+     * 指定したアドレスに 16 ビットを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @param data 書き込むデータ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public boolean writeChecked16_a32(int addr, short data) {
+        return getCore().writeChecked16_a32(addr, data);
+    }
+
+    /**
+     * 指定したアドレスに 32 ビットを書き込みます。
+     *
+     * 書き込みが可能かどうかの判定と書き込みを、
+     * 1 度のアドレス検索で行います。
+     *
+     * アドレス幅は符号無し 32 ビットとして解釈し、
+     * 64ビットに変換された後にスレーブバスに渡されます。
+     *
+     * @param addr アドレス
+     * @param data 書き込むデータ
+     * @return 書き込みができた場合は true、できなかった場合は false
+     */
+    public boolean writeChecked32_a32(int addr, int data) {
+        return getCore().writeChecked32_a32(addr, data);
+    }
+
     /**
      * 逆アセンブルした命令を表示します。
      *
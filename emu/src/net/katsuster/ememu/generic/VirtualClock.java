@@ -0,0 +1,429 @@
+package net.katsuster.ememu.generic;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * マシン全体で共有する仮想クロックと、イベントスケジューラです。
+ *
+ * <p>
+ * 仮想時刻はナノ秒単位で、下記のいずれかの方法で進みます。
+ * </p>
+ *
+ * <ul>
+ * <li>MODE_INSTRUCTION: CPU が実行した命令数に比例して進みます。
+ * ホストの速度に依存しないため、同じ入力に対して同じ結果が得られます。</li>
+ * <li>MODE_HOST: ホストの経過時間に追従します。
+ * 一定数の命令を実行するごとにホストの時刻を確認します。</li>
+ * </ul>
+ *
+ * <p>
+ * タイマーなどのデバイスはスレッドを持つ代わりに、
+ * 期限の時刻とともにイベント（ClockEvent）を登録します。
+ * イベントは優先度付きキューで期限の早い順に管理され、
+ * CPU が仮想時刻を進めたときに、期限に達したものから順に呼び出されます。
+ * 期限が同じイベントは登録された順に呼び出されます。
+ * </p>
+ *
+ * <p>
+ * 仮想時刻を進めるのは CPU のスレッドのみです。
+ * イベントの登録と取り消しは他のスレッドからも行えますが、
+ * 他のスレッドから見た現在の仮想時刻は少し古い場合があります。
+ * </p>
+ *
+ * @author katsuhiro
+ */
+public class VirtualClock implements Snapshotable {
+    //実行した命令数に比例して進む
+    public static final int MODE_INSTRUCTION = 0;
+    //ホストの経過時間に追従する
+    public static final int MODE_HOST = 1;
+
+    //1 命令あたりの時間の既定値（ナノ秒）、200MHz で 1 命令 1 クロックとする
+    public static final long DEFAULT_INST_PERIOD = 5;
+    //MODE_HOST でホストの時刻を確認する間隔（命令数）
+    public static final int HOST_CHECK_INSTS = 1024;
+
+    private int mode;
+    private long instPeriod;
+    private long now;
+    private long lastInsts;
+    private long hostBase;
+    private long hostPending;
+    private boolean enabledIdleSkip;
+    //次の期限が早まったときに起こす、アイドル中の CPU が待っているオブジェクト
+    private Object idleWaiter;
+
+    private PriorityQueue<ClockEvent> events;
+    private long sequence;
+    //最も早いイベントの期限、CPU のスレッドがロックを取らずに参照する
+    private volatile long nextDeadline;
+
+    /**
+     * 実行した命令数に比例して進む仮想クロックを作成します。
+     */
+    public VirtualClock() {
+        this(MODE_INSTRUCTION);
+    }
+
+    /**
+     * 仮想クロックを作成します。
+     *
+     * @param m 時刻の進め方（MODE_xxxx）
+     */
+    public VirtualClock(int m) {
+        events = new PriorityQueue<ClockEvent>(16, new Comparator<ClockEvent>() {
+            @Override
+            public int compare(ClockEvent a, ClockEvent b) {
+                if (a.deadline != b.deadline) {
+                    return (a.deadline < b.deadline) ? -1 : 1;
+                }
+                if (a.sequence != b.sequence) {
+                    return (a.sequence < b.sequence) ? -1 : 1;
+                }
+                return 0;
+            }
+        });
+        nextDeadline = Long.MAX_VALUE;
+        instPeriod = DEFAULT_INST_PERIOD;
+        setMode(m);
+    }
+
+    /**
+     * 時刻の進め方を取得します。
+     *
+     * @return 時刻の進め方（MODE_xxxx）
+     */
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * 時刻の進め方を設定します。
+     *
+     * 現在の仮想時刻はそのまま引き継がれます。
+     *
+     * @param m 時刻の進め方（MODE_xxxx）
+     */
+    public void setMode(int m) {
+        if (m != MODE_INSTRUCTION && m != MODE_HOST) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal clock mode %d.", m));
+        }
+
+        mode = m;
+        hostBase = System.nanoTime() - now;
+        hostPending = 0;
+    }
+
+    /**
+     * CPU のアイドル時に、次のイベントの時刻まで仮想時刻を飛ばすかどうかを取得します。
+     *
+     * @return 仮想時刻を飛ばすならば true、ホストの時間で待つならば false
+     */
+    public boolean isEnabledIdleSkip() {
+        return enabledIdleSkip;
+    }
+
+    /**
+     * CPU のアイドル時に、次のイベントの時刻まで仮想時刻を飛ばすかどうかを設定します。
+     *
+     * MODE_HOST で有効にすると、ゲストが割り込みを待つ間の時間を待たずに済むため、
+     * 起動テストやベンチマークなどの一括処理を早く終えることができます。
+     * その代わり、仮想時刻はホストの経過時間より進みます。
+     *
+     * @param b 仮想時刻を飛ばすならば true、ホストの時間で待つならば false
+     */
+    public void setEnabledIdleSkip(boolean b) {
+        enabledIdleSkip = b;
+    }
+
+    /**
+     * CPU のアイドル時に、次のイベントの時刻まで仮想時刻を飛ばすべきかどうかを取得します。
+     *
+     * MODE_INSTRUCTION では命令を実行しない間は時刻が進まないため、常に飛ばします。
+     * MODE_HOST では isEnabledIdleSkip() の設定に従います。
+     *
+     * @return 仮想時刻を飛ばすべきならば true、ホストの時間で待つべきならば false
+     */
+    public boolean shouldSkipIdle() {
+        return mode == MODE_INSTRUCTION || enabledIdleSkip;
+    }
+
+    /**
+     * アイドル中の CPU が待っているオブジェクトを取得します。
+     *
+     * @return アイドル中の CPU が待っているオブジェクト、設定されていなければ null
+     */
+    public Object getIdleWaiter() {
+        return idleWaiter;
+    }
+
+    /**
+     * アイドル中の CPU が待っているオブジェクトを設定します。
+     *
+     * 他のスレッドがイベントを登録して次の期限が早まったとき、
+     * このオブジェクトの notifyAll() を呼び出し、
+     * 古い期限まで待っている CPU を起こして待ち時間を計算し直させます。
+     *
+     * @param o アイドル中の CPU が待っているオブジェクト、不要ならば null
+     */
+    public void setIdleWaiter(Object o) {
+        idleWaiter = o;
+    }
+
+    /**
+     * 1 命令あたりに進む時間を取得します。
+     *
+     * @return 1 命令あたりの時間（ナノ秒）
+     */
+    public long getInstructionPeriod() {
+        return instPeriod;
+    }
+
+    /**
+     * 1 命令あたりに進む時間を設定します。
+     *
+     * MODE_INSTRUCTION の場合のみ意味を持ちます。
+     *
+     * @param ns 1 命令あたりの時間（ナノ秒）
+     */
+    public void setInstructionPeriod(long ns) {
+        if (ns <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal instruction period %d.", ns));
+        }
+
+        instPeriod = ns;
+    }
+
+    /**
+     * 仮想時刻をスナップショットに書き出します。
+     *
+     * 登録されているイベントは書き出しません。
+     * イベントを登録したデバイスが、自身の状態を復元するときに登録し直します。
+     *
+     * @param out 書き出し先
+     * @throws IOException 書き出しに失敗した場合
+     */
+    @Override
+    public void saveState(DataOutput out) throws IOException {
+        out.writeLong(now);
+        out.writeLong(lastInsts);
+        out.writeLong(instPeriod);
+    }
+
+    /**
+     * スナップショットから仮想時刻を読み出します。
+     *
+     * MODE_HOST の場合、ホストの時刻は復元した仮想時刻から進みます。
+     * デバイスの状態より先に復元する必要があります。
+     *
+     * @param in 読み出し元
+     * @throws IOException 読み出しに失敗した場合
+     */
+    @Override
+    public void loadState(DataInput in) throws IOException {
+        now = in.readLong();
+        lastInsts = in.readLong();
+        instPeriod = in.readLong();
+        hostBase = System.nanoTime() - now;
+        hostPending = 0;
+    }
+
+    /**
+     * 現在の仮想時刻を取得します。
+     *
+     * @return 仮想時刻（ナノ秒）
+     */
+    public long getTime() {
+        return now;
+    }
+
+    /**
+     * CPU が実行した命令数を通知し、仮想時刻を進めます。
+     *
+     * 期限に達したイベントがあれば、このメソッドの中で呼び出します。
+     * CPU のスレッドから、命令を実行するたびに呼び出されることを想定しています。
+     *
+     * @param insts CPU が実行を開始してからの命令数の合計
+     */
+    public void update(long insts) {
+        long d = insts - lastInsts;
+
+        lastInsts = insts;
+
+        if (mode == MODE_INSTRUCTION) {
+            now += d * instPeriod;
+        } else {
+            //ホストの時刻の取得は遅いため、一定数の命令ごとに確認する
+            hostPending += d;
+            if (hostPending < HOST_CHECK_INSTS) {
+                return;
+            }
+            hostPending = 0;
+            syncHost();
+        }
+
+        if (now >= nextDeadline) {
+            runEvents();
+        }
+    }
+
+    /**
+     * MODE_HOST ならば仮想時刻をホストの経過時間に合わせ、
+     * 期限に達したイベントを呼び出します。
+     *
+     * CPU が命令を実行せずに待っている間に、時刻を進めるために用います。
+     */
+    public void sync() {
+        if (mode == MODE_HOST) {
+            syncHost();
+        }
+
+        if (now >= nextDeadline) {
+            runEvents();
+        }
+    }
+
+    /**
+     * 仮想時刻をホストの経過時間に合わせます。
+     *
+     * 仮想時刻が戻ることはありません。
+     */
+    protected void syncHost() {
+        long h = System.nanoTime() - hostBase;
+
+        if (h > now) {
+            now = h;
+        }
+    }
+
+    /**
+     * 仮想時刻を指定した時刻まで進めます。
+     *
+     * 指定した時刻が現在の仮想時刻より前ならば何もしません。
+     * 期限に達したイベントがあれば、このメソッドの中で呼び出します。
+     *
+     * @param t 新しい仮想時刻（ナノ秒）
+     */
+    public void advanceTo(long t) {
+        if (t > now) {
+            now = t;
+            if (mode == MODE_HOST) {
+                //ホストの経過時間より進んだ分は、以降の時刻に加算する
+                hostBase = System.nanoTime() - now;
+            }
+        }
+
+        if (now >= nextDeadline) {
+            runEvents();
+        }
+    }
+
+    /**
+     * 最も早いイベントの期限を取得します。
+     *
+     * @return 最も早いイベントの期限（ナノ秒）、
+     * イベントが登録されていなければ Long.MAX_VALUE
+     */
+    public long getNextDeadline() {
+        return nextDeadline;
+    }
+
+    /**
+     * イベントを指定した時刻に登録します。
+     *
+     * 既に登録されているイベントは、以前の登録を取り消してから登録し直します。
+     * 現在の仮想時刻以前の時刻を指定した場合、
+     * 次に仮想時刻が進められたときに呼び出されます。
+     *
+     * @param ev イベント
+     * @param t  イベントを呼び出す時刻（ナノ秒）
+     */
+    public void schedule(ClockEvent ev, long t) {
+        Object w = idleWaiter;
+        boolean earlier;
+
+        synchronized (this) {
+            if (ev.scheduled) {
+                events.remove(ev);
+            }
+            ev.deadline = t;
+            ev.sequence = sequence++;
+            ev.scheduled = true;
+            events.add(ev);
+
+            earlier = t < nextDeadline;
+            updateNextDeadline();
+        }
+
+        //NOTE: CPU のロックとの順序の逆転を避けるため、ロックの外で起こす
+        if (earlier && w != null) {
+            synchronized (w) {
+                w.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * イベントを現在の仮想時刻から指定した時間の後に登録します。
+     *
+     * @param ev    イベント
+     * @param delay 現在の仮想時刻からの時間（ナノ秒）
+     */
+    public void scheduleAfter(ClockEvent ev, long delay) {
+        schedule(ev, now + delay);
+    }
+
+    /**
+     * イベントの登録を取り消します。
+     *
+     * 登録されていないイベントを指定した場合は何もしません。
+     *
+     * @param ev イベント
+     */
+    public synchronized void cancel(ClockEvent ev) {
+        if (!ev.scheduled) {
+            return;
+        }
+        events.remove(ev);
+        ev.scheduled = false;
+
+        updateNextDeadline();
+    }
+
+    protected void updateNextDeadline() {
+        ClockEvent ev = events.peek();
+
+        nextDeadline = (ev == null) ? Long.MAX_VALUE : ev.deadline;
+    }
+
+    /**
+     * 期限が現在の仮想時刻に達したイベントを、期限の早い順に呼び出します。
+     *
+     * イベントの処理中に登録されたイベントも、
+     * 期限に達していれば続けて呼び出します。
+     */
+    protected void runEvents() {
+        ClockEvent ev;
+        long t;
+
+        while (true) {
+            synchronized (this) {
+                ev = events.peek();
+                if (ev == null || ev.deadline > now) {
+                    break;
+                }
+                events.poll();
+                ev.scheduled = false;
+                t = ev.deadline;
+
+                updateNextDeadline();
+            }
+
+            //デバイスのロックとの順序の逆転を避けるため、ロックの外で呼び出す
+            ev.fire(t);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package net.katsuster.ememu.test;
+
+import net.katsuster.ememu.arm.core.*;
+import org.junit.*;
+
+public class ARMRegFileTest {
+    @Test
+    public void testBank() throws Exception {
+        String msg1 = "ARMRegFile bank switch failed.";
+        ARMRegFile rf = new ARMRegFile();
+        PSR cpsr = rf.getCPSR();
+
+        cpsr.setValue(PSR.MODE_SVC);
+        for (int i = 0; i < 16; i++) {
+            rf.setValue(i, 0x100 + i);
+        }
+        rf.getSPSR().setValue(0x600000d3);
+
+        //FIQ モードでは r8 - r14 と SPSR がバンクされる
+        cpsr.setMode(PSR.MODE_FIQ);
+        for (int i = 0; i < 8; i++) {
+            Assert.assertEquals(msg1, 0x100 + i, rf.getValue(i));
+        }
+        for (int i = 8; i < 15; i++) {
+            Assert.assertEquals(msg1, 0, rf.getValue(i));
+            rf.setValue(i, 0x200 + i);
+        }
+        Assert.assertEquals(msg1, 0x10f, rf.getValue(15));
+        Assert.assertEquals(msg1, "r8_fiq", rf.getReg(8).getName());
+        Assert.assertEquals(msg1, 0, rf.getSPSR().getValue());
+
+        //USR と SYS は同じバンクを共有する
+        cpsr.setMode(PSR.MODE_SYS);
+        rf.setValue(13, 0x30d);
+        cpsr.setMode(PSR.MODE_USR);
+        Assert.assertEquals(msg1, 0x30d, rf.getValue(13));
+        for (int i = 8; i < 13; i++) {
+            Assert.assertEquals(msg1, 0x100 + i, rf.getValue(i));
+        }
+
+        cpsr.setMode(PSR.MODE_FIQ);
+        for (int i = 8; i < 15; i++) {
+            Assert.assertEquals(msg1, 0x200 + i, rf.getValue(i));
+        }
+
+        cpsr.setMode(PSR.MODE_SVC);
+        for (int i = 0; i < 16; i++) {
+            Assert.assertEquals(msg1, 0x100 + i, rf.getValue(i));
+        }
+        Assert.assertEquals(msg1, "r13_svc", rf.getReg(13).getName());
+        Assert.assertEquals(msg1, 0x600000d3, rf.getSPSR().getValue());
+        Assert.assertEquals(msg1, 0x600000d3, rf.getValue(ARMRegFile.ARM_REG_SPSR));
+    }
+}
@@ -10,7 +10,17 @@ import org.junit.runners.Suite.SuiteClasses;
         BitOpTest.class,
         IntegerExtTest.class,
         SlaveCoreTest.class,
+        BusTest.class,
+        PSRTest.class,
+        ARMRegFileTest.class,
+        VirtualClockTest.class,
+        DualTimerTest.class,
+        UARTTest.class,
+        SnapshotTest.class,
         RAMTest.class,
+        TLBv5Test.class,
+        DecodeCachev5Test.class,
+        BlockARMv5Test.class,
 })
 public class AllTest {
     protected AllTest() {
@@ -0,0 +1,358 @@
+package net.katsuster.ememu.test;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class BlockARMv5Test {
+    //r0 = 1 + 2 + ... + 100 を計算し、0x1c にストアして停止する
+    private static final int[] PROG = {
+            0xe3a00000, //0x00: mov   r0, #0
+            0xe3a01064, //0x04: mov   r1, #100
+            0xe0800001, //0x08: add   r0, r0, r1
+            0xe2511001, //0x0c: subs  r1, r1, #1
+            0x1afffffc, //0x10: bne   0x08
+            0xe5810100, //0x14: str   r0, [r1, #0x100]
+            0xeafffffe, //0x18: b     0x18
+    };
+
+    //r2-r4 を 0x100 にストアし、クリアした後にロードし直して停止する
+    private static final int[] PROG_LDM_STM = {
+            0xe3a01c01, //0x00: mov   r1, #0x100
+            0xe3a02001, //0x04: mov   r2, #1
+            0xe3a03002, //0x08: mov   r3, #2
+            0xe3a04003, //0x0c: mov   r4, #3
+            0xe8a1001c, //0x10: stmia r1!, {r2-r4}
+            0xe3a02000, //0x14: mov   r2, #0
+            0xe3a03000, //0x18: mov   r3, #0
+            0xe3a04000, //0x1c: mov   r4, #0
+            0xe931001c, //0x20: ldmdb r1!, {r2-r4}
+            0xeafffffe, //0x24: b     0x24
+    };
+
+    //JIT で変換できるデータ処理命令を 40回繰り返し、最後に停止する
+    //r11 には各命令の直後のフラグを記録する
+    private static final int[] PROG_JIT = {
+            0xe3a0d028, //0x00: mov   sp, #40
+            0xe3a004ff, //0x04: mov   r0, #0xff000000
+            0xe3e01000, //0x08: mvn   r1, #0
+            0xe3a0b000, //0x0c: mov   r11, #0
+            0xe0902001, //0x10: adds  r2, r0, r1
+            0x238bb001, //0x14: orrcs r11, r11, #1
+            0x438bb002, //0x18: orrmi r11, r11, #2
+            0xe20230f0, //0x1c: and   r3, r2, #0xf0
+            0xe383400f, //0x20: orr   r4, r3, #0x0f
+            0xe0245001, //0x24: eor   r5, r4, r1
+            0xe3c56cff, //0x28: bic   r6, r5, #0xff00
+            0xe3a08102, //0x2c: mov   r8, #0x80000000
+            0xe2587001, //0x30: subs  r7, r8, #1
+            0x638bb004, //0x34: orrvs r11, r11, #4
+            0xe2749000, //0x38: rsbs  r9, r4, #0
+            0x338bb008, //0x3c: orrcc r11, r11, #8
+            0xe35400ff, //0x40: cmp   r4, #0xff
+            0x0084a004, //0x44: addeq r10, r4, r4
+            0x138bb010, //0x48: orrne r11, r11, #16
+            0xe3710001, //0x4c: cmn   r1, #1
+            0x038bb020, //0x50: orreq r11, r11, #32
+            0xe04ac003, //0x54: sub   r12, r10, r3
+            0xe1a0e00c, //0x58: mov   lr, r12
+            0xe24dd001, //0x5c: sub   sp, sp, #1
+            0xe35d0000, //0x60: cmp   sp, #0
+            0x1affffe6, //0x64: bne   0x04
+            0xeafffffe, //0x68: b     0x68
+    };
+
+    public ARMv5 createCPU(boolean blockTrans, boolean threaded) {
+        return createCPU(PROG, blockTrans, threaded);
+    }
+
+    public ARMv5 createCPU(int[] prog, boolean blockTrans, boolean threaded) {
+        ARMv5 cpu = new ARMv5();
+        Bus bus = new Bus();
+        RAM ram = new RAM32(0x10000);
+
+        cpu.setSlaveBus(bus);
+        bus.addSlaveCore(ram, 0x0, 0xffff);
+        for (int i = 0; i < prog.length; i++) {
+            ram.write32(i * 4, prog[i]);
+        }
+
+        cpu.doExceptionReset("test");
+        cpu.setEnabledBlockTranslation(blockTrans);
+        cpu.setEnabledThreadedCode(threaded);
+
+        return cpu;
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        String msg1 = "ARMv5 block translation failed.";
+        ARMv5 interp = createCPU(false, false);
+        ARMv5 block = createCPU(true, false);
+
+        for (int i = 0; i < 1000; i++) {
+            interp.step();
+            block.step();
+        }
+
+        Assert.assertEquals(msg1, 5050, interp.getReg(0));
+        Assert.assertEquals(msg1, 0x18, interp.getPC() - 8);
+        Assert.assertEquals(msg1, 5050, interp.read32_a32(0x100));
+
+        Assert.assertEquals(msg1, 5050, block.getReg(0));
+        Assert.assertEquals(msg1, 0x18, block.getPC() - 8);
+        Assert.assertEquals(msg1, 5050, block.read32_a32(0x100));
+        Assert.assertTrue(msg1, block.getBlockCache().getTranslatedCount() > 0);
+        //ループの後方分岐は自身のブロックに連結される
+        Assert.assertTrue(msg1, block.getBlockCache().getChainHitCount() > 0);
+    }
+
+    @Test
+    public void testThreaded() throws Exception {
+        String msg1 = "ARMv5 threaded code failed.";
+        ARMv5 threaded = createCPU(false, true);
+        ARMv5 block = createCPU(true, true);
+
+        for (int i = 0; i < 1000; i++) {
+            threaded.step();
+            block.step();
+        }
+
+        Assert.assertEquals(msg1, 5050, threaded.getReg(0));
+        Assert.assertEquals(msg1, 0x18, threaded.getPC() - 8);
+        Assert.assertEquals(msg1, 5050, threaded.read32_a32(0x100));
+
+        Assert.assertEquals(msg1, 5050, block.getReg(0));
+        Assert.assertEquals(msg1, 0x18, block.getPC() - 8);
+        Assert.assertEquals(msg1, 5050, block.read32_a32(0x100));
+    }
+
+    @Test
+    public void testJIT() throws Exception {
+        String msg1 = "ARMv5 JIT compilation failed.";
+        int[][] progs = {PROG, PROG_JIT};
+
+        for (int[] prog : progs) {
+            ARMv5 interp = createCPU(prog, false, false);
+            ARMv5 jit = createCPU(prog, true, false);
+
+            jit.setEnabledJIT(true);
+            for (int i = 0; i < 2000; i++) {
+                interp.step();
+                jit.step();
+            }
+
+            //レジスタとフラグがインタプリタと一致する
+            for (int r = 0; r < 16; r++) {
+                Assert.assertEquals(msg1 + " r" + r, interp.getReg(r), jit.getReg(r));
+            }
+            Assert.assertEquals(msg1, interp.getCPSR().getValue(),
+                    jit.getCPSR().getValue());
+            Assert.assertTrue(msg1, jit.getJIT().getCompiledBlockCount() > 0);
+        }
+
+        //条件付きの命令で記録したフラグ: CS, MI, VS, CC, EQ
+        ARMv5 cpu = createCPU(PROG_JIT, true, false);
+        cpu.setEnabledJIT(true);
+        for (int i = 0; i < 2000; i++) {
+            cpu.step();
+        }
+        Assert.assertEquals(msg1, 0x68, cpu.getPC() - 8);
+        Assert.assertEquals(msg1, 0x2f, cpu.getReg(11));
+    }
+
+    public BlockARMv5 createBlock(int pa) {
+        return new BlockARMv5(pa,
+                new InstructionARM[] {new InstructionARM(0xe1a00000)},
+                new OpIndex[] {OpIndex.INS_ARM_ALUMOV},
+                new HandlerARM[1]);
+    }
+
+    @Test
+    public void testInvalidatePage() throws Exception {
+        String msg1 = "BlockCachev5 page invalidation failed.";
+        BlockCachev5 c = new BlockCachev5(16, 1);
+        BlockARMv5[] blks = {
+                createBlock(0x1000), createBlock(0x1010),
+                //0x1000 とページのインデクスが衝突する
+                createBlock(0x11004),
+                createBlock(0x2008),
+        };
+
+        for (BlockARMv5 b : blks) {
+            c.add(b);
+        }
+        //同じスロットを置き換えられたブロックは、リストから外れる
+        c.add(createBlock(0x1040));
+        Assert.assertFalse(msg1, blks[0].isValid());
+
+        c.invalidatePage(0x1ffc);
+        Assert.assertFalse(msg1, blks[1].isValid());
+        Assert.assertNull(msg1, c.lookup(0x1040));
+        Assert.assertFalse(msg1, c.isCodePage(0x1000));
+        Assert.assertTrue(msg1, blks[2].isValid());
+        Assert.assertSame(msg1, blks[2], c.lookup(0x11004));
+        Assert.assertSame(msg1, blks[3], c.lookup(0x2008));
+
+        c.invalidatePage(0x11000);
+        Assert.assertFalse(msg1, blks[2].isValid());
+        Assert.assertTrue(msg1, blks[3].isValid());
+    }
+
+    @Test
+    public void testThreadedResolve() throws Exception {
+        String msg1 = "ARMv5 threaded handler resolve failed.";
+        ARMv5 cpu = createCPU(false, true);
+        ThreadedExecARMv5 t = new ThreadedExecARMv5(new ExecStageARMv5(cpu));
+        DecodeStageARMv5 d = new DecodeStageARMv5(cpu);
+        int[][] insts = {
+                {0xe0800001, 0}, //add   r0, r0, r1
+                {0xe2511001, 1}, //subs  r1, r1, #1
+                {0xe1500001, 2}, //cmp   r0, r1
+                {0x1afffffc, 3}, //bne   0x08
+                {0x10800081, 4}, //addne r0, r0, r1, lsl #1
+        };
+        Class<?>[] expected = {
+                ThreadedExecARMv5.AddReg.class,
+                ThreadedExecARMv5.SubsImm.class,
+                ThreadedExecARMv5.CmpReg.class,
+                ThreadedExecARMv5.Cond.class,
+                null,
+        };
+
+        //イミディエートかレジスタか、S ビット、条件に応じて特化する
+        for (int[] e : insts) {
+            InstructionARM inst = new InstructionARM(e[0]);
+            OpIndex opind = d.decode(inst);
+            HandlerARM h = t.resolve(inst, opind);
+
+            if (expected[e[1]] == null) {
+                Assert.assertSame(msg1, t.getHandler(opind), h);
+            } else {
+                Assert.assertSame(msg1, expected[e[1]], h.getClass());
+            }
+        }
+
+        //解決したハンドラはデコード済み命令のキャッシュに保持される
+        for (int i = 0; i < 10; i++) {
+            cpu.step();
+        }
+        Assert.assertTrue(msg1, cpu.getDecodeCache().getHandlerARM(0x08)
+                instanceof ThreadedExecARMv5.AddReg);
+    }
+
+    public void setupHandlerCPU(ARMv5 cpu) {
+        cpu.setReg(0, 0x7fffffff);
+        cpu.setReg(1, 1);
+        cpu.setReg(2, 0xffffffff);
+        cpu.setReg(3, 0x80000000);
+        cpu.setReg(4, 0x12345678);
+        cpu.getCPSR().setNBit(false);
+        cpu.getCPSR().setZBit(true);
+        cpu.getCPSR().setCBit(true);
+        cpu.getCPSR().setVBit(false);
+    }
+
+    @Test
+    public void testThreadedHandlers() throws Exception {
+        String msg1 = "ARMv5 threaded handler differs from the interpreter.";
+        int[] insts = {
+                //キャリー、オーバーフロー
+                0xe2904001, //adds  r4, r0, #1
+                0xe2924001, //adds  r4, r2, #1
+                0xe2534001, //subs  r4, r3, #1
+                0xe2514002, //subs  r4, r1, #2
+                0xe3530001, //cmp   r3, #1
+                0xe1510002, //cmp   r1, r2
+                0xe1500002, //cmp   r0, r2
+                //PC を読み出す
+                0xe28f4004, //add   r4, pc, #4
+                0xe081400f, //add   r4, r1, pc
+                0xe04f4001, //sub   r4, pc, r1
+                0xe041400f, //sub   r4, r1, pc
+                0xe1a0400f, //mov   r4, pc
+                //条件（初期値は Z, C がセット）
+                0x02814001, //addeq r4, r1, #1
+                0x12814001, //addne r4, r1, #1
+                0x12514001, //subsne r4, r1, #1
+                0x33500000, //cmpcc r0, #0
+                0x31510002, //cmpcc r1, r2
+        };
+
+        for (int e : insts) {
+            String msg2 = String.format("%s 0x%08x", msg1, e);
+            ARMv5 interp = createCPU(false, false);
+            ARMv5 threaded = createCPU(false, true);
+            ExecStageARMv5 stInterp = new ExecStageARMv5(interp);
+            ExecStageARMv5 stThreaded = new ExecStageARMv5(threaded);
+            ThreadedExecARMv5 t = new ThreadedExecARMv5(stThreaded);
+            InstructionARM inst = new InstructionARM(e);
+            OpIndex opind = new DecodeStageARMv5(interp).decode(inst);
+            HandlerARM h = t.resolve(inst, opind);
+
+            //専用のハンドラで実行されること
+            Assert.assertFalse(msg2, h instanceof ThreadedExecARMv5.Fallback);
+
+            setupHandlerCPU(interp);
+            setupHandlerCPU(threaded);
+            stInterp.execute(new Opcode(inst, OpType.INS_TYPE_ARM, opind), true);
+            h.execute(inst);
+
+            for (int r = 0; r < 16; r++) {
+                Assert.assertEquals(msg2 + " r" + r,
+                        interp.getRegRaw(r), threaded.getRegRaw(r));
+            }
+            Assert.assertEquals(msg2, interp.getCPSR().getValue(),
+                    threaded.getCPSR().getValue());
+            Assert.assertEquals(msg2, interp.isJumped(), threaded.isJumped());
+        }
+    }
+
+    @Test
+    public void testChainDeadline() throws Exception {
+        String msg1 = "ARMv5 block chaining delayed a clock event.";
+        final ARMv5 cpu = createCPU(true, false);
+        final long[] fired = {-1};
+        VirtualClock clock = cpu.getClock();
+
+        clock.setMode(VirtualClock.MODE_INSTRUCTION);
+        //ループを連結して実行している最中に期限を迎える
+        clock.schedule(new ClockEvent() {
+            @Override
+            public void fire(long deadline) {
+                fired[0] = cpu.getInstCount();
+            }
+        }, 200 * clock.getInstructionPeriod());
+
+        for (int i = 0; i < 100 && fired[0] < 0; i++) {
+            cpu.step();
+        }
+
+        //連結したブロックの途中でも、ブロック 1つ分の遅れで呼び出される
+        Assert.assertTrue(msg1, cpu.getBlockCache().getChainHitCount() > 0);
+        Assert.assertTrue(msg1, fired[0] >= 200);
+        Assert.assertTrue(msg1, fired[0] < 200 + ARMv5.MAX_BLOCK_INSTS);
+    }
+
+    @Test
+    public void testLoadStoreMultiple() throws Exception {
+        String msg1 = "ARMv5 ldm/stm failed.";
+        ARMv5[] cpus = {
+                createCPU(PROG_LDM_STM, false, false),
+                createCPU(PROG_LDM_STM, true, true),
+        };
+
+        for (ARMv5 cpu : cpus) {
+            for (int i = 0; i < 100; i++) {
+                cpu.step();
+            }
+
+            Assert.assertEquals(msg1, 0x24, cpu.getPC() - 8);
+            Assert.assertEquals(msg1, 0x100, cpu.getReg(1));
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(msg1, i + 1, cpu.getReg(2 + i));
+                Assert.assertEquals(msg1, i + 1, cpu.read32_a32(0x100 + i * 4));
+            }
+        }
+    }
+}
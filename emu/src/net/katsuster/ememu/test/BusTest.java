@@ -0,0 +1,126 @@
+package net.katsuster.ememu.test;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class BusTest {
+    @Test
+    public void testCheckedAccess() throws Exception {
+        String msg1 = "Bus.readChecked() failed.";
+        String msg2 = "Bus.writeChecked() failed.";
+        Bus bus = new Bus();
+
+        bus.addSlaveCore(new RAM32(0x10000), 0x10000, 0x1ffff);
+
+        //RAM
+        Assert.assertTrue(msg2, bus.writeChecked32(0x10008, 0xfedcba98));
+        Assert.assertEquals(msg1, 0xfedcba98L, bus.readChecked32(0x10008));
+        Assert.assertEquals(msg1, 0xbaL, bus.readChecked8(0x10009));
+        Assert.assertEquals(msg1, 0xfedcL, bus.readChecked16(0x1000a));
+
+        Assert.assertTrue(msg2, bus.writeChecked8(0x1000b, (byte)0x12));
+        Assert.assertTrue(msg2, bus.writeChecked16(0x10008, (short)0x3456));
+        Assert.assertEquals(msg1, 0x12dc3456L, bus.readChecked32(0x10008));
+
+        //何も接続されていないアドレス
+        Assert.assertEquals(msg1, RWCore.ACCESS_ABORT, bus.readChecked32(0x0));
+        Assert.assertEquals(msg1, RWCore.ACCESS_ABORT, bus.readChecked8(0x20000));
+        Assert.assertFalse(msg2, bus.writeChecked32(0x20000, 0x1));
+        Assert.assertFalse(msg2, bus.writeChecked16(0xfffe, (short)0x1));
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        String msg1 = "Bus.load() failed.";
+        byte[] data = new byte[100003];
+        RAM[] rams = {
+                new RAM16(0x20000), new RAM32(0x20000), new RAM64(0x20000),
+        };
+
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte)(i * 7 + (i >> 8));
+        }
+
+        //ストリーム、アラインされていない先頭と末尾
+        for (RAM ram : rams) {
+            Bus bus = new Bus();
+
+            bus.addSlaveCore(ram, 0x20000, 0x3ffff);
+            Assert.assertEquals(msg1, data.length, bus.load(0x20003,
+                    Channels.newChannel(new ByteArrayInputStream(data))));
+            for (int i = 0; i < data.length; i++) {
+                Assert.assertEquals(msg1, data[i], bus.read8(0x20003 + i));
+            }
+            Assert.assertEquals(msg1, 0, bus.read8(0x20002));
+            Assert.assertEquals(msg1, 0, bus.read8(0x20003 + data.length));
+        }
+
+        //ファイル
+        File f = File.createTempFile("ememu", ".bin");
+        try {
+            FileOutputStream out = new FileOutputStream(f);
+            out.write(data);
+            out.close();
+
+            Bus bus = new Bus();
+            bus.addSlaveCore(new RAM32(0x20000), 0x20000, 0x3ffff);
+
+            FileChannel ch = new FileInputStream(f).getChannel();
+            Assert.assertEquals(msg1, data.length, bus.load(0x20000, ch));
+            ch.close();
+            Assert.assertEquals(msg1, ByteBuffer.wrap(data, 0x1230, 4)
+                    .order(ByteOrder.LITTLE_ENDIAN).getInt(), bus.read32(0x21230));
+        } finally {
+            f.delete();
+        }
+
+        //範囲外
+        try {
+            Bus bus = new Bus();
+            bus.addSlaveCore(new RAM32(0x1000), 0x20000, 0x20fff);
+            bus.writeBlock(0x20ffe, ByteBuffer.wrap(new byte[4]));
+            Assert.fail(msg1);
+        } catch (IllegalArgumentException ex) {
+            //OK
+        }
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        String msg1 = "Bus.readBlock() failed.";
+        String msg2 = "Bus.writeBlock() failed.";
+        int[] src = {0x01234567, 0x89abcdef, 0xfedcba98, 0x76543210};
+        int[] dst = new int[6];
+        byte[] b = new byte[5];
+        SlaveCore[] cores = {
+                new RAM16(0x1000), new RAM32(0x1000), new RAM64(0x1000),
+        };
+
+        for (SlaveCore core : cores) {
+            Bus bus = new Bus();
+
+            bus.addSlaveCore(core, 0x10000, 0x10fff);
+
+            bus.writeBlock(0x10104, src, 0, src.length);
+            Assert.assertEquals(msg2, 0x89abcdef, bus.read32(0x10108));
+            Assert.assertEquals(msg2, 0, bus.read32(0x10100));
+            Assert.assertEquals(msg2, 0, bus.read32(0x10114));
+
+            bus.readBlock(0x10108, dst, 1, 3);
+            Assert.assertEquals(msg1, 0, dst[0]);
+            Assert.assertEquals(msg1, 0x89abcdef, dst[1]);
+            Assert.assertEquals(msg1, 0x76543210, dst[3]);
+            Assert.assertEquals(msg1, 0, dst[4]);
+
+            //アラインされていないバイト列
+            bus.readBlock(0x10105, b, 0, b.length);
+            Assert.assertArrayEquals(msg1, new byte[] {
+                    (byte)0x45, (byte)0x23, (byte)0x01,
+                    (byte)0xef, (byte)0xcd}, b);
+        }
+    }
+}
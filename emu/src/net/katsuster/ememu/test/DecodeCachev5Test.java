@@ -0,0 +1,44 @@
+package net.katsuster.ememu.test;
+
+import net.katsuster.ememu.arm.core.*;
+import org.junit.*;
+
+public class DecodeCachev5Test {
+    @Test
+    public void testLookup() throws Exception {
+        String msg1 = "DecodeCachev5.lookup() failed.";
+        DecodeCachev5 c = new DecodeCachev5(4);
+
+        Assert.assertNull(msg1, c.lookup(0x8000, OpType.INS_TYPE_ARM, 0xe1a00000));
+
+        c.fill(0x8000, OpType.INS_TYPE_ARM, 0xe1a00000, OpIndex.INS_ARM_ALUMOV);
+        Assert.assertEquals(msg1, OpIndex.INS_ARM_ALUMOV,
+                c.lookup(0x8000, OpType.INS_TYPE_ARM, 0xe1a00000));
+
+        //命令データが書き換えられた場合、命令の種類が異なる場合はミス
+        Assert.assertNull(msg1, c.lookup(0x8000, OpType.INS_TYPE_ARM, 0xe0800000));
+        Assert.assertNull(msg1, c.lookup(0x8000, OpType.INS_TYPE_THUMB, 0xe1a00000));
+
+        //同じインデクスの別ページを登録すると追い出される
+        c.fill(0xc000, OpType.INS_TYPE_THUMB, 0x4770, OpIndex.INS_THUMB_BX);
+        Assert.assertNull(msg1, c.lookup(0x8000, OpType.INS_TYPE_ARM, 0xe1a00000));
+        Assert.assertEquals(msg1, OpIndex.INS_THUMB_BX,
+                c.lookup(0xc000, OpType.INS_TYPE_THUMB, 0x4770));
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        String msg1 = "DecodeCachev5.invalidate() failed.";
+        DecodeCachev5 c = new DecodeCachev5(4);
+
+        c.fill(0x1004, OpType.INS_TYPE_ARM, 0xe1a00000, OpIndex.INS_ARM_ALUMOV);
+        c.fill(0x2004, OpType.INS_TYPE_ARM, 0xe1a00000, OpIndex.INS_ARM_ALUMOV);
+
+        c.invalidatePage(0x1ffc);
+        Assert.assertNull(msg1, c.lookup(0x1004, OpType.INS_TYPE_ARM, 0xe1a00000));
+        Assert.assertNotNull(msg1, c.lookup(0x2004, OpType.INS_TYPE_ARM, 0xe1a00000));
+
+        c.invalidateAll();
+        Assert.assertNull(msg1, c.lookup(0x2004, OpType.INS_TYPE_ARM, 0xe1a00000));
+    }
+}
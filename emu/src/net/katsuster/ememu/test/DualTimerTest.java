@@ -0,0 +1,93 @@
+package net.katsuster.ememu.test;
+
+import net.katsuster.ememu.arm.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class DualTimerTest {
+    private static class CountINTDestination implements INTDestination {
+        private boolean raised;
+        private int count;
+
+        @Override
+        public boolean isRaisedInterrupt() {
+            return raised;
+        }
+
+        @Override
+        public void setRaisedInterrupt(boolean m) {
+            if (!raised && m) {
+                count++;
+            }
+            raised = m;
+        }
+
+        public int getCount() {
+            return count;
+        }
+    }
+
+    @Test
+    public void testPeriodic() throws Exception {
+        String msg1 = "DualTimer periodic failed.";
+        VirtualClock clock = new VirtualClock(VirtualClock.MODE_INSTRUCTION);
+        DualTimer timer = new DualTimer(clock);
+        SlaveCore s = timer.getSlaveCore();
+        CountINTDestination dst = new CountINTDestination();
+
+        //1 命令 1 ティック（1MHz）とする
+        clock.setInstructionPeriod(1000);
+        timer.connectINTDestination(dst);
+
+        //enable, periodic, interrupt, 32bit
+        s.write32(DualTimer.REG_Timer1Load, 10);
+        s.write32(DualTimer.REG_Timer1Control, 0xe2);
+        Assert.assertEquals(msg1, 10, s.read32(DualTimer.REG_Timer1Value));
+        Assert.assertEquals(msg1, 10000, clock.getNextDeadline());
+
+        clock.update(4);
+        Assert.assertEquals(msg1, 6, s.read32(DualTimer.REG_Timer1Value));
+        Assert.assertFalse(msg1, dst.isRaisedInterrupt());
+
+        //0 に達した時刻に割り込みが発生し、次のティックで再設定される
+        clock.update(10);
+        Assert.assertTrue(msg1, dst.isRaisedInterrupt());
+        Assert.assertEquals(msg1, 0, s.read32(DualTimer.REG_Timer1Value));
+        clock.update(11);
+        Assert.assertEquals(msg1, 10, s.read32(DualTimer.REG_Timer1Value));
+
+        s.write32(DualTimer.REG_Timer1IntClr, 0);
+        Assert.assertFalse(msg1, dst.isRaisedInterrupt());
+
+        //周期は (Load + 1) ティック
+        clock.update(21);
+        Assert.assertEquals(msg1, 2, dst.getCount());
+        Assert.assertEquals(msg1, 32000, clock.getNextDeadline());
+
+        //停止するとカウンタは保持され、イベントも取り消される
+        clock.update(25);
+        s.write32(DualTimer.REG_Timer1Control, 0x62);
+        Assert.assertEquals(msg1, 7, s.read32(DualTimer.REG_Timer1Value));
+        Assert.assertEquals(msg1, Long.MAX_VALUE, clock.getNextDeadline());
+    }
+
+    @Test
+    public void testOneshot() throws Exception {
+        String msg1 = "DualTimer oneshot failed.";
+        VirtualClock clock = new VirtualClock(VirtualClock.MODE_INSTRUCTION);
+        DualTimer timer = new DualTimer(clock);
+        SlaveCore s = timer.getSlaveCore();
+
+        clock.setInstructionPeriod(1000);
+
+        //enable, interrupt, prescale 16, 32bit, oneshot
+        s.write32(DualTimer.REG_Timer2Load, 4);
+        s.write32(DualTimer.REG_Timer2Control, 0xa7);
+        Assert.assertEquals(msg1, 64000, clock.getNextDeadline());
+
+        clock.update(100);
+        Assert.assertEquals(msg1, 0, s.read32(DualTimer.REG_Timer2Value));
+        Assert.assertEquals(msg1, 1, s.read32(DualTimer.REG_Timer2RIS));
+        Assert.assertEquals(msg1, Long.MAX_VALUE, clock.getNextDeadline());
+    }
+}
@@ -0,0 +1,95 @@
+package net.katsuster.ememu.test;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class PSRTest {
+    private static final int[] VALUES = {
+            0x00000000, 0x00000001, 0x7fffffff, 0x80000000,
+            0x80000001, 0xfffffffe, 0xffffffff, 0x12345678,
+    };
+
+    //フラグを評価した回数を数える PSR
+    private static class CountingPSR extends PSR {
+        public int evaluated;
+
+        public CountingPSR(int val) {
+            super("counting", val, null);
+        }
+
+        @Override
+        protected void evaluateFlags() {
+            evaluated++;
+            super.evaluateFlags();
+        }
+    }
+
+    @Test
+    public void testLazyFlagsPending() throws Exception {
+        String msg1 = "PSR lazy flags evaluated too early.";
+        CountingPSR psr = new CountingPSR(PSR.MODE_SVC);
+
+        psr.setFlagsSub(1, 1, 0);
+
+        //フラグ以外のビットの読み書きでは評価しない
+        Assert.assertEquals(msg1, PSR.MODE_SVC, psr.getMode());
+        Assert.assertFalse(msg1, psr.getTBit());
+        Assert.assertFalse(msg1, psr.getIBit());
+        Assert.assertFalse(msg1, psr.getFBit());
+        Assert.assertTrue(msg1, psr.isPrivMode());
+        psr.setIBit(true);
+        psr.setMode(PSR.MODE_IRQ);
+        Assert.assertTrue(msg1, InstructionARM.satisfiesCond(InstructionARM.COND_AL, psr));
+        Assert.assertEquals(msg1, 0, psr.evaluated);
+
+        //フラグの読み出しで評価し、他のビットの変更は保たれる
+        Assert.assertTrue(msg1, psr.getZBit());
+        Assert.assertTrue(msg1, psr.getCBit());
+        Assert.assertEquals(msg1, 1, psr.evaluated);
+        Assert.assertEquals(msg1, 0x60000000 | (1 << PSR.BIT_I) | PSR.MODE_IRQ, psr.getValue());
+
+        //全てのフラグを上書きする場合は評価しない
+        psr.setFlagsAdd(1, 1, 2);
+        psr.setFlagsNZCV(true, false, false, true);
+        Assert.assertEquals(msg1, 1, psr.evaluated);
+        Assert.assertEquals(msg1, 0x90000000 | (1 << PSR.BIT_I) | PSR.MODE_IRQ, psr.getValue());
+    }
+
+    @Test
+    public void testLazyFlags() throws Exception {
+        String msg1 = "PSR.setFlagsAdd() failed.";
+        String msg2 = "PSR.setFlagsSub() failed.";
+        PSR lazy = new PSR("lazy", PSR.MODE_SVC, null);
+        PSR eager = new PSR("eager", PSR.MODE_SVC, null);
+
+        for (int left : VALUES) {
+            for (int right : VALUES) {
+                int add = left + right;
+                int sub = left - right;
+
+                lazy.setFlagsAdd(left, right, add);
+                eager.setNBit(BitOp.getBit32(add, 31));
+                eager.setZBit(add == 0);
+                eager.setCBit(IntegerExt.carryFrom(left, right));
+                eager.setVBit(IntegerExt.overflowFrom(left, right, true));
+                Assert.assertEquals(msg1, eager.getValue(), lazy.getValue());
+
+                lazy.setFlagsSub(left, right, sub);
+                eager.setNBit(BitOp.getBit32(sub, 31));
+                eager.setZBit(sub == 0);
+                eager.setCBit(!IntegerExt.borrowFrom(left, right));
+                eager.setVBit(IntegerExt.overflowFrom(left, right, false));
+                Assert.assertEquals(msg2, eager.getValue(), lazy.getValue());
+            }
+        }
+
+        //遅延評価中のフラグは、他のビットの変更で失われない
+        lazy.setFlagsSub(0, 1, -1);
+        lazy.setIBit(true);
+        Assert.assertTrue(msg2, lazy.getNBit());
+        Assert.assertFalse(msg2, lazy.getCBit());
+        Assert.assertTrue(msg2, lazy.getIBit());
+        Assert.assertEquals(msg2, PSR.MODE_SVC, lazy.getMode());
+    }
+}
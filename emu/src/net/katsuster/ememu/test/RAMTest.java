@@ -1,5 +1,9 @@
 package net.katsuster.ememu.test;
 
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
 import net.katsuster.ememu.generic.*;
 import org.junit.*;
 
@@ -9,11 +13,152 @@ public class RAMTest {
         RAM16 ram16 = new RAM16(0x1000);
         RAM32 ram32 = new RAM32(0x1000);
         RAM64 ram64 = new RAM64(0x1000);
+        RAMDirect ramd = new RAMDirect(0x1000);
+        RAMSparse rams = new RAMSparse(0x1000);
         long start = 0x800;
 
         alignedAccess(start, ram16);
         alignedAccess(start, ram32);
         alignedAccess(start, ram64);
+        alignedAccess(start, ramd);
+        alignedAccess(start, rams);
+    }
+
+    @Test
+    public void testSparseRAM() throws Exception {
+        String msg1 = "RAM sparse allocation failed.";
+        RAMSparse ram = new RAMSparse(0x100000);
+        int[] buf = new int[0x800];
+
+        //書き込まれていなければ確保されず、0 が読める
+        Assert.assertEquals(msg1, 0x100, ram.getChunks());
+        Assert.assertEquals(msg1, 0, ram.read32(0x1000));
+        ram.write32(0x1000, 0);
+        Assert.assertEquals(msg1, 0, ram.getResidentChunks());
+
+        ram.write8(0x2001, (byte)0x5a);
+        Assert.assertEquals(msg1, 1, ram.getResidentChunks());
+        Assert.assertEquals(msg1, 0x5a00, ram.read32(0x2000));
+
+        //チャンクをまたがる連続した書き込み
+        for (int i = 0; i < buf.length; i++) {
+            buf[i] = i;
+        }
+        ram.writeBlock(0x8800, buf, 0, buf.length);
+        Assert.assertEquals(msg1, 4, ram.getResidentChunks());
+        Assert.assertEquals(msg1, 4 * 0x1000, ram.getResidentSize());
+        ram.readBlock(0x8000, buf, 0, buf.length);
+        Assert.assertEquals(msg1, 0, buf[0]);
+        Assert.assertEquals(msg1, 0x5ff, buf[0x7ff]);
+    }
+
+    @Test
+    public void testMappedRAM() throws Exception {
+        String msg1 = "RAM mapped to file failed.";
+        File f = File.createTempFile("ememu", ".ram");
+        RAMDirect ram;
+
+        f.deleteOnExit();
+        try {
+            ram = new RAMDirect(0x1000, f);
+            alignedAccess(0x800, ram);
+            ram.write32(0x10, 0x89abcdef);
+            ram.force();
+
+            //ファイルをマップし直しても内容は保持される
+            ram = new RAMDirect(0x1000, f);
+            Assert.assertEquals(msg1, 0x89abcdef, ram.read32(0x10));
+            Assert.assertEquals(msg1, 0x1000, f.length());
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testOverlayRAM() throws Exception {
+        String msg1 = "RAM copy-on-write overlay failed.";
+        RAM32 base = new RAM32(0x10000);
+        RAMOverlay ov1, ov2;
+
+        base.write32(0x1000, 0x01234567);
+        base.write32(0x1ffc, 0x89abcdef);
+        ov1 = new RAMOverlay(base);
+        ov2 = new RAMOverlay(base);
+        alignedAccess(0x800, new RAMOverlay(base));
+
+        //書き込まれるまではベース RAM を参照する
+        Assert.assertEquals(msg1, 0x01234567, ov1.read32(0x1000));
+        ov1.write32(0x1000, 0x01234567);
+        Assert.assertEquals(msg1, 0, ov1.getOwnedPages());
+
+        //書き込まれたページのみ複製され、ベース RAM と他の RAM は変わらない
+        ov1.write8(0x1000, (byte)0xff);
+        Assert.assertEquals(msg1, 1, ov1.getOwnedPages());
+        Assert.assertTrue(msg1, ov1.isOwnedPage(0x1ffc));
+        Assert.assertFalse(msg1, ov1.isOwnedPage(0x2000));
+        Assert.assertEquals(msg1, 0x012345ff, ov1.read32(0x1000));
+        Assert.assertEquals(msg1, 0x89abcdef, ov1.read32(0x1ffc));
+        Assert.assertEquals(msg1, 0x01234567, ov2.read32(0x1000));
+        Assert.assertEquals(msg1, 0x01234567, base.read32(0x1000));
+        Assert.assertEquals(msg1, 0, ov2.getOwnedPages());
+    }
+
+    @Test
+    public void testDirtyPages() throws Exception {
+        String msg1 = "RAM dirty page tracking failed.";
+        RAM[] rams = {
+                new RAM16(0x10000), new RAM32(0x10000), new RAM64(0x10000),
+                new RAMDirect(0x10000), new RAMSparse(0x10000),
+        };
+
+        for (RAM r : rams) {
+            //記録しない設定ならば、何も記録されない
+            r.write32(0x1000, 1);
+            Assert.assertFalse(msg1, r.isDirtyTracking());
+            Assert.assertTrue(msg1, r.fetchAndClearDirtyPages().isEmpty());
+
+            r.setDirtyTracking(true);
+            r.write8(0x1003, (byte)1);
+            r.write64(0x8ff8, 1L);
+            r.writeBlock(0x3ffc, new int[] {1, 2}, 0, 2);
+            BitSet d = r.fetchAndClearDirtyPages();
+            Assert.assertEquals(msg1, 4, d.cardinality());
+            Assert.assertTrue(msg1, d.get(1) && d.get(3) && d.get(4) && d.get(8));
+
+            //取得すると記録は消去される
+            Assert.assertTrue(msg1, r.fetchAndClearDirtyPages().isEmpty());
+            byte[] blk = new byte[0x1000];
+            Arrays.fill(blk, (byte)1);
+            r.writeBlock(0xf000, ByteBuffer.wrap(blk));
+            Assert.assertEquals(msg1, 1, r.fetchAndClearDirtyPages().cardinality());
+        }
+    }
+
+    @Test
+    public void testSnapshotOverwrite() throws Exception {
+        String msg1 = "RAM snapshot restore onto non-zero RAM failed.";
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(b);
+        RAM32 src = new RAM32(0x10000);
+        RAM[] rams = {
+                new RAM32(0x10000), new RAMDirect(0x10000), new RAMSparse(0x10000),
+        };
+
+        src.write32(0x2004, 0x12345678);
+        src.saveState(out);
+        out.close();
+
+        for (RAM r : rams) {
+            //スナップショットに含まれないページも、以前の内容は残らない
+            r.write32(0x10, 0xdead);
+            r.write32(0x2000, 0xdead);
+            r.write32(0xfffc, 0xdead);
+            r.loadState(new DataInputStream(new ByteArrayInputStream(b.toByteArray())));
+            Assert.assertEquals(msg1, 0, r.read32(0x10));
+            Assert.assertEquals(msg1, 0, r.read32(0x2000));
+            Assert.assertEquals(msg1, 0x12345678, r.read32(0x2004));
+            Assert.assertEquals(msg1, 0, r.read32(0xfffc));
+        }
     }
 
     public void alignedAccess(long start, SlaveCore obj) throws Exception {
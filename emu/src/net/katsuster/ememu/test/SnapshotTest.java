@@ -0,0 +1,162 @@
+package net.katsuster.ememu.test;
+
+import java.io.*;
+
+import net.katsuster.ememu.arm.*;
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class SnapshotTest {
+    //r0 = 1 + 2 + ... + 100 を計算し、0x100 にストアして停止する
+    private static final int[] PROG = {
+            0xe3a00000, //0x00: mov   r0, #0
+            0xe3a01064, //0x04: mov   r1, #100
+            0xe0800001, //0x08: add   r0, r0, r1
+            0xe2511001, //0x0c: subs  r1, r1, #1
+            0x1afffffc, //0x10: bne   0x08
+            0xe5810100, //0x14: str   r0, [r1, #0x100]
+            0xeafffffe, //0x18: b     0x18
+    };
+
+    private ARMv5 cpu;
+    private Bus bus;
+    private DualTimer timer;
+
+    public void createMachine() {
+        createMachine(new RAM32(0x10000));
+    }
+
+    public void createMachine(RAM ram) {
+        cpu = new ARMv5();
+        bus = new Bus();
+        timer = new DualTimer(cpu.getClock());
+
+        cpu.setSlaveBus(bus);
+        bus.addSlaveCore(ram, 0x0, 0xffff);
+        bus.addSlaveCore(timer.getSlaveCore(), 0x10000, 0x10fff);
+    }
+
+    public byte[] save() throws IOException {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(b);
+
+        SnapshotIO.writeHeader(out);
+        cpu.getClock().saveState(out);
+        cpu.saveState(out);
+        bus.saveState(out);
+        out.close();
+
+        return b.toByteArray();
+    }
+
+    public void load(byte[] snap) throws IOException {
+        load(snap, true);
+    }
+
+    public void load(byte[] snap, boolean loadRAM) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snap));
+
+        SnapshotIO.readHeader(in);
+        cpu.getClock().loadState(in);
+        cpu.loadState(in);
+        bus.loadState(in, loadRAM);
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        String msg1 = "Snapshot restore failed.";
+        ARMv5 cpuOrig;
+        DualTimer timerOrig;
+        byte[] snap;
+
+        createMachine();
+        for (int i = 0; i < PROG.length; i++) {
+            bus.write32(i * 4, PROG[i]);
+        }
+        cpu.doExceptionReset("test");
+        //enable, periodic, 32bit
+        bus.write32(0x10000 + DualTimer.REG_Timer1Load, 100);
+        bus.write32(0x10000 + DualTimer.REG_Timer1Control, 0xc2);
+
+        //ループの途中で保存する
+        for (int i = 0; i < 150; i++) {
+            cpu.step();
+        }
+        snap = save();
+        cpuOrig = cpu;
+        timerOrig = timer;
+
+        //新たに作成したマシンに復元する
+        createMachine();
+        load(snap);
+        Assert.assertEquals(msg1, cpuOrig.getPC(), cpu.getPC());
+        Assert.assertEquals(msg1, cpuOrig.getCPSR().getValue(), cpu.getCPSR().getValue());
+        Assert.assertEquals(msg1, cpuOrig.getInstCount(), cpu.getInstCount());
+        Assert.assertEquals(msg1, cpuOrig.getClock().getNextDeadline(),
+                cpu.getClock().getNextDeadline());
+        Assert.assertEquals(msg1, timerOrig.getCounter(0), timer.getCounter(0));
+
+        //同じように実行を続けられる
+        for (int i = 0; i < 1000; i++) {
+            cpuOrig.step();
+            cpu.step();
+        }
+        Assert.assertEquals(msg1, 5050, cpu.getReg(0));
+        Assert.assertEquals(msg1, 5050, cpu.read32_a32(0x100));
+        Assert.assertEquals(msg1, cpuOrig.getClock().getTime(), cpu.getClock().getTime());
+        Assert.assertEquals(msg1, timerOrig.getCounter(0), timer.getCounter(0));
+        Assert.assertEquals(msg1, timerOrig.isAssert(), timer.isAssert());
+    }
+
+    @Test
+    public void testRestoreOverlay() throws Exception {
+        String msg1 = "Snapshot restore to overlay failed.";
+        RAM32 base;
+        RAMOverlay ov;
+        ARMv5 cpuOrig;
+        byte[] snap;
+
+        createMachine();
+        for (int i = 0; i < PROG.length; i++) {
+            bus.write32(i * 4, PROG[i]);
+        }
+        cpu.doExceptionReset("test");
+        for (int i = 0; i < 150; i++) {
+            cpu.step();
+        }
+        snap = save();
+        cpuOrig = cpu;
+
+        //ベース RAM にスナップショットを復元しておく
+        base = new RAM32(0x10000);
+        createMachine(base);
+        load(snap);
+
+        //RAM の内容を読み出しても、読み飛ばしてもページを持たない
+        for (int i = 0; i < 2; i++) {
+            ov = new RAMOverlay(base);
+            createMachine(ov);
+            load(snap, i == 0);
+            Assert.assertEquals(msg1, 0, ov.getOwnedPages());
+            Assert.assertEquals(msg1, cpuOrig.getPC(), cpu.getPC());
+            Assert.assertEquals(msg1, cpuOrig.getReg(0), cpu.getReg(0));
+            Assert.assertEquals(msg1, cpuOrig.getInstCount(), cpu.getInstCount());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testMismatch() throws Exception {
+        byte[] snap;
+
+        createMachine();
+        cpu.doExceptionReset("test");
+        snap = save();
+
+        //スレーブコアの構成が異なるマシンには復元できない
+        cpu = new ARMv5();
+        bus = new Bus();
+        bus.addSlaveCore(new RAM32(0x10000), 0x0, 0xffff);
+        load(snap);
+    }
+}
@@ -0,0 +1,148 @@
+package net.katsuster.ememu.test;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class TLBv5Test {
+    @Test
+    public void testLookup() throws Exception {
+        String msg1 = "TLBv5.lookup() failed.";
+        TLBv5 tlb = new TLBv5("test", 16);
+        TLBEntryv5 e;
+
+        Assert.assertNull(msg1, tlb.lookup(0xc0001000));
+
+        //セクション
+        tlb.fill(TLBEntryv5.TYPE_SECTION, 0xc0001234, 0x00001234, 1, 3, 3, 3, 3);
+        e = tlb.lookup(0xc0001ffc);
+        Assert.assertNotNull(msg1, e);
+        Assert.assertEquals(msg1, 0x00001ffc, e.translate(0xc0001ffc));
+        Assert.assertEquals(msg1, 1, e.getDomain());
+        Assert.assertEquals(msg1, 3, e.getAP(0xc0001ffc));
+        //同じセクションでも別の 4KB ページは別エントリ
+        Assert.assertNull(msg1, tlb.lookup(0xc0002000));
+
+        //小ページ、サブページごとの AP
+        tlb.fill(TLBEntryv5.TYPE_SMALL, 0x40005000, 0x12345000, 2, 0, 1, 2, 3);
+        e = tlb.lookup(0x40005c00);
+        Assert.assertNotNull(msg1, e);
+        Assert.assertEquals(msg1, 0x12345c00, e.translate(0x40005c00));
+        Assert.assertEquals(msg1, 0, e.getAP(0x40005000));
+        Assert.assertEquals(msg1, 1, e.getAP(0x40005400));
+        Assert.assertEquals(msg1, 2, e.getAP(0x40005800));
+        Assert.assertEquals(msg1, 3, e.getAP(0x40005c00));
+
+        //極小ページ
+        tlb.fill(TLBEntryv5.TYPE_TINY, 0x40006400, 0x00abc400, 0, 2, 2, 2, 2);
+        Assert.assertNotNull(msg1, tlb.lookup(0x400067fc));
+        Assert.assertNull(msg1, tlb.lookup(0x40006800));
+
+        Assert.assertEquals(msg1, 3, tlb.getHitCount());
+        Assert.assertEquals(msg1, 3, tlb.getMissCount());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        String msg1 = "TLBv5.invalidate() failed.";
+        TLBv5 tlb = new TLBv5("test", 16);
+
+        //大ページは参照された 4KB ページごとにエントリを持つ
+        tlb.fill(TLBEntryv5.TYPE_LARGE, 0x80010000, 0x00020000, 0, 3, 3, 3, 3);
+        tlb.fill(TLBEntryv5.TYPE_LARGE, 0x80013000, 0x00023000, 0, 3, 3, 3, 3);
+        tlb.fill(TLBEntryv5.TYPE_SMALL, 0x90000000, 0x00030000, 0, 3, 3, 3, 3);
+
+        tlb.invalidate(0x8001f000);
+        Assert.assertNull(msg1, tlb.lookup(0x80010000));
+        Assert.assertNull(msg1, tlb.lookup(0x80013000));
+        Assert.assertNotNull(msg1, tlb.lookup(0x90000000));
+
+        //セクションを小ページで置き換えたインデクス
+        tlb.fill(TLBEntryv5.TYPE_SECTION, 0xa0004000, 0x00104000, 0, 3, 3, 3, 3);
+        tlb.fill(TLBEntryv5.TYPE_SECTION, 0xa0005000, 0x00105000, 0, 3, 3, 3, 3);
+        tlb.fill(TLBEntryv5.TYPE_SMALL, 0xb0004000, 0x00204000, 0, 3, 3, 3, 3);
+        tlb.invalidate(0xa00ff000);
+        Assert.assertNull(msg1, tlb.lookup(0xa0005000));
+        Assert.assertNotNull(msg1, tlb.lookup(0xb0004000));
+        tlb.invalidate(0xb0004000);
+        Assert.assertNull(msg1, tlb.lookup(0xb0004000));
+        Assert.assertNotNull(msg1, tlb.lookup(0x90000000));
+
+        tlb.invalidateAll();
+        Assert.assertNull(msg1, tlb.lookup(0x90000000));
+    }
+
+    @Test
+    public void testHostAccess() throws Exception {
+        RAM32 ram32 = new RAM32(0x10000);
+        RAM64 ram64 = new RAM64(0x10000);
+        TLBEntryv5 e32 = new TLBEntryv5();
+        TLBEntryv5 e64 = new TLBEntryv5();
+
+        e32.set(TLBEntryv5.TYPE_SMALL, 0xc0003000, 0x00003000, 0, 3, 3, 3, 3);
+        e32.setHost32(ram32.getWordArray(), 0x3000);
+        e64.set(TLBEntryv5.TYPE_SMALL, 0xc0003000, 0x00003000, 0, 3, 3, 3, 3);
+        e64.setHost64(ram64.getWordArray(), 0x3000);
+
+        hostAccess(e32, ram32);
+        hostAccess(e64, ram64);
+
+        //直接書き込んだページも記録される
+        ram32.setDirtyTracking(true);
+        e32.setHostRAM(ram32);
+        e32.writeHost16(0xc0003ffe, (short)1);
+        Assert.assertEquals("TLBEntryv5 host dirty page failed.",
+                3, ram32.fetchAndClearDirtyPages().nextSetBit(0));
+    }
+
+    @Test
+    public void testHostDirtyAfterFill() throws Exception {
+        String msg1 = "TLBEntryv5 host dirty page after fill failed.";
+        ARMv5 cpu = new ARMv5();
+        Bus bus = new Bus();
+        //セクション全体を RAM が占める
+        RAM32 ram = new RAM32(0x100000);
+        MMUv5 mmu = cpu.getMMU();
+        TLBEntryv5 ent;
+
+        cpu.setSlaveBus(bus);
+        bus.addSlaveCore(ram, 0x0, 0xfffff);
+        cpu.doExceptionReset("test");
+        //セクション、AP = 3（読み書き可）、ドメイン 0
+        ram.write32(0x4000, 0x00000c02);
+        mmu.setTableBase(0x4000);
+        mmu.setDomainAccess(0, 1);
+        mmu.setEnable(true);
+
+        //記録を開始する前に TLB に登録したエントリ
+        mmu.translate(0x2000, 4, false, true, false);
+        ent = mmu.translateHost(0x2000, 4, false, true, false);
+        Assert.assertNotNull(msg1, ent);
+        ent.writeHost32(0x2000, 1);
+
+        //記録を開始した後の直接の書き込みも記録される
+        ram.setDirtyTracking(true);
+        Assert.assertSame(msg1, ent, mmu.translateHost(0x2000, 4, false, true, false));
+        ent.writeHost32(0x2000, 2);
+        Assert.assertEquals(msg1, 2, ram.fetchAndClearDirtyPages().nextSetBit(0));
+    }
+
+    public void hostAccess(TLBEntryv5 e, RAM ram) throws Exception {
+        String msg1 = "TLBEntryv5 host access failed.";
+
+        e.writeHost32(0xc0003008, 0x12345678);
+        Assert.assertEquals(msg1, 0x12345678, ram.read32(0x3008));
+        Assert.assertEquals(msg1, 0x12345678, e.readHost32(0xc0003008));
+
+        e.writeHost16(0xc000300e, (short)0xabcd);
+        Assert.assertEquals(msg1, (short)0xabcd, ram.read16(0x300e));
+        Assert.assertEquals(msg1, (short)0xabcd, e.readHost16(0xc000300e));
+
+        e.writeHost8(0xc0003009, (byte)0xef);
+        Assert.assertEquals(msg1, 0x1234ef78, ram.read32(0x3008));
+        Assert.assertEquals(msg1, (byte)0x34, e.readHost8(0xc000300a));
+
+        ram.write32(0x3ffc, 0xcafebabe);
+        Assert.assertEquals(msg1, 0xcafebabe, e.readHost32(0xc0003ffc));
+    }
+}
@@ -0,0 +1,93 @@
+package net.katsuster.ememu.test;
+
+import java.io.*;
+
+import net.katsuster.ememu.arm.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class UARTTest {
+    @Test
+    public void testRxFIFO() throws Exception {
+        String msg1 = "UART RX FIFO failed.";
+        VirtualClock clock = new VirtualClock(VirtualClock.MODE_INSTRUCTION);
+        UART uart = new UART(clock, null, null);
+        SlaveCore s = uart.getSlaveCore();
+        int rxrt = (1 << UART.INTR_RX) | (1 << UART.INTR_RT);
+
+        //FIFO 有効、トリガレベル 1/2（8 段）
+        s.write32(UART.REG_UARTLCR_H, 1 << UART.LCR_H_FEN);
+        s.write32(UART.REG_UARTIMSC, rxrt);
+
+        //トリガレベルに満たなければ、受信割り込みは発生しない
+        uart.receive('a');
+        uart.receive('b');
+        uart.receive('c');
+        Assert.assertFalse(msg1, uart.isAssert());
+        Assert.assertEquals(msg1, 0, s.read32(UART.REG_UARTFR) & (1 << UART.FR_RXFE));
+
+        //32 ビット期間データが届かなければ、受信タイムアウト割り込みが発生する
+        clock.advanceTo(clock.getNextDeadline());
+        Assert.assertEquals(msg1, 1 << UART.INTR_RT, s.read32(UART.REG_UARTMIS));
+
+        //FIFO が空になれば、受信タイムアウト割り込みは解除される
+        Assert.assertEquals(msg1, 'a', s.read32(UART.REG_UARTDR));
+        Assert.assertEquals(msg1, 'b', s.read32(UART.REG_UARTDR));
+        Assert.assertEquals(msg1, 'c', s.read32(UART.REG_UARTDR));
+        Assert.assertFalse(msg1, uart.isAssert());
+        Assert.assertNotEquals(msg1, 0, s.read32(UART.REG_UARTFR) & (1 << UART.FR_RXFE));
+
+        //トリガレベルに達すると、受信割り込みが発生する
+        for (int i = 0; i < 8; i++) {
+            uart.receive('0' + i);
+        }
+        Assert.assertEquals(msg1, 1 << UART.INTR_RX, s.read32(UART.REG_UARTMIS));
+        Assert.assertEquals(msg1, '0', s.read32(UART.REG_UARTDR));
+        Assert.assertFalse(msg1, uart.isAssert());
+
+        //FIFO が一杯になると RXFF がセットされる
+        for (int i = 0; i < 9; i++) {
+            uart.receive('x');
+        }
+        Assert.assertEquals(msg1, UART.FIFO_DEPTH, uart.getRxCount());
+        Assert.assertNotEquals(msg1, 0, s.read32(UART.REG_UARTFR) & (1 << UART.FR_RXFF));
+    }
+
+    @Test
+    public void testTxBuffer() throws Exception {
+        String msg1 = "UART TX buffer failed.";
+        VirtualClock clock = new VirtualClock(VirtualClock.MODE_INSTRUCTION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        UART uart = new UART(clock, null, out);
+        SlaveCore s = uart.getSlaveCore();
+
+        s.write32(UART.REG_UARTIMSC, 1 << UART.INTR_TX);
+        Assert.assertTrue(msg1, uart.isAssert());
+
+        //送信割り込みをクリアしても、書き込めば送信 FIFO が空になり再び発生する
+        s.write32(UART.REG_UARTICR, 1 << UART.INTR_TX);
+        Assert.assertFalse(msg1, uart.isAssert());
+        s.write32(UART.REG_UARTDR, 'a');
+        s.write32(UART.REG_UARTDR, 'b');
+        Assert.assertTrue(msg1, uart.isAssert());
+
+        //一定の仮想時間が経過すると書き出される
+        Assert.assertEquals(msg1, "", out.toString("US-ASCII"));
+        clock.advanceTo(clock.getNextDeadline());
+        Assert.assertEquals(msg1, "ab", out.toString("US-ASCII"));
+
+        //改行で直ちに書き出される
+        s.write32(UART.REG_UARTDR, 'c');
+        s.write32(UART.REG_UARTDR, '\n');
+        Assert.assertEquals(msg1, "abc\n", out.toString("US-ASCII"));
+        Assert.assertEquals(msg1, Long.MAX_VALUE, clock.getNextDeadline());
+
+        //改行のない出力も、停止時に書き出される
+        s.write32(UART.REG_UARTDR, '#');
+        s.write32(UART.REG_UARTDR, ' ');
+        Assert.assertEquals(msg1, "abc\n", out.toString("US-ASCII"));
+        s.halt();
+        Assert.assertEquals(msg1, "abc\n# ", out.toString("US-ASCII"));
+        Assert.assertEquals(msg1, Long.MAX_VALUE, clock.getNextDeadline());
+    }
+}
@@ -0,0 +1,94 @@
+package net.katsuster.ememu.test;
+
+import java.util.*;
+
+import net.katsuster.ememu.arm.core.*;
+import net.katsuster.ememu.generic.*;
+import org.junit.*;
+
+public class VirtualClockTest {
+    private static class LogEvent extends ClockEvent {
+        private List<String> log;
+        private String name;
+
+        public LogEvent(List<String> l, String n) {
+            log = l;
+            name = n;
+        }
+
+        @Override
+        public void fire(long deadline) {
+            log.add(name + "@" + deadline);
+        }
+    }
+
+    @Test
+    public void testSchedule() throws Exception {
+        String msg1 = "VirtualClock schedule failed.";
+        final List<String> log = new ArrayList<String>();
+        final VirtualClock clock = new VirtualClock(VirtualClock.MODE_INSTRUCTION);
+        LogEvent a = new LogEvent(log, "a");
+        LogEvent b = new LogEvent(log, "b");
+        LogEvent c = new LogEvent(log, "c");
+        ClockEvent periodic = new ClockEvent() {
+            @Override
+            public void fire(long deadline) {
+                log.add("p@" + deadline);
+                if (deadline < 300) {
+                    clock.schedule(this, deadline + 100);
+                }
+            }
+        };
+
+        clock.setInstructionPeriod(10);
+        clock.schedule(b, 50);
+        clock.schedule(a, 50);
+        clock.schedule(c, 70);
+        clock.schedule(periodic, 100);
+        Assert.assertEquals(msg1, 50, clock.getNextDeadline());
+
+        //取り消したイベントは呼び出されない
+        clock.cancel(c);
+        Assert.assertFalse(msg1, c.isScheduled());
+
+        clock.update(4);
+        Assert.assertEquals(msg1, 40, clock.getTime());
+        Assert.assertTrue(msg1, log.isEmpty());
+
+        //期限が同じイベントは登録順に呼び出される
+        clock.update(5);
+        Assert.assertEquals(msg1, Arrays.asList("b@50", "a@50"), log);
+
+        //期限を過ぎた周期イベントは、まとめて呼び出される
+        clock.update(40);
+        Assert.assertEquals(msg1, Arrays.asList("b@50", "a@50",
+                "p@100", "p@200", "p@300"), log);
+        Assert.assertEquals(msg1, Long.MAX_VALUE, clock.getNextDeadline());
+
+        //時刻を直接進める
+        clock.schedule(c, 1000);
+        clock.advanceTo(1000);
+        Assert.assertEquals(msg1, "c@1000", log.get(log.size() - 1));
+        Assert.assertEquals(msg1, 1000, clock.getTime());
+    }
+
+    @Test
+    public void testIdleSkip() throws Exception {
+        String msg1 = "VirtualClock idle skip failed.";
+        final ARMv5 cpu = new ARMv5();
+        VirtualClock clock = cpu.getClock();
+        ClockEvent tick = new ClockEvent() {
+            @Override
+            public void fire(long deadline) {
+                cpu.setRaisedInterrupt(true);
+            }
+        };
+
+        //命令数で進む仮想クロックでは、割り込み待ちの間は次のイベントまで時刻を飛ばす
+        clock.schedule(tick, 10L * 1000 * 1000 * 1000);
+        cpu.getMMU().getCoProcStd().waitInt(0);
+
+        Assert.assertTrue(msg1, cpu.isRaisedInterrupt());
+        Assert.assertEquals(msg1, 10L * 1000 * 1000 * 1000, clock.getTime());
+    }
+}
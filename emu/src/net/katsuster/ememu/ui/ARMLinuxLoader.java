@@ -2,6 +2,7 @@ package net.katsuster.ememu.ui;
 
 import java.io.*;
 import java.net.*;
+import java.nio.channels.*;
 
 import net.katsuster.ememu.generic.*;
 import net.katsuster.ememu.arm.core.ARMv5;
@@ -24,32 +25,34 @@ public class ARMLinuxLoader {
     public static final int ATAG_CMDLINE   = 0x54410009;
 
     public static int loadURIResource(URI uri, CPU cpu, int addr) {
-        int i;
+        ReadableByteChannel ch;
+        long start, size;
 
         System.out.println("loadURL: " + uri.toString());
 
+        start = System.nanoTime();
         try {
-            DataInputStream s = new DataInputStream(
-                    new BufferedInputStream(uri.toURL().openStream()));
+            if ("file".equals(uri.getScheme()) && !uri.isOpaque()) {
+                //ローカルのファイルはメモリマップして RAM にコピーする
+                ch = new FileInputStream(new File(uri)).getChannel();
+            } else {
+                ch = Channels.newChannel(uri.toURL().openStream());
+            }
 
-            i = 0;
             try {
-                while (true) {
-                    cpu.write8_a32(addr + i, s.readByte());
-                    i++;
-                }
-            } catch (EOFException e) {
-                //end
+                size = cpu.getSlaveBus().load(addr & 0xffffffffL, ch);
+            } finally {
+                ch.close();
             }
         } catch (IOException e) {
             e.printStackTrace(System.err);
             throw new IllegalArgumentException(e);
         }
 
-        System.out.printf("loadURL: '%s' done, %dbytes.\n",
-                uri.toString(), i);
+        System.out.printf("loadURL: '%s' done, %dbytes, %dms.\n",
+                uri.toString(), size, (System.nanoTime() - start) / 1000000);
 
-        return i;
+        return (int)size;
     }
 
     public static void bootFromURI(ARMv5 cpu, RAM ramMain, String kimage, String initrd, String cmdline) {
@@ -130,9 +133,8 @@ public class ARMLinuxLoader {
             //ATAG_CMDLINE
             cpu.write32_a32(addrAtags + 0x00, 0x00000002 + cmdalign.length / 4);
             cpu.write32_a32(addrAtags + 0x04, ATAG_CMDLINE);
-            for (int i = 0; i < cmdalign.length; i++) {
-                cpu.write8_a32(addrAtags + 0x08 + i, cmdalign[i]);
-            }
+            cpu.writeBlock((addrAtags + 0x08) & 0xffffffffL,
+                    cmdalign, 0, cmdalign.length);
             addrAtags += 0x08 + cmdalign.length;
 
             //ATAG_SERIAL, size, tag, low, high
@@ -1,5 +1,7 @@
 package net.katsuster.ememu.ui;
 
+import java.io.*;
+
 import net.katsuster.ememu.arm.core.*;
 import net.katsuster.ememu.board.*;
 import net.katsuster.ememu.generic.*;
@@ -18,13 +20,56 @@ public class Emulator extends Thread {
     private LinuxOption opts;
 
     public Emulator() {
+        this(createRAM(64 * 1024 * 1024));
+    }
+
+    /**
+     * メイン RAM を指定してエミュレータを作成します。
+     *
+     * 共有するベース RAM に RAMOverlay を重ねて渡せば、
+     * 同じスナップショットから複数のエミュレータを起動できます。
+     *
+     * @param r メイン RAM
+     */
+    public Emulator(RAM r) {
         cpu = new ARMv5();
         bus = new Bus();
-        ram = new RAM32(64 * 1024 * 1024);
+        ram = r;
         board = new ARMVersatile();
         opts = new LinuxOption();
     }
 
+    /**
+     * システムプロパティの指定に従い、メイン RAM を作成します。
+     *
+     * @param size RAM サイズ（バイト単位）
+     * @return メイン RAM
+     */
+    protected static RAM createRAM(int size) {
+        String f = System.getProperty("ememu.ram.file");
+
+        //-Dememu.ram.file=path で RAM の内容をファイルにマップする
+        if (f != null) {
+            try {
+                return new RAMDirect(size, new File(f));
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+                throw new IllegalArgumentException(String.format(
+                        "cannot map RAM to '%s'.", f));
+            }
+        }
+        //-Dememu.ram=direct で RAM の内容を Java ヒープ外に置く
+        if (System.getProperty("ememu.ram", "heap").equals("direct")) {
+            return new RAMDirect(size);
+        }
+        //-Dememu.ram=sparse で RAM を書き込まれた範囲だけ確保する
+        if (System.getProperty("ememu.ram", "heap").equals("sparse")) {
+            return new RAMSparse(size);
+        }
+
+        return new RAM32(size);
+    }
+
     /**
      * メイン CPU を取得します。
      *
@@ -84,16 +129,44 @@ public class Emulator extends Thread {
     @Override
     public void run() {
         String dtree, kimage, initrd, cmdline;
+        String snapLoad, snapSave;
 
         setName(getClass().getName());
 
         board.setup(cpu, bus, ram);
+        //-Dememu.blocktrans=true で命令ブロックの変換を用いて実行する
+        cpu.setEnabledBlockTranslation(Boolean.getBoolean("ememu.blocktrans"));
+        //-Dememu.threaded=true でスレッデッドコード方式で実行する
+        cpu.setEnabledThreadedCode(Boolean.getBoolean("ememu.threaded"));
+        //-Dememu.jit=true で命令ブロックを JVM のクラスに変換して実行する
+        //（-Dememu.blocktrans=true と共に指定する）
+        cpu.setEnabledJIT(Boolean.getBoolean("ememu.jit"));
+        //-Dememu.clock=insts で実行した命令数に比例して仮想時刻を進める
+        if (System.getProperty("ememu.clock", "host").equals("insts")) {
+            cpu.getClock().setMode(VirtualClock.MODE_INSTRUCTION);
+        } else {
+            cpu.getClock().setMode(VirtualClock.MODE_HOST);
+        }
+        //-Dememu.idleskip=true で割り込み待ちの間、次のイベントまで仮想時刻を飛ばす
+        cpu.getClock().setEnabledIdleSkip(Boolean.getBoolean("ememu.idleskip"));
+        //-Dememu.trace.exception=true で例外の発生を表示する
+        cpu.setEnabledTraceException(Boolean.getBoolean("ememu.trace.exception"));
 
         dtree = opts.getDeviceTreeImage().toString();
         kimage = opts.getKernelImage().toString();
         initrd = opts.getInitrdImage().toString();
         cmdline = opts.getCommandLine();
-        if (dtree.equals("")) {
+        //-Dememu.snapshot.load=path で起動せず、スナップショットから再開する
+        snapLoad = System.getProperty("ememu.snapshot.load");
+        if (snapLoad != null) {
+            try {
+                //RAMOverlay のベース RAM は既にスナップショットの内容を持つ
+                loadSnapshot(new File(snapLoad), !(ram instanceof RAMOverlay));
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+                return;
+            }
+        } else if (dtree.equals("")) {
             ARMLinuxLoader.bootFromURI(cpu, ram, kimage, initrd, cmdline);
         } else {
             ARMLinuxLoader.bootFromURIWithDT(cpu, ram, dtree, kimage, initrd, cmdline);
@@ -110,6 +183,86 @@ public class Emulator extends Thread {
             e.printStackTrace(System.err);
             //ignored
         }
+
+        //-Dememu.snapshot.save=path で停止したときの状態を保存する
+        snapSave = System.getProperty("ememu.snapshot.save");
+        if (snapSave != null) {
+            try {
+                saveSnapshot(new File(snapSave));
+            } catch (IOException e) {
+                e.printStackTrace(System.err);
+            }
+        }
+    }
+
+    /**
+     * マシン全体の状態をスナップショットとしてファイルに保存します。
+     *
+     * CPU が停止している間に呼び出す必要があります。
+     *
+     * @param f 保存先のファイル
+     * @throws IOException 書き出しに失敗した場合
+     */
+    public void saveSnapshot(File f) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(f), Bus.LOAD_BUFFER_SIZE));
+        long st = System.currentTimeMillis();
+
+        try {
+            SnapshotIO.writeHeader(out);
+            cpu.getClock().saveState(out);
+            cpu.saveState(out);
+            bus.saveState(out);
+        } finally {
+            out.close();
+        }
+
+        System.out.printf("Save snapshot '%s': done, %dbytes, %dms.\n",
+                f, f.length(), System.currentTimeMillis() - st);
+    }
+
+    /**
+     * ファイルに保存したスナップショットから、マシン全体の状態を復元します。
+     *
+     * ボードを構成した後、コアを起動する前に呼び出す必要があります。
+     * 仮想クロックの時刻を先に復元し、
+     * デバイスはその時刻を基準にイベントを登録し直します。
+     *
+     * @param f スナップショットのファイル
+     * @throws IOException 読み出しに失敗した場合、マシンの構成が一致しない場合
+     */
+    public void loadSnapshot(File f) throws IOException {
+        loadSnapshot(f, true);
+    }
+
+    /**
+     * ファイルに保存したスナップショットから、マシン全体の状態を復元します。
+     *
+     * RAM の内容を読み出さない場合、CPU とデバイスの状態のみを復元します。
+     * スナップショットを復元したベース RAM に RAMOverlay を重ねて
+     * 複数のエミュレータを起動する場合に用います。
+     * RAM は既にスナップショットと同じ内容を持っている必要があります。
+     *
+     * @param f       スナップショットのファイル
+     * @param loadRAM RAM の内容を読み出すなら true、読み飛ばすなら false
+     * @throws IOException 読み出しに失敗した場合、マシンの構成が一致しない場合
+     */
+    public void loadSnapshot(File f, boolean loadRAM) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(f), Bus.LOAD_BUFFER_SIZE));
+        long st = System.currentTimeMillis();
+
+        try {
+            SnapshotIO.readHeader(in);
+            cpu.getClock().loadState(in);
+            cpu.loadState(in);
+            bus.loadState(in, loadRAM);
+        } finally {
+            in.close();
+        }
+
+        System.out.printf("Load snapshot '%s': done, %dms.\n",
+                f, System.currentTimeMillis() - st);
     }
 
     public void halt() {
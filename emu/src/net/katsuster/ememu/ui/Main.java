@@ -17,7 +17,20 @@ public class Main {
                 "    -h       : Show this help messages.\n" +
                 "    image    : Linux kernel image file.\n" +
                 "    initramfs: initrd or initramfs image file.\n" +
-                "    cmdline  : Command line parameters to Linux kernel.\n");
+                "    cmdline  : Command line parameters to Linux kernel.\n" +
+                "  Properties:\n" +
+                "    -Dememu.blocktrans=true     : Execute translated ARM blocks.\n" +
+                "    -Dememu.threaded=true       : Use threaded code interpreter.\n" +
+                "    -Dememu.trace.exception=true: Print taken exceptions.\n" +
+                "    -Dememu.clock=insts         : Advance virtual time by executed\n" +
+                "                                  instructions instead of host time.\n" +
+                "    -Dememu.idleskip=true       : Skip idle time to the next timer event.\n" +
+                "    -Dememu.ram=direct          : Allocate RAM outside of Java heap.\n" +
+                "    -Dememu.ram=sparse          : Allocate RAM on first write.\n" +
+                "    -Dememu.ram.file=path       : Map RAM to the file, keep contents.\n" +
+                "    -Dememu.snapshot.save=path  : Save machine state to the file at exit.\n" +
+                "    -Dememu.snapshot.load=path  : Resume from the snapshot instead of\n" +
+                "                                  booting the kernel.\n");
     }
 
     public static void main(String[] args) {